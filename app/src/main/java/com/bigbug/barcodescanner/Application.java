@@ -5,12 +5,6 @@ import android.Manifest;
 import android.app.Activity;
 import android.os.Handler;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-
 public class Application extends android.app.Application {
     /**
      * Request code for camera permissions.
@@ -28,12 +22,11 @@ public class Application extends android.app.Application {
 
     private static Application sInstance;
 
-    private Map<Class<? extends BaseUIListener>, Collection<? extends BaseUIListener>> mUiListeners;
+    private final UIListenerRegistry mUiListeners = new UIListenerRegistry();
 
     public Application() {
         sInstance = this;
         mHandler = new Handler();
-        mUiListeners = new HashMap<>();
     }
 
     public static Application getInstance() {
@@ -43,22 +36,12 @@ public class Application extends android.app.Application {
         return sInstance;
     }
 
-    @SuppressWarnings("unchecked")
-    private <T extends BaseUIListener> Collection<T> getOrCreateUIListeners(Class<T> cls) {
-        Collection<T> collection = (Collection<T>) mUiListeners.get(cls);
-        if (collection == null) {
-            collection = new ArrayList<>();
-            mUiListeners.put(cls, collection);
-        }
-        return collection;
-    }
-
     /**
      * @param cls Requested class of listeners.
-     * @return List of registered UI listeners.
+     * @return Registered UI listeners.  The array is shared and must not be modified.
      */
-    public <T extends BaseUIListener> Collection<T> getUIListeners(Class<T> cls) {
-        return Collections.unmodifiableCollection(getOrCreateUIListeners(cls));
+    public <T extends BaseUIListener> T[] getUIListeners(Class<T> cls) {
+        return mUiListeners.get(cls);
     }
 
     /**
@@ -67,7 +50,7 @@ public class Application extends android.app.Application {
      * Should be called from {@link Activity#onResume()}.
      */
     public <T extends BaseUIListener> void addUIListener(Class<T> cls, T listener) {
-        getOrCreateUIListeners(cls).add(listener);
+        mUiListeners.add(cls, listener);
     }
 
     /**
@@ -76,7 +59,7 @@ public class Application extends android.app.Application {
      * Should be called from {@link Activity#onPause()}.
      */
     public <T extends BaseUIListener> void removeUIListener(Class<T> cls, T listener) {
-        getOrCreateUIListeners(cls).remove(listener);
+        mUiListeners.remove(cls, listener);
     }
 
     public void runOnUiThread(final Runnable runnable) {
@@ -10,17 +10,16 @@ import android.media.Image;
 import android.media.ImageReader;
 import android.util.Log;
 
-import com.google.zxing.BinaryBitmap;
 import com.google.zxing.LuminanceSource;
-import com.google.zxing.MultiFormatReader;
 import com.google.zxing.NotFoundException;
-import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
 
 import java.io.File;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Runnable that saves an {@link Image} into the specified {@link File}, and updates
@@ -29,20 +28,180 @@ import java.nio.ByteBuffer;
  * This can be constructed through an {@link BarcodeDetecterBuilder} as the necessary image and
  * result information becomes available.
  */
-public class BarcodeDetecter implements Runnable {
+public class BarcodeDetecter implements DecodeScheduler.Task {
 
     /**
      * Tag for the {@link Log}.
      */
     private static final String TAG = "BarcodeDetecter";
 
+    /**
+     * Upper bounds for the frame buffers kept around between detections, enough for the
+     * compressed data, the pixels and the luminance of a couple of full-resolution frames.
+     */
+    private static final int MAX_POOLED_ARRAYS = 8;
+    private static final long MAX_POOLED_BYTES = 160L * 1024 * 1024;
+    private static final int MAX_POOLED_BITMAPS = 2;
+
+    /**
+     * Frame buffers shared by all detections, so that continuous scanning reaches a steady state
+     * where no per-frame buffer is allocated.
+     */
+    private static final ArrayPool sArrayPool = new ArrayPool(MAX_POOLED_ARRAYS, MAX_POOLED_BYTES);
+    private static final BitmapPool sBitmapPool = new BitmapPool(MAX_POOLED_BITMAPS);
+
+    /**
+     * JPEG decoding options of each decode thread, reset before every frame.
+     */
+    private static final ThreadLocal<BitmapFactory.Options> sDecodeOptions =
+            new ThreadLocal<BitmapFactory.Options>() {
+                @Override
+                protected BitmapFactory.Options initialValue() {
+                    return new BitmapFactory.Options();
+                }
+            };
+
+    /**
+     * Decoder used when none was given to the {@link BarcodeDetecterBuilder}.
+     */
+    private static final FrameDecoder sDefaultDecoder = new FrameDecoder(DecoderConfig.DEFAULT);
+
+    /**
+     * Latencies of every stage of all detections, from the capture request to the UI.
+     */
+    private static final ScanLatencyStats sLatencyStats = new ScanLatencyStats();
+
+    /**
+     * A barcode seen again within this time of its last sighting is not reported again, and the
+     * number of recently seen barcodes remembered.
+     */
+    private static final long DUPLICATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(3);
+    private static final int MAX_RECENT_BARCODES = 64;
+
+    /**
+     * Keeps a barcode held in view from being reported on every frame.
+     */
+    private static final DuplicateFilter sDuplicateFilter = new DuplicateFilter(Clock.SYSTEM,
+            DUPLICATE_WINDOW_NANOS, MAX_RECENT_BARCODES);
+
+    /**
+     * A barcode not found for this long is no longer tracked, and the margin left around a tracked
+     * barcode, as a fraction of its size.
+     */
+    private static final long REGION_MAX_AGE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final float REGION_MARGIN = 0.5f;
+
+    /**
+     * Predicts where the barcode being scanned is in the next frame, so that continuous scanning
+     * decodes a small crop around it instead of the whole frame.
+     */
+    private static final RegionTracker sRegionTracker = new RegionTracker(REGION_MAX_AGE_NANOS,
+            REGION_MARGIN);
+
+    /**
+     * Frames below this {@link FrameQualityGate#sharpness sharpness} are too blurred to decode,
+     * and the angle the camera may turn by during an exposure, about 1.5 modules of a CODE_128
+     * label at scanning distance.  One rejected frame out of {@link #QUALITY_AUDIT_INTERVAL} is
+     * decoded anyway.
+     */
+    private static final float MIN_SHARPNESS = 0.004f;
+    private static final float MAX_BLUR_RADIANS = 0.002f;
+    private static final int QUALITY_AUDIT_INTERVAL = 10;
+
+    /**
+     * Skips frames captured while focusing, shaken or blurred, which would only cost a failed
+     * decode.
+     */
+    private static final FrameQualityGate sQualityGate = new FrameQualityGate(MIN_SHARPNESS,
+            MAX_BLUR_RADIANS, QUALITY_AUDIT_INTERVAL);
+
+    /**
+     * Upper bound for the scan results kept around between detections, enough for a frame of
+     * labels.
+     */
+    private static final int MAX_POOLED_SCAN_RESULTS = 16;
+
+    /**
+     * Scan results handed to the UI thread, recycled once the listeners have seen them.
+     */
+    private static final ScanResultPool sScanResultPool =
+            new ScanResultPool(MAX_POOLED_SCAN_RESULTS);
+
+    /**
+     * Hands detected barcodes to the UI thread, keeping only the latest detection when barcodes
+     * are detected faster than the UI thread picks them up.  The barcodes of a dropped detection
+     * are forgotten by {@link #sDuplicateFilter}, so that they are reported again on their next
+     * sighting instead of never.
+     * <p/>
+     * {@link OnScanResultListener}s get the scan results as they are, and
+     * {@link OnBarcodeDetectedListener}s their text.
+     */
+    private static final CoalescingDispatcher<Detection> sDetectionDispatcher =
+            new CoalescingDispatcher<>(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    Application.getInstance().runOnUiThread(command);
+                }
+            }, new CoalescingDispatcher.Sink<Detection>() {
+                @Override
+                public void deliver(Detection detection) {
+                    detection.mTimeline.mark(ScanTimeline.UI_DISPATCHED);
+                    sLatencyStats.record(detection.mTimeline);
+                    Application application = Application.getInstance();
+                    try {
+                        for (OnScanResultListener scanResultListener :
+                                application.getUIListeners(OnScanResultListener.class)) {
+                            scanResultListener.onScanResults(detection.mResults);
+                        }
+                        OnBarcodeDetectedListener[] barcodeDetectedListeners =
+                                application.getUIListeners(OnBarcodeDetectedListener.class);
+                        if (barcodeDetectedListeners.length > 0) {
+                            deliverText(detection, barcodeDetectedListeners);
+                        }
+                    } finally {
+                        recycle(detection);
+                    }
+                }
+
+                @Override
+                public void drop(Detection detection) {
+                    for (ScanResult result : detection.mResults) {
+                        sDuplicateFilter.forget(result.getFormat(), result.getText());
+                    }
+                    sLatencyStats.record(detection.mTimeline);
+                    recycle(detection);
+                }
+
+                private void deliverText(Detection detection,
+                                         OnBarcodeDetectedListener[] listeners) {
+                    String[] contents = new String[detection.mResults.length];
+                    for (int i = 0; i < contents.length; i++) {
+                        contents[i] = detection.mResults[i].getText();
+                    }
+                    for (OnBarcodeDetectedListener barcodeDetectedListener : listeners) {
+                        if (detection.mBatch) {
+                            barcodeDetectedListener.onBarcodesDetected(contents);
+                        } else {
+                            barcodeDetectedListener.onBarcodeDetected(contents[0]);
+                        }
+                    }
+                }
+
+                private void recycle(Detection detection) {
+                    for (ScanResult result : detection.mResults) {
+                        sScanResultPool.release(result);
+                    }
+                }
+            });
+
     /**
      * The image to save.
      */
     private final Image mImage;
 
     /**
-     * The CaptureResult for this image capture.
+     * The CaptureResult for this image capture, or null if the camera has not delivered it in
+     * time.
      */
     private final CaptureResult mCaptureResult;
 
@@ -61,69 +220,345 @@ public class BarcodeDetecter implements Runnable {
      */
     private final RefCountedAutoCloseable<ImageReader> mReader;
 
+    /**
+     * Clockwise rotation in degrees needed to make the image upright on the display.
+     */
+    private final int mRotation;
+
+    /**
+     * The part of the image to search for barcodes, in image coordinates.
+     */
+    private final ScanWindow mScanWindow;
+
+    /**
+     * The decoder to find barcodes with.
+     */
+    private final FrameDecoder mDecoder;
+
+    /**
+     * The timestamps of this frame, recorded into {@link #sLatencyStats} once it is done with.
+     */
+    private final ScanTimeline mTimeline;
+
+    /**
+     * The angular speed of the device when the frame was captured, in radians per second, or a
+     * negative value if unknown.
+     */
+    private final float mAngularSpeed;
+
     private WeakReference<OnBarcodeDetectedListener> mListenerRef;
 
     private BarcodeDetecter(Image image, CaptureResult result,
                             CameraCharacteristics characteristics, Context context,
-                            RefCountedAutoCloseable<ImageReader> reader) {
+                            RefCountedAutoCloseable<ImageReader> reader, int rotation,
+                            ScanWindow scanWindow, FrameDecoder decoder, ScanTimeline timeline,
+                            float angularSpeed) {
         mImage = image;
         mCaptureResult = result;
         mCharacteristics = characteristics;
         mContext = context;
         mReader = reader;
+        mRotation = rotation;
+        mScanWindow = scanWindow;
+        mDecoder = decoder;
+        mTimeline = timeline;
+        mAngularSpeed = angularSpeed;
     }
 
     @Override
     public void run() {
+        mTimeline.mark(ScanTimeline.DECODE_STARTED);
         int format = mImage.getFormat();
-        switch (format) {
-            case ImageFormat.JPEG: {
-                final ByteBuffer buffer = mImage.getPlanes()[0].getBuffer();
-                byte[] bytes = new byte[buffer.remaining()];
-                buffer.get(bytes);
-
-                try {
-                    Bitmap bm = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                    int[] rgb = new int[bm.getWidth() * bm.getHeight()];
-                    // copy pixel data from the Bitmap into the 'intArray' array
-                    bm.getPixels(rgb, 0, bm.getWidth(), 0, 0, bm.getWidth(), bm.getHeight());
-                    LuminanceSource source = new RGBLuminanceSource(bm.getWidth(), bm.getHeight(), rgb);
-                    BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-
-                    Result result = new MultiFormatReader().decode(bitmap, null);
-                    if (result != null) {
-                        final String content = result.getText();
-                        Application.getInstance().runOnUiThread(new Runnable() {
-                            @Override
-                            public void run() {
-                                for (OnBarcodeDetectedListener barcodeDetectedListener :
-                                        Application.getInstance().getUIListeners(OnBarcodeDetectedListener.class)) {
-                                    barcodeDetectedListener.onBarcodeDetected(content);
-                                }
-                            }
-                        });
-                    }
-                } catch (NotFoundException e) {
-                    e.printStackTrace();
-                } finally {
-                    mImage.close();
+        boolean dispatched = false;
+        try {
+            switch (format) {
+                case ImageFormat.JPEG: {
+                    dispatched = decodeJpeg(mImage.getPlanes()[0].getBuffer());
+                    break;
+                }
+                case ImageFormat.YUV_420_888: {
+                    // The Y plane is the luminance image already, so decode it in place.
+                    Image.Plane plane = mImage.getPlanes()[0];
+                    dispatched = decode(CameraFrames.fromYPlane(plane.getBuffer(), plane.getRowStride(),
+                            plane.getPixelStride(), mImage.getWidth(), mImage.getHeight(),
+                            mScanWindow, mRotation));
+                    break;
+                }
+                default: {
+                    Log.e(TAG, "Cannot detect barcode, unexpected image format:" + format);
+                    break;
                 }
-                break;
             }
-            default: {
-                Log.e(TAG, "Cannot detect barcode, unexpected image format:" + format);
-                break;
+        } finally {
+            if (!dispatched) {
+                mTimeline.mark(ScanTimeline.DECODE_FINISHED);
+                sLatencyStats.record(mTimeline);
             }
+            release();
         }
+    }
+
+    @Override
+    public void discard() {
+        release();
+    }
+
+    /**
+     * Close the image and give its slot back to the {@link ImageReader}.
+     */
+    private void release() {
+        mImage.close();
 
         // Decrement reference count to allow ImageReader to be closed to free up resources.
         mReader.close();
     }
 
+    /**
+     * Decode a JPEG frame, reusing pooled buffers and bitmaps for every intermediate step.
+     *
+     * @param buffer the JPEG data of the captured frame.
+     * @return true if a barcode was found and handed to the UI thread.
+     */
+    private boolean decodeJpeg(ByteBuffer buffer) {
+        final int length = buffer.remaining();
+        byte[] bytes = sArrayPool.acquireBytes(length);
+        Bitmap bm = null;
+        byte[] luminances = null;
+        try {
+            buffer.get(bytes, 0, length);
+
+            // Peek at the dimensions first so that a pooled bitmap of the right size can be used.
+            BitmapFactory.Options options = sDecodeOptions.get();
+            options.inJustDecodeBounds = true;
+            options.inBitmap = null;
+            options.outWidth = 0;
+            options.outHeight = 0;
+            BitmapFactory.decodeByteArray(bytes, 0, length, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                Log.e(TAG, "Cannot decode JPEG frame.");
+                return false;
+            }
+            options.inJustDecodeBounds = false;
+            options.inMutable = true;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inBitmap = sBitmapPool.acquire(options.outWidth, options.outHeight,
+                    Bitmap.Config.ARGB_8888);
+            try {
+                bm = BitmapFactory.decodeByteArray(bytes, 0, length, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap could not be reused, let the decoder allocate one.
+                sBitmapPool.release(options.inBitmap);
+                options.inBitmap = null;
+                bm = BitmapFactory.decodeByteArray(bytes, 0, length, options);
+            } finally {
+                if (bm == null) {
+                    // A corrupt frame, the pooled bitmap was not decoded into.
+                    sBitmapPool.release(options.inBitmap);
+                }
+                // Do not keep the bitmap reachable from the thread between frames.
+                options.inBitmap = null;
+            }
+            if (bm == null) {
+                Log.e(TAG, "Cannot decode JPEG frame.");
+                return false;
+            }
+
+            // Only the pixels inside the scan window are read out of the bitmap.
+            final int left = mScanWindow.getPixelLeft(bm.getWidth());
+            final int top = mScanWindow.getPixelTop(bm.getHeight());
+            final int width = mScanWindow.getPixelWidth(bm.getWidth());
+            final int height = mScanWindow.getPixelHeight(bm.getHeight());
+            int[] argb = sArrayPool.acquireInts(width * height);
+            luminances = sArrayPool.acquireBytes(width * height);
+            try {
+                bm.getPixels(argb, 0, width, left, top, width, height);
+                CameraFrames.argbToLuminance(argb, luminances, width * height);
+            } finally {
+                sArrayPool.releaseInts(argb);
+            }
+            // Unlike RGBLuminanceSource, this wraps the (pooled) luminance array without copying.
+            return decode(new PlanarYUVLuminanceSource(luminances, width, height, 0, 0, width, height,
+                    false));
+        } finally {
+            sArrayPool.releaseBytes(bytes);
+            sArrayPool.releaseBytes(luminances);
+            sBitmapPool.release(bm);
+        }
+    }
+
+    /**
+     * Decode the given luminance data and notify the registered {@link OnScanResultListener}s
+     * and {@link OnBarcodeDetectedListener}s on the UI thread if barcodes not seen recently were
+     * found.  With a {@link DecoderConfig#isMultipleBarcodes() multi-barcode} decoder, all of
+     * them are reported at once.  Frames {@link #sQualityGate} rejects are not decoded, except
+     * for the few it audits.
+     *
+     * @param source the luminance data of the captured frame.
+     * @return true if a barcode was found and handed to the UI thread.
+     */
+    private boolean decode(LuminanceSource source) {
+        boolean audit = false;
+        if (sQualityGate.check(source, isFocusing(), getExposureNanos(), mAngularSpeed)
+                != FrameQualityGate.Verdict.ACCEPTED) {
+            if (!sQualityGate.shouldAudit()) {
+                return false;
+            }
+            audit = true;
+        }
+        boolean found = false;
+        try {
+            boolean batch = mDecoder.getConfig().isMultipleBarcodes();
+            Result[] results = batch
+                    ? mDecoder.decodeMultiple(source) : new Result[]{decodeTracked(source)};
+            found = results.length > 0;
+            int count = 0;
+            for (Result result : results) {
+                if (result != null
+                        && sDuplicateFilter.offer(result.getBarcodeFormat(), result.getText())) {
+                    results[count++] = result;
+                }
+            }
+            if (count > 0) {
+                mTimeline.mark(ScanTimeline.DECODE_FINISHED);
+                ScanResult[] scanResults = new ScanResult[count];
+                for (int i = 0; i < count; i++) {
+                    scanResults[i] = sScanResultPool.acquire(results[i], mImage.getTimestamp(),
+                            mTimeline);
+                }
+                sDetectionDispatcher.dispatch(new Detection(scanResults, batch, mTimeline));
+                return true;
+            }
+        } catch (NotFoundException e) {
+            // Most frames have no barcode in them, nothing to report.
+        } finally {
+            if (audit) {
+                sQualityGate.recordAudit(found);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the autofocus was still scanning for focus when the frame was captured,
+     * false if unknown.
+     */
+    private boolean isFocusing() {
+        if (mCaptureResult == null) {
+            return false;
+        }
+        Integer state = mCaptureResult.get(CaptureResult.CONTROL_AF_STATE);
+        return state != null && (state == CaptureResult.CONTROL_AF_STATE_PASSIVE_SCAN
+                || state == CaptureResult.CONTROL_AF_STATE_ACTIVE_SCAN);
+    }
+
+    /**
+     * @return the exposure time of the frame, or 0 if the camera does not report it.
+     */
+    private long getExposureNanos() {
+        if (mCaptureResult == null) {
+            return 0;
+        }
+        Long exposure = mCaptureResult.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        return exposure != null ? exposure : 0;
+    }
+
+    /**
+     * Decode a single barcode, in the region {@link #sRegionTracker} predicts first and in the
+     * whole frame only if nothing was found there.
+     *
+     * @return the decoded barcode, with result points in the coordinates of {@code source}.
+     */
+    private Result decodeTracked(LuminanceSource source) throws NotFoundException {
+        long frameNanos = mImage.getTimestamp();
+        ScanWindow region = source.isCropSupported() ? sRegionTracker.predict(frameNanos) : null;
+        Result result = null;
+        if (region != null) {
+            try {
+                result = mDecoder.decode(source, region);
+                sRegionTracker.regionHit();
+            } catch (NotFoundException e) {
+                sRegionTracker.regionMissed();
+            }
+        }
+        if (result == null) {
+            result = mDecoder.decode(source);
+        }
+        sRegionTracker.update(result.getResultPoints(), source.getWidth(), source.getHeight(),
+                frameNanos);
+        return result;
+    }
+
+    /**
+     * @return the tracker of the barcode being scanned, with the number of frames decoded in a
+     * predicted region.
+     */
+    public static RegionTracker getRegionTracker() {
+        return sRegionTracker;
+    }
+
+    /**
+     * @return the gate skipping blurred frames, with the number of frames skipped and of those
+     * that would have decoded.
+     */
+    public static FrameQualityGate getQualityGate() {
+        return sQualityGate;
+    }
+
+    /**
+     * @return the filter of barcodes seen recently, with the number of duplicates suppressed.
+     */
+    public static DuplicateFilter getDuplicateFilter() {
+        return sDuplicateFilter;
+    }
+
+    /**
+     * @return the pool of frame buffers shared by all detections.
+     */
+    public static ArrayPool getArrayPool() {
+        return sArrayPool;
+    }
+
+    /**
+     * @return the pool of decoded JPEG bitmaps shared by all detections.
+     */
+    public static BitmapPool getBitmapPool() {
+        return sBitmapPool;
+    }
+
+    /**
+     * @return the latencies of every stage of all detections so far.
+     */
+    public static ScanLatencyStats getLatencyStats() {
+        return sLatencyStats;
+    }
+
+    /**
+     * @return the pool of scan results handed to the UI thread.
+     */
+    public static ScanResultPool getScanResultPool() {
+        return sScanResultPool;
+    }
+
+    /**
+     * Barcodes detected in one frame on their way to the UI thread.
+     */
+    private static final class Detection {
+        final ScanResult[] mResults;
+        final boolean mBatch;
+        final ScanTimeline mTimeline;
+
+        Detection(ScanResult[] results, boolean batch, ScanTimeline timeline) {
+            mResults = results;
+            mBatch = batch;
+            mTimeline = timeline;
+        }
+    }
+
     /**
      * Builder class for constructing {@link BarcodeDetecter}s.
      * <p/>
-     * This class is thread safe.
+     * This class is not thread safe.  A builder is filled by one thread at a time, and handed
+     * between threads by the {@link CaptureCorrelator}.
      */
     public static class BarcodeDetecterBuilder {
         private Image mImage;
@@ -131,6 +566,11 @@ public class BarcodeDetecter implements Runnable {
         private CameraCharacteristics mCharacteristics;
         private Context mContext;
         private RefCountedAutoCloseable<ImageReader> mReader;
+        private int mRotation;
+        private ScanWindow mScanWindow = ScanWindow.FULL;
+        private FrameDecoder mDecoder = sDefaultDecoder;
+        private final ScanTimeline mTimeline = new ScanTimeline(Clock.SYSTEM);
+        private float mAngularSpeed = -1;
 
         /**
          * Construct a new BarcodeDetecterBuilder using the given {@link Context}.
@@ -142,40 +582,100 @@ public class BarcodeDetecter implements Runnable {
             mContext = context;
         }
 
-        public synchronized BarcodeDetecterBuilder setRefCountedReader(RefCountedAutoCloseable<ImageReader> reader) {
+        public BarcodeDetecterBuilder setRefCountedReader(RefCountedAutoCloseable<ImageReader> reader) {
             if (reader == null) throw new NullPointerException();
 
             mReader = reader;
             return this;
         }
 
-        public synchronized BarcodeDetecterBuilder setImage(final Image image) {
+        public BarcodeDetecterBuilder setImage(final Image image) {
             if (image == null) throw new NullPointerException();
             mImage = image;
             return this;
         }
 
-        public synchronized BarcodeDetecterBuilder setResult(final CaptureResult result) {
+        public BarcodeDetecterBuilder setResult(final CaptureResult result) {
             if (result == null) throw new NullPointerException();
             mCaptureResult = result;
             return this;
         }
 
-        public synchronized BarcodeDetecterBuilder setCharacteristics(final CameraCharacteristics characteristics) {
+        public BarcodeDetecterBuilder setCharacteristics(final CameraCharacteristics characteristics) {
             if (characteristics == null) throw new NullPointerException();
             mCharacteristics = characteristics;
             return this;
         }
 
-        public synchronized BarcodeDetecter buildIfComplete() {
+        /**
+         * Set the clockwise rotation, in degrees, from the sensor orientation to the current
+         * device orientation.  Only used for formats the camera does not rotate itself, such as
+         * {@link ImageFormat#YUV_420_888}.
+         */
+        public BarcodeDetecterBuilder setRotation(int rotation) {
+            mRotation = rotation;
+            return this;
+        }
+
+        /**
+         * Restrict detection to a part of the image, given in image coordinates.
+         */
+        public BarcodeDetecterBuilder setScanWindow(final ScanWindow scanWindow) {
+            if (scanWindow == null) throw new NullPointerException();
+            mScanWindow = scanWindow;
+            return this;
+        }
+
+        public BarcodeDetecterBuilder setDecoder(final FrameDecoder decoder) {
+            if (decoder == null) throw new NullPointerException();
+            mDecoder = decoder;
+            return this;
+        }
+
+        /**
+         * Set the angular speed of the device around the time of the capture, in radians per
+         * second, as measured by the gyroscope.
+         */
+        public BarcodeDetecterBuilder setAngularSpeed(float angularSpeed) {
+            mAngularSpeed = angularSpeed;
+            return this;
+        }
+
+        /**
+         * Record that the frame reached one of the {@link ScanTimeline} stages before
+         * {@link ScanTimeline#DECODE_STARTED}.
+         */
+        public BarcodeDetecterBuilder markStage(int stage) {
+            mTimeline.mark(stage);
+            return this;
+        }
+
+        /**
+         * Give back the image and the {@link ImageReader} reference of a frame that will not be
+         * decoded.
+         */
+        public void release() {
+            if (mImage != null) {
+                mImage.close();
+                mImage = null;
+            }
+            if (mReader != null) {
+                mReader.close();
+                mReader = null;
+            }
+        }
+
+        public BarcodeDetecter buildIfComplete() {
             if (!isComplete()) {
                 return null;
             }
-            return new BarcodeDetecter(mImage, mCaptureResult, mCharacteristics, mContext, mReader);
+            return new BarcodeDetecter(mImage, mCaptureResult, mCharacteristics, mContext, mReader,
+                    mRotation, mScanWindow, mDecoder, mTimeline, mAngularSpeed);
         }
 
         private boolean isComplete() {
-            return mImage != null && mCaptureResult != null && mCharacteristics != null;
+            // A streamed frame is decoded without its result if that has not arrived.
+            return mImage != null && mCharacteristics != null;
         }
     }
 }
\ No newline at end of file
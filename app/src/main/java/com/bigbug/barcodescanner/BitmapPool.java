@@ -0,0 +1,108 @@
+package com.bigbug.barcodescanner;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * A bounded pool of mutable {@link Bitmap}s, keyed by size and config, meant to be handed to
+ * {@link BitmapFactory.Options#inBitmap} so that decoding a frame reuses the pixel memory of a
+ * previous one.
+ * <p/>
+ * This class is thread safe.
+ */
+public final class BitmapPool {
+
+    private final Bitmap[] mSlots;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    /**
+     * @param maxBitmaps the maximum number of bitmaps kept for reuse.
+     */
+    public BitmapPool(int maxBitmaps) {
+        if (maxBitmaps < 1) {
+            throw new IllegalArgumentException("Pool capacity must be positive.");
+        }
+        mSlots = new Bitmap[maxBitmaps];
+    }
+
+    /**
+     * Take a pooled bitmap of exactly the given size and config out of the pool.
+     *
+     * @return a mutable bitmap with undefined content, or null if none is pooled.
+     */
+    public synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+        for (int i = 0; i < mSlots.length; i++) {
+            Bitmap candidate = mSlots[i];
+            if (candidate != null && candidate.getWidth() == width &&
+                    candidate.getHeight() == height && candidate.getConfig() == config) {
+                mSlots[i] = null;
+                mHits++;
+                return candidate;
+            }
+        }
+        mMisses++;
+        return null;
+    }
+
+    /**
+     * Give a bitmap back to the pool, recycling it if the pool is full or it cannot be reused.
+     *
+     * @param bitmap a bitmap, may be null.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        if (bitmap.isMutable() && !bitmap.isRecycled()) {
+            for (int i = 0; i < mSlots.length; i++) {
+                if (mSlots[i] == bitmap) {
+                    return;
+                }
+            }
+            for (int i = 0; i < mSlots.length; i++) {
+                if (mSlots[i] == null) {
+                    mSlots[i] = bitmap;
+                    return;
+                }
+            }
+        }
+        mEvictions++;
+        bitmap.recycle();
+    }
+
+    /**
+     * @return the number of requests served from the pool.
+     */
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * @return the number of requests that found no matching pooled bitmap.
+     */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return the number of released bitmaps recycled because they could not be pooled.
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+
+    /**
+     * Recycle every pooled bitmap.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < mSlots.length; i++) {
+            if (mSlots[i] != null) {
+                mSlots[i].recycle();
+                mSlots[i] = null;
+            }
+        }
+    }
+}
@@ -10,12 +10,15 @@ import android.graphics.Matrix;
 import android.graphics.Point;
 import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
-import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
@@ -23,7 +26,6 @@ import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.Image;
 import android.media.ImageReader;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -31,9 +33,9 @@ import android.os.Looper;
 import android.os.Message;
 import android.support.v13.app.FragmentCompat;
 import android.support.v4.app.ActivityCompat;
-import android.text.TextUtils;
 import android.util.Log;
 import android.util.Size;
+import android.util.SizeF;
 import android.util.SparseIntArray;
 import android.view.LayoutInflater;
 import android.view.Surface;
@@ -43,6 +45,8 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.google.zxing.BarcodeFormat;
+
 import org.w3c.dom.Text;
 
 import java.util.ArrayList;
@@ -50,15 +54,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class CameraFragment extends Fragment implements
-        OnBarcodeDetectedListener,
+        OnScanResultListener,
         FragmentCompat.OnRequestPermissionsResultCallback {
 
     /**
@@ -78,6 +79,109 @@ public class CameraFragment extends Fragment implements
      */
     private static final double ASPECT_RATIO_TOLERANCE = 0.005;
 
+    /**
+     * Format of the frames captured for the {@link BarcodeDetecter}.  With
+     * {@link ImageFormat#YUV_420_888} the luminance plane is decoded directly, skipping the JPEG
+     * encode in the camera and the JPEG decode on our side; {@link ImageFormat#JPEG} still works.
+     */
+    private static final int DECODE_IMAGE_FORMAT = ImageFormat.YUV_420_888;
+
+    /**
+     * Scan mode: the decode {@link ImageReader} is a target of the repeating preview request, and
+     * the latest frame is decoded whenever the {@link FramePacer} allows.  No capture requests are
+     * issued, so there is no still-capture latency and no 3A disruption per scan.
+     */
+    private static final int SCAN_MODE_STREAM = 0;
+
+    /**
+     * Scan mode: every scan issues a separate still capture request, taken on a preview result
+     * once the {@link CaptureTrigger} finds focus and exposure settled and the {@link FramePacer}
+     * allows.  Used as a fallback when the camera refuses to stream to the decode
+     * {@link ImageReader}.
+     */
+    private static final int SCAN_MODE_STILL = 1;
+
+    /**
+     * The scan mode tried first.
+     */
+    private static final int SCAN_MODE = SCAN_MODE_STREAM;
+
+    /**
+     * Whether to show the p50/p95/p99 latency of every scan stage over the preview, and how often
+     * to refresh it.
+     */
+    private static final boolean SHOW_LATENCY_OVERLAY = BuildConfig.DEBUG;
+    private static final long LATENCY_OVERLAY_INTERVAL_MS = 1000;
+
+    /**
+     * Barcode formats scanned by this app.  Restricting the formats saves the decoder from trying
+     * every other symbology on each frame.  Frames are tried at a quarter of their area first,
+     * which is enough for the large, close codes that make up most scans.  The binarizer is
+     * picked per frame, most frames hold no barcode and get the cheap global one.
+     */
+    private static final DecoderConfig DECODER_CONFIG = new DecoderConfig.Builder()
+            .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+            .setPyramidLevels(2)
+            .setBinarizerStrategy(BinarizerStrategy.ADAPTIVE)
+            .build();
+
+    /**
+     * The part of the preview, centered on the {@link AutoFitTextureView} and covering 40% of it,
+     * that is searched for barcodes.  Operators aim at the center of the preview, and cropping
+     * saves binarizing and scanning the rest of the frame.
+     */
+    private static final ScanWindow SCAN_WINDOW = ScanWindow.centered(0.8f, 0.5f);
+
+    /**
+     * Picks the smallest decode size at which 0.33 mm modules, typical of CODE_128 labels, cover
+     * 2 pixels each 25 cm from the lens, decoding at most 2 MP of the scan window per frame.
+     */
+    private static final DecodeSizePolicy DECODE_SIZE_POLICY = new DecodeSizePolicy.Builder()
+            .setModuleSizeMm(0.33f)
+            .setScanDistanceMm(250f)
+            .setMinPixelsPerModule(2f)
+            .setScanWindow(SCAN_WINDOW)
+            .setPixelBudget(2000000L)
+            .build();
+
+    /**
+     * Number of frames decoded at the same time, and number of frames allowed to wait for a
+     * decoding thread.  Together they bound the images held out of the {@link ImageReader}.
+     */
+    private static final int DECODE_PARALLELISM = 2;
+    private static final int DECODE_QUEUE_CAPACITY = 1;
+
+    /**
+     * Number of still captures that may wait for their result and image at the same time.  The
+     * {@link FramePacer} keeps far fewer in flight, this only bounds a stalled camera.
+     */
+    private static final int PENDING_CAPTURE_CAPACITY = 8;
+
+    /**
+     * Number of preview results kept for the streamed frames to look up theirs in, a few more
+     * than the frames in flight between the sensor and the decode ImageReader.
+     */
+    private static final int PREVIEW_RESULT_CAPACITY = 8;
+
+    /**
+     * Time after which a still capture still missing its result or image, or an image whose
+     * capture is unknown, is given up on, releasing its {@link ImageReader} slot.
+     */
+    private static final long MAX_PENDING_CAPTURE_AGE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * Bounds of the time between two captures chosen by the {@link FramePacer}: no faster than
+     * the preview frame rate, and no slower than once a second while the decoder is idle.
+     */
+    private static final long MIN_CAPTURE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(33);
+    private static final long MAX_CAPTURE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Still captures wait for focus and exposure to settle at most this long, see
+     * {@link CaptureTrigger}.
+     */
+    private static final long MAX_3A_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     /**
      * Max preview width and height that are guaranteed by Camera2 API
      */
@@ -143,6 +247,27 @@ public class CameraFragment extends Fragment implements
 
     private TextView mTextView;
 
+    /**
+     * Shows the latency of every scan stage, if {@link #SHOW_LATENCY_OVERLAY} is set.
+     */
+    private TextView mLatencyView;
+
+    /**
+     * Refreshes {@link #mLatencyView} every {@link #LATENCY_OVERLAY_INTERVAL_MS}.
+     */
+    private final Runnable mLatencyOverlayUpdater = new Runnable() {
+        @Override
+        public void run() {
+            RegionTracker tracker = BarcodeDetecter.getRegionTracker();
+            mLatencyView.setText(BarcodeDetecter.getLatencyStats() + "\nduplicates "
+                    + BarcodeDetecter.getDuplicateFilter().getHitCount() + "\nregion hits "
+                    + tracker.getRegionHits() + " misses " + tracker.getRegionMisses()
+                    + "\nquality gate " + BarcodeDetecter.getQualityGate()
+                    + "\ncapture trigger " + mCaptureTrigger);
+            mLatencyView.postDelayed(this, LATENCY_OVERLAY_INTERVAL_MS);
+        }
+    };
+
     /**
      * An additional thread for running tasks that shouldn't block the UI.  This is used for all
      * callbacks from the {@link CameraDevice} and {@link CameraCaptureSession}s.
@@ -150,10 +275,74 @@ public class CameraFragment extends Fragment implements
     private HandlerThread mBackgroundThread;
 
     /**
-     * A counter for tracking corresponding {@link CaptureRequest}s and {@link CaptureResult}s
-     * across the {@link CameraCaptureSession} capture callbacks.
+     * Dedicated threads decoding the captured frames.  Stale frames are dropped rather than
+     * queued, so a result is never older than the frames already being decoded.
+     */
+    private DecodeScheduler mDecodeScheduler;
+
+    /**
+     * Decoder shared by all {@link BarcodeDetecter}s, it keeps one configured reader per thread.
+     */
+    private final FrameDecoder mFrameDecoder = new FrameDecoder(DECODER_CONFIG);
+
+    /**
+     * The angular speed of the device, in radians per second, as last measured by the gyroscope,
+     * or -1 without one.  Frames taken while the device turns fast are smeared, and skipped by the
+     * {@link FrameQualityGate}.
      */
-    private final AtomicInteger mRequestCounter = new AtomicInteger();
+    private volatile float mAngularSpeed = -1;
+
+    private final SensorEventListener mGyroscopeListener = new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            float x = event.values[0];
+            float y = event.values[1];
+            float z = event.values[2];
+            mAngularSpeed = (float) Math.sqrt(x * x + y * y + z * z);
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        }
+    };
+
+    /**
+     * Pairs the {@link CaptureResult} and the {@link Image} of every still capture by sensor
+     * timestamp, without taking {@link #mCameraStateLock}.  Requests are tagged with their
+     * sequence in it.
+     */
+    private final CaptureCorrelator<BarcodeDetecter.BarcodeDetecterBuilder, CaptureResult, Image>
+            mCaptureCorrelator = new CaptureCorrelator<>(PENDING_CAPTURE_CAPACITY, Clock.SYSTEM,
+            MAX_PENDING_CAPTURE_AGE_NANOS, new CaptureCorrelator.Callback<BarcodeDetecter.BarcodeDetecterBuilder, CaptureResult,
+                    Image>() {
+                @Override
+                public void onMatched(BarcodeDetecter.BarcodeDetecterBuilder builder,
+                                      CaptureResult result, Image image) {
+                    // Paired on arrival of the image, or of the result if the image came first,
+                    // in which case the image stage counts as no time.
+                    BarcodeDetecter detecter = builder.markStage(ScanTimeline.IMAGE_AVAILABLE)
+                            .setResult(result)
+                            .setImage(image)
+                            .buildIfComplete();
+                    mDecodeScheduler.submit(detecter);
+                }
+
+                @Override
+                public void onDiscarded(BarcodeDetecter.BarcodeDetecterBuilder builder,
+                                        CaptureResult result, Image image) {
+                    if (builder == null) {
+                        if (image != null) {
+                            image.close();
+                        }
+                        return;
+                    }
+                    if (image != null) {
+                        builder.setImage(image);
+                    }
+                    builder.release();
+                    mFramePacer.onFrameFailed();
+                }
+            });
 
     /**
      * A {@link Semaphore} to prevent the app from exiting before closing the camera.
@@ -202,21 +391,29 @@ public class CameraFragment extends Fragment implements
     private Handler mBackgroundHandler;
 
     /**
-     * A reference counted holder wrapping the {@link ImageReader} that handles JPEG image captures.
+     * A reference counted holder wrapping the {@link ImageReader} that handles the captures sent
+     * to the {@link BarcodeDetecter}.
      * This is used to allow us to clean up the {@link ImageReader} when all background tasks using
      * its {@link Image}s have completed.
      */
-    private RefCountedAutoCloseable<ImageReader> mJPEGImageReader;
+    private RefCountedAutoCloseable<ImageReader> mDecodeImageReader;
+
+    /**
+     * The current scan mode, {@link #SCAN_MODE_STREAM} or {@link #SCAN_MODE_STILL}.
+     */
+    private int mScanMode = SCAN_MODE;
 
     /**
-     * Whether or not the currently configured camera device is fixed-focus.
+     * The latest results of the repeating preview request, by sensor timestamp, handed to the
+     * {@link BarcodeDetecter} of the streamed frame of the same timestamp.
      */
-    private boolean mNoAFRun = false;
+    private final ResultHistory<CaptureResult> mPreviewResults =
+            new ResultHistory<>(PREVIEW_RESULT_CAPACITY);
 
     /**
-     * Request ID to {@link BarcodeDetecter.BarcodeDetecterBuilder} mapping for in-progress JPEG captures.
+     * Whether the autofocus of the currently configured camera device runs continuously.
      */
-    private final TreeMap<Integer, BarcodeDetecter.BarcodeDetecterBuilder> mJPEGResultQueue = new TreeMap<>();
+    private boolean mContinuousFocus = false;
 
     /**
      * {@link CaptureRequest.Builder} for the camera preview
@@ -231,11 +428,18 @@ public class CameraFragment extends Fragment implements
     private int mState = STATE_CLOSED;
 
     /**
-     * Timeout for the pre-capture sequence.
+     * Paces captures to the measured decode time, see {@link #mPreCaptureCallback}.
      */
-    private static final long MINIMUM_CAPTURE_INTERVAL = 500;
+    private final FramePacer mFramePacer = new FramePacer(Clock.SYSTEM, DECODE_PARALLELISM,
+            DECODE_PARALLELISM + DECODE_QUEUE_CAPACITY, MIN_CAPTURE_INTERVAL_NANOS,
+            MAX_CAPTURE_INTERVAL_NANOS);
 
-    private long mLastCaptureTime;
+    /**
+     * Holds still captures back while focus or exposure converge, see
+     * {@link #mPreCaptureCallback}.
+     */
+    private final CaptureTrigger mCaptureTrigger = new CaptureTrigger(Clock.SYSTEM,
+            MAX_3A_WAIT_NANOS);
 
     //**********************************************************************************************
 
@@ -297,14 +501,24 @@ public class CameraFragment extends Fragment implements
 
         @Override
         public void onImageAvailable(ImageReader reader) {
-            dequeueAndSaveImage(mJPEGResultQueue, mJPEGImageReader);
+            boolean streaming;
+            synchronized (mCameraStateLock) {
+                streaming = mScanMode == SCAN_MODE_STREAM;
+            }
+            if (streaming) {
+                dequeueLatestImage(mDecodeImageReader);
+            } else {
+                dequeueAndSaveImage(reader);
+            }
         }
 
     };
 
     /**
      * A {@link CameraCaptureSession.CaptureCallback} that handles events for the preview and
-     * pre-capture sequence.
+     * pre-capture sequence.  In {@link #SCAN_MODE_STILL}, a still capture is taken on a preview
+     * result once the {@link CaptureTrigger} finds focus and exposure settled, and the
+     * {@link FramePacer} allows.
      */
     private CameraCaptureSession.CaptureCallback mPreCaptureCallback
             = new CameraCaptureSession.CaptureCallback() {
@@ -313,8 +527,16 @@ public class CameraFragment extends Fragment implements
             synchronized (mCameraStateLock) {
                 switch (mState) {
                     case STATE_PREVIEW: {
-                        if (System.currentTimeMillis() - mLastCaptureTime > MINIMUM_CAPTURE_INTERVAL) {
-                            mLastCaptureTime = System.currentTimeMillis();
+                        if (mScanMode == SCAN_MODE_STREAM) {
+                            // Frames are picked up as they arrive in the decode ImageReader.
+                            Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+                            if (timestamp != null) {
+                                mPreviewResults.put(timestamp, result);
+                            }
+                        } else if (mCaptureTrigger.onResult(
+                                getState(result, CaptureResult.CONTROL_AF_STATE),
+                                getState(result, CaptureResult.CONTROL_AE_STATE))
+                                && mFramePacer.tryAcquire()) {
                             captureStillPictureLocked();
                         }
                         break;
@@ -338,37 +560,35 @@ public class CameraFragment extends Fragment implements
     private final CameraCaptureSession.CaptureCallback mCaptureCallback
             = new CameraCaptureSession.CaptureCallback() {
 
+        @Override
+        public void onCaptureStarted(CameraCaptureSession session, CaptureRequest request,
+                                     long timestamp, long frameNumber) {
+            // The timestamp is the one of the image, which may arrive before the result.
+            mCaptureCorrelator.onTimestamp((int) request.getTag(), timestamp);
+        }
+
         @Override
         public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request,
                                        TotalCaptureResult result) {
-            int requestId = (int) request.getTag();
-            BarcodeDetecter.BarcodeDetecterBuilder rawBuilder;
-            StringBuilder sb = new StringBuilder();
-
-            // Look up the BarcodeDetecterBuilder for this request and update it with the CaptureResult
-            synchronized (mCameraStateLock) {
-                rawBuilder = mJPEGResultQueue.get(requestId);
-
-                // If we have all the results necessary, save the image to a file in the background.
-                handleCompletionLocked(requestId, rawBuilder, mJPEGResultQueue);
-
-                if (rawBuilder != null) {
-                    rawBuilder.setResult(result);
-                }
-                finishedCaptureLocked();
+            int sequence = (int) request.getTag();
+            Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            if (timestamp != null) {
+                mCaptureCorrelator.onTimestamp(sequence, timestamp);
             }
 
-            showToast(sb.toString());
+            // The builder is only touched by this thread until its result is delivered.
+            BarcodeDetecter.BarcodeDetecterBuilder builder = mCaptureCorrelator.peek(sequence);
+            if (builder != null) {
+                builder.markStage(ScanTimeline.CAPTURE_COMPLETED);
+            }
+            // If the image is already there, this sends the frame to the DecodeScheduler.
+            mCaptureCorrelator.onResult(sequence, result);
         }
 
         @Override
         public void onCaptureFailed(CameraCaptureSession session, CaptureRequest request,
                                     CaptureFailure failure) {
-            int requestId = (int) request.getTag();
-            synchronized (mCameraStateLock) {
-                mJPEGResultQueue.remove(requestId);
-                finishedCaptureLocked();
-            }
+            mCaptureCorrelator.cancel((int) request.getTag(), failure.wasImageCaptured());
             showToast("Capture failed!");
         }
 
@@ -401,6 +621,8 @@ public class CameraFragment extends Fragment implements
     public void onViewCreated(final View view, Bundle savedInstanceState) {
         mTextureView = (AutoFitTextureView) view.findViewById(R.id.texture);
         mTextView = (TextView) view.findViewById(R.id.detected_content);
+        mLatencyView = (TextView) view.findViewById(R.id.latency_overlay);
+        mLatencyView.setVisibility(SHOW_LATENCY_OVERLAY ? View.VISIBLE : View.GONE);
     }
 
     @Override
@@ -419,7 +641,20 @@ public class CameraFragment extends Fragment implements
             mTextureView.setSurfaceTextureListener(mSurfaceTextureListener);
         }
 
-        Application.getInstance().addUIListener(OnBarcodeDetectedListener.class, this);
+        Application.getInstance().addUIListener(OnScanResultListener.class, this);
+
+        SensorManager sensorManager =
+                (SensorManager) getActivity().getSystemService(Context.SENSOR_SERVICE);
+        Sensor gyroscope = sensorManager != null
+                ? sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE) : null;
+        if (gyroscope != null) {
+            sensorManager.registerListener(mGyroscopeListener, gyroscope,
+                    SensorManager.SENSOR_DELAY_GAME);
+        }
+
+        if (SHOW_LATENCY_OVERLAY) {
+            mLatencyOverlayUpdater.run();
+        }
     }
 
     @Override
@@ -428,7 +663,16 @@ public class CameraFragment extends Fragment implements
         closeCamera();
         stopBackgroundThread();
 
-        Application.getInstance().removeUIListener(OnBarcodeDetectedListener.class, this);
+        Application.getInstance().removeUIListener(OnScanResultListener.class, this);
+
+        SensorManager sensorManager =
+                (SensorManager) getActivity().getSystemService(Context.SENSOR_SERVICE);
+        if (sensorManager != null) {
+            sensorManager.unregisterListener(mGyroscopeListener);
+        }
+        mAngularSpeed = -1;
+
+        mLatencyView.removeCallbacks(mLatencyOverlayUpdater);
     }
 
     @Override
@@ -457,35 +701,33 @@ public class CameraFragment extends Fragment implements
             return false;
         }
         try {
-            // Find a CameraDevice that supports RAW captures, and configure state.
-            for (String cameraId : manager.getCameraIdList()) {
+            // Find the CameraDevice best suited for scanning, and configure state.
+            String cameraId = CameraSelector.selectCamera(activity, manager);
+            if (cameraId != null) {
                 CameraCharacteristics characteristics
                         = manager.getCameraCharacteristics(cameraId);
 
-                // We only use a camera that supports RAW in this sample.
-                if (!contains(characteristics.get(
-                        CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES),
-                        CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_RAW)) {
-                    continue;
-                }
-
                 StreamConfigurationMap map = characteristics.get(
                         CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
 
-                Size largestRaw = Collections.max(
-                        Arrays.asList(map.getOutputSizes(ImageFormat.JPEG)),
+                Size largest = Collections.max(
+                        Arrays.asList(map.getOutputSizes(DECODE_IMAGE_FORMAT)),
                         new CompareSizesByArea());
 
+                Size decodeSize = chooseDecodeSize(map.getOutputSizes(DECODE_IMAGE_FORMAT),
+                        characteristics, largest);
+
                 synchronized (mCameraStateLock) {
-                    // Set up ImageReaders for RAW outputs.  Place these in a reference
+                    // Set up the ImageReader for decoded frames.  Place these in a reference
                     // counted wrapper to ensure they are only closed when all background tasks
                     // using them are finished.
-                    if (mJPEGImageReader == null || mJPEGImageReader.getAndRetain() == null) {
-                        mJPEGImageReader = new RefCountedAutoCloseable<>(
-                                ImageReader.newInstance(largestRaw.getWidth(),
-                                        largestRaw.getHeight(), ImageFormat.JPEG, /*maxImages*/ 5));
+                    if (mDecodeImageReader == null || mDecodeImageReader.getAndRetain() == null) {
+                        mDecodeImageReader = new RefCountedAutoCloseable<>(
+                                ImageReader.newInstance(decodeSize.getWidth(),
+                                        decodeSize.getHeight(), DECODE_IMAGE_FORMAT,
+                                        /*maxImages*/ 5));
                     }
-                    mJPEGImageReader.get().setOnImageAvailableListener(
+                    mDecodeImageReader.get().setOnImageAvailableListener(
                             mOnRawImageAvailableListener, mBackgroundHandler);
 
                     mCharacteristics = characteristics;
@@ -497,8 +739,8 @@ public class CameraFragment extends Fragment implements
             e.printStackTrace();
         }
 
-        // If we found no suitable cameras for capturing RAW, warn the user.
-        ErrorDialog.buildErrorDialog("This device doesn't support capturing RAW photos").
+        // If we found no camera that can scan barcodes, warn the user.
+        ErrorDialog.buildErrorDialog("This device doesn't have a camera that can scan barcodes.").
                 show(getFragmentManager(), "dialog");
         return false;
     }
@@ -611,9 +853,11 @@ public class CameraFragment extends Fragment implements
                     mCameraDevice.close();
                     mCameraDevice = null;
                 }
-                if (null != mJPEGImageReader) {
-                    mJPEGImageReader.close();
-                    mJPEGImageReader = null;
+                // Release the reader references held by pending still captures.
+                mCaptureCorrelator.clear();
+                if (null != mDecodeImageReader) {
+                    mDecodeImageReader.close();
+                    mDecodeImageReader = null;
                 }
             }
         } catch (InterruptedException e) {
@@ -629,6 +873,19 @@ public class CameraFragment extends Fragment implements
     private void startBackgroundThread() {
         mBackgroundThread = new HandlerThread("CameraBackground");
         mBackgroundThread.start();
+        mDecodeScheduler = new DecodeScheduler("BarcodeDecode", DECODE_PARALLELISM,
+                DECODE_QUEUE_CAPACITY);
+        mDecodeScheduler.setListener(new DecodeScheduler.Listener() {
+            @Override
+            public void onTaskCompleted(DecodeScheduler.Task task, long runNanos) {
+                mFramePacer.onFrameDecoded(runNanos);
+            }
+
+            @Override
+            public void onTaskDiscarded(DecodeScheduler.Task task) {
+                mFramePacer.onFrameDropped();
+            }
+        });
         synchronized (mCameraStateLock) {
             mBackgroundHandler = new Handler(mBackgroundThread.getLooper());
         }
@@ -638,6 +895,7 @@ public class CameraFragment extends Fragment implements
      * Stops the background thread and its {@link Handler}.
      */
     private void stopBackgroundThread() {
+        mDecodeScheduler.shutdown();
         mBackgroundThread.quitSafely();
         try {
             mBackgroundThread.join();
@@ -669,7 +927,7 @@ public class CameraFragment extends Fragment implements
             mPreviewRequestBuilder.addTarget(surface);
 
             // Here, we create a CameraCaptureSession for camera preview.
-            mCameraDevice.createCaptureSession(Arrays.asList(surface, mJPEGImageReader.get().getSurface()),
+            mCameraDevice.createCaptureSession(Arrays.asList(surface, mDecodeImageReader.get().getSurface()),
                     new CameraCaptureSession.StateCallback() {
                         @Override
                         public void onConfigured(CameraCaptureSession cameraCaptureSession) {
@@ -682,9 +940,10 @@ public class CameraFragment extends Fragment implements
                                 try {
                                     setup3AControlsLocked(mPreviewRequestBuilder);
                                     // Finally, we start displaying the camera preview.
-                                    cameraCaptureSession.setRepeatingRequest(
-                                            mPreviewRequestBuilder.build(),
-                                            mPreCaptureCallback, mBackgroundHandler);
+                                    startRepeatingRequestLocked(cameraCaptureSession);
+                                    mFramePacer.reset();
+                                    mCaptureTrigger.reset(mContinuousFocus);
+                                    mPreviewResults.clear();
                                     mState = STATE_PREVIEW;
                                 } catch (CameraAccessException | IllegalStateException e) {
                                     e.printStackTrace();
@@ -706,6 +965,32 @@ public class CameraFragment extends Fragment implements
         }
     }
 
+    /**
+     * Start the repeating preview request, also targeting the decode {@link ImageReader} in
+     * {@link #SCAN_MODE_STREAM}.  If the camera rejects that, fall back to
+     * {@link #SCAN_MODE_STILL} and preview only.
+     * <p/>
+     * Call this only with {@link #mCameraStateLock} held.
+     */
+    private void startRepeatingRequestLocked(CameraCaptureSession session)
+            throws CameraAccessException {
+        if (mScanMode == SCAN_MODE_STREAM) {
+            Surface decodeSurface = mDecodeImageReader.get().getSurface();
+            mPreviewRequestBuilder.addTarget(decodeSurface);
+            try {
+                session.setRepeatingRequest(mPreviewRequestBuilder.build(), mPreCaptureCallback,
+                        mBackgroundHandler);
+                return;
+            } catch (CameraAccessException | IllegalArgumentException e) {
+                Log.w(TAG, "Cannot stream to the decode ImageReader, using still captures.", e);
+                mPreviewRequestBuilder.removeTarget(decodeSurface);
+                mScanMode = SCAN_MODE_STILL;
+            }
+        }
+        session.setRepeatingRequest(mPreviewRequestBuilder.build(), mPreCaptureCallback,
+                mBackgroundHandler);
+    }
+
     /**
      * Configure the given {@link CaptureRequest.Builder} to use auto-focus, auto-exposure, and
      * auto-white-balance controls if available.
@@ -721,14 +1006,16 @@ public class CameraFragment extends Fragment implements
         Float minFocusDist = mCharacteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
 
         // If MINIMUM_FOCUS_DISTANCE is 0, lens is fixed-focus and we need to skip the AF run.
-        mNoAFRun = (minFocusDist == null || minFocusDist == 0);
+        boolean noAFRun = (minFocusDist == null || minFocusDist == 0);
+        mContinuousFocus = false;
 
-        if (!mNoAFRun) {
+        if (!noAFRun) {
             // If there is a "continuous picture" mode available, use it, otherwise default to AUTO.
             if (contains(mCharacteristics.get(
                     CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES),
                     CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE)) {
                 builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+                mContinuousFocus = true;
             } else {
                 builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_AUTO);
             }
@@ -774,7 +1061,8 @@ public class CameraFragment extends Fragment implements
                     CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
 
             // For still image captures, we always use the largest available size.
-            Size largestJpeg = Collections.max(Arrays.asList(map.getOutputSizes(ImageFormat.JPEG)),
+            Size largestDecode = Collections.max(
+                    Arrays.asList(map.getOutputSizes(DECODE_IMAGE_FORMAT)),
                     new CompareSizesByArea());
 
             // Find the rotation of the device relative to the native device orientation.
@@ -809,10 +1097,10 @@ public class CameraFragment extends Fragment implements
                 maxPreviewHeight = MAX_PREVIEW_HEIGHT;
             }
 
-            // Find the best preview size for these view dimensions and configured JPEG size.
+            // Find the best preview size for these view dimensions and configured capture size.
             Size previewSize = chooseOptimalSize(map.getOutputSizes(SurfaceTexture.class),
                     rotatedViewWidth, rotatedViewHeight, maxPreviewWidth, maxPreviewHeight,
-                    largestJpeg);
+                    largestDecode);
 
             if (swappedDimensions) {
                 mTextureView.setAspectRatio(previewSize.getHeight(), previewSize.getWidth());
@@ -876,124 +1164,191 @@ public class CameraFragment extends Fragment implements
      * Send a capture request to the camera device that initiates a capture targeting the JPEG and
      * RAW outputs.
      * <p/>
-     * Call this only with {@link #mCameraStateLock} held.
+     * Call this only with {@link #mCameraStateLock} held, after the {@link #mFramePacer} granted
+     * the capture.
      */
     private void captureStillPictureLocked() {
+        int sequence = -1;
         try {
             final Activity activity = getActivity();
             if (null == activity || null == mCameraDevice) {
+                mFramePacer.onFrameFailed();
                 return;
             }
             // This is the CaptureRequest.Builder that we use to take a picture.
             final CaptureRequest.Builder captureBuilder =
                     mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
 
-            captureBuilder.addTarget(mJPEGImageReader.get().getSurface());
+            captureBuilder.addTarget(mDecodeImageReader.get().getSurface());
 
             // Use the same AE and AF modes as the preview.
             setup3AControlsLocked(captureBuilder);
 
-            // Set orientation.
-            int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
-            captureBuilder.set(CaptureRequest.JPEG_ORIENTATION,
-                    sensorToDeviceRotation(mCharacteristics, rotation));
-
-            // Set request tag to easily track results in callbacks.
-            captureBuilder.setTag(mRequestCounter.getAndIncrement());
-
-            CaptureRequest request = captureBuilder.build();
+            // Set orientation.  Only JPEGs are rotated by the camera, other formats are rotated by
+            // the BarcodeDetecter.
+            if (DECODE_IMAGE_FORMAT == ImageFormat.JPEG) {
+                int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
+                captureBuilder.set(CaptureRequest.JPEG_ORIENTATION,
+                        sensorToDeviceRotation(mCharacteristics, rotation));
+            }
 
-            // Create an BarcodeDetecterBuilder in which to collect results, and add it to the queue
-            // of active requests.
-            BarcodeDetecter.BarcodeDetecterBuilder rawBuilder = new BarcodeDetecter.BarcodeDetecterBuilder(activity)
-                    .setCharacteristics(mCharacteristics);
+            // Retain the ImageReader until the image of this request has been decoded.
+            if (mDecodeImageReader == null || mDecodeImageReader.getAndRetain() == null) {
+                mFramePacer.onFrameFailed();
+                return;
+            }
 
-            mJPEGResultQueue.put((int) request.getTag(), rawBuilder);
+            // Create an BarcodeDetecterBuilder in which to collect results, and register it with
+            // the correlator.  The request is tagged with its sequence to track it in callbacks.
+            BarcodeDetecter.BarcodeDetecterBuilder builder = newDetecterBuilderLocked(activity)
+                    .setRefCountedReader(mDecodeImageReader)
+                    .markStage(ScanTimeline.CAPTURE_REQUESTED);
+            sequence = mCaptureCorrelator.register(builder);
+            if (sequence < 0) {
+                Log.e(TAG, "Too many captures pending, skipping this one.");
+                builder.release();
+                mFramePacer.onFrameFailed();
+                return;
+            }
+            captureBuilder.setTag(sequence);
 
-            mCaptureSession.capture(request, mCaptureCallback, mBackgroundHandler);
+            mCaptureSession.capture(captureBuilder.build(), mCaptureCallback, mBackgroundHandler);
 
         } catch (CameraAccessException e) {
             e.printStackTrace();
+            if (sequence >= 0) {
+                // Releases the builder and notifies the FramePacer.
+                mCaptureCorrelator.cancel(sequence, false);
+            } else {
+                mFramePacer.onFrameFailed();
+            }
         }
     }
 
     /**
-     * Called after a RAW/JPEG capture has completed; resets the AF trigger state for the
-     * pre-capture sequence.
+     * Create a {@link BarcodeDetecter.BarcodeDetecterBuilder} set up for the current camera and
+     * device orientation.
      * <p/>
      * Call this only with {@link #mCameraStateLock} held.
      */
-    private void finishedCaptureLocked() {
-        try {
-            // Reset the auto-focus trigger in case AF didn't run quickly enough.
-            if (!mNoAFRun) {
-                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
-                        CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
-
-                mCaptureSession.capture(mPreviewRequestBuilder.build(), mPreCaptureCallback,
-                        mBackgroundHandler);
-
-                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
-                        CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
-            }
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
+    private BarcodeDetecter.BarcodeDetecterBuilder newDetecterBuilderLocked(Activity activity) {
+        // Only JPEGs are rotated by the camera, other formats are rotated by the BarcodeDetecter.
+        int imageRotation = 0;
+        if (DECODE_IMAGE_FORMAT != ImageFormat.JPEG) {
+            int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
+            imageRotation = sensorToDeviceRotation(mCharacteristics, rotation);
         }
+        return new BarcodeDetecter.BarcodeDetecterBuilder(activity)
+                .setCharacteristics(mCharacteristics)
+                .setRotation(imageRotation)
+                .setScanWindow(SCAN_WINDOW.mapToImage(imageRotation,
+                        isFrontFacing(mCharacteristics)))
+                .setDecoder(mFrameDecoder)
+                .setAngularSpeed(mAngularSpeed);
     }
 
     /**
-     * Retrieve the next {@link Image} from a reference counted {@link ImageReader}, retaining
-     * that {@link ImageReader} until that {@link Image} is no longer in use, and set this
-     * {@link Image} as the result for the next request in the queue of pending requests.  If
-     * all necessary information is available, begin saving the image to a file in a background
-     * thread.
+     * Retrieve the latest {@link Image} streamed into a reference counted {@link ImageReader},
+     * dropping older ones, and send it to the {@link DecodeScheduler} if the {@link FramePacer}
+     * allows.  The {@link ImageReader} is retained until that {@link Image} is no longer in use.
      *
-     * @param pendingQueue the currently active requests.
-     * @param reader       a reference counted wrapper containing an {@link ImageReader} from which
-     *                     to acquire an image.
+     * @param reader a reference counted wrapper containing an {@link ImageReader} from which to
+     *               acquire an image.
      */
-    private void dequeueAndSaveImage(TreeMap<Integer, BarcodeDetecter.BarcodeDetecterBuilder> pendingQueue,
-                                     RefCountedAutoCloseable<ImageReader> reader) {
+    private void dequeueLatestImage(RefCountedAutoCloseable<ImageReader> reader) {
         synchronized (mCameraStateLock) {
-            Map.Entry<Integer, BarcodeDetecter.BarcodeDetecterBuilder> entry = pendingQueue.firstEntry();
-            BarcodeDetecter.BarcodeDetecterBuilder builder = entry.getValue();
-
-            // Increment reference count to prevent ImageReader from being closed while we
-            // are saving its Images in a background thread (otherwise their resources may
-            // be freed while we are writing to a file).
             if (reader == null || reader.getAndRetain() == null) {
-                Log.e(TAG, "Paused the activity before we could save the image," +
+                Log.e(TAG, "Paused the activity before we could decode the image," +
                         " ImageReader already closed.");
-                pendingQueue.remove(entry.getKey());
                 return;
             }
 
+            // Always take the image out of the reader, even if it is not decoded, so that the
+            // repeating request never runs out of buffers.
             Image image;
             try {
-                image = reader.get().acquireNextImage();
+                image = reader.get().acquireLatestImage();
             } catch (IllegalStateException e) {
-                Log.e(TAG, "Too many images queued for saving, dropping image for request: " +
-                        entry.getKey());
-                pendingQueue.remove(entry.getKey());
+                Log.e(TAG, "Too many images queued for decoding, skipping the latest frame.");
+                reader.close();
+                return;
+            }
+            if (image == null) {
+                reader.close();
                 return;
             }
 
-            builder.setRefCountedReader(reader).setImage(image);
+            Activity activity = getActivity();
+            if (mState != STATE_PREVIEW || activity == null || !mFramePacer.tryAcquire()) {
+                image.close();
+                reader.close();
+                return;
+            }
 
-            handleCompletionLocked(entry.getKey(), builder, pendingQueue);
+            BarcodeDetecter.BarcodeDetecterBuilder builder = newDetecterBuilderLocked(activity)
+                    .markStage(ScanTimeline.IMAGE_AVAILABLE)
+                    .setRefCountedReader(reader)
+                    .setImage(image);
+            // The result of the frame may not have arrived yet, the frame is decoded without.
+            CaptureResult result = mPreviewResults.get(image.getTimestamp());
+            if (result != null) {
+                builder.setResult(result);
+            }
+            BarcodeDetecter detecter = builder.buildIfComplete();
+            mDecodeScheduler.submit(detecter);
+        }
+    }
+
+    /**
+     * Retrieve the next {@link Image} from the {@link ImageReader} and hand it to the
+     * {@link #mCaptureCorrelator}, which pairs it with the still capture of the same sensor
+     * timestamp.  The {@link ImageReader} has been retained when the capture was requested.
+     *
+     * @param reader the {@link ImageReader} from which to acquire an image.
+     */
+    private void dequeueAndSaveImage(ImageReader reader) {
+        Image image;
+        try {
+            image = reader.acquireNextImage();
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Too many images queued for saving, dropping the next image.");
+            return;
+        }
+        if (image != null) {
+            mCaptureCorrelator.onImage(image.getTimestamp(), image);
         }
     }
 
     @Override
-    public void onBarcodeDetected(String content) {
-        if (!TextUtils.isEmpty(content)) {
-            mTextView.setText(content);
+    public void onScanResults(ScanResult[] results) {
+        StringBuilder text = new StringBuilder();
+        for (ScanResult result : results) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(result.getText());
+            if (SHOW_LATENCY_OVERLAY) {
+                text.append(" (").append(result.getFormat()).append(", ")
+                        .append(TimeUnit.NANOSECONDS.toMillis(
+                                result.getElapsedNanos(ScanTimeline.DECODE_FINISHED)))
+                        .append(" ms)");
+            }
         }
+        mTextView.setText(text);
     }
 
     // Utility methods:
     // *********************************************************************************************
 
+    /**
+     * @return the 3A state under the given key of a result, or
+     * {@link CaptureTrigger#STATE_UNKNOWN} if the camera does not report it.
+     */
+    private static int getState(CaptureResult result, CaptureResult.Key<Integer> key) {
+        Integer state = result.get(key);
+        return state != null ? state : CaptureTrigger.STATE_UNKNOWN;
+    }
+
     /**
      * Comparator based on area of the given {@link Size} objects.
      */
@@ -1056,6 +1411,54 @@ public class CameraFragment extends Fragment implements
         }
     }
 
+    /**
+     * Given {@code choices} of {@code Size}s supported by a camera for the decode format, choose
+     * the one to decode with according to {@link #DECODE_SIZE_POLICY}, keeping the aspect ratio of
+     * {@code largest} so that the frames show the same field of view as the preview.  When
+     * streaming, sizes beyond {@link #MAX_PREVIEW_WIDTH} x {@link #MAX_PREVIEW_HEIGHT} are left
+     * out so that the repeating request keeps the preview frame rate.
+     *
+     * @param choices         The list of sizes that the camera supports for the decode format
+     * @param characteristics The {@link CameraCharacteristics} of the camera, for its optics
+     * @param largest         The largest of {@code choices}
+     * @return The chosen {@code Size}
+     */
+    private static Size chooseDecodeSize(Size[] choices, CameraCharacteristics characteristics,
+                                         Size largest) {
+        List<Size> candidates = new ArrayList<>();
+        for (Size option : choices) {
+            if (SCAN_MODE != SCAN_MODE_STREAM || (option.getWidth() <= MAX_PREVIEW_WIDTH &&
+                    option.getHeight() <= MAX_PREVIEW_HEIGHT)) {
+                candidates.add(option);
+            }
+        }
+        if (candidates.isEmpty()) {
+            Log.w(TAG, "Couldn't find a decode size small enough for streaming");
+            candidates.addAll(Arrays.asList(choices));
+        }
+
+        int[] widths = new int[candidates.size()];
+        int[] heights = new int[candidates.size()];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = candidates.get(i).getWidth();
+            heights[i] = candidates.get(i).getHeight();
+        }
+
+        // The physical size and focal lengths are optional, without them the size is only
+        // bounded by the pixel budget.
+        SizeF physicalSize = characteristics.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+        float[] focalLengths = characteristics.get(
+                CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+        float sensorWidth = physicalSize != null ? physicalSize.getWidth() : 0f;
+        float focalLength = focalLengths != null && focalLengths.length > 0 ? focalLengths[0] : 0f;
+
+        Size chosen = candidates.get(DECODE_SIZE_POLICY.choose(widths, heights,
+                largest.getWidth(), largest.getHeight(), sensorWidth, focalLength));
+        Log.d(TAG, "Decoding at " + chosen + ", " + DECODE_SIZE_POLICY.getRequiredWidth(
+                sensorWidth, focalLength) + " pixels wide needed by " + DECODE_SIZE_POLICY);
+        return chosen;
+    }
+
     /**
      * Return true if the given array contains the given integer.
      *
@@ -1099,19 +1502,19 @@ public class CameraFragment extends Fragment implements
      * @return the total rotation from the sensor orientation to the current device orientation.
      */
     private static int sensorToDeviceRotation(CameraCharacteristics c, int deviceOrientation) {
-        int sensorOrientation = c.get(CameraCharacteristics.SENSOR_ORIENTATION);
-
-        // Get device orientation in degrees
-        deviceOrientation = ORIENTATIONS.get(deviceOrientation);
-
-        // Reverse device orientation for front-facing cameras
-        if (c.get(CameraCharacteristics.LENS_FACING) == CameraCharacteristics.LENS_FACING_FRONT) {
-            deviceOrientation = -deviceOrientation;
-        }
+        return CameraOrientation.sensorToDeviceRotation(
+                c.get(CameraCharacteristics.SENSOR_ORIENTATION),
+                ORIENTATIONS.get(deviceOrientation), isFrontFacing(c));
+    }
 
-        // Calculate desired JPEG orientation relative to camera orientation to make
-        // the image upright relative to the device orientation
-        return (sensorOrientation + deviceOrientation + 360) % 360;
+    /**
+     * Return true if the given camera faces the same way as the screen.
+     *
+     * @param c the {@link CameraCharacteristics} to query for the lens facing.
+     * @return true if the camera is front-facing, otherwise false.
+     */
+    private static boolean isFrontFacing(CameraCharacteristics c) {
+        return c.get(CameraCharacteristics.LENS_FACING) == CameraCharacteristics.LENS_FACING_FRONT;
     }
 
     /**
@@ -1125,26 +1528,5 @@ public class CameraFragment extends Fragment implements
         mMessageHandler.sendMessage(message);
     }
 
-    /**
-     * If the given request has been completed, remove it from the queue of active requests and
-     * send an {@link BarcodeDetecter} with the results from this request to a background thread to
-     * save a file.
-     * <p/>
-     * Call this only with {@link #mCameraStateLock} held.
-     *
-     * @param requestId the ID of the {@link CaptureRequest} to handle.
-     * @param builder   the {@link BarcodeDetecter.BarcodeDetecterBuilder} for this request.
-     * @param queue     the queue to remove this request from, if completed.
-     */
-    private void handleCompletionLocked(int requestId, BarcodeDetecter.BarcodeDetecterBuilder builder,
-                                        TreeMap<Integer, BarcodeDetecter.BarcodeDetecterBuilder> queue) {
-        if (builder == null) return;
-        BarcodeDetecter detecter = builder.buildIfComplete();
-        if (detecter != null) {
-            queue.remove(requestId);
-            AsyncTask.THREAD_POOL_EXECUTOR.execute(detecter);
-        }
-    }
-
 }
 
@@ -0,0 +1,96 @@
+package com.bigbug.barcodescanner;
+
+import java.util.List;
+
+/**
+ * Picks the camera to scan barcodes with, by scoring the traits that make decoding fast and
+ * reliable: YUV output at a useful resolution, auto-focus, the hardware level and the frame rate.
+ * <p/>
+ * Back cameras are always preferred; other cameras are only chosen on devices without a usable
+ * back camera.  Cameras without any YUV output are never chosen.
+ */
+public final class CameraRanker {
+
+    /**
+     * YUV width beyond which more resolution no longer improves the score, see
+     * {@link DecodeSizePolicy}.
+     */
+    private static final int USEFUL_YUV_WIDTH = 1920;
+
+    /**
+     * Frame rate beyond which a faster camera no longer improves the score.
+     */
+    private static final int USEFUL_FPS = 30;
+
+    /**
+     * Points for each trait.  Focus matters most: a blurry frame cannot be decoded at any
+     * resolution or frame rate.
+     */
+    private static final int CONTINUOUS_AUTO_FOCUS_POINTS = 40;
+    private static final int AUTO_FOCUS_POINTS = 20;
+    private static final int YUV_WIDTH_POINTS = 30;
+    private static final int FPS_POINTS = 20;
+    private static final int HARDWARE_LEVEL_POINTS = 5;
+
+    /**
+     * Score given to cameras that cannot be used for scanning.
+     */
+    public static final int UNUSABLE = -1;
+
+    private CameraRanker() {
+    }
+
+    /**
+     * Score a camera on its own.  Higher is better.
+     *
+     * @return the score, or {@link #UNUSABLE} if the camera has no YUV output.
+     */
+    public static int score(CameraTraits traits) {
+        int[] widths = traits.getYuvWidths();
+        if (widths == null || widths.length == 0) {
+            return UNUSABLE;
+        }
+        int maxWidth = 0;
+        for (int width : widths) {
+            maxWidth = Math.max(maxWidth, width);
+        }
+
+        int score = 0;
+        if (traits.hasContinuousAutoFocus()) {
+            score += CONTINUOUS_AUTO_FOCUS_POINTS;
+        } else if (traits.hasAutoFocus()) {
+            score += AUTO_FOCUS_POINTS;
+        }
+        score += YUV_WIDTH_POINTS * Math.min(maxWidth, USEFUL_YUV_WIDTH) / USEFUL_YUV_WIDTH;
+        score += FPS_POINTS * Math.max(0, Math.min(traits.getMaxFps(), USEFUL_FPS)) / USEFUL_FPS;
+        score += HARDWARE_LEVEL_POINTS * traits.getHardwareLevel();
+        return score;
+    }
+
+    /**
+     * Choose the best camera for scanning.  Among equally good cameras the first one is chosen,
+     * as camera services list the main camera first.
+     *
+     * @param cameras the available cameras, in the order of the camera service.
+     * @return the chosen camera, or null if none is usable.
+     */
+    public static CameraTraits choose(List<? extends CameraTraits> cameras) {
+        CameraTraits best = null;
+        int bestScore = UNUSABLE;
+        boolean bestIsBack = false;
+        for (CameraTraits camera : cameras) {
+            int score = score(camera);
+            if (score == UNUSABLE) {
+                continue;
+            }
+            boolean back = camera.isBackFacing();
+            if (best == null || (back && !bestIsBack)
+                    || (back == bestIsBack && score > bestScore)) {
+                best = camera;
+                bestScore = score;
+                bestIsBack = back;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,191 @@
+package com.bigbug.barcodescanner;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Selects the camera to scan with through the {@link CameraRanker}, and remembers the choice for
+ * the current build of the device, so the cameras are only ranked once per system update.
+ */
+public final class CameraSelector {
+
+    /**
+     * Tag for the {@link Log}.
+     */
+    private static final String TAG = "CameraSelector";
+
+    private static final String PREFERENCES_NAME = "camera_selector";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_CAMERA_ID = "camera_id";
+
+    private CameraSelector() {
+    }
+
+    /**
+     * Return the ID of the camera to scan with.
+     *
+     * @param context a {@link Context} to store the choice with.
+     * @param manager the {@link CameraManager} to query.
+     * @return the ID of the chosen camera, or null if no camera can scan barcodes.
+     * @throws CameraAccessException if the cameras cannot be queried.
+     */
+    public static String selectCamera(Context context, CameraManager manager)
+            throws CameraAccessException {
+        String[] cameraIds = manager.getCameraIdList();
+        SharedPreferences preferences =
+                context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        // The cached choice only holds for the build it was made on, and as long as the camera
+        // is still around.
+        String cachedId = preferences.getString(KEY_CAMERA_ID, null);
+        if (Build.FINGERPRINT.equals(preferences.getString(KEY_FINGERPRINT, null))
+                && Arrays.asList(cameraIds).contains(cachedId)) {
+            return cachedId;
+        }
+
+        List<CameraTraits> cameras = new ArrayList<>();
+        for (String cameraId : cameraIds) {
+            cameras.add(new CharacteristicsTraits(cameraId,
+                    manager.getCameraCharacteristics(cameraId)));
+        }
+        CameraTraits chosen = CameraRanker.choose(cameras);
+        if (chosen == null) {
+            return null;
+        }
+        Log.i(TAG, "Scanning with camera " + chosen.getId() + ", score " +
+                CameraRanker.score(chosen));
+
+        preferences.edit()
+                .putString(KEY_FINGERPRINT, Build.FINGERPRINT)
+                .putString(KEY_CAMERA_ID, chosen.getId())
+                .apply();
+        return chosen.getId();
+    }
+
+    /**
+     * {@link CameraTraits} read from the {@link CameraCharacteristics} of a camera.
+     */
+    static final class CharacteristicsTraits implements CameraTraits {
+        private final String mId;
+        private final boolean mBackFacing;
+        private final int mHardwareLevel;
+        private final int[] mYuvWidths;
+        private final int[] mYuvHeights;
+        private final boolean mContinuousAutoFocus;
+        private final boolean mAutoFocus;
+        private final int mMaxFps;
+
+        CharacteristicsTraits(String id, CameraCharacteristics c) {
+            mId = id;
+
+            Integer facing = c.get(CameraCharacteristics.LENS_FACING);
+            mBackFacing = facing != null && facing == CameraCharacteristics.LENS_FACING_BACK;
+
+            Integer level = c.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+            mHardwareLevel = toHardwareLevel(level != null
+                    ? level : CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY);
+
+            StreamConfigurationMap map =
+                    c.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            Size[] sizes = map != null ? map.getOutputSizes(ImageFormat.YUV_420_888) : null;
+            if (sizes == null) {
+                sizes = new Size[0];
+            }
+            mYuvWidths = new int[sizes.length];
+            mYuvHeights = new int[sizes.length];
+            for (int i = 0; i < sizes.length; i++) {
+                mYuvWidths[i] = sizes[i].getWidth();
+                mYuvHeights[i] = sizes[i].getHeight();
+            }
+
+            int[] afModes = c.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+            boolean continuous = false;
+            boolean auto = false;
+            if (afModes != null) {
+                for (int mode : afModes) {
+                    continuous |= mode == CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+                    auto |= mode == CameraMetadata.CONTROL_AF_MODE_AUTO;
+                }
+            }
+            mContinuousAutoFocus = continuous;
+            mAutoFocus = auto || continuous;
+
+            Range<Integer>[] fpsRanges =
+                    c.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+            int maxFps = 0;
+            if (fpsRanges != null) {
+                for (Range<Integer> range : fpsRanges) {
+                    maxFps = Math.max(maxFps, range.getUpper());
+                }
+            }
+            mMaxFps = maxFps;
+        }
+
+        private static int toHardwareLevel(int level) {
+            switch (level) {
+                case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_3:
+                    return HARDWARE_LEVEL_3;
+                case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_FULL:
+                    return HARDWARE_LEVEL_FULL;
+                case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED:
+                    return HARDWARE_LEVEL_LIMITED;
+                default:
+                    return HARDWARE_LEVEL_LEGACY;
+            }
+        }
+
+        @Override
+        public String getId() {
+            return mId;
+        }
+
+        @Override
+        public boolean isBackFacing() {
+            return mBackFacing;
+        }
+
+        @Override
+        public int getHardwareLevel() {
+            return mHardwareLevel;
+        }
+
+        @Override
+        public int[] getYuvWidths() {
+            return mYuvWidths;
+        }
+
+        @Override
+        public int[] getYuvHeights() {
+            return mYuvHeights;
+        }
+
+        @Override
+        public boolean hasContinuousAutoFocus() {
+            return mContinuousAutoFocus;
+        }
+
+        @Override
+        public boolean hasAutoFocus() {
+            return mAutoFocus;
+        }
+
+        @Override
+        public int getMaxFps() {
+            return mMaxFps;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.bigbug.barcodescanner;
+
+/**
+ * The traits of a camera that matter for scanning barcodes, kept free of Android types so that
+ * the {@link CameraRanker} can be unit tested with fake cameras.
+ */
+public interface CameraTraits {
+
+    /**
+     * Hardware levels, ordered from the least to the most capable.  Unlike the values of
+     * {@link android.hardware.camera2.CameraMetadata}, these compare numerically.
+     */
+    int HARDWARE_LEVEL_LEGACY = 0;
+    int HARDWARE_LEVEL_LIMITED = 1;
+    int HARDWARE_LEVEL_FULL = 2;
+    int HARDWARE_LEVEL_3 = 3;
+
+    /**
+     * @return the ID of the camera, as given by the camera service.
+     */
+    String getId();
+
+    /**
+     * @return true if the camera faces away from the screen.
+     */
+    boolean isBackFacing();
+
+    /**
+     * @return one of the {@code HARDWARE_LEVEL_} constants.
+     */
+    int getHardwareLevel();
+
+    /**
+     * @return the widths of the supported YUV_420_888 output sizes.
+     */
+    int[] getYuvWidths();
+
+    /**
+     * @return the heights of the supported YUV_420_888 output sizes, in the same order as
+     * {@link #getYuvWidths()}.
+     */
+    int[] getYuvHeights();
+
+    /**
+     * @return true if the camera can focus on its own, without a trigger.
+     */
+    boolean hasContinuousAutoFocus();
+
+    /**
+     * @return true if the camera can focus at all.
+     */
+    boolean hasAutoFocus();
+
+    /**
+     * @return the highest frame rate the auto-exposure routine can target.
+     */
+    int getMaxFps();
+}
@@ -0,0 +1,74 @@
+package com.bigbug.barcodescanner;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands values from any thread to a consumer thread, delivering only the latest one.
+ * <p/>
+ * At most one task is posted to the {@link Executor} at a time, and it is the same
+ * {@link Runnable} every time.  Values dispatched while it waits to run replace each other, so
+ * that a consumer such as the UI thread only sees the newest value once per run, however fast
+ * values are produced.
+ * <p/>
+ * This class is thread safe.
+ *
+ * @param <V> the type of the values.
+ */
+public class CoalescingDispatcher<V> {
+
+    /**
+     * Receives the dispatched values.
+     */
+    public interface Sink<V> {
+
+        /**
+         * Called on the executor with the latest value.
+         */
+        void deliver(V value);
+
+        /**
+         * Called on the dispatching thread with a value replaced before it was delivered.
+         */
+        void drop(V value);
+    }
+
+    private final Executor mExecutor;
+    private final Sink<V> mSink;
+
+    private final AtomicReference<V> mPending = new AtomicReference<>();
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            V value = mPending.getAndSet(null);
+            if (value != null) {
+                mSink.deliver(value);
+            }
+        }
+    };
+
+    /**
+     * @param executor runs the deliveries, such as the UI thread.
+     * @param sink     receives the values.
+     */
+    public CoalescingDispatcher(Executor executor, Sink<V> sink) {
+        if (executor == null || sink == null) throw new NullPointerException();
+        mExecutor = executor;
+        mSink = sink;
+    }
+
+    /**
+     * Deliver a value, replacing the one waiting for delivery if any.
+     */
+    public void dispatch(V value) {
+        if (value == null) throw new NullPointerException();
+        V previous = mPending.getAndSet(value);
+        if (previous == null) {
+            // Nothing was waiting, so no delivery is posted.
+            mExecutor.execute(mDrain);
+        } else {
+            mSink.drop(previous);
+        }
+    }
+}
@@ -3,4 +3,12 @@ package com.bigbug.barcodescanner;
 
 public interface OnBarcodeDetectedListener extends BaseUIListener {
     void onBarcodeDetected(String content);
+
+    /**
+     * Called instead of {@link #onBarcodeDetected(String)} when the decoder finds every barcode
+     * in a frame, with the ones not seen recently.
+     *
+     * @param contents the contents of the barcodes, at least one.
+     */
+    void onBarcodesDetected(String[] contents);
 }
\ No newline at end of file
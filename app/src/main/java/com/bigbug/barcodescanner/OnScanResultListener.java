@@ -0,0 +1,17 @@
+package com.bigbug.barcodescanner;
+
+/**
+ * Receives the barcodes found in a frame with everything known about them, see
+ * {@link OnBarcodeDetectedListener} for their text only.
+ */
+public interface OnScanResultListener extends BaseUIListener {
+
+    /**
+     * Called on the UI thread with the barcodes of one frame that were not seen recently: one,
+     * or with a multi-barcode decoder all of them.
+     *
+     * @param results the barcodes, valid until this returns.  Use {@link ScanResult#copy()} to
+     *                keep one.
+     */
+    void onScanResults(ScanResult[] results);
+}
@@ -0,0 +1,80 @@
+package com.bigbug.barcodescanner;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registered {@link BaseUIListener}s, as a copy-on-write array per listener class.
+ * <p/>
+ * Listeners are added and removed rarely, from lifecycle callbacks, and iterated for every
+ * event.  Adding or removing a listener copies the array of its class; reading returns the current
+ * array without locking or allocating.
+ * <p/>
+ * This class is thread safe.
+ */
+public class UIListenerRegistry {
+
+    private final ConcurrentMap<Class<?>, BaseUIListener[]> mListeners =
+            new ConcurrentHashMap<>();
+
+    /**
+     * @param cls requested class of listeners.
+     * @return the listeners registered for the class.  The array is shared and must not be
+     * modified; it does not change when listeners are added or removed later.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends BaseUIListener> T[] get(Class<T> cls) {
+        BaseUIListener[] listeners = mListeners.get(cls);
+        if (listeners == null) {
+            // Remember the empty array so that later reads do not allocate.
+            mListeners.putIfAbsent(cls, (BaseUIListener[]) Array.newInstance(cls, 0));
+            listeners = mListeners.get(cls);
+        }
+        return (T[]) listeners;
+    }
+
+    /**
+     * Register a listener.  Registering the same listener twice has no effect.
+     */
+    public synchronized <T extends BaseUIListener> void add(Class<T> cls, T listener) {
+        if (listener == null) throw new NullPointerException();
+        T[] listeners = get(cls);
+        if (indexOf(listeners, listener) >= 0) {
+            return;
+        }
+        T[] copy = newArray(cls, listeners.length + 1);
+        System.arraycopy(listeners, 0, copy, 0, listeners.length);
+        copy[listeners.length] = listener;
+        mListeners.put(cls, copy);
+    }
+
+    /**
+     * Unregister a listener.
+     */
+    public synchronized <T extends BaseUIListener> void remove(Class<T> cls, T listener) {
+        T[] listeners = get(cls);
+        int index = indexOf(listeners, listener);
+        if (index < 0) {
+            return;
+        }
+        T[] copy = newArray(cls, listeners.length - 1);
+        System.arraycopy(listeners, 0, copy, 0, index);
+        System.arraycopy(listeners, index + 1, copy, index, copy.length - index);
+        mListeners.put(cls, copy);
+    }
+
+    private static int indexOf(Object[] listeners, Object listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T[] newArray(Class<T> cls, int length) {
+        return (T[]) Array.newInstance(cls, length);
+    }
+}
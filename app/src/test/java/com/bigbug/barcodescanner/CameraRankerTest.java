@@ -0,0 +1,155 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CameraRanker}, with fake cameras.
+ */
+public class CameraRankerTest {
+
+    private static class FakeCamera implements CameraTraits {
+        private final String mId;
+        private boolean mBackFacing = true;
+        private int mHardwareLevel = HARDWARE_LEVEL_LIMITED;
+        private int[] mYuvWidths = {640, 1280, 1920};
+        private int[] mYuvHeights = {480, 720, 1080};
+        private boolean mContinuousAutoFocus = true;
+        private boolean mAutoFocus = true;
+        private int mMaxFps = 30;
+
+        FakeCamera(String id) {
+            mId = id;
+        }
+
+        FakeCamera front() {
+            mBackFacing = false;
+            return this;
+        }
+
+        FakeCamera level(int level) {
+            mHardwareLevel = level;
+            return this;
+        }
+
+        FakeCamera yuv(int[] widths, int[] heights) {
+            mYuvWidths = widths;
+            mYuvHeights = heights;
+            return this;
+        }
+
+        FakeCamera focus(boolean continuous, boolean auto) {
+            mContinuousAutoFocus = continuous;
+            mAutoFocus = auto;
+            return this;
+        }
+
+        FakeCamera fps(int fps) {
+            mMaxFps = fps;
+            return this;
+        }
+
+        @Override
+        public String getId() {
+            return mId;
+        }
+
+        @Override
+        public boolean isBackFacing() {
+            return mBackFacing;
+        }
+
+        @Override
+        public int getHardwareLevel() {
+            return mHardwareLevel;
+        }
+
+        @Override
+        public int[] getYuvWidths() {
+            return mYuvWidths;
+        }
+
+        @Override
+        public int[] getYuvHeights() {
+            return mYuvHeights;
+        }
+
+        @Override
+        public boolean hasContinuousAutoFocus() {
+            return mContinuousAutoFocus;
+        }
+
+        @Override
+        public boolean hasAutoFocus() {
+            return mAutoFocus;
+        }
+
+        @Override
+        public int getMaxFps() {
+            return mMaxFps;
+        }
+    }
+
+    @Test
+    public void score_addsUpTraits() throws Exception {
+        assertEquals(40 + 30 + 20 + 5, CameraRanker.score(new FakeCamera("0")));
+        assertEquals(20 + 30 + 20 + 5,
+                CameraRanker.score(new FakeCamera("0").focus(false, true)));
+        assertEquals(30 + 20 + 5, CameraRanker.score(new FakeCamera("0").focus(false, false)));
+        assertEquals(40 + 15 + 10, CameraRanker.score(new FakeCamera("0")
+                .yuv(new int[]{960}, new int[]{720}).fps(15)
+                .level(CameraTraits.HARDWARE_LEVEL_LEGACY)));
+    }
+
+    @Test
+    public void score_capsResolutionAndFrameRate() throws Exception {
+        FakeCamera plain = new FakeCamera("0");
+        FakeCamera fancy = new FakeCamera("1").yuv(new int[]{4032}, new int[]{3024}).fps(60);
+        assertEquals(CameraRanker.score(plain), CameraRanker.score(fancy));
+    }
+
+    @Test
+    public void score_unusableWithoutYuv() throws Exception {
+        assertEquals(CameraRanker.UNUSABLE,
+                CameraRanker.score(new FakeCamera("0").yuv(new int[0], new int[0])));
+    }
+
+    @Test
+    public void choose_noRawRequirement() throws Exception {
+        // A cheap LEGACY device, which the RAW requirement used to turn away.
+        FakeCamera legacy = new FakeCamera("0").level(CameraTraits.HARDWARE_LEVEL_LEGACY);
+        assertSame(legacy, CameraRanker.choose(Collections.singletonList(legacy)));
+    }
+
+    @Test
+    public void choose_prefersBackCameras() throws Exception {
+        FakeCamera back = new FakeCamera("0").focus(false, false).fps(15)
+                .level(CameraTraits.HARDWARE_LEVEL_LEGACY);
+        FakeCamera front = new FakeCamera("1").front().level(CameraTraits.HARDWARE_LEVEL_3);
+        assertSame(back, CameraRanker.choose(Arrays.asList(front, back)));
+
+        // Unless there is no usable one.
+        back.yuv(new int[0], new int[0]);
+        assertSame(front, CameraRanker.choose(Arrays.asList(front, back)));
+    }
+
+    @Test
+    public void choose_bestScoreFirstOnTies() throws Exception {
+        FakeCamera main = new FakeCamera("0");
+        FakeCamera wide = new FakeCamera("2").focus(false, false);
+        FakeCamera tele = new FakeCamera("3");
+        assertSame(main, CameraRanker.choose(Arrays.asList(main, wide, tele)));
+        assertSame(main, CameraRanker.choose(Arrays.asList(wide, main, tele)));
+    }
+
+    @Test
+    public void choose_nullWithoutUsableCamera() throws Exception {
+        assertNull(CameraRanker.choose(Collections.<CameraTraits>emptyList()));
+        assertNull(CameraRanker.choose(Collections.singletonList(
+                new FakeCamera("0").yuv(new int[0], new int[0]))));
+    }
+}
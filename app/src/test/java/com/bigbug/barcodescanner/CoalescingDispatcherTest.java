@@ -0,0 +1,137 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CoalescingDispatcher}.
+ */
+public class CoalescingDispatcherTest {
+
+    /**
+     * Runs posted tasks when told to, like a busy UI thread.
+     */
+    private static class ManualExecutor implements Executor {
+        final List<Runnable> mPosted = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mPosted.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> posted = new ArrayList<>(mPosted);
+            mPosted.clear();
+            for (Runnable runnable : posted) {
+                runnable.run();
+            }
+        }
+    }
+
+    private static class RecordingSink implements CoalescingDispatcher.Sink<String> {
+        final List<String> mDelivered = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> mDropped = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void deliver(String value) {
+            mDelivered.add(value);
+        }
+
+        @Override
+        public void drop(String value) {
+            mDropped.add(value);
+        }
+    }
+
+    @Test
+    public void burst_deliversLatestWithOnePost() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingSink sink = new RecordingSink();
+        CoalescingDispatcher<String> dispatcher = new CoalescingDispatcher<>(executor, sink);
+
+        dispatcher.dispatch("a");
+        dispatcher.dispatch("b");
+        dispatcher.dispatch("c");
+        assertEquals(1, executor.mPosted.size());
+        executor.runAll();
+
+        assertEquals(Collections.singletonList("c"), sink.mDelivered);
+        assertEquals(2, sink.mDropped.size());
+    }
+
+    @Test
+    public void afterDelivery_reusesSameRunnable() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingSink sink = new RecordingSink();
+        CoalescingDispatcher<String> dispatcher = new CoalescingDispatcher<>(executor, sink);
+
+        dispatcher.dispatch("a");
+        Runnable first = executor.mPosted.get(0);
+        executor.runAll();
+        dispatcher.dispatch("b");
+        assertSame(first, executor.mPosted.get(0));
+        executor.runAll();
+
+        assertEquals(2, sink.mDelivered.size());
+        assertTrue(sink.mDropped.isEmpty());
+    }
+
+    @Test
+    public void concurrentDispatch_losesNothing() throws Exception {
+        final ExecutorService consumer = Executors.newSingleThreadExecutor();
+        final AtomicInteger delivered = new AtomicInteger();
+        final AtomicInteger dropped = new AtomicInteger();
+        final AtomicInteger posts = new AtomicInteger();
+        final CoalescingDispatcher<Integer> dispatcher = new CoalescingDispatcher<>(
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        posts.incrementAndGet();
+                        consumer.execute(command);
+                    }
+                }, new CoalescingDispatcher.Sink<Integer>() {
+                    @Override
+                    public void deliver(Integer value) {
+                        delivered.incrementAndGet();
+                    }
+
+                    @Override
+                    public void drop(Integer value) {
+                        dropped.incrementAndGet();
+                    }
+                });
+
+        final int perThread = 20000;
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        dispatcher.dispatch(i);
+                    }
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        consumer.shutdown();
+        assertTrue(consumer.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Every value is either delivered or dropped, and every post delivers one value.
+        assertEquals(producers.length * perThread, delivered.get() + dropped.get());
+        assertEquals(posts.get(), delivered.get());
+    }
+}
@@ -0,0 +1,115 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link UIListenerRegistry}.
+ */
+public class UIListenerRegistryTest {
+
+    private static class CountingListener implements OnBarcodeDetectedListener {
+        final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public void onBarcodeDetected(String content) {
+            mCount.incrementAndGet();
+        }
+
+        @Override
+        public void onBarcodesDetected(String[] contents) {
+            mCount.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void addAndRemove_copyOnWrite() throws Exception {
+        UIListenerRegistry registry = new UIListenerRegistry();
+        CountingListener a = new CountingListener();
+        CountingListener b = new CountingListener();
+
+        OnBarcodeDetectedListener[] empty = registry.get(OnBarcodeDetectedListener.class);
+        assertEquals(0, empty.length);
+        assertSame(empty, registry.get(OnBarcodeDetectedListener.class));
+
+        registry.add(OnBarcodeDetectedListener.class, a);
+        registry.add(OnBarcodeDetectedListener.class, b);
+        registry.add(OnBarcodeDetectedListener.class, a);
+        OnBarcodeDetectedListener[] both = registry.get(OnBarcodeDetectedListener.class);
+        assertArrayEquals(new OnBarcodeDetectedListener[]{a, b}, both);
+
+        registry.remove(OnBarcodeDetectedListener.class, a);
+        assertArrayEquals(new OnBarcodeDetectedListener[]{b},
+                registry.get(OnBarcodeDetectedListener.class));
+        // Snapshots taken before are left untouched.
+        assertEquals(2, both.length);
+        assertEquals(0, empty.length);
+    }
+
+    @Test
+    public void concurrentRegisterAndDispatch() throws Exception {
+        final UIListenerRegistry registry = new UIListenerRegistry();
+        final CountingListener permanent = new CountingListener();
+        registry.add(OnBarcodeDetectedListener.class, permanent);
+
+        final int rounds = 20000;
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger dispatched = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] registrars = new Thread[3];
+        for (int i = 0; i < registrars.length; i++) {
+            registrars[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    CountingListener listener = new CountingListener();
+                    for (int round = 0; round < rounds; round++) {
+                        registry.add(OnBarcodeDetectedListener.class, listener);
+                        registry.remove(OnBarcodeDetectedListener.class, listener);
+                    }
+                }
+            });
+        }
+        Thread dispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                await(start);
+                while (!done.get()) {
+                    for (OnBarcodeDetectedListener listener :
+                            registry.get(OnBarcodeDetectedListener.class)) {
+                        listener.onBarcodeDetected("x");
+                    }
+                    dispatched.incrementAndGet();
+                }
+            }
+        });
+        for (Thread registrar : registrars) {
+            registrar.start();
+        }
+        dispatcher.start();
+        start.countDown();
+        for (Thread registrar : registrars) {
+            registrar.join();
+        }
+        done.set(true);
+        dispatcher.join();
+
+        // The permanent listener saw every dispatch, the others were all removed.
+        assertEquals(dispatched.get(), permanent.mCount.get());
+        assertArrayEquals(new OnBarcodeDetectedListener[]{permanent},
+                registry.get(OnBarcodeDetectedListener.class));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line entry point of the {@link BulkDecoder}.
+ * <pre>
+ * bulk-decode [options] path...
+ *   --output file       append the JSON lines to the file instead of writing them to stdout
+ *   --checkpoint file   skip the images listed in the file, and list the decoded ones in it
+ *   --threads n         decoding threads, one per core by default
+ *   --formats f,...     ZXing barcode formats to look for, all by default
+ *   --single            report the first barcode found in each image only
+ *   --fast              do not try harder, which misses 1D barcodes away from the middle row
+ *   --max-pixels n      subsample larger images, 24 megapixels by default
+ * </pre>
+ * The summary of the run goes to stderr.  An interrupted run is resumed by running the same
+ * command again with the same checkpoint and output files.
+ */
+public final class BulkDecodeCommand {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long DEFAULT_MAX_PIXELS = 24L * 1000 * 1000;
+
+    private static final int EXIT_USAGE = 2;
+
+    private BulkDecodeCommand() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path output = null;
+        Path checkpointFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxPixels = DEFAULT_MAX_PIXELS;
+        DecoderConfig.Builder config = new DecoderConfig.Builder()
+                .setTryHarder(true)
+                .setMultipleBarcodes(true);
+        List<Path> roots = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--output":
+                        output = Paths.get(args[++i]);
+                        break;
+                    case "--checkpoint":
+                        checkpointFile = Paths.get(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--formats":
+                        config.setFormats(parseFormats(args[++i]));
+                        break;
+                    case "--single":
+                        config.setMultipleBarcodes(false);
+                        break;
+                    case "--fast":
+                        config.setTryHarder(false);
+                        break;
+                    case "--max-pixels":
+                        maxPixels = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option " + args[i]);
+                        }
+                        roots.add(Paths.get(args[i]));
+                }
+            }
+            if (roots.isEmpty()) {
+                throw new IllegalArgumentException("No path to decode.");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage() != null && e instanceof IllegalArgumentException
+                    ? e.getMessage() : "Missing option value.");
+            System.err.println("Usage: bulk-decode [--output file] [--checkpoint file]"
+                    + " [--threads n] [--formats f,...] [--single] [--fast] [--max-pixels n]"
+                    + " path...");
+            System.exit(EXIT_USAGE);
+            return;
+        }
+
+        BulkDecoder decoder = new BulkDecoder(new FrameDecoder(config.build()), threads,
+                maxPixels);
+        try (DecodeCheckpoint checkpoint = checkpointFile == null
+                ? DecodeCheckpoint.NONE : DecodeCheckpoint.open(checkpointFile);
+             Writer writer = open(output)) {
+            BulkDecoder.Summary summary = decoder.run(roots, writer, checkpoint);
+            System.err.println(summary);
+        }
+    }
+
+    private static BarcodeFormat[] parseFormats(String formats) {
+        String[] names = formats.split(",");
+        BarcodeFormat[] parsed = new BarcodeFormat[names.length];
+        for (int i = 0; i < names.length; i++) {
+            parsed[i] = BarcodeFormat.valueOf(names[i].trim());
+        }
+        return parsed;
+    }
+
+    /**
+     * Open the output for appending.  The last line of an interrupted run may have been cut
+     * short, it is ended so that the next line starts on its own.
+     */
+    private static Writer open(Path output) throws IOException {
+        if (output == null) {
+            return new BufferedWriter(new OutputStreamWriter(System.out, UTF_8));
+        }
+        boolean complete = true;
+        if (Files.exists(output) && Files.size(output) > 0) {
+            try (RandomAccessFile file = new RandomAccessFile(output.toFile(), "r")) {
+                file.seek(file.length() - 1);
+                complete = file.read() == '\n';
+            }
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(output,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), UTF_8));
+        if (!complete) {
+            writer.write('\n');
+        }
+        return writer;
+    }
+}
@@ -0,0 +1,394 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes the barcodes in every image under a set of directories with a {@link FrameDecoder}, and
+ * writes one JSON line per image.
+ * <p/>
+ * The directories are walked on the calling thread, which hands the image files to a fixed set of
+ * decoding threads through a bounded queue.  Memory is bounded by the number of threads: each one
+ * holds a single image at a time, and images larger than the pixel limit are subsampled while
+ * they are read.  Result points are reported in the coordinates of the original image.
+ * <p/>
+ * Each line looks like
+ * <pre>
+ * {"path":"a/1.png","width":1280,"height":720,"subsampling":1,"read_ms":4.210,
+ *  "decode_ms":11.503,"barcodes":[{"format":"QR_CODE","text":"...","points":[[x,y],...]}]}
+ * </pre>
+ * on a single line, with {@code "barcodes":[]} when none was found, or {@code "path"} and
+ * {@code "error"} only when the file could not be read or decoded.  Lines are written in the order
+ * images are decoded, not in the order of the walk.
+ * <p/>
+ * This class is thread safe, and may run several times.
+ */
+public class BulkDecoder {
+
+    private static final String[] IMAGE_EXTENSIONS = {
+            ".png", ".jpg", ".jpeg", ".gif", ".bmp"
+    };
+
+    /**
+     * Files queued per decoding thread, enough to keep them busy while the walk stats the next
+     * files.
+     */
+    private static final int QUEUE_FILES_PER_THREAD = 4;
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Marks the end of the walk in the queue, one per decoding thread.
+     */
+    private static final Path END = Paths.get("");
+
+    private final FrameDecoder mDecoder;
+    private final int mThreads;
+    private final long mMaxImagePixels;
+
+    /**
+     * @param decoder        the decoder, with multiple barcodes enabled in its config to report
+     *                       every barcode of an image rather than the first one found.
+     * @param threads        the number of decoding threads.
+     * @param maxImagePixels the number of pixels above which images are subsampled.
+     */
+    public BulkDecoder(FrameDecoder decoder, int threads, long maxImagePixels) {
+        if (decoder == null) throw new NullPointerException();
+        if (threads < 1 || maxImagePixels < 1) {
+            throw new IllegalArgumentException("Threads and pixel limit must be positive.");
+        }
+        mDecoder = decoder;
+        mThreads = threads;
+        mMaxImagePixels = maxImagePixels;
+    }
+
+    /**
+     * Decode every image under the given directories that the checkpoint does not list yet.
+     *
+     * @param roots      the directories, or single image files, to decode.
+     * @param output     receives the JSON lines.
+     * @param checkpoint records each image once its line has been written.
+     * @return what the run did.
+     * @throws IOException if a directory could not be walked or the output not be written.
+     */
+    public Summary run(List<Path> roots, Writer output, DecodeCheckpoint checkpoint)
+            throws IOException, InterruptedException {
+        if (roots == null || output == null || checkpoint == null) {
+            throw new NullPointerException();
+        }
+        long startNanos = System.nanoTime();
+        Run run = new Run(output, checkpoint);
+        ExecutorService executor = Executors.newFixedThreadPool(mThreads);
+        try {
+            for (int i = 0; i < mThreads; i++) {
+                executor.execute(run);
+            }
+            try {
+                for (Path root : roots) {
+                    Files.walkFileTree(root, run);
+                    if (run.mError.get() != null) {
+                        break;
+                    }
+                }
+            } finally {
+                for (int i = 0; i < mThreads; i++) {
+                    run.mQueue.put(END);
+                }
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        IOException error = run.mError.get();
+        if (error != null) {
+            throw error;
+        }
+        return new Summary(run.mDecoded.get(), run.mSkipped.get(), run.mFailed.get(),
+                run.mBarcodes.get(), run.mPixels.get(), System.nanoTime() - startNanos);
+    }
+
+    static boolean isImage(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the smallest subsampling step that brings an image within the pixel limit.
+     */
+    static int subsampling(int width, int height, long maxPixels) {
+        int step = 1;
+        while (((long) (width + step - 1) / step) * ((height + step - 1) / step) > maxPixels) {
+            step++;
+        }
+        return step;
+    }
+
+    /**
+     * One run: the walk, the queue between the walk and the decoding threads, and the counters.
+     */
+    private final class Run extends SimpleFileVisitor<Path> implements Runnable {
+
+        final BlockingQueue<Path> mQueue =
+                new ArrayBlockingQueue<>(mThreads * QUEUE_FILES_PER_THREAD);
+        final Writer mOutput;
+        final DecodeCheckpoint mCheckpoint;
+
+        final AtomicLong mDecoded = new AtomicLong();
+        final AtomicLong mSkipped = new AtomicLong();
+        final AtomicLong mFailed = new AtomicLong();
+        final AtomicLong mBarcodes = new AtomicLong();
+        final AtomicLong mPixels = new AtomicLong();
+
+        /**
+         * The first error writing the output, which stops the run.
+         */
+        final AtomicReference<IOException> mError = new AtomicReference<>();
+
+        Run(Writer output, DecodeCheckpoint checkpoint) {
+            mOutput = output;
+            mCheckpoint = checkpoint;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            if (mError.get() != null) {
+                return FileVisitResult.TERMINATE;
+            }
+            if (!attrs.isRegularFile() || !isImage(file)) {
+                return FileVisitResult.CONTINUE;
+            }
+            if (mCheckpoint.isDone(file)) {
+                mSkipped.incrementAndGet();
+                return FileVisitResult.CONTINUE;
+            }
+            try {
+                mQueue.put(file);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return FileVisitResult.TERMINATE;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            // An unreadable directory or file is reported like an unreadable image.
+            write(file, new JsonLines().begin().name("path").value(file.toString())
+                    .name("error").value(String.valueOf(e)).end());
+            mFailed.incrementAndGet();
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public void run() {
+            JsonLines line = new JsonLines();
+            try {
+                Path file;
+                while ((file = mQueue.take()) != END) {
+                    if (mError.get() == null) {
+                        write(file, decode(file, line));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private String decode(Path file, JsonLines line) {
+            line.begin().name("path").value(file.toString());
+            long readNanos = System.nanoTime();
+            BufferedImage image;
+            int width;
+            int height;
+            int step;
+            try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+                Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+                if (readers == null || !readers.hasNext()) {
+                    throw new IOException("Unsupported image format.");
+                }
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(in, true, true);
+                    width = reader.getWidth(0);
+                    height = reader.getHeight(0);
+                    step = subsampling(width, height, mMaxImagePixels);
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(step, step, 0, 0);
+                    image = reader.read(0, param);
+                } finally {
+                    reader.dispose();
+                }
+            } catch (IOException | RuntimeException e) {
+                mFailed.incrementAndGet();
+                return line.name("error").value(String.valueOf(e)).end();
+            }
+            long decodeNanos = System.nanoTime();
+            readNanos = decodeNanos - readNanos;
+
+            Result[] results;
+            try {
+                BufferedImageLuminanceSource source = new BufferedImageLuminanceSource(image);
+                results = mDecoder.getConfig().isMultipleBarcodes()
+                        ? mDecoder.decodeMultiple(source)
+                        : new Result[]{mDecoder.decode(source)};
+            } catch (NotFoundException e) {
+                results = new Result[0];
+            } catch (RuntimeException e) {
+                // A bug in a reader, reported like an unreadable image rather than losing the
+                // thread, which would leave the walk waiting on a queue nobody takes from.
+                mFailed.incrementAndGet();
+                return line.name("error").value(String.valueOf(e)).end();
+            }
+            decodeNanos = System.nanoTime() - decodeNanos;
+
+            mDecoded.incrementAndGet();
+            mBarcodes.addAndGet(results.length);
+            mPixels.addAndGet((long) width * height);
+            line.name("width").value(width).name("height").value(height)
+                    .name("subsampling").value(step)
+                    .name("read_ms").value(readNanos / NANOS_PER_MILLI, 3)
+                    .name("decode_ms").value(decodeNanos / NANOS_PER_MILLI, 3)
+                    .name("barcodes").beginArray();
+            for (Result result : results) {
+                line.beginObject()
+                        .name("format").value(result.getBarcodeFormat().name())
+                        .name("text").value(result.getText())
+                        .name("points").beginArray();
+                ResultPoint[] points = result.getResultPoints();
+                if (points != null) {
+                    for (ResultPoint point : points) {
+                        if (point != null) {
+                            line.beginArray().value(point.getX() * step, 1)
+                                    .value(point.getY() * step, 1).endArray();
+                        }
+                    }
+                }
+                line.endArray().endObject();
+            }
+            return line.endArray().end();
+        }
+
+        /**
+         * Write a line, then record the file in the checkpoint.  A crash in between decodes the
+         * file again on resume, so its line may appear twice but is never missing.
+         */
+        private void write(Path file, String line) {
+            try {
+                synchronized (mOutput) {
+                    mOutput.write(line);
+                    mOutput.flush();
+                }
+                mCheckpoint.markDone(file);
+            } catch (IOException e) {
+                mError.compareAndSet(null, e);
+            }
+        }
+    }
+
+    /**
+     * What a run did.
+     */
+    public static final class Summary {
+
+        private final long mDecoded;
+        private final long mSkipped;
+        private final long mFailed;
+        private final long mBarcodes;
+        private final long mPixels;
+        private final long mElapsedNanos;
+
+        Summary(long decoded, long skipped, long failed, long barcodes, long pixels,
+                long elapsedNanos) {
+            mDecoded = decoded;
+            mSkipped = skipped;
+            mFailed = failed;
+            mBarcodes = barcodes;
+            mPixels = pixels;
+            mElapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the number of images decoded, whether or not they held barcodes.
+         */
+        public long getDecoded() {
+            return mDecoded;
+        }
+
+        /**
+         * @return the number of images skipped because an earlier run decoded them.
+         */
+        public long getSkipped() {
+            return mSkipped;
+        }
+
+        /**
+         * @return the number of files that could not be read.
+         */
+        public long getFailed() {
+            return mFailed;
+        }
+
+        public long getBarcodes() {
+            return mBarcodes;
+        }
+
+        public long getElapsedNanos() {
+            return mElapsedNanos;
+        }
+
+        /**
+         * @return the number of images decoded per second.
+         */
+        public double getImagesPerSecond() {
+            return mElapsedNanos == 0 ? 0 : mDecoded * 1e9 / mElapsedNanos;
+        }
+
+        /**
+         * @return the number of megapixels decoded per second, at the original resolution.
+         */
+        public double getMegapixelsPerSecond() {
+            return mElapsedNanos == 0 ? 0 : mPixels * 1e3 / mElapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d images decoded, %d barcodes, %d failed,"
+                            + " %d skipped in %.1f s: %.1f images/s, %.1f MP/s",
+                    mDecoded, mBarcodes, mFailed, mSkipped, mElapsedNanos / 1e9,
+                    getImagesPerSecond(), getMegapixelsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.bigbug.barcodescanner;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The files a bulk decode has already processed, kept in a file so that an interrupted run can be
+ * resumed where it stopped.
+ * <p/>
+ * The checkpoint file holds one absolute path per line, appended and flushed as each file is
+ * done.  A line cut short by a crash matches no file, so at worst that file is decoded again.
+ * <p/>
+ * This class is thread safe.
+ */
+final class DecodeCheckpoint implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * A checkpoint that remembers nothing, for runs that are not meant to be resumed.
+     */
+    static final DecodeCheckpoint NONE = new DecodeCheckpoint(new HashSet<String>(), null);
+
+    private final Set<String> mDone;
+    private final Writer mWriter;
+
+    private DecodeCheckpoint(Set<String> done, Writer writer) {
+        mDone = done;
+        mWriter = writer;
+    }
+
+    /**
+     * Open a checkpoint file, creating it if it does not exist.
+     */
+    static DecodeCheckpoint open(Path file) throws IOException {
+        Set<String> done = new HashSet<>();
+        boolean complete = true;
+        try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+            int c;
+            StringBuilder line = new StringBuilder();
+            while ((c = reader.read()) != -1) {
+                if (c == '\n') {
+                    done.add(line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append((char) c);
+                }
+            }
+            // The last line was cut short if it does not end with a newline.
+            complete = line.length() == 0;
+        } catch (NoSuchFileException e) {
+            // A new run.
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), UTF_8));
+        if (!complete) {
+            writer.write('\n');
+        }
+        return new DecodeCheckpoint(done, writer);
+    }
+
+    /**
+     * @return the key of a file in the checkpoint, which does not depend on the working directory.
+     */
+    static String key(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * @return whether the given file was processed by an earlier run.
+     */
+    synchronized boolean isDone(Path file) {
+        return mDone.contains(key(file));
+    }
+
+    /**
+     * @return the number of files processed so far, by this run and earlier ones.
+     */
+    synchronized int getDoneCount() {
+        return mDone.size();
+    }
+
+    /**
+     * Record that a file was processed, once its results have been written out.
+     */
+    synchronized void markDone(Path file) throws IOException {
+        String key = key(file);
+        if (mWriter == null || !mDone.add(key)) {
+            return;
+        }
+        mWriter.write(key);
+        mWriter.write('\n');
+        mWriter.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mWriter != null) {
+            mWriter.close();
+        }
+    }
+}
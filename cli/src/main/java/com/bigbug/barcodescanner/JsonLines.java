@@ -0,0 +1,148 @@
+package com.bigbug.barcodescanner;
+
+import java.util.Locale;
+
+/**
+ * Builds one JSON object per line, for output that can be streamed, appended to and processed
+ * line by line with standard tools.
+ * <p/>
+ * This class is not thread safe.  Each thread builds its own lines.
+ */
+final class JsonLines {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder mLine = new StringBuilder(256);
+
+    /**
+     * Whether the next value is the first one of the current object or array.
+     */
+    private boolean mFirst;
+
+    /**
+     * Start a new line, discarding the previous one.
+     */
+    JsonLines begin() {
+        mLine.setLength(0);
+        mLine.append('{');
+        mFirst = true;
+        return this;
+    }
+
+    JsonLines name(String name) {
+        separate();
+        string(name);
+        mLine.append(':');
+        mFirst = true;
+        return this;
+    }
+
+    JsonLines value(String value) {
+        separate();
+        if (value == null) {
+            mLine.append("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    JsonLines value(long value) {
+        separate();
+        mLine.append(value);
+        return this;
+    }
+
+    /**
+     * Append a number with a fixed number of decimals.
+     */
+    JsonLines value(double value, int decimals) {
+        separate();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            mLine.append("null");
+        } else {
+            mLine.append(String.format(Locale.ROOT, "%." + decimals + "f", value));
+        }
+        return this;
+    }
+
+    JsonLines beginArray() {
+        separate();
+        mLine.append('[');
+        mFirst = true;
+        return this;
+    }
+
+    JsonLines endArray() {
+        mLine.append(']');
+        mFirst = false;
+        return this;
+    }
+
+    JsonLines beginObject() {
+        separate();
+        mLine.append('{');
+        mFirst = true;
+        return this;
+    }
+
+    JsonLines endObject() {
+        mLine.append('}');
+        mFirst = false;
+        return this;
+    }
+
+    /**
+     * Close the line.
+     *
+     * @return the line, ending with a newline.
+     */
+    String end() {
+        mLine.append("}\n");
+        return mLine.toString();
+    }
+
+    private void separate() {
+        if (!mFirst) {
+            mLine.append(',');
+        }
+        mFirst = false;
+    }
+
+    /**
+     * Append a JSON string, escaping what RFC 7159 requires to be escaped.  Line separators are
+     * escaped too, so that a value never breaks a line.
+     */
+    private void string(String value) {
+        mLine.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    mLine.append("\\\"");
+                    break;
+                case '\\':
+                    mLine.append("\\\\");
+                    break;
+                case '\n':
+                    mLine.append("\\n");
+                    break;
+                case '\r':
+                    mLine.append("\\r");
+                    break;
+                case '\t':
+                    mLine.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        mLine.append("\\u").append(HEX_DIGITS[c >> 12 & 0xF])
+                                .append(HEX_DIGITS[c >> 8 & 0xF]).append(HEX_DIGITS[c >> 4 & 0xF])
+                                .append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        mLine.append(c);
+                    }
+            }
+        }
+        mLine.append('"');
+    }
+}
@@ -0,0 +1,191 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BulkDecoder}, {@link DecodeCheckpoint} and {@link JsonLines}.
+ */
+public class BulkDecoderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final DecoderConfig CONFIG = new DecoderConfig.Builder()
+            .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+            .setTryHarder(true)
+            .setMultipleBarcodes(true)
+            .build();
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Path mRoot;
+
+    private static void writeCode(File file, BarcodeFormat format, String contents, int width,
+                                  int height) throws Exception {
+        MatrixToImageWriter.writeToPath(new MultiFormatWriter().encode(contents, format, width,
+                height), "png", file.toPath());
+    }
+
+    private static String lineOf(String output, String name) {
+        for (String line : output.split("\n")) {
+            if (line.contains("\"path\":") && line.contains(name + "\"")) {
+                return line;
+            }
+        }
+        fail(name + " not in " + output);
+        return null;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mRoot = mFolder.newFolder("labels").toPath();
+        File bay = mFolder.newFolder("labels", "bay-1");
+        writeCode(new File(bay, "pallet.png"), BarcodeFormat.CODE_128, "PALLET-0042", 300, 120);
+        writeCode(new File(mRoot.toFile(), "manifest.PNG"), BarcodeFormat.QR_CODE,
+                "https://example.com/m/\"7\"", 200, 200);
+        writeCode(new File(bay, "blank.png"), BarcodeFormat.QR_CODE, "x", 200, 200);
+        // Overwritten with something that is not an image.
+        Files.write(new File(bay, "blank.png").toPath(), "not a png".getBytes(UTF_8));
+        Files.write(new File(bay, "notes.txt").toPath(), "ignored".getBytes(UTF_8));
+    }
+
+    @Test
+    public void run_writesOneLinePerImage() throws Exception {
+        StringWriter output = new StringWriter();
+        BulkDecoder.Summary summary = new BulkDecoder(new FrameDecoder(CONFIG), 2,
+                Long.MAX_VALUE).run(Collections.singletonList(mRoot), output,
+                DecodeCheckpoint.NONE);
+
+        String lines = output.toString();
+        assertEquals(3, lines.split("\n").length);
+        String pallet = lineOf(lines, "pallet.png");
+        assertTrue(pallet, pallet.contains(
+                "\"barcodes\":[{\"format\":\"CODE_128\",\"text\":\"PALLET-0042\",\"points\":[["));
+        assertTrue(pallet, pallet.contains("\"width\":300,"));
+        assertTrue(pallet, Pattern.compile("\"read_ms\":\\d+\\.\\d{3},\"decode_ms\":\\d+\\.\\d{3}")
+                .matcher(pallet).find());
+        assertTrue(lines, lineOf(lines, "manifest.PNG")
+                .contains("\"text\":\"https://example.com/m/\\\"7\\\"\""));
+        assertTrue(lines, lineOf(lines, "blank.png").contains("\"error\":"));
+
+        assertEquals(2, summary.getDecoded());
+        assertEquals(2, summary.getBarcodes());
+        assertEquals(1, summary.getFailed());
+        assertEquals(0, summary.getSkipped());
+    }
+
+    @Test
+    public void run_resumesFromCheckpoint() throws Exception {
+        Path checkpointFile = mFolder.getRoot().toPath().resolve("run.done");
+        BulkDecoder decoder = new BulkDecoder(new FrameDecoder(CONFIG), 2, Long.MAX_VALUE);
+        // An earlier run that stopped after the pallet, in the middle of writing a path.
+        Files.write(checkpointFile, (DecodeCheckpoint.key(mRoot.resolve("bay-1/pallet.png"))
+                + "\n" + mRoot).getBytes(UTF_8));
+
+        StringWriter output = new StringWriter();
+        try (DecodeCheckpoint checkpoint = DecodeCheckpoint.open(checkpointFile)) {
+            BulkDecoder.Summary summary = decoder.run(Collections.singletonList(mRoot), output,
+                    checkpoint);
+            assertEquals(1, summary.getSkipped());
+            assertEquals(1, summary.getDecoded());
+            assertEquals(3, checkpoint.getDoneCount());
+        }
+        assertFalse(output.toString().contains("pallet.png"));
+
+        output = new StringWriter();
+        try (DecodeCheckpoint checkpoint = DecodeCheckpoint.open(checkpointFile)) {
+            BulkDecoder.Summary summary = decoder.run(Collections.singletonList(mRoot), output,
+                    checkpoint);
+            assertEquals(3, summary.getSkipped());
+            assertEquals(0, summary.getDecoded());
+        }
+        assertEquals("", output.toString());
+        // The cut short line was ended, every path is on a line of its own.
+        assertEquals(4, Files.readAllLines(checkpointFile, UTF_8).size());
+    }
+
+    @Test
+    public void largeImage_isSubsampled() throws Exception {
+        File poster = new File(mRoot.toFile(), "poster.png");
+        writeCode(poster, BarcodeFormat.QR_CODE, "poster", 1200, 1200);
+        StringWriter output = new StringWriter();
+        new BulkDecoder(new FrameDecoder(CONFIG), 1, 400 * 400).run(
+                Collections.singletonList(poster.toPath()), output, DecodeCheckpoint.NONE);
+
+        String line = output.toString();
+        assertTrue(line, line.contains("\"width\":1200,\"height\":1200,\"subsampling\":3,"));
+        assertTrue(line, line.contains("\"text\":\"poster\""));
+        // Points in the coordinates of the original image, beyond the subsampled 400 pixels.
+        Matcher point = Pattern.compile("\\[(\\d+\\.\\d),(\\d+\\.\\d)\\]").matcher(line);
+        float maxX = 0;
+        while (point.find()) {
+            maxX = Math.max(maxX, Float.parseFloat(point.group(1)));
+        }
+        assertTrue(line, maxX > 600);
+    }
+
+    @Test(timeout = 30000)
+    public void throwingDecoder_isReportedAndDoesNotHang() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            writeCode(new File(mRoot.toFile(), "tote-" + i + ".png"), BarcodeFormat.QR_CODE,
+                    "tote " + i, 100, 100);
+        }
+        FrameDecoder broken = new FrameDecoder(CONFIG) {
+            @Override
+            public Result[] decodeMultiple(LuminanceSource source) {
+                throw new IllegalStateException("broken reader");
+            }
+        };
+        StringWriter output = new StringWriter();
+        BulkDecoder.Summary summary = new BulkDecoder(broken, 2, Long.MAX_VALUE).run(
+                Collections.singletonList(mRoot), output, DecodeCheckpoint.NONE);
+
+        String lines = output.toString();
+        assertEquals(23, lines.split("\n").length);
+        String pallet = lineOf(lines, "pallet.png");
+        assertTrue(pallet, pallet.contains("\"error\":\"java.lang.IllegalStateException: "
+                + "broken reader\""));
+        assertEquals(0, summary.getDecoded());
+        assertEquals(23, summary.getFailed());
+    }
+
+    @Test
+    public void subsampling_fitsPixelLimit() throws Exception {
+        assertEquals(1, BulkDecoder.subsampling(4000, 3000, 12000000));
+        assertEquals(2, BulkDecoder.subsampling(4001, 3000, 12000000));
+        assertEquals(4, BulkDecoder.subsampling(8000, 6000, 3000000));
+    }
+
+    @Test
+    public void jsonLines_escapesStrings() throws Exception {
+        String line = new JsonLines().begin()
+                .name("text").value("a\"b\\c\nd\u0001e\u2028")
+                .name("none").value((String) null)
+                .name("list").beginArray().value(1).value(2.5, 1).endArray()
+                .end();
+        assertEquals("{\"text\":\"a\\\"b\\\\c\\nd\\u0001e\\u2028\",\"none\":null,"
+                + "\"list\":[1,2.5]}\n", line);
+        assertEquals(Arrays.asList(line.trim()), Arrays.asList(line.split("\n")));
+    }
+}
@@ -0,0 +1,137 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames per second and barcodes found per second of {@link FrameDecoder#decode} with each
+ * {@link BinarizerStrategy}, on 1280x720 frames holding CODE_128 and QR_CODE labels in turn, with
+ * sensor noise:
+ * <ul>
+ * <li>{@code EVEN}: evenly lit labels.</li>
+ * <li>{@code SHADOW}: light falling from the left edge to a quarter of it at the right edge.</li>
+ * <li>{@code EMPTY}: frames without any label, the bulk of what a scanner decodes.</li>
+ * <li>{@code MIXED}: a label in one frame out of four, evenly lit and shadowed in turn.</li>
+ * </ul>
+ * Recall is {@code found} divided by the frame rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinarizerBenchmark {
+
+    private static final int FRAME_WIDTH = 1280;
+    private static final int FRAME_HEIGHT = 720;
+    private static final int FRAME_COUNT = 8;
+    private static final int NOISE_SIGMA = 6;
+    private static final long NOISE_SEED = 42;
+
+    @Param({"HYBRID", "GLOBAL_HISTOGRAM", "ADAPTIVE"})
+    public BinarizerStrategy strategy;
+
+    @Param({"EVEN", "SHADOW", "EMPTY", "MIXED"})
+    public String scene;
+
+    /**
+     * Counts the barcodes found, reported by JMH as a rate next to the frames.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Found {
+        public long found;
+    }
+
+    private final LuminanceSource[] mFrames = new LuminanceSource[FRAME_COUNT];
+    private FrameDecoder mDecoder;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random = new Random(NOISE_SEED);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            boolean label;
+            boolean shadow;
+            switch (scene) {
+                case "EVEN":
+                    label = true;
+                    shadow = false;
+                    break;
+                case "SHADOW":
+                    label = true;
+                    shadow = true;
+                    break;
+                case "EMPTY":
+                    label = false;
+                    shadow = i % 2 == 1;
+                    break;
+                default:
+                    label = i % 4 == 0;
+                    shadow = i % 8 == 4;
+                    break;
+            }
+            byte[] pixels = TestBarcodes.blank(FRAME_WIDTH, FRAME_HEIGHT);
+            if (label) {
+                BufferedImage code = i % 2 == 0
+                        ? TestBarcodes.render(BarcodeFormat.CODE_128, "PALLET-" + (1000 + i),
+                        360, 120)
+                        : TestBarcodes.render(BarcodeFormat.QR_CODE, "https://example.com/p/" + i,
+                        220, 220);
+                // On the right, where the shadow is deepest.
+                TestBarcodes.paste(pixels, FRAME_WIDTH, code, FRAME_WIDTH * 3 / 4
+                        - code.getWidth() / 2, (FRAME_HEIGHT - code.getHeight()) / 2);
+            }
+            for (int y = 0; y < FRAME_HEIGHT; y++) {
+                for (int x = 0; x < FRAME_WIDTH; x++) {
+                    float light = shadow ? 1f - 0.75f * x / (FRAME_WIDTH - 1) : 1f;
+                    int luminance = Math.round((pixels[y * FRAME_WIDTH + x] & 0xFF) * light
+                            + (float) random.nextGaussian() * NOISE_SIGMA);
+                    pixels[y * FRAME_WIDTH + x] = (byte) Math.max(0, Math.min(255, luminance));
+                }
+            }
+            mFrames[i] = TestBarcodes.source(pixels, FRAME_WIDTH, FRAME_HEIGHT);
+        }
+        mDecoder = new FrameDecoder(new DecoderConfig.Builder()
+                .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+                .setBinarizerStrategy(strategy)
+                .build());
+    }
+
+    /**
+     * @return the decoded barcode, or null if none was found.
+     */
+    @Benchmark
+    public Result decode(Found counter) {
+        LuminanceSource frame = mFrames[mNext];
+        mNext = (mNext + 1) % FRAME_COUNT;
+        try {
+            Result result = mDecoder.decode(frame);
+            counter.found++;
+            return result;
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+}
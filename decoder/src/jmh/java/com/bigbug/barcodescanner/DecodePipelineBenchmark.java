@@ -0,0 +1,92 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the whole decode pipeline as the app runs it on a YUV_420_888 frame: wrapping the
+ * Y plane, cropping to the scan window, turning the frame upright and decoding it.
+ * <p/>
+ * Frames vary by symbology, size, sensor rotation, blur and noise.  Run through the {@code jmh}
+ * Gradle task, which also reports the allocation rate per decode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodePipelineBenchmark {
+
+    /**
+     * The scan window of the app, in upright coordinates.
+     */
+    private static final ScanWindow SCAN_WINDOW = ScanWindow.centered(0.8f, 0.5f);
+
+    @Param({"CODE_128", "QR_CODE"})
+    public String symbology;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String size;
+
+    @Param({"0", "90"})
+    public int rotation;
+
+    @Param({"0", "1", "2"})
+    public int blur;
+
+    @Param({"0", "12"})
+    public int noise;
+
+    private SyntheticFrames mFrame;
+    private ScanWindow mImageWindow;
+    private FrameDecoder mDecoder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String[] dimensions = size.split("x");
+        BarcodeFormat format = BarcodeFormat.valueOf(symbology);
+        mFrame = SyntheticFrames.create(format, contents(format),
+                Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), rotation,
+                SCAN_WINDOW, blur, noise);
+        mImageWindow = SCAN_WINDOW.mapToImage(rotation, false);
+        mDecoder = new FrameDecoder(new DecoderConfig.Builder()
+                .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+                .setPyramidLevels(2)
+                .build());
+    }
+
+    private static String contents(BarcodeFormat format) {
+        return format == BarcodeFormat.QR_CODE ? "https://example.com/p/42" : "PALLET-0042";
+    }
+
+    /**
+     * @return the decoded barcode, or null if the frame is too degraded to be decoded.
+     */
+    @Benchmark
+    public Result decode() {
+        try {
+            return mDecoder.decode(CameraFrames.fromYPlane(mFrame.getBuffer(),
+                    mFrame.getRowStride(), 1, mFrame.getWidth(), mFrame.getHeight(),
+                    mImageWindow, rotation));
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+}
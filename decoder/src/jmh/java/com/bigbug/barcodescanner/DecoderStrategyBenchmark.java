@@ -0,0 +1,109 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decode strategies on the same 1280x720 frames:
+ * <ul>
+ * <li>{@code FRESH_READER}: a new {@link MultiFormatReader} per frame, trying every format, as
+ * the app used to.</li>
+ * <li>{@code ALL_FORMATS}: a reused {@link FrameDecoder} trying every format.</li>
+ * <li>{@code RESTRICTED}: a reused {@link FrameDecoder} restricted to CODE_128 and QR_CODE.</li>
+ * <li>{@code PYRAMID}: the restricted decoder, trying a quarter of the frame first.</li>
+ * </ul>
+ * Empty frames are included, misses are the common case while the operator is still aiming.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderStrategyBenchmark {
+
+    private static final int FRAME_WIDTH = 1280;
+    private static final int FRAME_HEIGHT = 720;
+
+    @Param({"FRESH_READER", "ALL_FORMATS", "RESTRICTED", "PYRAMID"})
+    public String strategy;
+
+    @Param({"CODE_128", "QR_CODE", "EMPTY"})
+    public String frame;
+
+    private LuminanceSource mSource;
+    private FrameDecoder mDecoder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        byte[] pixels;
+        if ("EMPTY".equals(frame)) {
+            pixels = TestBarcodes.blank(FRAME_WIDTH, FRAME_HEIGHT);
+        } else {
+            BarcodeFormat format = BarcodeFormat.valueOf(frame);
+            BufferedImage code = TestBarcodes.render(format,
+                    format == BarcodeFormat.QR_CODE ? "https://example.com/p/42" : "PALLET-0042",
+                    400, 200);
+            pixels = TestBarcodes.frame(FRAME_WIDTH, FRAME_HEIGHT, code,
+                    (FRAME_WIDTH - code.getWidth()) / 2, (FRAME_HEIGHT - code.getHeight()) / 2);
+        }
+        mSource = TestBarcodes.source(pixels, FRAME_WIDTH, FRAME_HEIGHT);
+
+        DecoderConfig restricted = new DecoderConfig.Builder()
+                .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+                .build();
+        switch (strategy) {
+            case "ALL_FORMATS":
+                mDecoder = new FrameDecoder(DecoderConfig.DEFAULT);
+                break;
+            case "RESTRICTED":
+                mDecoder = new FrameDecoder(restricted);
+                break;
+            case "PYRAMID":
+                mDecoder = new FrameDecoder(new DecoderConfig.Builder(restricted)
+                        .setPyramidLevels(2)
+                        .build());
+                break;
+            default:
+                mDecoder = null;
+                break;
+        }
+    }
+
+    /**
+     * @return the decoded barcode, or null for empty frames.
+     */
+    @Benchmark
+    public Result decode() {
+        try {
+            if (mDecoder == null) {
+                return new MultiFormatReader().decode(
+                        new BinaryBitmap(new HybridBinarizer(mSource)));
+            }
+            return mDecoder.decode(mSource);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time {@link FrameQualityGate} takes to turn away a blurred 1280x720 frame of a CODE_128 label,
+ * against the full failed decode it saves, upright and rotated by a quarter turn as sideways
+ * sensors deliver it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameQualityGateBenchmark {
+
+    private static final int FRAME_WIDTH = 1280;
+    private static final int FRAME_HEIGHT = 720;
+    private static final int BLUR_RADIUS = 4;
+    private static final int NOISE_SIGMA = 4;
+    private static final long NOISE_SEED = 42;
+
+    private LuminanceSource mFrame;
+    private LuminanceSource mRotatedFrame;
+    private FrameQualityGate mGate;
+    private FrameDecoder mDecoder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        byte[] sharp = TestBarcodes.frame(FRAME_WIDTH, FRAME_HEIGHT,
+                TestBarcodes.render(BarcodeFormat.CODE_128, "PALLET-1234", 360, 120), 460, 300);
+        byte[] pixels = new byte[sharp.length];
+        Random random = new Random(NOISE_SEED);
+        for (int y = 0; y < FRAME_HEIGHT; y++) {
+            for (int x = 0; x < FRAME_WIDTH; x++) {
+                // A box blur, as of a label out of focus.
+                int sum = 0;
+                int count = 0;
+                for (int yy = Math.max(0, y - BLUR_RADIUS);
+                     yy <= Math.min(FRAME_HEIGHT - 1, y + BLUR_RADIUS); yy++) {
+                    for (int xx = Math.max(0, x - BLUR_RADIUS);
+                         xx <= Math.min(FRAME_WIDTH - 1, x + BLUR_RADIUS); xx++) {
+                        sum += sharp[yy * FRAME_WIDTH + xx] & 0xFF;
+                        count++;
+                    }
+                }
+                int luminance = Math.round(sum / count + (float) random.nextGaussian()
+                        * NOISE_SIGMA);
+                pixels[y * FRAME_WIDTH + x] = (byte) Math.max(0, Math.min(255, luminance));
+            }
+        }
+        mFrame = TestBarcodes.source(pixels, FRAME_WIDTH, FRAME_HEIGHT);
+        mRotatedFrame = new YPlaneLuminanceSource(ByteBuffer.wrap(pixels), FRAME_WIDTH,
+                1, FRAME_WIDTH, FRAME_HEIGHT).rotateCounterClockwise();
+        mGate = new FrameQualityGate(0.004f, 0.002f, 0);
+        mDecoder = new FrameDecoder(new DecoderConfig.Builder()
+                .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+                .build());
+    }
+
+    @Benchmark
+    public FrameQualityGate.Verdict gate() {
+        return mGate.check(mFrame, false, 0, -1);
+    }
+
+    @Benchmark
+    public FrameQualityGate.Verdict gateRotated() {
+        return mGate.check(mRotatedFrame, false, 0, -1);
+    }
+
+    /**
+     * @return the decoded barcode, or null if none was found.
+     */
+    @Benchmark
+    public Result decode() {
+        try {
+            return mDecoder.decode(mFrame);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames per second binarized by {@link HybridBinarizer} and by {@link IncrementalBinarizer} with
+ * a change threshold of 0 and 4, on sequences of 1280x720 frames of a QR_CODE label:
+ * <ul>
+ * <li>{@code STILL}: a still camera, with fresh sensor noise in every frame.</li>
+ * <li>{@code STILL_CLEAN}: a still camera, without noise.</li>
+ * <li>{@code MOVING}: the label moving across a still background, with sensor noise.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IncrementalBinarizerBenchmark {
+
+    private static final int FRAME_WIDTH = 1280;
+    private static final int FRAME_HEIGHT = 720;
+    private static final int FRAME_COUNT = 8;
+    private static final int NOISE_SIGMA = 2;
+    private static final long NOISE_SEED = 42;
+
+    /**
+     * {@code HYBRID}, or the change threshold of the incremental binarizer.
+     */
+    @Param({"HYBRID", "0", "4"})
+    public String binarizer;
+
+    @Param({"STILL", "STILL_CLEAN", "MOVING"})
+    public String scene;
+
+    private final LuminanceSource[] mFrames = new LuminanceSource[FRAME_COUNT];
+    private IncrementalBinarizer mIncremental;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random = new Random(NOISE_SEED);
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.QR_CODE,
+                "https://example.com/p/42", 300, 300);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            byte[] pixels = TestBarcodes.blank(FRAME_WIDTH, FRAME_HEIGHT);
+            int left = scene.equals("MOVING") ? 200 + 40 * i : 490;
+            TestBarcodes.paste(pixels, FRAME_WIDTH, code, left, 210);
+            if (!scene.equals("STILL_CLEAN")) {
+                for (int p = 0; p < pixels.length; p++) {
+                    int luminance = Math.round((pixels[p] & 0xFF)
+                            + (float) random.nextGaussian() * NOISE_SIGMA);
+                    pixels[p] = (byte) Math.max(0, Math.min(255, luminance));
+                }
+            }
+            mFrames[i] = TestBarcodes.source(pixels, FRAME_WIDTH, FRAME_HEIGHT);
+        }
+        mIncremental = null;
+    }
+
+    @Benchmark
+    public BitMatrix binarize() throws NotFoundException {
+        LuminanceSource frame = mFrames[mNext];
+        mNext = (mNext + 1) % FRAME_COUNT;
+        if (binarizer.equals("HYBRID")) {
+            return new HybridBinarizer(frame).getBlackMatrix();
+        }
+        mIncremental = mIncremental == null
+                ? new IncrementalBinarizer(frame, Integer.parseInt(binarizer))
+                : mIncremental.next(frame);
+        return mIncremental.getBlackMatrix();
+    }
+}
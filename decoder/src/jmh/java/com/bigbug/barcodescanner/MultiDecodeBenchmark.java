@@ -0,0 +1,123 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Labels decoded per second on a 1920x1080 frame of a pallet, holding CODE_128 and QR_CODE labels
+ * in turn:
+ * <ul>
+ * <li>{@code SINGLE}: {@link FrameDecoder#decode}, one label per frame.</li>
+ * <li>{@code GENERIC}: ZXing's {@link GenericMultipleBarcodeReader} over a fresh
+ * {@link MultiFormatReader}, thresholding every crop again.</li>
+ * <li>{@code MULTI}: {@link FrameDecoder#decodeMultiple}, thresholding the frame once.</li>
+ * </ul>
+ * The {@code labels} counter is the number that matters, frames per second are reported too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiDecodeBenchmark {
+
+    private static final int FRAME_WIDTH = 1920;
+    private static final int FRAME_HEIGHT = 1080;
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 2;
+
+    @Param({"SINGLE", "GENERIC", "MULTI"})
+    public String strategy;
+
+    @Param({"1", "4", "8"})
+    public int labels;
+
+    /**
+     * Counts the labels decoded, reported by JMH as a rate next to the frames.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Labels {
+        public long labels;
+    }
+
+    private LuminanceSource mSource;
+    private FrameDecoder mDecoder;
+    private Map<DecodeHintType, Object> mHints;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        byte[] pixels = TestBarcodes.blank(FRAME_WIDTH, FRAME_HEIGHT);
+        int cellWidth = FRAME_WIDTH / COLUMNS;
+        int cellHeight = FRAME_HEIGHT / ROWS;
+        for (int i = 0; i < labels; i++) {
+            BufferedImage code = i % 2 == 0
+                    ? TestBarcodes.render(BarcodeFormat.CODE_128, "PALLET-" + (1000 + i), 360, 120)
+                    : TestBarcodes.render(BarcodeFormat.QR_CODE, "https://example.com/p/" + i,
+                    220, 220);
+            TestBarcodes.paste(pixels, FRAME_WIDTH, code,
+                    (i % COLUMNS) * cellWidth + (cellWidth - code.getWidth()) / 2,
+                    (i / COLUMNS) * cellHeight + (cellHeight - code.getHeight()) / 2);
+        }
+        mSource = TestBarcodes.source(pixels, FRAME_WIDTH, FRAME_HEIGHT);
+
+        DecoderConfig config = new DecoderConfig.Builder()
+                .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+                .setMultipleBarcodes(true)
+                .build();
+        mDecoder = new FrameDecoder(config);
+        mHints = config.toHints();
+    }
+
+    /**
+     * @return the decoded labels, or null if none was found.
+     */
+    @Benchmark
+    public Result[] decode(Labels counter) {
+        Result[] results;
+        try {
+            switch (strategy) {
+                case "SINGLE":
+                    results = new Result[]{mDecoder.decode(mSource)};
+                    break;
+                case "GENERIC":
+                    results = new GenericMultipleBarcodeReader(new MultiFormatReader())
+                            .decodeMultiple(new BinaryBitmap(new HybridBinarizer(mSource)), mHints);
+                    break;
+                default:
+                    results = mDecoder.decodeMultiple(mSource);
+                    break;
+            }
+        } catch (NotFoundException e) {
+            return null;
+        }
+        counter.labels += results.length;
+        return results;
+    }
+}
@@ -0,0 +1,154 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Builds camera-like frames for the benchmarks: a barcode in the middle of the scan window, seen
+ * through a sensor mounted at a given rotation, with blur and sensor noise, stored as a padded
+ * Y plane the way camera HALs hand them out.
+ */
+final class SyntheticFrames {
+
+    /**
+     * Rows of the Y plane are padded to a multiple of this many bytes, as on most devices.
+     */
+    private static final int ROW_ALIGNMENT = 64;
+
+    /**
+     * Seed of the sensor noise, so that every run measures the same frames.
+     */
+    private static final long NOISE_SEED = 42;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mRowStride;
+    private final ByteBuffer mBuffer;
+
+    private SyntheticFrames(byte[] frame, int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mRowStride = (width + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+        mBuffer = ByteBuffer.allocateDirect(mRowStride * (height - 1) + width);
+        for (int y = 0; y < height; y++) {
+            mBuffer.position(y * mRowStride);
+            mBuffer.put(frame, y * width, width);
+        }
+        mBuffer.clear();
+    }
+
+    /**
+     * Build a frame as delivered by a sensor that has to be rotated by {@code rotation} degrees
+     * clockwise to be upright.
+     *
+     * @param width      the width of the frame, in sensor orientation.
+     * @param height     the height of the frame, in sensor orientation.
+     * @param rotation   0 or 90.
+     * @param scanWindow the part of the upright frame that is decoded.
+     * @param blurRadius the radius of the box blur, in pixels, 0 for a sharp frame.
+     * @param noiseSigma the standard deviation of the Gaussian sensor noise, in gray levels.
+     */
+    static SyntheticFrames create(BarcodeFormat format, String contents, int width, int height,
+                                  int rotation, ScanWindow scanWindow, int blurRadius,
+                                  int noiseSigma) throws WriterException {
+        boolean sideways = rotation % 180 != 0;
+        int uprightWidth = sideways ? height : width;
+        int uprightHeight = sideways ? width : height;
+
+        // The barcode fills about half of the scan window, in the middle of it.
+        int windowWidth = scanWindow.getPixelWidth(uprightWidth);
+        int windowHeight = scanWindow.getPixelHeight(uprightHeight);
+        BufferedImage code = TestBarcodes.render(format, contents, windowWidth / 2,
+                format == BarcodeFormat.QR_CODE ? windowWidth / 2 : windowHeight / 2);
+        int left = scanWindow.getPixelLeft(uprightWidth) + (windowWidth - code.getWidth()) / 2;
+        int top = scanWindow.getPixelTop(uprightHeight) + (windowHeight - code.getHeight()) / 2;
+        byte[] upright = TestBarcodes.frame(uprightWidth, uprightHeight, code, left, top);
+
+        byte[] frame = sideways
+                ? rotateCounterClockwise(upright, uprightWidth, uprightHeight) : upright;
+        blur(frame, width, height, blurRadius);
+        addNoise(frame, noiseSigma);
+        return new SyntheticFrames(frame, width, height);
+    }
+
+    /**
+     * @return a view of the Y plane, positioned at its start.
+     */
+    ByteBuffer getBuffer() {
+        return mBuffer.duplicate();
+    }
+
+    int getRowStride() {
+        return mRowStride;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    private static byte[] rotateCounterClockwise(byte[] source, int width, int height) {
+        byte[] rotated = new byte[source.length];
+        // The rotated frame is height pixels wide and width pixels high.
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                rotated[(width - 1 - x) * height + y] = source[y * width + x];
+            }
+        }
+        return rotated;
+    }
+
+    /**
+     * Separable box blur, a cheap stand-in for defocus and motion.
+     */
+    private static void blur(byte[] frame, int width, int height, int radius) {
+        if (radius <= 0) {
+            return;
+        }
+        int[] line = new int[Math.max(width, height)];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                line[x] = frame[y * width + x] & 0xff;
+            }
+            for (int x = 0; x < width; x++) {
+                frame[y * width + x] = (byte) average(line, x, width, radius);
+            }
+        }
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                line[y] = frame[y * width + x] & 0xff;
+            }
+            for (int y = 0; y < height; y++) {
+                frame[y * width + x] = (byte) average(line, y, height, radius);
+            }
+        }
+    }
+
+    private static int average(int[] line, int center, int length, int radius) {
+        int from = Math.max(0, center - radius);
+        int to = Math.min(length - 1, center + radius);
+        int sum = 0;
+        for (int i = from; i <= to; i++) {
+            sum += line[i];
+        }
+        return sum / (to - from + 1);
+    }
+
+    private static void addNoise(byte[] frame, int sigma) {
+        if (sigma <= 0) {
+            return;
+        }
+        Random random = new Random(NOISE_SEED);
+        for (int i = 0; i < frame.length; i++) {
+            int value = (frame[i] & 0xff) + (int) Math.round(random.nextGaussian() * sigma);
+            frame[i] = (byte) Math.max(0, Math.min(255, value));
+        }
+    }
+}
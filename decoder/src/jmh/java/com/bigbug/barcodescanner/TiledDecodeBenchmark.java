@@ -0,0 +1,109 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of decoding one high-resolution frame on a single thread, as {@link FrameDecoder} does,
+ * against {@link TiledFrameDecoder} spreading the tiles over four threads.
+ * <p/>
+ * The barcode sits in the center of the frame, where the operator aims, or off in a corner; empty
+ * frames show the cost of a miss, when every tile is decoded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TiledDecodeBenchmark {
+
+    private static final int THREADS = 4;
+
+    @Param({"SINGLE", "TILED_2x2", "TILED_3x3"})
+    public String strategy;
+
+    @Param({"1920x1080", "3264x2448"})
+    public String size;
+
+    @Param({"CENTER", "CORNER", "EMPTY"})
+    public String position;
+
+    private LuminanceSource mSource;
+    private FrameDecoder mDecoder;
+    private ForkJoinPool mPool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        int height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+        byte[] pixels = TestBarcodes.blank(width, height);
+        if (!"EMPTY".equals(position)) {
+            BufferedImage code = TestBarcodes.render(BarcodeFormat.CODE_128, "PALLET-0042",
+                    width / 5, height / 8);
+            int left = "CENTER".equals(position)
+                    ? (width - code.getWidth()) / 2 : width - code.getWidth() - width / 20;
+            int top = "CENTER".equals(position)
+                    ? (height - code.getHeight()) / 2 : height / 6;
+            TestBarcodes.paste(pixels, width, code, left, top);
+        }
+        mSource = TestBarcodes.source(pixels, width, height);
+
+        DecoderConfig config = new DecoderConfig.Builder()
+                .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+                .build();
+        mPool = new ForkJoinPool(THREADS);
+        switch (strategy) {
+            case "TILED_2x2":
+                mDecoder = new TiledFrameDecoder(new DecoderConfig.Builder(config)
+                        .setTiles(2, 2, 0.5f)
+                        .build(), mPool);
+                break;
+            case "TILED_3x3":
+                mDecoder = new TiledFrameDecoder(new DecoderConfig.Builder(config)
+                        .setTiles(3, 3, 0.5f)
+                        .build(), mPool);
+                break;
+            default:
+                mDecoder = new FrameDecoder(config);
+                break;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mPool.shutdownNow();
+    }
+
+    /**
+     * @return the decoded barcode, or null if none was found.
+     */
+    @Benchmark
+    public Result decode() {
+        try {
+            return mDecoder.decode(mSource);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+}
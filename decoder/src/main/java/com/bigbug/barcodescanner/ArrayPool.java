@@ -0,0 +1,195 @@
+package com.bigbug.barcodescanner;
+
+/**
+ * A bounded pool of {@code byte[]} and {@code int[]} frame buffers, keyed by length.
+ * <p/>
+ * Frames of a capture session all have the same size, so after the first few frames every
+ * request is served from the pool and no frame buffer is allocated per frame.  Acquiring and releasing
+ * never allocate themselves: buffers are kept in a fixed array of slots, and a request is served
+ * by the smallest pooled buffer that is large enough (but not wastefully larger).  New buffers are
+ * rounded up to a coarse granularity, so an acquired buffer may be longer than requested.
+ * <p/>
+ * This class is thread safe.
+ */
+public final class ArrayPool {
+
+    /**
+     * A pooled buffer is only handed out if it is at most this many times the (rounded up)
+     * requested length, so a small request never pins a full-frame buffer.
+     */
+    private static final int MAX_SLACK_FACTOR = 2;
+
+    /**
+     * New buffers are rounded up to a multiple of this many elements, so that compressed frames
+     * whose sizes differ by a few bytes share the same pooled buffer.
+     */
+    private static final int LENGTH_GRANULARITY = 16 * 1024;
+
+    private final Object[] mSlots;
+    private final long mMaxRetainedBytes;
+
+    private long mRetainedBytes;
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    /**
+     * @param maxArrays        the maximum number of buffers kept for reuse.
+     * @param maxRetainedBytes the maximum total size, in bytes, of the buffers kept for reuse.
+     */
+    public ArrayPool(int maxArrays, long maxRetainedBytes) {
+        if (maxArrays < 1 || maxRetainedBytes < 1) {
+            throw new IllegalArgumentException("Pool capacity must be positive.");
+        }
+        mSlots = new Object[maxArrays];
+        mMaxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * Return a {@code byte[]} of at least {@code minLength} elements, reusing a pooled one if
+     * possible.  The content of the array is undefined.
+     */
+    public byte[] acquireBytes(int minLength) {
+        synchronized (this) {
+            int slot = findSlotLocked(byte[].class, minLength);
+            if (slot >= 0) {
+                byte[] array = (byte[]) mSlots[slot];
+                takeLocked(slot, array.length);
+                return array;
+            }
+            mMisses++;
+        }
+        return new byte[roundUp(minLength)];
+    }
+
+    /**
+     * Return a {@code int[]} of at least {@code minLength} elements, reusing a pooled one if
+     * possible.  The content of the array is undefined.
+     */
+    public int[] acquireInts(int minLength) {
+        synchronized (this) {
+            int slot = findSlotLocked(int[].class, minLength);
+            if (slot >= 0) {
+                int[] array = (int[]) mSlots[slot];
+                takeLocked(slot, 4L * array.length);
+                return array;
+            }
+            mMisses++;
+        }
+        return new int[roundUp(minLength)];
+    }
+
+    /**
+     * Give a buffer back to the pool.  The caller must not touch it afterwards.
+     *
+     * @param array a buffer, may be null.
+     */
+    public void releaseBytes(byte[] array) {
+        if (array != null) {
+            release(array, array.length);
+        }
+    }
+
+    /**
+     * Give a buffer back to the pool.  The caller must not touch it afterwards.
+     *
+     * @param array a buffer, may be null.
+     */
+    public void releaseInts(int[] array) {
+        if (array != null) {
+            release(array, 4L * array.length);
+        }
+    }
+
+    /**
+     * @return the number of requests served from the pool.
+     */
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * @return the number of requests that had to allocate a new buffer.
+     */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return the number of released buffers dropped because the pool was full.
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+
+    /**
+     * @return the total size, in bytes, of the buffers currently kept for reuse.
+     */
+    public synchronized long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    /**
+     * Drop every pooled buffer, e.g. when the capture size changes.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < mSlots.length; i++) {
+            mSlots[i] = null;
+        }
+        mRetainedBytes = 0;
+    }
+
+    private synchronized void release(Object array, long bytes) {
+        if (bytes > mMaxRetainedBytes) {
+            mEvictions++;
+            return;
+        }
+        int free = -1;
+        for (int i = 0; i < mSlots.length; i++) {
+            if (mSlots[i] == array) {
+                // Released twice, it is already pooled.
+                return;
+            }
+            if (free < 0 && mSlots[i] == null) {
+                free = i;
+            }
+        }
+        if (free < 0 || mRetainedBytes + bytes > mMaxRetainedBytes) {
+            mEvictions++;
+            return;
+        }
+        mSlots[free] = array;
+        mRetainedBytes += bytes;
+    }
+
+    private int findSlotLocked(Class<?> type, int minLength) {
+        long maxLength = (long) roundUp(minLength) * MAX_SLACK_FACTOR;
+        int best = -1;
+        int bestLength = Integer.MAX_VALUE;
+        for (int i = 0; i < mSlots.length; i++) {
+            Object candidate = mSlots[i];
+            if (candidate == null || candidate.getClass() != type) {
+                continue;
+            }
+            int length = type == byte[].class
+                    ? ((byte[]) candidate).length : ((int[]) candidate).length;
+            if (length >= minLength && length < bestLength && length <= maxLength) {
+                best = i;
+                bestLength = length;
+            }
+        }
+        return best;
+    }
+
+    private static int roundUp(int length) {
+        long rounded = (length + (long) LENGTH_GRANULARITY - 1) / LENGTH_GRANULARITY
+                * LENGTH_GRANULARITY;
+        return rounded > Integer.MAX_VALUE - 8 ? length : (int) rounded;
+    }
+
+    private void takeLocked(int slot, long bytes) {
+        mSlots[slot] = null;
+        mRetainedBytes -= bytes;
+        mHits++;
+    }
+}
@@ -0,0 +1,119 @@
+package com.bigbug.barcodescanner;
+
+/**
+ * Learns which binarizer finds barcodes in the current scene, for
+ * {@link BinarizerStrategy#ADAPTIVE}.
+ * <p/>
+ * Frames are sorted into evenly and unevenly lit ones by {@link FrameStatistics}.  For each kind,
+ * the selector keeps a decaying rate of success of each binarizer, over the frames it was tried
+ * on.  The binarizer tried first is the cheap {@link BinarizerStrategy#GLOBAL_HISTOGRAM} on evenly
+ * lit frames and {@link BinarizerStrategy#HYBRID} on the others, unless the other binarizer has
+ * been clearly more successful lately.  While the hybrid binarizer finds nothing either, as in a
+ * scene without any barcode, whose frames have no contrast and so count as unevenly lit, the
+ * global one goes first anyway.
+ * <p/>
+ * The second binarizer is only tried on a miss while it keeps finding barcodes, and otherwise once
+ * every {@link #EXPLORE_INTERVAL} misses, so that frames without any barcode do not pay for both.
+ * A barcode that only the hybrid binarizer finds is then found within that many frames, and
+ * brings the hybrid binarizer back.
+ * <p/>
+ * This class is thread safe.
+ */
+final class BinarizerSelector {
+
+    /**
+     * Weight of the newest outcome in the decaying success rates.
+     */
+    private static final float DECAY = 0.05f;
+
+    /**
+     * The other binarizer goes first once its success rate exceeds that of the preferred one by
+     * this much.
+     */
+    private static final float SWITCH_MARGIN = 0.2f;
+
+    /**
+     * A binarizer counts as finding barcodes while its success rate is at least this, which one
+     * success brings a rate of 0 up to.
+     */
+    private static final float MIN_SUCCESS_RATE = DECAY;
+
+    private static final int EXPLORE_INTERVAL = 4;
+
+    private static final float INITIAL_RATE = 0.5f;
+
+    private static final int EVEN = 0;
+    private static final int UNEVEN = 1;
+
+    private static final int HYBRID = 0;
+    private static final int GLOBAL = 1;
+
+    private static final BinarizerStrategy[] BINARIZERS = {
+            BinarizerStrategy.HYBRID, BinarizerStrategy.GLOBAL_HISTOGRAM
+    };
+
+    // *********************************************************************************************
+    // State protected by this.
+
+    /**
+     * Success rates by lighting and then by binarizer, {@link #HYBRID} or {@link #GLOBAL}.
+     */
+    private final float[][] mRates = {
+            {INITIAL_RATE, INITIAL_RATE}, {INITIAL_RATE, INITIAL_RATE}
+    };
+
+    private final int[] mMissesWithoutFallback = new int[2];
+
+    //**********************************************************************************************
+
+    /**
+     * @return the binarizer to try first on a frame.
+     */
+    synchronized BinarizerStrategy first(boolean evenlyLit) {
+        int lighting = evenlyLit ? EVEN : UNEVEN;
+        float[] rates = mRates[lighting];
+        int preferred = evenlyLit || rates[HYBRID] < MIN_SUCCESS_RATE ? GLOBAL : HYBRID;
+        int other = 1 - preferred;
+        return BINARIZERS[rates[other] > rates[preferred] + SWITCH_MARGIN ? other : preferred];
+    }
+
+    /**
+     * @return whether to try the other binarizer on a frame the given one found nothing in.
+     */
+    synchronized boolean shouldFallBack(boolean evenlyLit, BinarizerStrategy first) {
+        int lighting = evenlyLit ? EVEN : UNEVEN;
+        if (mRates[lighting][1 - index(first)] >= MIN_SUCCESS_RATE
+                || ++mMissesWithoutFallback[lighting] >= EXPLORE_INTERVAL) {
+            mMissesWithoutFallback[lighting] = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record whether a binarizer found a barcode in a frame.
+     */
+    synchronized void record(boolean evenlyLit, BinarizerStrategy binarizer, boolean found) {
+        float[] rates = mRates[evenlyLit ? EVEN : UNEVEN];
+        int index = index(binarizer);
+        rates[index] += DECAY * ((found ? 1f : 0f) - rates[index]);
+    }
+
+    /**
+     * @return the current success rate of a binarizer on frames of the given lighting.
+     */
+    synchronized float getSuccessRate(boolean evenlyLit, BinarizerStrategy binarizer) {
+        return mRates[evenlyLit ? EVEN : UNEVEN][index(binarizer)];
+    }
+
+    private static int index(BinarizerStrategy binarizer) {
+        switch (binarizer) {
+            case HYBRID:
+                return HYBRID;
+            case GLOBAL_HISTOGRAM:
+                return GLOBAL;
+            default:
+                throw new IllegalArgumentException(binarizer + " is not a binarizer.");
+        }
+    }
+}
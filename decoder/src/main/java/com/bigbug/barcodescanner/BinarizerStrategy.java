@@ -0,0 +1,29 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * How {@link FrameDecoder#decode} thresholds a frame before looking for a barcode in it.
+ */
+public enum BinarizerStrategy {
+
+    /**
+     * ZXing's {@link HybridBinarizer} on every frame, which thresholds each 8x8 block against its
+     * neighbourhood.  It copes with shadows and glare, and is the most expensive.
+     */
+    HYBRID,
+
+    /**
+     * ZXing's {@link GlobalHistogramBinarizer} on every frame, which thresholds each row against
+     * one histogram.  It is cheap, and only works on evenly lit frames.
+     */
+    GLOBAL_HISTOGRAM,
+
+    /**
+     * Pick the binarizer for each frame from a sample of its luminance, and try the other one
+     * when it finds nothing.  Which binarizer finds barcodes is learned as frames are decoded, see
+     * {@link BinarizerSelector}.
+     */
+    ADAPTIVE
+}
@@ -0,0 +1,59 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.LuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns camera frames into the luminance sources a {@link FrameDecoder} decodes: the part of the
+ * scanning pipeline between the camera and the decoder, kept free of Android types so that it can
+ * be benchmarked on the JVM.
+ */
+public final class CameraFrames {
+
+    private CameraFrames() {
+    }
+
+    /**
+     * Wrap the Y plane of a YUV_420_888 frame without copying it, restricted to the scan window
+     * and turned upright if the sensor is sideways.
+     *
+     * @param buffer      the plane buffer.
+     * @param rowStride   the distance between the starts of two rows, in bytes.
+     * @param pixelStride the distance between two pixels of a row, in bytes.
+     * @param width       the width of the frame, in pixels.
+     * @param height      the height of the frame, in pixels.
+     * @param scanWindow  the part of the frame to decode, in frame coordinates.
+     * @param rotation    the clockwise rotation, in degrees, needed to make the frame upright.
+     * @return the luminance source to decode.
+     */
+    public static LuminanceSource fromYPlane(ByteBuffer buffer, int rowStride, int pixelStride,
+                                             int width, int height, ScanWindow scanWindow,
+                                             int rotation) {
+        LuminanceSource source = new YPlaneLuminanceSource(buffer, rowStride, pixelStride, width,
+                height);
+        source = scanWindow.crop(source);
+
+        // YUV frames are not rotated by the camera the way JPEGs are.  1D readers scan rows, so
+        // turn the source upright when the sensor is sideways; an upside-down image decodes fine,
+        // so a half turn is never needed.
+        if (rotation % 180 != 0) {
+            source = source.rotateCounterClockwise();
+        }
+        return source;
+    }
+
+    /**
+     * Convert ARGB pixels into luminance values, using the same approximation as ZXing's
+     * {@link com.google.zxing.RGBLuminanceSource}.
+     */
+    public static void argbToLuminance(int[] argb, byte[] luminances, int count) {
+        for (int i = 0; i < count; i++) {
+            int pixel = argb[i];
+            int r = (pixel >> 16) & 0xff;
+            int g2 = (pixel >> 7) & 0x1fe;
+            int b = pixel & 0xff;
+            luminances[i] = (byte) ((r + g2 + b) / 4);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.bigbug.barcodescanner;
+
+/**
+ * Orientation math shared by the preview transform and the capture pipeline, kept free of
+ * Android types so it can be unit tested.
+ */
+public final class CameraOrientation {
+
+    private CameraOrientation() {
+    }
+
+    /**
+     * Rotation need to transform from the camera sensor orientation to the device's current
+     * orientation.
+     *
+     * @param sensorOrientation the clockwise angle, in degrees, the sensor image has to be rotated
+     *                          by to be upright in the native device orientation.
+     * @param deviceOrientation the current device orientation relative to the native device
+     *                          orientation, in degrees.
+     * @param frontFacing       whether the camera faces the same way as the screen.
+     * @return the total rotation from the sensor orientation to the current device orientation.
+     */
+    public static int sensorToDeviceRotation(int sensorOrientation, int deviceOrientation,
+                                             boolean frontFacing) {
+        // Reverse device orientation for front-facing cameras
+        if (frontFacing) {
+            deviceOrientation = -deviceOrientation;
+        }
+
+        // Calculate desired JPEG orientation relative to camera orientation to make
+        // the image upright relative to the device orientation
+        return ((sensorOrientation + deviceOrientation) % 360 + 360) % 360;
+    }
+}
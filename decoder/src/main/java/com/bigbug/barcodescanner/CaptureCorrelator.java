@@ -0,0 +1,559 @@
+package com.bigbug.barcodescanner;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pairs the capture result of every capture request with its image, without locks.
+ * <p/>
+ * Requests are registered in a preallocated ring buffer indexed by their sequence number.  Every
+ * slot has an atomic state word holding the sequence of its request and a set of flags, so that a
+ * result or an image meant for a request that has already been handled can never land in the
+ * slot of a newer one.  Results are delivered by sequence.  Images are matched by sensor
+ * timestamp: once the timestamp of a request is known, the image with the same timestamp goes to
+ * it.  Images that arrive before the timestamp of their request are parked until it is known.
+ * <p/>
+ * A request that is still incomplete after the maximum age, for example because its image was
+ * dropped, is evicted, and so are parked images nobody claimed.  A lost frame therefore never
+ * takes a slot, or an image out of a bounded reader, for longer than that.
+ * <p/>
+ * Whichever thread completes a slot, by delivering its result, its image, or by cancelling it,
+ * takes the values out, frees the slot and calls the {@link Callback}.  Values that will never be
+ * matched, such as the image of a cancelled request or an image without a request, are handed to
+ * {@link Callback#onDiscarded} so that their resources can be released.
+ * <p/>
+ * This class is thread safe.
+ *
+ * @param <T> the type of the state kept for every request.
+ * @param <R> the type of the capture results.
+ * @param <I> the type of the images.
+ */
+public class CaptureCorrelator<T, R, I> {
+
+    /**
+     * Receives completed requests, on the thread that completed them.
+     */
+    public interface Callback<T, R, I> {
+
+        /**
+         * Called when both the result and the image of a request have arrived.
+         */
+        void onMatched(T request, R result, I image);
+
+        /**
+         * Called with whatever arrived for a request that will not be matched.  Any argument may
+         * be null; the request is null for an image that no request was waiting for.
+         */
+        void onDiscarded(T request, R result, I image);
+    }
+
+    /**
+     * The slot is being filled by {@link #register(Object)}.
+     */
+    private static final int REGISTERING = 1;
+
+    /**
+     * The slot holds a request that is not completed yet.
+     */
+    private static final int IN_USE = 1 << 1;
+
+    /**
+     * The result, the image, or the timestamp has been claimed.  Its value is written right
+     * after the claim.
+     */
+    private static final int HAS_RESULT = 1 << 2;
+    private static final int HAS_IMAGE = 1 << 3;
+    private static final int HAS_TIMESTAMP = 1 << 6;
+
+    /**
+     * No result, or no image, will arrive.
+     */
+    private static final int NO_RESULT = 1 << 4;
+    private static final int NO_IMAGE = 1 << 5;
+
+    private static final int RESULT_DONE = HAS_RESULT | NO_RESULT;
+    private static final int IMAGE_DONE = HAS_IMAGE | NO_IMAGE;
+
+    /**
+     * States of the slots of parked images.
+     */
+    private static final int ORPHAN_FREE = 0;
+    private static final int ORPHAN_WRITING = 1;
+    private static final int ORPHAN_PARKED = 2;
+    private static final int ORPHAN_TAKING = 3;
+
+    private final Clock mClock;
+    private final long mMaxAgeNanos;
+    private final Callback<T, R, I> mCallback;
+    private final int mMask;
+
+    /**
+     * The sequence and the flags of every slot, as {@code sequence << 32 | flags}.
+     */
+    private final AtomicLongArray mStates;
+    private final AtomicLongArray mRegisteredNanos;
+    private final AtomicLongArray mTimestamps;
+    private final AtomicReferenceArray<T> mRequests;
+    private final AtomicReferenceArray<R> mResults;
+    private final AtomicReferenceArray<I> mImages;
+
+    /**
+     * Images waiting for the timestamp of their request, with their timestamps and arrival times.
+     */
+    private final AtomicIntegerArray mOrphanStates;
+    private final AtomicLongArray mOrphanTimestamps;
+    private final AtomicLongArray mOrphanNanos;
+    private final AtomicReferenceArray<I> mOrphans;
+
+    /**
+     * The sequence of the next request.
+     */
+    private final AtomicInteger mNextSequence = new AtomicInteger();
+
+    /**
+     * @param capacity    the number of requests that may be pending at the same time, and the
+     *                    number of images that may wait for their request, a power of two.
+     * @param clock       the clock to measure the age of requests and images with.
+     * @param maxAgeNanos the time after which incomplete requests and unclaimed images are
+     *                    discarded.
+     * @param callback    receives completed requests.
+     */
+    public CaptureCorrelator(int capacity, Clock clock, long maxAgeNanos,
+                             Callback<T, R, I> callback) {
+        if (clock == null || callback == null) throw new NullPointerException();
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two.");
+        }
+        if (maxAgeNanos <= 0) {
+            throw new IllegalArgumentException("Maximum age must be positive.");
+        }
+        mClock = clock;
+        mMaxAgeNanos = maxAgeNanos;
+        mCallback = callback;
+        mMask = capacity - 1;
+        mStates = new AtomicLongArray(capacity);
+        mRegisteredNanos = new AtomicLongArray(capacity);
+        mTimestamps = new AtomicLongArray(capacity);
+        mRequests = new AtomicReferenceArray<>(capacity);
+        mResults = new AtomicReferenceArray<>(capacity);
+        mImages = new AtomicReferenceArray<>(capacity);
+        mOrphanStates = new AtomicIntegerArray(capacity);
+        mOrphanTimestamps = new AtomicLongArray(capacity);
+        mOrphanNanos = new AtomicLongArray(capacity);
+        mOrphans = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Register a new capture request.  Expired requests are evicted first.
+     *
+     * @param request the state to hand back with the result and the image of the request.
+     * @return the sequence of the request, to pass to {@link #onResult(int, Object)} and
+     * {@link #cancel(int, boolean)}, or -1 if too many requests are pending.
+     */
+    public int register(T request) {
+        if (request == null) throw new NullPointerException();
+        evictExpired();
+        // Sequences whose slot is still taken by an older request are skipped, so that one
+        // stalled request does not hold up the others until it expires.
+        int busy = 0;
+        while (busy <= mMask) {
+            int sequence = mNextSequence.get();
+            int index = sequence & mMask;
+            long state = mStates.get(index);
+            if (flagsOf(state) != 0) {
+                if (sequenceOf(state) != sequence) {
+                    busy++;
+                }
+                // Skip the sequence, or help the thread that took it move on.
+                mNextSequence.compareAndSet(sequence, sequence + 1);
+                continue;
+            }
+            if (mStates.compareAndSet(index, state, stateOf(sequence, REGISTERING))) {
+                mNextSequence.compareAndSet(sequence, sequence + 1);
+                mRegisteredNanos.set(index, mClock.nanoTime());
+                mTimestamps.set(index, 0);
+                mRequests.set(index, request);
+                mStates.set(index, stateOf(sequence, IN_USE));
+                return sequence;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Look up a request that is still waiting for its result.  Until the result is delivered, the
+     * request is not handed to any other thread, so the caller may update it before calling
+     * {@link #onResult(int, Object)}.
+     *
+     * @return the request, or null if it was cancelled or already has its result.
+     */
+    public T peek(int sequence) {
+        int index = sequence & mMask;
+        long state = mStates.get(index);
+        int flags = flagsOf(state);
+        if (sequenceOf(state) != sequence || (flags & IN_USE) == 0
+                || (flags & RESULT_DONE) != 0) {
+            return null;
+        }
+        return mRequests.get(index);
+    }
+
+    /**
+     * Record the sensor timestamp of a request, as soon as it is known, and hand it the image
+     * with that timestamp if it is already parked.  Later calls for the same request are
+     * ignored.
+     */
+    public void onTimestamp(int sequence, long timestamp) {
+        int index = sequence & mMask;
+        while (true) {
+            long state = mStates.get(index);
+            int flags = flagsOf(state);
+            if (sequenceOf(state) != sequence || (flags & IN_USE) == 0
+                    || (flags & HAS_TIMESTAMP) != 0) {
+                return;
+            }
+            if (mStates.compareAndSet(index, state, state | HAS_TIMESTAMP)) {
+                mTimestamps.set(index, timestamp);
+                break;
+            }
+        }
+        // The image may have been parked before the timestamp was known.
+        int orphan = findOrphan(timestamp);
+        I image = orphan >= 0 ? takeOrphan(orphan) : null;
+        if (image != null) {
+            if (!deliverImage(index, sequence, image)) {
+                mCallback.onDiscarded(null, null, image);
+            }
+        }
+    }
+
+    /**
+     * Deliver the capture result of a request.  Results of requests that have been cancelled,
+     * evicted or already have a result are discarded.
+     */
+    public void onResult(int sequence, R result) {
+        if (result == null) throw new NullPointerException();
+        int index = sequence & mMask;
+        while (true) {
+            long state = mStates.get(index);
+            int flags = flagsOf(state);
+            if (sequenceOf(state) != sequence || (flags & IN_USE) == 0
+                    || (flags & RESULT_DONE) != 0) {
+                mCallback.onDiscarded(null, result, null);
+                return;
+            }
+            long claimed = state | HAS_RESULT;
+            if (mStates.compareAndSet(index, state, claimed)) {
+                mResults.set(index, result);
+                completeIfDone(index, claimed);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deliver an image, to the request with the same sensor timestamp.  If that timestamp is not
+     * known yet, the image is parked until it is, or until it expires.  When too many images are
+     * parked, the oldest one is discarded.
+     */
+    public void onImage(long timestamp, I image) {
+        if (image == null) throw new NullPointerException();
+        evictExpired();
+        while (true) {
+            int index = findWaitingForImage(timestamp);
+            if (index >= 0) {
+                // Check the timestamp again, the slot may have been reused since.
+                int sequence = sequenceOf(mStates.get(index));
+                if (mTimestamps.get(index) == timestamp
+                        && deliverImage(index, sequence, image)) {
+                    return;
+                }
+                continue;
+            }
+            int orphan = park(timestamp, image);
+            // The timestamp may have been recorded while the image was being parked, in which
+            // case the recording thread may or may not have seen it.
+            if (findWaitingForImage(timestamp) < 0 || !unpark(orphan, image)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Give up on a request whose capture failed.  Whatever already arrived for it is discarded.
+     *
+     * @param imageExpected true if the camera still produces an image for the request, which is
+     *                      then discarded on arrival.
+     */
+    public void cancel(int sequence, boolean imageExpected) {
+        int index = sequence & mMask;
+        while (true) {
+            long state = mStates.get(index);
+            int flags = flagsOf(state);
+            if (sequenceOf(state) != sequence || (flags & IN_USE) == 0
+                    || (flags & RESULT_DONE) != 0) {
+                return;
+            }
+            long cancelled = state | NO_RESULT;
+            if (!imageExpected && (flags & IMAGE_DONE) == 0) {
+                cancelled |= NO_IMAGE;
+            }
+            if (mStates.compareAndSet(index, state, cancelled)) {
+                completeIfDone(index, cancelled);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Discard the requests registered, and the images parked, longer than the maximum age ago.
+     * Called by {@link #register(Object)} and {@link #onImage(long, Object)}, so that a stalled
+     * request never blocks its slot for long.
+     */
+    public void evictExpired() {
+        long now = mClock.nanoTime();
+        for (int index = 0; index <= mMask; index++) {
+            long state = mStates.get(index);
+            if ((flagsOf(state) & IN_USE) != 0
+                    && now - mRegisteredNanos.get(index) > mMaxAgeNanos) {
+                abandon(index, sequenceOf(state));
+            }
+            if (mOrphanStates.get(index) == ORPHAN_PARKED
+                    && now - mOrphanNanos.get(index) > mMaxAgeNanos
+                    && mOrphanStates.compareAndSet(index, ORPHAN_PARKED, ORPHAN_TAKING)) {
+                mCallback.onDiscarded(null, null, release(index));
+            }
+        }
+    }
+
+    /**
+     * Cancel every pending request and discard every parked image, when the camera is closed.
+     * Images arriving later are discarded.
+     */
+    public void clear() {
+        for (int index = 0; index <= mMask; index++) {
+            long state = mStates.get(index);
+            if ((flagsOf(state) & IN_USE) != 0) {
+                abandon(index, sequenceOf(state));
+            }
+            if (mOrphanStates.compareAndSet(index, ORPHAN_PARKED, ORPHAN_TAKING)) {
+                mCallback.onDiscarded(null, null, release(index));
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests registered and not completed yet.
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (int index = 0; index <= mMask; index++) {
+            if ((flagsOf(mStates.get(index)) & (REGISTERING | IN_USE)) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of images waiting for the timestamp of their request.
+     */
+    public int getParkedCount() {
+        int count = 0;
+        for (int index = 0; index <= mMask; index++) {
+            if (mOrphanStates.get(index) != ORPHAN_FREE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Complete the given request with whatever arrived for it so far.
+     */
+    private void abandon(int index, int sequence) {
+        while (true) {
+            long state = mStates.get(index);
+            int flags = flagsOf(state);
+            if (sequenceOf(state) != sequence || (flags & IN_USE) == 0) {
+                return;
+            }
+            long abandoned = state | ((flags & RESULT_DONE) == 0 ? NO_RESULT : 0)
+                    | ((flags & IMAGE_DONE) == 0 ? NO_IMAGE : 0);
+            if (abandoned == state) {
+                // Already completed by another thread, which is freeing the slot.
+                return;
+            }
+            if (mStates.compareAndSet(index, state, abandoned)) {
+                completeIfDone(index, abandoned);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hand an image to the request in the given slot, if it is still there and waiting for one.
+     *
+     * @return false if the request was completed or replaced in the meantime.
+     */
+    private boolean deliverImage(int index, int sequence, I image) {
+        while (true) {
+            long state = mStates.get(index);
+            int flags = flagsOf(state);
+            if (sequenceOf(state) != sequence || (flags & IN_USE) == 0
+                    || (flags & IMAGE_DONE) != 0) {
+                return false;
+            }
+            long claimed = state | HAS_IMAGE;
+            if (mStates.compareAndSet(index, state, claimed)) {
+                mImages.set(index, image);
+                completeIfDone(index, claimed);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * If the given state, just set by this thread, completes its slot, take the values out,
+     * free the slot and hand the values to the callback.  Only one thread can set a completing
+     * state, so no other thread touches the slot until it is freed.
+     */
+    private void completeIfDone(int index, long state) {
+        int flags = flagsOf(state);
+        if ((flags & RESULT_DONE) == 0 || (flags & IMAGE_DONE) == 0) {
+            return;
+        }
+        T request = mRequests.getAndSet(index, null);
+        R result = (flags & HAS_RESULT) != 0 ? take(mResults, index) : null;
+        I image = (flags & HAS_IMAGE) != 0 ? take(mImages, index) : null;
+        mStates.set(index, stateOf(sequenceOf(state), 0));
+
+        if ((flags & (NO_RESULT | NO_IMAGE)) == 0) {
+            mCallback.onMatched(request, result, image);
+        } else {
+            mCallback.onDiscarded(request, result, image);
+        }
+    }
+
+    /**
+     * Take a claimed value out of its slot, waiting for the claiming thread to write it if
+     * needed.  The wait is at most the few instructions between a claim and its write.
+     */
+    private static <V> V take(AtomicReferenceArray<V> values, int index) {
+        V value;
+        while ((value = values.getAndSet(index, null)) == null) {
+            Thread.yield();
+        }
+        return value;
+    }
+
+    /**
+     * @return the index of the slot waiting for the image with the given timestamp, or -1 if
+     * there is none.
+     */
+    private int findWaitingForImage(long timestamp) {
+        for (int index = 0; index <= mMask; index++) {
+            int flags = flagsOf(mStates.get(index));
+            if ((flags & IN_USE) != 0 && (flags & HAS_TIMESTAMP) != 0
+                    && (flags & IMAGE_DONE) == 0 && mTimestamps.get(index) == timestamp) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Park an image until the timestamp of its request is known, making room by discarding the
+     * oldest parked image if needed.
+     *
+     * @return the index of the parked image.
+     */
+    private int park(long timestamp, I image) {
+        while (true) {
+            int oldest = -1;
+            for (int index = 0; index <= mMask; index++) {
+                int state = mOrphanStates.get(index);
+                if (state == ORPHAN_FREE
+                        && mOrphanStates.compareAndSet(index, ORPHAN_FREE, ORPHAN_WRITING)) {
+                    mOrphanTimestamps.set(index, timestamp);
+                    mOrphanNanos.set(index, mClock.nanoTime());
+                    mOrphans.set(index, image);
+                    mOrphanStates.set(index, ORPHAN_PARKED);
+                    return index;
+                }
+                if (state == ORPHAN_PARKED && (oldest < 0
+                        || mOrphanNanos.get(index) - mOrphanNanos.get(oldest) < 0)) {
+                    oldest = index;
+                }
+            }
+            if (oldest >= 0
+                    && mOrphanStates.compareAndSet(oldest, ORPHAN_PARKED, ORPHAN_TAKING)) {
+                mCallback.onDiscarded(null, null, release(oldest));
+            }
+        }
+    }
+
+    /**
+     * @return the index of the parked image with the given timestamp, or -1 if there is none.
+     */
+    private int findOrphan(long timestamp) {
+        for (int index = 0; index <= mMask; index++) {
+            if (mOrphanStates.get(index) == ORPHAN_PARKED
+                    && mOrphanTimestamps.get(index) == timestamp) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the parked image at the given index, or null if another thread took it first.
+     */
+    private I takeOrphan(int index) {
+        if (!mOrphanStates.compareAndSet(index, ORPHAN_PARKED, ORPHAN_TAKING)) {
+            return null;
+        }
+        return release(index);
+    }
+
+    /**
+     * Take back an image parked by this thread.
+     *
+     * @return false if another thread took it first.
+     */
+    private boolean unpark(int index, I image) {
+        if (!mOrphanStates.compareAndSet(index, ORPHAN_PARKED, ORPHAN_TAKING)) {
+            return false;
+        }
+        if (mOrphans.get(index) != image) {
+            // Our image was taken, and the slot reused for another one.
+            mOrphanStates.set(index, ORPHAN_PARKED);
+            return false;
+        }
+        release(index);
+        return true;
+    }
+
+    /**
+     * Free the slot of a parked image being taken.
+     */
+    private I release(int index) {
+        I image = mOrphans.getAndSet(index, null);
+        mOrphanStates.set(index, ORPHAN_FREE);
+        return image;
+    }
+
+    private static long stateOf(int sequence, int flags) {
+        return ((long) sequence << 32) | (flags & 0xffffffffL);
+    }
+
+    private static int sequenceOf(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static int flagsOf(long state) {
+        return (int) state;
+    }
+}
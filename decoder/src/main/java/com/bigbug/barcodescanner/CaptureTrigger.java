@@ -0,0 +1,172 @@
+package com.bigbug.barcodescanner;
+
+import java.util.Locale;
+
+/**
+ * Decides, from the 3A state of each preview result, when a still capture is worth taking.
+ * <p/>
+ * A capture is taken as soon as the camera has settled: the autofocus has focused, passively or
+ * locked, and the auto-exposure is neither searching nor running a precapture sequence.  While
+ * either is still converging, captures are held back, since they would only come out blurred or
+ * badly exposed.  Autofocus is only waited for in continuous focus modes; fixed-focus lenses and
+ * the auto mode, which is never triggered here, stay inactive.
+ * <p/>
+ * Scenes the camera cannot settle on, such as a blank wall the autofocus keeps hunting on, would
+ * hold captures back forever, so captures resume once the camera has been converging for the
+ * maximum wait, until it settles again.
+ * <p/>
+ * States are the values of {@code CaptureResult.CONTROL_AF_STATE} and
+ * {@code CaptureResult.CONTROL_AE_STATE}, mirrored here to keep this class free of Android types,
+ * or {@link #STATE_UNKNOWN} when a result does not report them.
+ * <p/>
+ * This class is thread safe.
+ */
+public class CaptureTrigger {
+
+    public static final int STATE_UNKNOWN = -1;
+
+    public static final int AF_STATE_INACTIVE = 0;
+    public static final int AF_STATE_PASSIVE_SCAN = 1;
+    public static final int AF_STATE_PASSIVE_FOCUSED = 2;
+    public static final int AF_STATE_ACTIVE_SCAN = 3;
+    public static final int AF_STATE_FOCUSED_LOCKED = 4;
+    public static final int AF_STATE_NOT_FOCUSED_LOCKED = 5;
+    public static final int AF_STATE_PASSIVE_UNFOCUSED = 6;
+
+    public static final int AE_STATE_INACTIVE = 0;
+    public static final int AE_STATE_SEARCHING = 1;
+    public static final int AE_STATE_CONVERGED = 2;
+    public static final int AE_STATE_LOCKED = 3;
+    public static final int AE_STATE_FLASH_REQUIRED = 4;
+    public static final int AE_STATE_PRECAPTURE = 5;
+
+    /**
+     * Where the camera stands in settling.
+     */
+    public enum State {
+        /**
+         * Focus or exposure is converging, captures are held back.
+         */
+        CONVERGING,
+        /**
+         * Focus and exposure have settled, captures are taken.
+         */
+        SETTLED,
+        /**
+         * The camera has been converging for longer than the maximum wait, captures are taken
+         * anyway.
+         */
+        TIMED_OUT
+    }
+
+    private final Clock mClock;
+    private final long mMaxWaitNanos;
+
+    // *********************************************************************************************
+    // State protected by this.
+
+    private boolean mContinuousFocus;
+    private State mState = State.CONVERGING;
+    private long mWaitStartNanos;
+
+    private long mHeldCount;
+    private long mTimeoutCount;
+
+    //**********************************************************************************************
+
+    /**
+     * @param clock        the clock to measure the wait with.
+     * @param maxWaitNanos the time the camera may converge for before captures resume.
+     */
+    public CaptureTrigger(Clock clock, long maxWaitNanos) {
+        if (clock == null) throw new NullPointerException();
+        if (maxWaitNanos < 0) {
+            throw new IllegalArgumentException("Maximum wait must not be negative.");
+        }
+        mClock = clock;
+        mMaxWaitNanos = maxWaitNanos;
+        mWaitStartNanos = clock.nanoTime();
+    }
+
+    /**
+     * Start over for a new capture session, waiting for the camera to settle.
+     *
+     * @param continuousFocus whether the autofocus runs in a continuous mode, and has to be waited
+     *                        for.
+     */
+    public synchronized void reset(boolean continuousFocus) {
+        mContinuousFocus = continuousFocus;
+        mState = State.CONVERGING;
+        mWaitStartNanos = mClock.nanoTime();
+    }
+
+    /**
+     * Update the state from a preview result.
+     *
+     * @param afState the {@code CONTROL_AF_STATE} of the result, or {@link #STATE_UNKNOWN}.
+     * @param aeState the {@code CONTROL_AE_STATE} of the result, or {@link #STATE_UNKNOWN}.
+     * @return whether a capture may be taken now.
+     */
+    public synchronized boolean onResult(int afState, int aeState) {
+        if (isFocusSettled(afState) && isExposureSettled(aeState)) {
+            mState = State.SETTLED;
+            return true;
+        }
+        long now = mClock.nanoTime();
+        if (mState == State.SETTLED) {
+            mState = State.CONVERGING;
+            mWaitStartNanos = now;
+        }
+        if (mState == State.CONVERGING && now - mWaitStartNanos >= mMaxWaitNanos) {
+            mState = State.TIMED_OUT;
+            mTimeoutCount++;
+        }
+        if (mState == State.TIMED_OUT) {
+            return true;
+        }
+        mHeldCount++;
+        return false;
+    }
+
+    private boolean isFocusSettled(int afState) {
+        if (!mContinuousFocus) {
+            return true;
+        }
+        switch (afState) {
+            case STATE_UNKNOWN:
+            case AF_STATE_PASSIVE_FOCUSED:
+            case AF_STATE_FOCUSED_LOCKED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isExposureSettled(int aeState) {
+        return aeState != AE_STATE_SEARCHING && aeState != AE_STATE_PRECAPTURE;
+    }
+
+    public synchronized State getState() {
+        return mState;
+    }
+
+    /**
+     * @return the number of preview results on which a capture was held back.
+     */
+    public synchronized long getHeldCount() {
+        return mHeldCount;
+    }
+
+    /**
+     * @return the number of times the camera did not settle within the maximum wait.
+     */
+    public synchronized long getTimeoutCount() {
+        return mTimeoutCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%s, held %d, timeouts %d", mState, mHeldCount,
+                mTimeoutCount);
+    }
+}
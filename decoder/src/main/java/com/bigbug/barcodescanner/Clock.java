@@ -0,0 +1,23 @@
+package com.bigbug.barcodescanner;
+
+/**
+ * Source of monotonic time, so that time-driven logic can be tested with a fake clock.
+ */
+public interface Clock {
+
+    /**
+     * A clock backed by {@link System#nanoTime()}.
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * @return the current time in nanoseconds, only meaningful relative to other values returned
+     * by the same clock.
+     */
+    long nanoTime();
+}
@@ -0,0 +1,298 @@
+package com.bigbug.barcodescanner;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs decode tasks on a fixed number of dedicated threads, keeping at most a few frames waiting.
+ * <p/>
+ * When a frame is submitted while the queue is full, the oldest waiting frame is dropped and
+ * {@link Task#discard() discarded} right away, so its resources (e.g. an
+ * {@code android.media.Image} of a bounded {@code ImageReader}) are released
+ * immediately and the freshest frames are always the ones decoded.
+ * <p/>
+ * A task that throws is logged and counted as failed, and its thread goes on with the next one,
+ * so that a bug in a reader does not stop decoding.
+ * <p/>
+ * This class is thread safe.
+ */
+public class DecodeScheduler {
+
+    private static final Logger LOG = Logger.getLogger(DecodeScheduler.class.getName());
+
+    /**
+     * A unit of work for the {@link DecodeScheduler}.
+     */
+    public interface Task extends Runnable {
+
+        /**
+         * Release the resources held by this task without running it.  Called at most once, and
+         * never together with {@link #run()}.
+         */
+        void discard();
+    }
+
+    /**
+     * Receives the outcome of every submitted task, on the thread that ran or discarded it.
+     */
+    public interface Listener {
+
+        /**
+         * Called after a task has run.
+         *
+         * @param runNanos the time spent in {@link Task#run()}.
+         */
+        void onTaskCompleted(Task task, long runNanos);
+
+        /**
+         * Called after a task has been discarded without running.
+         */
+        void onTaskDiscarded(Task task);
+    }
+
+    private final Object mLock = new Object();
+
+    private final Thread[] mWorkers;
+
+    private volatile Listener mListener;
+
+    // *********************************************************************************************
+    // State protected by mLock.
+
+    /**
+     * Waiting tasks and their submission times, in a ring buffer starting at mHead.
+     */
+    private final Task[] mQueue;
+    private final long[] mSubmitTimes;
+    private int mHead;
+    private int mCount;
+
+    private int mActiveCount;
+    private boolean mShutdown;
+
+    private long mSubmittedCount;
+    private long mDroppedCount;
+    private long mCompletedCount;
+    private long mFailedCount;
+    private long mTotalLatencyNanos;
+    private long mMaxLatencyNanos;
+
+    //**********************************************************************************************
+
+    /**
+     * Create a scheduler and start its threads.
+     *
+     * @param name          prefix of the thread names.
+     * @param parallelism   the number of frames decoded at the same time.
+     * @param queueCapacity the number of frames that may wait for a thread.
+     */
+    public DecodeScheduler(String name, int parallelism, int queueCapacity) {
+        if (parallelism < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Parallelism and queue capacity must be positive.");
+        }
+        mQueue = new Task[queueCapacity];
+        mSubmitTimes = new long[queueCapacity];
+        mWorkers = new Thread[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            mWorkers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runWorker();
+                }
+            }, name + "-" + i);
+            mWorkers[i].setDaemon(true);
+            mWorkers[i].start();
+        }
+    }
+
+    /**
+     * Set the listener told about every task from now on, or null for none.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Queue a task, dropping the oldest waiting one if the queue is full.  Tasks submitted after
+     * {@link #shutdown()} are discarded.
+     */
+    public void submit(Task task) {
+        if (task == null) throw new NullPointerException();
+        Task dropped = null;
+        synchronized (mLock) {
+            if (mShutdown) {
+                dropped = task;
+            } else {
+                if (mCount == mQueue.length) {
+                    dropped = mQueue[mHead];
+                    mQueue[mHead] = null;
+                    mHead = (mHead + 1) % mQueue.length;
+                    mCount--;
+                }
+                int tail = (mHead + mCount) % mQueue.length;
+                mQueue[tail] = task;
+                mSubmitTimes[tail] = System.nanoTime();
+                mCount++;
+                mSubmittedCount++;
+                mLock.notify();
+            }
+            if (dropped != null) {
+                mDroppedCount++;
+            }
+        }
+        // Release the dropped frame outside of the lock, closing an Image is not free.
+        if (dropped != null) {
+            discard(dropped);
+        }
+    }
+
+    /**
+     * Stop the threads once their current task is done, and discard every waiting task.
+     */
+    public void shutdown() {
+        Task[] waiting;
+        synchronized (mLock) {
+            if (mShutdown) {
+                return;
+            }
+            mShutdown = true;
+            waiting = new Task[mCount];
+            for (int i = 0; i < mCount; i++) {
+                int index = (mHead + i) % mQueue.length;
+                waiting[i] = mQueue[index];
+                mQueue[index] = null;
+            }
+            mDroppedCount += mCount;
+            mCount = 0;
+            mLock.notifyAll();
+        }
+        for (Task task : waiting) {
+            discard(task);
+        }
+    }
+
+    /**
+     * @return the number of frames waiting for a thread.
+     */
+    public int getQueueDepth() {
+        synchronized (mLock) {
+            return mCount;
+        }
+    }
+
+    /**
+     * @return the number of frames being decoded right now.
+     */
+    public int getActiveCount() {
+        synchronized (mLock) {
+            return mActiveCount;
+        }
+    }
+
+    public long getSubmittedCount() {
+        synchronized (mLock) {
+            return mSubmittedCount;
+        }
+    }
+
+    /**
+     * @return the number of frames discarded without being decoded.
+     */
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    public long getCompletedCount() {
+        synchronized (mLock) {
+            return mCompletedCount;
+        }
+    }
+
+    /**
+     * @return the number of frames whose decoding threw, counted as completed as well.
+     */
+    public long getFailedCount() {
+        synchronized (mLock) {
+            return mFailedCount;
+        }
+    }
+
+    /**
+     * @return the average time from submission to the end of decoding, in nanoseconds.
+     */
+    public long getAverageLatencyNanos() {
+        synchronized (mLock) {
+            return mCompletedCount == 0 ? 0 : mTotalLatencyNanos / mCompletedCount;
+        }
+    }
+
+    /**
+     * @return the longest time from submission to the end of decoding, in nanoseconds.
+     */
+    public long getMaxLatencyNanos() {
+        synchronized (mLock) {
+            return mMaxLatencyNanos;
+        }
+    }
+
+    private void runWorker() {
+        while (true) {
+            Task task;
+            long submitTime;
+            synchronized (mLock) {
+                while (mCount == 0 && !mShutdown) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        // Only shutdown() stops a worker.
+                    }
+                }
+                if (mShutdown) {
+                    return;
+                }
+                task = mQueue[mHead];
+                submitTime = mSubmitTimes[mHead];
+                mQueue[mHead] = null;
+                mHead = (mHead + 1) % mQueue.length;
+                mCount--;
+                mActiveCount++;
+            }
+
+            long startTime = System.nanoTime();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Decode task failed.", e);
+                synchronized (mLock) {
+                    mFailedCount++;
+                }
+            } finally {
+                long endTime = System.nanoTime();
+                long latency = endTime - submitTime;
+                synchronized (mLock) {
+                    mActiveCount--;
+                    mCompletedCount++;
+                    mTotalLatencyNanos += latency;
+                    mMaxLatencyNanos = Math.max(mMaxLatencyNanos, latency);
+                }
+                Listener listener = mListener;
+                if (listener != null) {
+                    listener.onTaskCompleted(task, endTime - startTime);
+                }
+            }
+        }
+    }
+
+    private void discard(Task task) {
+        try {
+            task.discard();
+        } finally {
+            Listener listener = mListener;
+            if (listener != null) {
+                listener.onTaskDiscarded(task);
+            }
+        }
+    }
+}
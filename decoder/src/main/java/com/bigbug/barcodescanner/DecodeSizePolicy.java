@@ -0,0 +1,207 @@
+package com.bigbug.barcodescanner;
+
+/**
+ * Chooses the size of the frames captured for decoding: the smallest output size at which the
+ * modules of a barcode at the expected scan distance still cover enough pixels, so that no
+ * sensor readout, memory bandwidth or decode time is spent on pixels that do not help.
+ * <p/>
+ * The field of view at the scan distance follows from the physical width of the sensor and the
+ * focal length of the lens.  Dividing it by the module size gives the number of modules across
+ * the frame, and therefore the width needed for the minimum number of pixels per module.  Only
+ * the pixels of the {@link ScanWindow} are decoded, and those are capped by a pixel budget.
+ * <p/>
+ * This is kept free of Android types so it can be unit tested; sizes are passed as parallel
+ * arrays of widths and heights.  This can be constructed through a
+ * {@link DecodeSizePolicy.Builder}.
+ */
+public final class DecodeSizePolicy {
+
+    /**
+     * Tolerance when comparing aspect ratios.
+     */
+    private static final double ASPECT_RATIO_TOLERANCE = 0.005;
+
+    private final float mModuleSizeMm;
+    private final float mScanDistanceMm;
+    private final float mMinPixelsPerModule;
+    private final ScanWindow mScanWindow;
+    private final long mPixelBudget;
+
+    private DecodeSizePolicy(Builder builder) {
+        mModuleSizeMm = builder.mModuleSizeMm;
+        mScanDistanceMm = builder.mScanDistanceMm;
+        mMinPixelsPerModule = builder.mMinPixelsPerModule;
+        mScanWindow = builder.mScanWindow;
+        mPixelBudget = builder.mPixelBudget;
+    }
+
+    /**
+     * Compute the frame width at which a module at the scan distance covers the minimum number of
+     * pixels.
+     *
+     * @param sensorWidthMm the physical width of the sensor, in millimeters.
+     * @param focalLengthMm the focal length of the lens, in millimeters.
+     * @return the required width in pixels, or 0 if the optics are unknown.
+     */
+    public int getRequiredWidth(float sensorWidthMm, float focalLengthMm) {
+        if (!(sensorWidthMm > 0) || !(focalLengthMm > 0)) {
+            return 0;
+        }
+        float fieldWidthMm = mScanDistanceMm * sensorWidthMm / focalLengthMm;
+        return (int) Math.ceil(mMinPixelsPerModule * fieldWidthMm / mModuleSizeMm);
+    }
+
+    /**
+     * @return the number of pixels decoded per frame of the given size, i.e. those of the
+     * scan window.
+     */
+    public long getDecodedPixels(int width, int height) {
+        return (long) mScanWindow.getPixelWidth(width) * mScanWindow.getPixelHeight(height);
+    }
+
+    /**
+     * Choose a decode size among the given ones.
+     * <p/>
+     * Only sizes with the aspect ratio {@code aspectWidth:aspectHeight} are considered, unless
+     * there are none.  Among those within the pixel budget, the smallest at least as wide as
+     * {@link #getRequiredWidth(float, float)} is chosen; if none is wide enough, the largest
+     * within the budget is.  If no size is within the budget, the smallest one is chosen.
+     *
+     * @param widths        the widths of the supported sizes.
+     * @param heights       the heights of the supported sizes, in the same order.
+     * @param aspectWidth   the width of the wanted aspect ratio, or 0 for any.
+     * @param aspectHeight  the height of the wanted aspect ratio, or 0 for any.
+     * @param sensorWidthMm the physical width of the sensor, in millimeters, or 0 if unknown.
+     * @param focalLengthMm the focal length of the lens, in millimeters, or 0 if unknown.
+     * @return the index of the chosen size.
+     */
+    public int choose(int[] widths, int[] heights, int aspectWidth, int aspectHeight,
+                      float sensorWidthMm, float focalLengthMm) {
+        if (widths.length != heights.length || widths.length == 0) {
+            throw new IllegalArgumentException("Need the same, non-zero number of widths " +
+                    "and heights.");
+        }
+        boolean anyAspect = aspectWidth <= 0 || aspectHeight <= 0;
+        if (!anyAspect) {
+            boolean found = false;
+            for (int i = 0; i < widths.length && !found; i++) {
+                found = hasAspect(widths[i], heights[i], aspectWidth, aspectHeight);
+            }
+            anyAspect = !found;
+        }
+
+        int requiredWidth = getRequiredWidth(sensorWidthMm, focalLengthMm);
+        int smallestWideEnough = -1;
+        int largestInBudget = -1;
+        int smallest = -1;
+        for (int i = 0; i < widths.length; i++) {
+            if (!anyAspect && !hasAspect(widths[i], heights[i], aspectWidth, aspectHeight)) {
+                continue;
+            }
+            if (smallest < 0 || area(widths, heights, i) < area(widths, heights, smallest)) {
+                smallest = i;
+            }
+            if (getDecodedPixels(widths[i], heights[i]) > mPixelBudget) {
+                continue;
+            }
+            if (largestInBudget < 0
+                    || area(widths, heights, i) > area(widths, heights, largestInBudget)) {
+                largestInBudget = i;
+            }
+            if (requiredWidth > 0 && widths[i] >= requiredWidth && (smallestWideEnough < 0
+                    || area(widths, heights, i) < area(widths, heights, smallestWideEnough))) {
+                smallestWideEnough = i;
+            }
+        }
+        if (smallestWideEnough >= 0) {
+            return smallestWideEnough;
+        }
+        return largestInBudget >= 0 ? largestInBudget : smallest;
+    }
+
+    private static long area(int[] widths, int[] heights, int i) {
+        return (long) widths[i] * heights[i];
+    }
+
+    private static boolean hasAspect(int width, int height, int aspectWidth, int aspectHeight) {
+        return Math.abs(width / (double) height - aspectWidth / (double) aspectHeight)
+                <= ASPECT_RATIO_TOLERANCE;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodeSizePolicy{moduleSizeMm=" + mModuleSizeMm +
+                ", scanDistanceMm=" + mScanDistanceMm +
+                ", minPixelsPerModule=" + mMinPixelsPerModule +
+                ", scanWindow=" + mScanWindow + ", pixelBudget=" + mPixelBudget + "}";
+    }
+
+    /**
+     * Builder class for constructing {@link DecodeSizePolicy}s.
+     */
+    public static class Builder {
+        private float mModuleSizeMm = 0.33f;
+        private float mScanDistanceMm = 200f;
+        private float mMinPixelsPerModule = 2f;
+        private ScanWindow mScanWindow = ScanWindow.FULL;
+        private long mPixelBudget = Long.MAX_VALUE;
+
+        /**
+         * Set the size of the smallest module (bar, space or square) to resolve, in millimeters.
+         */
+        public Builder setModuleSizeMm(float moduleSizeMm) {
+            if (!(moduleSizeMm > 0)) {
+                throw new IllegalArgumentException("Module size must be positive.");
+            }
+            mModuleSizeMm = moduleSizeMm;
+            return this;
+        }
+
+        /**
+         * Set the farthest distance from the lens at which barcodes are expected, in millimeters.
+         */
+        public Builder setScanDistanceMm(float scanDistanceMm) {
+            if (!(scanDistanceMm > 0)) {
+                throw new IllegalArgumentException("Scan distance must be positive.");
+            }
+            mScanDistanceMm = scanDistanceMm;
+            return this;
+        }
+
+        /**
+         * Set the number of pixels a module has to cover to be decoded reliably.
+         */
+        public Builder setMinPixelsPerModule(float minPixelsPerModule) {
+            if (!(minPixelsPerModule > 0)) {
+                throw new IllegalArgumentException("Pixels per module must be positive.");
+            }
+            mMinPixelsPerModule = minPixelsPerModule;
+            return this;
+        }
+
+        /**
+         * Set the part of the frame that is decoded.  Only its area matters, so the window may be
+         * given in view or image coordinates.
+         */
+        public Builder setScanWindow(ScanWindow scanWindow) {
+            if (scanWindow == null) throw new NullPointerException();
+            mScanWindow = scanWindow;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of pixels decoded per frame, i.e. within the scan window.
+         */
+        public Builder setPixelBudget(long pixelBudget) {
+            if (pixelBudget <= 0) {
+                throw new IllegalArgumentException("Pixel budget must be positive.");
+            }
+            mPixelBudget = pixelBudget;
+            return this;
+        }
+
+        public DecodeSizePolicy build() {
+            return new DecodeSizePolicy(this);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable set of options for decoding barcodes, turned into ZXing decode hints once per reader
+ * rather than once per frame.
+ * <p/>
+ * This can be constructed through a {@link DecoderConfig.Builder}.
+ */
+public final class DecoderConfig {
+
+    /**
+     * A configuration that tries every format ZXing supports, with default hints.
+     */
+    public static final DecoderConfig DEFAULT = new Builder().build();
+
+    private final Set<BarcodeFormat> mFormats;
+    private final boolean mTryHarder;
+    private final boolean mPureBarcode;
+    private final String mCharacterSet;
+    private final int mPyramidLevels;
+    private final boolean mMultipleBarcodes;
+    private final int mTileColumns;
+    private final int mTileRows;
+    private final float mTileOverlap;
+    private final BinarizerStrategy mBinarizerStrategy;
+
+    private DecoderConfig(Builder builder) {
+        mFormats = builder.mFormats.isEmpty()
+                ? Collections.<BarcodeFormat>emptySet()
+                : Collections.unmodifiableSet(EnumSet.copyOf(builder.mFormats));
+        mTryHarder = builder.mTryHarder;
+        mPureBarcode = builder.mPureBarcode;
+        mCharacterSet = builder.mCharacterSet;
+        mPyramidLevels = builder.mPyramidLevels;
+        mMultipleBarcodes = builder.mMultipleBarcodes;
+        mTileColumns = builder.mTileColumns;
+        mTileRows = builder.mTileRows;
+        mTileOverlap = builder.mTileOverlap;
+        mBinarizerStrategy = builder.mBinarizerStrategy;
+    }
+
+    /**
+     * @return the enabled formats, or an empty set if every format is enabled.
+     */
+    public Set<BarcodeFormat> getFormats() {
+        return mFormats;
+    }
+
+    public boolean isTryHarder() {
+        return mTryHarder;
+    }
+
+    public boolean isPureBarcode() {
+        return mPureBarcode;
+    }
+
+    /**
+     * @return the character set used for byte segments, or null to let ZXing guess.
+     */
+    public String getCharacterSet() {
+        return mCharacterSet;
+    }
+
+    /**
+     * @return the number of resolutions a frame is tried at, including the full resolution.
+     */
+    public int getPyramidLevels() {
+        return mPyramidLevels;
+    }
+
+    /**
+     * @return true if every barcode in a frame is decoded, rather than the first one found.
+     */
+    public boolean isMultipleBarcodes() {
+        return mMultipleBarcodes;
+    }
+
+    /**
+     * @return the number of tiles across a frame decoded by a {@link TiledFrameDecoder}.
+     */
+    public int getTileColumns() {
+        return mTileColumns;
+    }
+
+    /**
+     * @return the number of tiles down a frame decoded by a {@link TiledFrameDecoder}.
+     */
+    public int getTileRows() {
+        return mTileRows;
+    }
+
+    /**
+     * @return the fraction of a tile's width and height shared with each of its neighbours.
+     */
+    public float getTileOverlap() {
+        return mTileOverlap;
+    }
+
+    /**
+     * @return how {@link FrameDecoder#decode} thresholds frames.
+     */
+    public BinarizerStrategy getBinarizerStrategy() {
+        return mBinarizerStrategy;
+    }
+
+    /**
+     * @return a new map of ZXing decode hints matching this configuration.
+     */
+    public Map<DecodeHintType, Object> toHints() {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        if (!mFormats.isEmpty()) {
+            hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.copyOf(mFormats));
+        }
+        if (mTryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+        if (mPureBarcode) {
+            hints.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+        }
+        if (mCharacterSet != null) {
+            hints.put(DecodeHintType.CHARACTER_SET, mCharacterSet);
+        }
+        return hints;
+    }
+
+    @Override
+    public String toString() {
+        return "DecoderConfig{formats=" + (mFormats.isEmpty() ? "ALL" : mFormats) +
+                ", tryHarder=" + mTryHarder + ", pureBarcode=" + mPureBarcode +
+                ", characterSet=" + mCharacterSet + ", pyramidLevels=" + mPyramidLevels +
+                ", multipleBarcodes=" + mMultipleBarcodes +
+                ", tiles=" + mTileColumns + "x" + mTileRows + ", tileOverlap=" + mTileOverlap +
+                ", binarizerStrategy=" + mBinarizerStrategy + "}";
+    }
+
+    /**
+     * Builder class for constructing {@link DecoderConfig}s.
+     */
+    public static class Builder {
+        private final Set<BarcodeFormat> mFormats = EnumSet.noneOf(BarcodeFormat.class);
+        private boolean mTryHarder;
+        private boolean mPureBarcode;
+        private String mCharacterSet;
+        private int mPyramidLevels = 1;
+        private boolean mMultipleBarcodes;
+        private int mTileColumns = 1;
+        private int mTileRows = 1;
+        private float mTileOverlap;
+        private BinarizerStrategy mBinarizerStrategy = BinarizerStrategy.HYBRID;
+
+        public Builder() {
+        }
+
+        /**
+         * Start from the options of an existing configuration.
+         */
+        public Builder(DecoderConfig config) {
+            mFormats.addAll(config.mFormats);
+            mTryHarder = config.mTryHarder;
+            mPureBarcode = config.mPureBarcode;
+            mCharacterSet = config.mCharacterSet;
+            mPyramidLevels = config.mPyramidLevels;
+            mMultipleBarcodes = config.mMultipleBarcodes;
+            mTileColumns = config.mTileColumns;
+            mTileRows = config.mTileRows;
+            mTileOverlap = config.mTileOverlap;
+            mBinarizerStrategy = config.mBinarizerStrategy;
+        }
+
+        /**
+         * Restrict decoding to the given formats.  Without any, every format is tried.
+         */
+        public Builder setFormats(BarcodeFormat... formats) {
+            mFormats.clear();
+            Collections.addAll(mFormats, formats);
+            return this;
+        }
+
+        /**
+         * Spend more time looking for a barcode, e.g. by also scanning rotated images.
+         */
+        public Builder setTryHarder(boolean tryHarder) {
+            mTryHarder = tryHarder;
+            return this;
+        }
+
+        /**
+         * Treat every frame as a pure, unrotated barcode image with no surrounding content.
+         */
+        public Builder setPureBarcode(boolean pureBarcode) {
+            mPureBarcode = pureBarcode;
+            return this;
+        }
+
+        /**
+         * Set the character set used for byte segments, or null to let ZXing guess.
+         */
+        public Builder setCharacterSet(String characterSet) {
+            mCharacterSet = characterSet;
+            return this;
+        }
+
+        /**
+         * Try each frame at up to {@code levels} resolutions, starting with the lowest and
+         * halving width and height from one level to the next.  Large barcodes are found at low
+         * resolution, and only frames without one pay for the full resolution.  1 disables this.
+         */
+        public Builder setPyramidLevels(int levels) {
+            if (levels < 1) {
+                throw new IllegalArgumentException("At least one pyramid level is needed.");
+            }
+            mPyramidLevels = levels;
+            return this;
+        }
+
+        /**
+         * Decode every barcode in a frame through {@link FrameDecoder#decodeMultiple}, such as
+         * all the labels on a pallet, instead of the first one found.
+         */
+        public Builder setMultipleBarcodes(boolean multipleBarcodes) {
+            mMultipleBarcodes = multipleBarcodes;
+            return this;
+        }
+
+        /**
+         * Split frames into a grid of overlapping tiles that a {@link TiledFrameDecoder} decodes
+         * in parallel.  A barcode is only found if it lies within one tile, which the overlap
+         * guarantees for barcodes up to {@code overlap} times the size of a tile.  1 by 1
+         * disables this.
+         *
+         * @param overlap the fraction of a tile's width and height shared with each neighbour.
+         */
+        public Builder setTiles(int columns, int rows, float overlap) {
+            if (columns < 1 || rows < 1) {
+                throw new IllegalArgumentException("At least one tile is needed.");
+            }
+            if (!(overlap >= 0f && overlap < 1f)) {
+                throw new IllegalArgumentException("Overlap must be in [0, 1).");
+            }
+            mTileColumns = columns;
+            mTileRows = rows;
+            mTileOverlap = overlap;
+            return this;
+        }
+
+        /**
+         * Choose how single barcodes are looked for in a thresholded frame,
+         * {@link BinarizerStrategy#HYBRID} by default.  {@link FrameDecoder#decodeMultiple}
+         * always uses a hybrid binarizer.
+         */
+        public Builder setBinarizerStrategy(BinarizerStrategy binarizerStrategy) {
+            if (binarizerStrategy == null) throw new NullPointerException();
+            mBinarizerStrategy = binarizerStrategy;
+            return this;
+        }
+
+        public DecoderConfig build() {
+            return new DecoderConfig(this);
+        }
+    }
+}
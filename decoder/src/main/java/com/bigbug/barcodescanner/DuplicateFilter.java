@@ -0,0 +1,192 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+
+/**
+ * Remembers the barcodes seen recently, so that a barcode held in view is reported once instead
+ * of on every frame.
+ * <p/>
+ * A barcode is identified by a 64-bit FNV-1a hash of its format and text, computed over the
+ * characters without building any key object.  The hashes live in an open-addressing table of
+ * primitives along with the time they were last seen.  A barcode counts as a duplicate if it was
+ * seen less than the window ago; every sighting restarts its window.  When the table is full, the
+ * least recently seen barcode is forgotten.
+ * <p/>
+ * Two different barcodes with the same hash would be taken for one another, which at 64 bits is
+ * not a practical concern for the handful of barcodes in the table.
+ * <p/>
+ * This class is thread safe.
+ */
+public class DuplicateFilter {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Marks a free cell of the table.  Hashes equal to it are remapped.
+     */
+    private static final long EMPTY = 0;
+
+    private final Clock mClock;
+    private final long mWindowNanos;
+    private final int mMaxEntries;
+    private final int mMask;
+
+    // *********************************************************************************************
+    // State protected by this.
+
+    private final long[] mHashes;
+    private final long[] mSeenNanos;
+    private int mSize;
+
+    private long mHitCount;
+    private long mMissCount;
+
+    //**********************************************************************************************
+
+    /**
+     * @param clock       the clock to measure the window with.
+     * @param windowNanos the time during which a barcode seen again is a duplicate.
+     * @param maxEntries  the number of barcodes remembered at most.
+     */
+    public DuplicateFilter(Clock clock, long windowNanos, int maxEntries) {
+        if (clock == null) throw new NullPointerException();
+        if (windowNanos <= 0 || maxEntries < 1) {
+            throw new IllegalArgumentException("Window and size must be positive.");
+        }
+        mClock = clock;
+        mWindowNanos = windowNanos;
+        mMaxEntries = maxEntries;
+        // Keep the table at most half full so that probe sequences stay short.
+        int tableSize = Integer.highestOneBit(maxEntries * 2 - 1) << 1;
+        mMask = tableSize - 1;
+        mHashes = new long[tableSize];
+        mSeenNanos = new long[tableSize];
+    }
+
+    /**
+     * Record a sighting of a barcode.
+     *
+     * @return true if the barcode was not seen within the window, and should be reported.
+     */
+    public synchronized boolean offer(BarcodeFormat format, CharSequence text) {
+        long hash = hash(format, text);
+        long now = mClock.nanoTime();
+        int index = find(hash);
+        if (index >= 0) {
+            boolean duplicate = now - mSeenNanos[index] < mWindowNanos;
+            mSeenNanos[index] = now;
+            if (duplicate) {
+                mHitCount++;
+                return false;
+            }
+            mMissCount++;
+            return true;
+        }
+
+        if (mSize == mMaxEntries) {
+            remove(leastRecentlySeen());
+        }
+        insert(hash, now);
+        mMissCount++;
+        return true;
+    }
+
+    /**
+     * Forget a barcode, so that its next sighting is reported, e.g. when the report of the last
+     * one never reached the user.
+     */
+    public synchronized void forget(BarcodeFormat format, CharSequence text) {
+        int index = find(hash(format, text));
+        if (index >= 0) {
+            remove(index);
+        }
+    }
+
+    /**
+     * @return the number of sightings suppressed as duplicates.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of sightings reported as new.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Forget every barcode, so that the next sighting of each one is reported.  The counts are
+     * kept.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i <= mMask; i++) {
+            mHashes[i] = EMPTY;
+        }
+        mSize = 0;
+    }
+
+    static long hash(BarcodeFormat format, CharSequence text) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ format.ordinal()) * FNV_PRIME;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash == EMPTY ? FNV_OFFSET_BASIS : hash;
+    }
+
+    private int find(long hash) {
+        for (int index = (int) (hash ^ (hash >>> 32)) & mMask; ; index = (index + 1) & mMask) {
+            if (mHashes[index] == hash) {
+                return index;
+            }
+            if (mHashes[index] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private void insert(long hash, long now) {
+        int index = (int) (hash ^ (hash >>> 32)) & mMask;
+        while (mHashes[index] != EMPTY) {
+            index = (index + 1) & mMask;
+        }
+        mHashes[index] = hash;
+        mSeenNanos[index] = now;
+        mSize++;
+    }
+
+    private int leastRecentlySeen() {
+        int oldest = -1;
+        for (int i = 0; i <= mMask; i++) {
+            if (mHashes[i] != EMPTY && (oldest < 0 || mSeenNanos[i] - mSeenNanos[oldest] < 0)) {
+                oldest = i;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Remove the entry at the given index, moving later entries of the same probe sequences back
+     * so that they can still be found.
+     */
+    private void remove(int index) {
+        mHashes[index] = EMPTY;
+        mSize--;
+        int hole = index;
+        for (int i = (index + 1) & mMask; mHashes[i] != EMPTY; i = (i + 1) & mMask) {
+            int home = (int) (mHashes[i] ^ (mHashes[i] >>> 32)) & mMask;
+            // Move the entry into the hole if its home is not between the hole and itself.
+            if (((i - home) & mMask) >= ((i - hole) & mMask)) {
+                mHashes[hole] = mHashes[i];
+                mSeenNanos[hole] = mSeenNanos[i];
+                mHashes[i] = EMPTY;
+                hole = i;
+            }
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decodes barcodes out of luminance frames according to a {@link DecoderConfig}.
+ * <p/>
+ * Each decoding thread gets its own {@link MultiFormatReader}, configured once with the hints of
+ * the {@link DecoderConfig} and then reused for every frame through
+ * {@link MultiFormatReader#decodeWithState(BinaryBitmap)}.
+ * <p/>
+ * With more than one {@link DecoderConfig#getPyramidLevels() pyramid level}, a frame is first
+ * tried at the lowest resolution and only escalated to the next one if nothing was found there.
+ * <p/>
+ * With {@link BinarizerStrategy#ADAPTIVE}, a {@link BinarizerSelector} shared by all threads picks
+ * the binarizer of each frame from its {@link FrameStatistics}, and whether to go through the
+ * pyramid again with the other binarizer when the first one found nothing.
+ * <p/>
+ * {@link #decodeMultiple(LuminanceSource)} finds every barcode in a frame instead, at full
+ * resolution.  QR codes are located all at once by ZXing's {@link QRCodeMultiReader}, the other
+ * formats by a {@link GenericMultipleBarcodeReader} that searches the frame around each barcode it
+ * finds.  Both share one {@link SharedBinarizer}, so the frame is thresholded once however many
+ * barcodes it holds.
+ * <p/>
+ * This class is thread safe.
+ */
+public class FrameDecoder {
+
+    /**
+     * Pyramid levels are not built below this width or height, in pixels.
+     */
+    private static final int MIN_LEVEL_DIMENSION = 160;
+
+    private final DecoderConfig mConfig;
+
+    private final ThreadLocal<ThreadState> mThreadStates = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState(mConfig);
+        }
+    };
+
+    private final AtomicLongArray mLevelAttempts;
+    private final AtomicLongArray mLevelHits;
+
+    private final BinarizerSelector mBinarizerSelector = new BinarizerSelector();
+
+    /**
+     * Frames thresholded and decoded by each binarizer, indexed by {@link BinarizerStrategy}
+     * ordinal.
+     */
+    private final AtomicLongArray mBinarizerAttempts =
+            new AtomicLongArray(BinarizerStrategy.values().length);
+    private final AtomicLongArray mBinarizerHits =
+            new AtomicLongArray(BinarizerStrategy.values().length);
+
+    public FrameDecoder(DecoderConfig config) {
+        if (config == null) throw new NullPointerException();
+        mConfig = config;
+        mLevelAttempts = new AtomicLongArray(config.getPyramidLevels());
+        mLevelHits = new AtomicLongArray(config.getPyramidLevels());
+    }
+
+    public DecoderConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Decode a single barcode from the given frame.
+     *
+     * @param source the luminance data of the frame.
+     * @return the decoded barcode, with result points in the coordinates of {@code source}.
+     * @throws NotFoundException if no barcode of an enabled format was found.
+     */
+    public Result decode(LuminanceSource source) throws NotFoundException {
+        ThreadState state = mThreadStates.get();
+        BinarizerStrategy strategy = mConfig.getBinarizerStrategy();
+        boolean adaptive = strategy == BinarizerStrategy.ADAPTIVE;
+        boolean evenlyLit = false;
+        if (adaptive) {
+            state.mStatistics.compute(source);
+            evenlyLit = state.mStatistics.isEvenlyLit();
+            strategy = mBinarizerSelector.first(evenlyLit);
+        }
+        int levels = mConfig.getPyramidLevels() == 1
+                ? 1 : state.mPyramid.build(source, MIN_LEVEL_DIMENSION);
+        try {
+            Result result = decodeLevels(state, source, levels, strategy);
+            if (adaptive) {
+                mBinarizerSelector.record(evenlyLit, strategy, result != null);
+                if (result == null && mBinarizerSelector.shouldFallBack(evenlyLit, strategy)) {
+                    strategy = strategy == BinarizerStrategy.HYBRID
+                            ? BinarizerStrategy.GLOBAL_HISTOGRAM : BinarizerStrategy.HYBRID;
+                    result = decodeLevels(state, source, levels, strategy);
+                    mBinarizerSelector.record(evenlyLit, strategy, result != null);
+                }
+            }
+            if (result != null) {
+                return result;
+            }
+        } finally {
+            state.mPyramid.clear();
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    /**
+     * Try the levels of the pyramid from the lowest resolution up with the given binarizer.
+     *
+     * @return the barcode found, with result points in the coordinates of {@code source}, or null.
+     */
+    private Result decodeLevels(ThreadState state, LuminanceSource source, int levels,
+                                BinarizerStrategy binarizer) {
+        mBinarizerAttempts.incrementAndGet(binarizer.ordinal());
+        for (int level = levels - 1; level >= 0; level--) {
+            mLevelAttempts.incrementAndGet(level);
+            Result result;
+            try {
+                result = decodeOnce(state.mReader, level == 0 ? source :
+                        state.mPyramid.getLevel(level), binarizer);
+            } catch (NotFoundException e) {
+                continue;
+            }
+            mLevelHits.incrementAndGet(level);
+            mBinarizerHits.incrementAndGet(binarizer.ordinal());
+            return level == 0 ? result : scale(result, 1 << level);
+        }
+        return null;
+    }
+
+    /**
+     * Decode a single barcode from a region of the given frame.
+     *
+     * @param source the luminance data of the frame, which must support cropping.
+     * @param region the part of the frame to decode.
+     * @return the decoded barcode, with result points in the coordinates of {@code source}.
+     * @throws NotFoundException if no barcode of an enabled format was found in the region.
+     */
+    public Result decode(LuminanceSource source, ScanWindow region) throws NotFoundException {
+        if (region.isFull()) {
+            return decode(source);
+        }
+        int left = region.getPixelLeft(source.getWidth());
+        int top = region.getPixelTop(source.getHeight());
+        Result result = decode(source.crop(left, top, region.getPixelWidth(source.getWidth()),
+                region.getPixelHeight(source.getHeight())));
+        return translate(result, left, top);
+    }
+
+    /**
+     * Decode every barcode in the given frame.
+     *
+     * @param source the luminance data of the frame.
+     * @return the decoded barcodes, QR codes first, with result points in the coordinates of
+     * {@code source}.
+     * @throws NotFoundException if no barcode of an enabled format was found.
+     */
+    public Result[] decodeMultiple(LuminanceSource source) throws NotFoundException {
+        ThreadState state = mThreadStates.get();
+        BinaryBitmap image = new BinaryBitmap(new SharedBinarizer(source));
+        List<Result> results = new ArrayList<>();
+        if (state.mQrReader != null) {
+            try {
+                Collections.addAll(results, state.mQrReader.decodeMultiple(image, state.mHints));
+            } catch (NotFoundException e) {
+                // No QR code, the other formats may still be there.
+            } finally {
+                state.mQrReader.reset();
+            }
+        }
+        if (state.mOtherReader != null) {
+            try {
+                Collections.addAll(results, state.mOtherReader.decodeMultiple(image));
+            } catch (NotFoundException e) {
+                // Nothing but QR codes, if anything.
+            } finally {
+                state.mOtherFormatsReader.reset();
+            }
+        }
+        if (results.isEmpty()) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        return results.toArray(new Result[results.size()]);
+    }
+
+    /**
+     * @return the number of pyramid levels, including the full resolution.
+     */
+    public int getLevelCount() {
+        return mLevelAttempts.length();
+    }
+
+    /**
+     * @return how many frames were tried at the given pyramid level, 0 being full resolution.
+     */
+    public long getLevelAttempts(int level) {
+        return mLevelAttempts.get(level);
+    }
+
+    /**
+     * @return how many frames were decoded at the given pyramid level, 0 being full resolution.
+     */
+    public long getLevelHits(int level) {
+        return mLevelHits.get(level);
+    }
+
+    /**
+     * @return the fraction of the frames tried at the given pyramid level that were decoded there.
+     */
+    public float getLevelHitRate(int level) {
+        long attempts = mLevelAttempts.get(level);
+        return attempts == 0 ? 0f : (float) mLevelHits.get(level) / attempts;
+    }
+
+    /**
+     * @return how many frames {@link #decode} thresholded with the given binarizer, either
+     * {@link BinarizerStrategy#HYBRID} or {@link BinarizerStrategy#GLOBAL_HISTOGRAM}.
+     */
+    public long getBinarizerAttempts(BinarizerStrategy binarizer) {
+        return mBinarizerAttempts.get(binarizer.ordinal());
+    }
+
+    /**
+     * @return how many frames {@link #decode} found a barcode in with the given binarizer.
+     */
+    public long getBinarizerHits(BinarizerStrategy binarizer) {
+        return mBinarizerHits.get(binarizer.ordinal());
+    }
+
+    private static Result decodeOnce(MultiFormatReader reader, LuminanceSource source,
+                                     BinarizerStrategy binarizer) throws NotFoundException {
+        try {
+            return reader.decodeWithState(new BinaryBitmap(
+                    binarizer == BinarizerStrategy.GLOBAL_HISTOGRAM
+                            ? new GlobalHistogramBinarizer(source) : new HybridBinarizer(source)));
+        } finally {
+            reader.reset();
+        }
+    }
+
+    /**
+     * @return a copy of {@code result} with its result points scaled up by {@code factor}.
+     */
+    private static Result scale(Result result, int factor) {
+        ResultPoint[] points = result.getResultPoints();
+        ResultPoint[] scaled = null;
+        if (points != null) {
+            scaled = new ResultPoint[points.length];
+            for (int i = 0; i < points.length; i++) {
+                if (points[i] != null) {
+                    // Map the center of the downsampled pixel to the center of its block.
+                    scaled[i] = new ResultPoint((points[i].getX() + 0.5f) * factor - 0.5f,
+                            (points[i].getY() + 0.5f) * factor - 0.5f);
+                }
+            }
+        }
+        return withPoints(result, scaled);
+    }
+
+    /**
+     * @return a copy of {@code result} with its result points moved by the given offset.
+     */
+    static Result translate(Result result, int dx, int dy) {
+        ResultPoint[] points = result.getResultPoints();
+        if (points == null || (dx == 0 && dy == 0)) {
+            return result;
+        }
+        ResultPoint[] moved = new ResultPoint[points.length];
+        for (int i = 0; i < points.length; i++) {
+            if (points[i] != null) {
+                moved[i] = new ResultPoint(points[i].getX() + dx, points[i].getY() + dy);
+            }
+        }
+        return withPoints(result, moved);
+    }
+
+    /**
+     * @return a copy of {@code result} with the given result points.
+     */
+    static Result withPoints(Result result, ResultPoint[] points) {
+        Result copy = new Result(result.getText(), result.getRawBytes(), result.getNumBits(),
+                points, result.getBarcodeFormat(), result.getTimestamp());
+        copy.putAllMetadata(result.getResultMetadata());
+        return copy;
+    }
+
+    /**
+     * Decoding state confined to one thread.
+     */
+    private static final class ThreadState {
+        final Map<DecodeHintType, Object> mHints;
+        final MultiFormatReader mReader;
+        final LuminancePyramid mPyramid;
+        final FrameStatistics mStatistics = new FrameStatistics();
+
+        /**
+         * Readers of {@link #decodeMultiple(LuminanceSource)}, null where the config leaves them
+         * nothing to find.
+         */
+        final QRCodeMultiReader mQrReader;
+        final MultiFormatReader mOtherFormatsReader;
+        final GenericMultipleBarcodeReader mOtherReader;
+
+        ThreadState(DecoderConfig config) {
+            mHints = config.toHints();
+            mReader = new MultiFormatReader();
+            mReader.setHints(mHints);
+            mPyramid = new LuminancePyramid(config.getPyramidLevels());
+
+            Set<BarcodeFormat> formats = config.getFormats().isEmpty()
+                    ? EnumSet.allOf(BarcodeFormat.class) : EnumSet.copyOf(config.getFormats());
+            mQrReader = formats.remove(BarcodeFormat.QR_CODE) ? new QRCodeMultiReader() : null;
+            if (formats.isEmpty()) {
+                mOtherFormatsReader = null;
+                mOtherReader = null;
+            } else {
+                Map<DecodeHintType, Object> hints = config.toHints();
+                hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+                mOtherFormatsReader = new MultiFormatReader();
+                mOtherFormatsReader.setHints(hints);
+                mOtherReader = new GenericMultipleBarcodeReader(
+                        new PresetReader(mOtherFormatsReader));
+            }
+        }
+    }
+
+    /**
+     * Decodes with the hints a {@link MultiFormatReader} was set up with, ignoring the hints passed
+     * on every call by {@link GenericMultipleBarcodeReader}, so that the reader is not set up
+     * again for every crop.
+     */
+    private static final class PresetReader implements Reader {
+        private final MultiFormatReader mReader;
+
+        PresetReader(MultiFormatReader reader) {
+            mReader = reader;
+        }
+
+        @Override
+        public Result decode(BinaryBitmap image) throws NotFoundException {
+            return mReader.decodeWithState(image);
+        }
+
+        @Override
+        public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints)
+                throws NotFoundException {
+            return mReader.decodeWithState(image);
+        }
+
+        @Override
+        public void reset() {
+            mReader.reset();
+        }
+    }
+}
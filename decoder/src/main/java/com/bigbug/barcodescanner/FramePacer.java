@@ -0,0 +1,170 @@
+package com.bigbug.barcodescanner;
+
+/**
+ * Decides when the next frame should be captured for decoding, so that the decoding threads are
+ * kept busy without frames piling up in front of them.
+ * <p/>
+ * The pacer keeps an exponentially weighted average of the decode time.  With {@code parallelism}
+ * threads decoding, a new frame is needed every {@code averageDecodeTime / parallelism}, and
+ * captures are spaced by that interval, clamped to the given bounds.  On top of that, no more than
+ * {@code maxInFlight} frames may be between capture and the end of decoding at any time.
+ * <p/>
+ * Frames dropped by the decoder are a sign of backlog and stretch the interval, which then relaxes
+ * back with every decoded frame.
+ * <p/>
+ * This class is thread safe.
+ */
+public class FramePacer {
+
+    /**
+     * Weight of the newest sample in the average decode time.
+     */
+    private static final double DECODE_TIME_WEIGHT = 0.25;
+
+    /**
+     * Factor by which the interval is stretched for every dropped frame, and the largest total
+     * stretch.
+     */
+    private static final double BACKOFF_STEP = 2.0;
+    private static final double MAX_BACKOFF = 8.0;
+
+    /**
+     * Factor by which the stretch relaxes for every decoded frame.
+     */
+    private static final double BACKOFF_DECAY = 0.75;
+
+    private final Clock mClock;
+    private final int mParallelism;
+    private final int mMaxInFlight;
+    private final long mMinIntervalNanos;
+    private final long mMaxIntervalNanos;
+
+    // *********************************************************************************************
+    // State protected by this.
+
+    private int mInFlight;
+    private boolean mHasCaptured;
+    private long mLastCaptureNanos;
+    private double mAverageDecodeNanos = -1;
+    private double mBackoff = 1.0;
+
+    //**********************************************************************************************
+
+    /**
+     * @param clock            the clock to measure capture intervals with.
+     * @param parallelism      the number of frames decoded at the same time.
+     * @param maxInFlight      the number of frames allowed between capture and the end of
+     *                         decoding.
+     * @param minIntervalNanos the shortest time between two captures.
+     * @param maxIntervalNanos the longest time between two captures while nothing is in flight.
+     */
+    public FramePacer(Clock clock, int parallelism, int maxInFlight, long minIntervalNanos,
+                      long maxIntervalNanos) {
+        if (clock == null) throw new NullPointerException();
+        if (parallelism < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Parallelism and in-flight limit must be positive.");
+        }
+        if (minIntervalNanos < 0 || maxIntervalNanos < minIntervalNanos) {
+            throw new IllegalArgumentException("Invalid interval bounds.");
+        }
+        mClock = clock;
+        mParallelism = parallelism;
+        mMaxInFlight = maxInFlight;
+        mMinIntervalNanos = minIntervalNanos;
+        mMaxIntervalNanos = maxIntervalNanos;
+    }
+
+    /**
+     * Ask whether a frame should be captured now.  If so, the frame counts as in flight until one
+     * of {@link #onFrameDecoded(long)}, {@link #onFrameDropped()} or {@link #onFrameFailed()} is
+     * called for it.
+     *
+     * @return true if the frame should be captured.
+     */
+    public synchronized boolean tryAcquire() {
+        if (mInFlight >= mMaxInFlight) {
+            return false;
+        }
+        long now = mClock.nanoTime();
+        if (mHasCaptured && now - mLastCaptureNanos < getIntervalNanos()) {
+            return false;
+        }
+        mHasCaptured = true;
+        mLastCaptureNanos = now;
+        mInFlight++;
+        return true;
+    }
+
+    /**
+     * Report that a captured frame was decoded, whether or not a barcode was found.
+     *
+     * @param decodeNanos the time spent decoding the frame.
+     */
+    public synchronized void onFrameDecoded(long decodeNanos) {
+        release();
+        if (mAverageDecodeNanos < 0) {
+            mAverageDecodeNanos = decodeNanos;
+        } else {
+            mAverageDecodeNanos += DECODE_TIME_WEIGHT * (decodeNanos - mAverageDecodeNanos);
+        }
+        mBackoff = Math.max(1.0, mBackoff * BACKOFF_DECAY);
+    }
+
+    /**
+     * Report that a captured frame was dropped by the decoder because newer frames were waiting.
+     */
+    public synchronized void onFrameDropped() {
+        release();
+        mBackoff = Math.min(MAX_BACKOFF, mBackoff * BACKOFF_STEP);
+    }
+
+    /**
+     * Report that a frame could not be captured, which says nothing about the decoder.
+     */
+    public synchronized void onFrameFailed() {
+        release();
+    }
+
+    /**
+     * Forget all frames in flight and the measured decode time, e.g. when a new capture session
+     * starts.
+     */
+    public synchronized void reset() {
+        mInFlight = 0;
+        mHasCaptured = false;
+        mAverageDecodeNanos = -1;
+        mBackoff = 1.0;
+    }
+
+    /**
+     * @return the current minimum time between two captures, in nanoseconds.
+     */
+    public synchronized long getIntervalNanos() {
+        if (mAverageDecodeNanos < 0) {
+            return mMinIntervalNanos;
+        }
+        long interval = (long) (mAverageDecodeNanos * mBackoff / mParallelism);
+        return Math.max(mMinIntervalNanos, Math.min(mMaxIntervalNanos, interval));
+    }
+
+    /**
+     * @return the number of frames between capture and the end of decoding.
+     */
+    public synchronized int getInFlightCount() {
+        return mInFlight;
+    }
+
+    /**
+     * @return the average decode time in nanoseconds, or -1 before the first frame was decoded.
+     */
+    public synchronized long getAverageDecodeNanos() {
+        return (long) mAverageDecodeNanos;
+    }
+
+    private void release() {
+        // Frames captured before a reset() may still report back.
+        if (mInFlight > 0) {
+            mInFlight--;
+        }
+    }
+}
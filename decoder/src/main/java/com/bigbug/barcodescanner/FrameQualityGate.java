@@ -0,0 +1,297 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.LuminanceSource;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Turns away frames that are too blurred to decode, before they cost a full failed decode.
+ * <p/>
+ * A frame is rejected, in order of cost:
+ * <ul>
+ * <li>when it was captured while the autofocus was still scanning for focus;</li>
+ * <li>when the camera turned by more than an angle during the exposure, the angular speed
+ * measured by the gyroscope times the exposure time, which smears the frame by about as many
+ * modules as the angle spans;</li>
+ * <li>when its sharpness is below a minimum.  The sharpness is taken from the gradient energy,
+ * the mean of the squared differences between neighbouring pixels, of a sample of up to
+ * {@link #SAMPLE_ROWS} rows of {@link #SAMPLES_PER_ROW} pixels.  The energy is summed for each
+ * block of a coarse grid, and the sharpest block counts, so that a small barcode in a
+ * featureless frame is not drowned out by the rest of it.  The energy of the quietest block,
+ * mostly sensor noise, is taken off, and the rest divided by the square of the contrast of the
+ * frame, so that a dim frame is not taken for a blurred one.  Defocus and motion blur both
+ * spread the edges of the bars, and take the gradient energy down with them.</li>
+ * </ul>
+ * Frames without any texture, such as a blank wall, have little gradient energy either, and may
+ * be rejected as well; they have no barcode to decode.
+ * <p/>
+ * Every {@code auditInterval}th rejected frame is decoded anyway, to estimate how many of the
+ * rejected frames would have decoded, from which the thresholds can be tuned.
+ * <p/>
+ * This class is thread safe.
+ */
+public class FrameQualityGate {
+
+    static final int SAMPLE_ROWS = 32;
+    static final int SAMPLES_PER_ROW = 128;
+
+    /**
+     * The frame is divided into this many blocks across and down.
+     */
+    private static final int GRID = 4;
+
+    /**
+     * Fraction of the samples left out at each end of their histogram when taking the contrast,
+     * as noise and specular highlights, as in {@link FrameStatistics}.
+     */
+    private static final float TAIL_FRACTION = 0.005f;
+
+    /**
+     * The contrast, in gray levels, the gradient energy is divided by at least, so that noise in
+     * a frame without anything in it does not count as sharp.
+     */
+    private static final int MIN_CONTRAST = 48;
+
+    private static final float NANOS_PER_SECOND = 1e9f;
+
+    /**
+     * Why a frame was let through or rejected.
+     */
+    public enum Verdict {
+        ACCEPTED,
+        FOCUSING,
+        SHAKING,
+        BLURRY
+    }
+
+    private final float mMinSharpness;
+    private final float mMaxBlurRadians;
+    private final int mAuditInterval;
+
+    private final ThreadLocal<Samples> mSamples = new ThreadLocal<Samples>() {
+        @Override
+        protected Samples initialValue() {
+            return new Samples();
+        }
+    };
+
+    private final AtomicLongArray mVerdicts = new AtomicLongArray(Verdict.values().length);
+    private final AtomicLong mRejections = new AtomicLong();
+    private final AtomicLong mAudits = new AtomicLong();
+    private final AtomicLong mAuditHits = new AtomicLong();
+
+    /**
+     * @param minSharpness   the {@link #sharpness(LuminanceSource)} below which a frame is blurry,
+     *                       or 0 not to measure it.
+     * @param maxBlurRadians the angle the camera may turn by during an exposure.
+     * @param auditInterval  a rejected frame out of this many is decoded anyway, or 0 for none.
+     */
+    public FrameQualityGate(float minSharpness, float maxBlurRadians, int auditInterval) {
+        if (minSharpness < 0 || maxBlurRadians <= 0 || auditInterval < 0) {
+            throw new IllegalArgumentException();
+        }
+        mMinSharpness = minSharpness;
+        mMaxBlurRadians = maxBlurRadians;
+        mAuditInterval = auditInterval;
+    }
+
+    /**
+     * Judge whether a frame is worth decoding.
+     *
+     * @param source        the luminance of the frame.
+     * @param focusing      whether the autofocus was scanning when the frame was captured.
+     * @param exposureNanos the exposure time of the frame, or 0 if unknown.
+     * @param angularSpeed  the angular speed of the camera, in radians per second, or a negative
+     *                      value without a gyroscope.
+     */
+    public Verdict check(LuminanceSource source, boolean focusing, long exposureNanos,
+                         float angularSpeed) {
+        Verdict verdict;
+        if (focusing) {
+            verdict = Verdict.FOCUSING;
+        } else if (angularSpeed >= 0 && exposureNanos > 0
+                && angularSpeed * exposureNanos / NANOS_PER_SECOND > mMaxBlurRadians) {
+            verdict = Verdict.SHAKING;
+        } else if (mMinSharpness > 0 && sharpness(source) < mMinSharpness) {
+            verdict = Verdict.BLURRY;
+        } else {
+            verdict = Verdict.ACCEPTED;
+        }
+        mVerdicts.incrementAndGet(verdict.ordinal());
+        return verdict;
+    }
+
+    /**
+     * Call for every rejected frame.
+     *
+     * @return whether to decode the frame anyway, and report the outcome with
+     * {@link #recordAudit(boolean)}.  Otherwise the frame counts as skipped.
+     */
+    public boolean shouldAudit() {
+        if (mAuditInterval > 0 && mRejections.incrementAndGet() % mAuditInterval == 0) {
+            mAudits.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record whether a rejected frame decoded anyway.
+     */
+    public void recordAudit(boolean decoded) {
+        if (decoded) {
+            mAuditHits.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the gradient energy of the sharpest block of the frame less that of the quietest,
+     * which is mostly sensor noise, over the square of the contrast of the frame.
+     */
+    public float sharpness(LuminanceSource source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width < 2 || height < 2) {
+            return 0;
+        }
+        Samples samples = mSamples.get();
+        long[] energies = samples.mEnergies;
+        int[] counts = samples.mCounts;
+        int[] histogram = samples.mHistogram;
+        Arrays.fill(energies, 0);
+        Arrays.fill(counts, 0);
+        Arrays.fill(histogram, 0);
+        int rows = Math.min(SAMPLE_ROWS, height - 1);
+        int step = Math.max(1, (width - 1) / SAMPLES_PER_ROW);
+        int total = 0;
+        for (int i = 0; i < rows; i++) {
+            // The middle of each of the horizontal bands the rows divide the frame into, and the
+            // row below it.
+            int y = (2 * i + 1) * (height - 1) / (2 * rows);
+            samples.mRow = source.getRow(y, samples.mRow);
+            samples.mNextRow = source.getRow(y + 1, samples.mNextRow);
+            byte[] row = samples.mRow;
+            byte[] nextRow = samples.mNextRow;
+            int blockRow = y * GRID / height * GRID;
+            for (int x = step / 2; x < width - 1; x += step) {
+                int pixel = row[x] & 0xFF;
+                int dx = (row[x + 1] & 0xFF) - pixel;
+                int dy = (nextRow[x] & 0xFF) - pixel;
+                int block = blockRow + x * GRID / width;
+                energies[block] += dx * dx + dy * dy;
+                counts[block]++;
+                histogram[pixel]++;
+                total++;
+            }
+        }
+        float sharpest = 0;
+        float quietest = Float.MAX_VALUE;
+        for (int i = 0; i < energies.length; i++) {
+            if (counts[i] > 0) {
+                float energy = (float) energies[i] / counts[i];
+                sharpest = Math.max(sharpest, energy);
+                quietest = Math.min(quietest, energy);
+            }
+        }
+        int contrast = Math.max(MIN_CONTRAST, contrast(histogram, (int) (total * TAIL_FRACTION)));
+        return (sharpest - quietest) / (contrast * contrast);
+    }
+
+    /**
+     * @return the difference between the darkest and the brightest samples, once
+     * {@code skipped} samples are left out at each end.
+     */
+    private static int contrast(int[] histogram, int skipped) {
+        int dark = 0;
+        for (int count = 0; dark < 255; dark++) {
+            count += histogram[dark];
+            if (count > skipped) {
+                break;
+            }
+        }
+        int bright = 255;
+        for (int count = 0; bright > 0; bright--) {
+            count += histogram[bright];
+            if (count > skipped) {
+                break;
+            }
+        }
+        return bright - dark;
+    }
+
+    /**
+     * @return the number of frames checked.
+     */
+    public long getCheckedCount() {
+        long count = 0;
+        for (int i = 0; i < mVerdicts.length(); i++) {
+            count += mVerdicts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of frames given the verdict.
+     */
+    public long getCount(Verdict verdict) {
+        return mVerdicts.get(verdict.ordinal());
+    }
+
+    /**
+     * @return the number of rejected frames that were not decoded.
+     */
+    public long getSkippedCount() {
+        return getCheckedCount() - getCount(Verdict.ACCEPTED) - mAudits.get();
+    }
+
+    /**
+     * @return the fraction of the frames checked that were not decoded.
+     */
+    public float getSkipRate() {
+        long checked = getCheckedCount();
+        return checked == 0 ? 0 : (float) getSkippedCount() / checked;
+    }
+
+    /**
+     * @return the number of rejected frames decoded anyway, and of those in which a barcode was
+     * found.
+     */
+    public long getAuditedCount() {
+        return mAudits.get();
+    }
+
+    public long getAuditHits() {
+        return mAuditHits.get();
+    }
+
+    /**
+     * @return the number of skipped frames that would have decoded, estimated from the audited
+     * ones.
+     */
+    public float getEstimatedMissedDecodes() {
+        long audits = mAudits.get();
+        return audits == 0 ? 0 : (float) getSkippedCount() * mAuditHits.get() / audits;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "skipped %.0f%% (focusing %d, shaking %d, blurry %d), "
+                        + "would have decoded %.0f", getSkipRate() * 100,
+                getCount(Verdict.FOCUSING), getCount(Verdict.SHAKING),
+                getCount(Verdict.BLURRY), getEstimatedMissedDecodes());
+    }
+
+    /**
+     * Sampling buffers confined to one thread.
+     */
+    private static final class Samples {
+        final long[] mEnergies = new long[GRID * GRID];
+        final int[] mCounts = new int[GRID * GRID];
+        final int[] mHistogram = new int[256];
+        byte[] mRow;
+        byte[] mNextRow;
+    }
+}
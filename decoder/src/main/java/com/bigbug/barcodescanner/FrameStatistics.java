@@ -0,0 +1,147 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.LuminanceSource;
+
+import java.util.Arrays;
+
+/**
+ * A cheap estimate of how a frame is lit, from a sparse sample of its pixels, to tell whether one
+ * global threshold can separate the bars from the background everywhere in it.
+ * <p/>
+ * Up to {@link #SAMPLE_ROWS} rows are sampled at up to {@link #SAMPLES_PER_ROW} pixels each.  The
+ * frame is evenly lit when it has enough contrast, and when every block of a coarse grid has some
+ * pixel brighter than the global threshold, the midpoint between the darkest and brightest half
+ * percent of the samples.  A block whose brightest pixel, the paper of a label or the wall behind
+ * it, falls below that threshold is in a shadow where a global threshold turns everything black.
+ * <p/>
+ * This class is not thread safe; keep one instance per decoding thread.
+ */
+final class FrameStatistics {
+
+    static final int SAMPLE_ROWS = 32;
+    static final int SAMPLES_PER_ROW = 128;
+
+    /**
+     * The frame is divided into this many blocks across and down.
+     */
+    private static final int GRID = 4;
+
+    /**
+     * Fraction of the samples ignored at each end of the histogram, as sensor noise and specular
+     * highlights.  The bars of a barcode far from the lens can cover little more than 1% of the
+     * frame, so this has to stay well below that.
+     */
+    private static final float TAIL_FRACTION = 0.005f;
+
+    /**
+     * Below this difference between dark and bright samples, in gray levels, the frame is treated
+     * as unevenly lit: a global threshold is unreliable on a washed out frame.
+     */
+    private static final int MIN_CONTRAST = 48;
+
+    /**
+     * Gray levels the brightest pixel of every block must stay above the threshold by.
+     */
+    private static final int THRESHOLD_MARGIN = 16;
+
+    private final int[] mHistogram = new int[256];
+    private final int[] mBlockMax = new int[GRID * GRID];
+    private byte[] mRow;
+
+    private int mContrast;
+    private int mThreshold;
+    private int mDarkestBlockMax;
+
+    /**
+     * Sample the given frame, replacing the statistics of the previous one.
+     */
+    void compute(LuminanceSource source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        Arrays.fill(mHistogram, 0);
+        // Blocks no sample fell into, in tiny frames, stay at -1.
+        Arrays.fill(mBlockMax, -1);
+        int rows = Math.min(SAMPLE_ROWS, height);
+        int step = Math.max(1, width / SAMPLES_PER_ROW);
+        int samples = 0;
+        for (int i = 0; i < rows; i++) {
+            // The middle of each of the horizontal bands the rows divide the frame into.
+            int y = (2 * i + 1) * height / (2 * rows);
+            mRow = source.getRow(y, mRow);
+            int blockRow = y * GRID / height * GRID;
+            for (int x = step / 2; x < width; x += step) {
+                int luminance = mRow[x] & 0xFF;
+                mHistogram[luminance]++;
+                int block = blockRow + x * GRID / width;
+                if (luminance > mBlockMax[block]) {
+                    mBlockMax[block] = luminance;
+                }
+                samples++;
+            }
+        }
+        int tail = (int) (samples * TAIL_FRACTION);
+        int dark = darkPercentile(tail);
+        int bright = brightPercentile(tail);
+        mContrast = bright - dark;
+        mThreshold = (dark + bright) / 2;
+        mDarkestBlockMax = 255;
+        for (int blockMax : mBlockMax) {
+            if (blockMax >= 0) {
+                mDarkestBlockMax = Math.min(mDarkestBlockMax, blockMax);
+            }
+        }
+    }
+
+    /**
+     * @return whether one threshold is likely to binarize the whole frame correctly.
+     */
+    boolean isEvenlyLit() {
+        return mContrast >= MIN_CONTRAST && mDarkestBlockMax >= mThreshold + THRESHOLD_MARGIN;
+    }
+
+    /**
+     * @return the difference between the dark and the bright samples, in gray levels.
+     */
+    int getContrast() {
+        return mContrast;
+    }
+
+    /**
+     * @return the brightest sample of the darkest block of the grid, in gray levels.
+     */
+    int getDarkestBlockMax() {
+        return mDarkestBlockMax;
+    }
+
+    int getThreshold() {
+        return mThreshold;
+    }
+
+    /**
+     * @return the gray level below which no more than {@code skipped} samples lie.
+     */
+    private int darkPercentile(int skipped) {
+        int count = 0;
+        for (int luminance = 0; luminance < 256; luminance++) {
+            count += mHistogram[luminance];
+            if (count > skipped) {
+                return luminance;
+            }
+        }
+        return 255;
+    }
+
+    /**
+     * @return the gray level above which no more than {@code skipped} samples lie.
+     */
+    private int brightPercentile(int skipped) {
+        int count = 0;
+        for (int luminance = 255; luminance > 0; luminance--) {
+            count += mHistogram[luminance];
+            if (count > skipped) {
+                return luminance;
+            }
+        }
+        return 0;
+    }
+}
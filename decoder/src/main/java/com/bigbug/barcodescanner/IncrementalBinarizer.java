@@ -0,0 +1,370 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * A {@link HybridBinarizer} that carries its block thresholds and its {@link BitMatrix} over from
+ * one frame to the next, and only redoes the blocks of the frame that changed.
+ * <p/>
+ * Like {@link HybridBinarizer}, the frame is divided into 8x8 blocks.  Each block gets a black
+ * point from its own pixels, or from its neighbours when it is too flat to have one, and its
+ * pixels are thresholded against the average black point of the 5x5 blocks around it.  In
+ * continuous scanning most of a frame is the same as in the frame before, so for each block the
+ * sum, the luminance weighted by pixel position, and the minimum and dynamic range are kept from
+ * the frame it was last thresholded in.  A block whose sum, weighted sum and, when flat, minimum
+ * differ by no more than the change threshold per pixel keeps its black point, and keeps its bits
+ * unless the black point of a block around it changed.  The other blocks are computed exactly as
+ * by {@link HybridBinarizer}.
+ * <p/>
+ * With a change threshold of 0, a block is only kept when all of these are equal, and the black
+ * matrix is the one {@link HybridBinarizer} computes for all practical frames.  Higher thresholds
+ * let the bits of a block lag behind changes of a few gray levels, such as sensor noise, and skip
+ * thresholding most of a still frame.
+ * <p/>
+ * The first frame is binarized by constructing an instance, and each following frame with
+ * {@link #next(LuminanceSource)}, which hands the state over.  Once a binarizer has been handed
+ * over, the black matrix it returned belongs to the next frame, and must not be used anymore.
+ * Frames of another size start over.  {@link #createBinarizer(LuminanceSource)} returns a
+ * binarizer with a state of its own, so that ZXing's crops and rotations do not disturb it.
+ * <p/>
+ * This class is not thread safe; keep one chain of binarizers per decoding thread.
+ */
+public final class IncrementalBinarizer extends GlobalHistogramBinarizer {
+
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+    private static final int BLOCK_PIXELS = BLOCK_SIZE * BLOCK_SIZE;
+
+    /**
+     * Sum of the weights of the pixels of a block, 1 to 64 in row order.
+     */
+    private static final int BLOCK_WEIGHTS = BLOCK_PIXELS * (BLOCK_PIXELS + 1) / 2;
+
+    /**
+     * Frames smaller than this are binarized by {@link GlobalHistogramBinarizer}, as by
+     * {@link HybridBinarizer}.
+     */
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+
+    /**
+     * Blocks with a dynamic range up to this have no black point of their own.
+     */
+    private static final int MIN_DYNAMIC_RANGE = 24;
+
+    private final int mChangeThreshold;
+    private Blocks mBlocks;
+    private BitMatrix mMatrix;
+    private int mUpdatedBlocks = -1;
+
+    /**
+     * @param source          the first frame.
+     * @param changeThreshold the change of a block, in gray levels per pixel, up to which its
+     *                        previous thresholds are kept.
+     */
+    public IncrementalBinarizer(LuminanceSource source, int changeThreshold) {
+        this(source, changeThreshold, null);
+    }
+
+    private IncrementalBinarizer(LuminanceSource source, int changeThreshold, Blocks blocks) {
+        super(source);
+        if (changeThreshold < 0) {
+            throw new IllegalArgumentException("Change threshold must not be negative.");
+        }
+        mChangeThreshold = changeThreshold;
+        mBlocks = blocks;
+    }
+
+    /**
+     * @return a binarizer for the frame following this one, reusing the work done on this one.
+     */
+    public IncrementalBinarizer next(LuminanceSource source) {
+        Blocks blocks = mBlocks;
+        mBlocks = null;
+        mMatrix = null;
+        return new IncrementalBinarizer(source, mChangeThreshold, blocks);
+    }
+
+    /**
+     * @return the number of blocks whose bits were computed for this frame, or -1 before
+     * {@link #getBlackMatrix()} or for frames binarized globally.
+     */
+    public int getUpdatedBlockCount() {
+        return mUpdatedBlocks;
+    }
+
+    /**
+     * @return the number of 8x8 blocks of the frame.
+     */
+    public int getBlockCount() {
+        LuminanceSource source = getLuminanceSource();
+        return blocksAcross(source.getWidth()) * blocksAcross(source.getHeight());
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        if (mMatrix != null) {
+            return mMatrix;
+        }
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width < MINIMUM_DIMENSION || height < MINIMUM_DIMENSION) {
+            mMatrix = super.getBlackMatrix();
+            return mMatrix;
+        }
+        if (mBlocks == null || mBlocks.mMatrix.getWidth() != width
+                || mBlocks.mMatrix.getHeight() != height) {
+            mBlocks = new Blocks(width, height);
+        }
+        mUpdatedBlocks = mBlocks.update(source.getMatrix(), mChangeThreshold);
+        mMatrix = mBlocks.mMatrix;
+        return mMatrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new IncrementalBinarizer(source, mChangeThreshold);
+    }
+
+    private static int blocksAcross(int pixels) {
+        return (pixels + BLOCK_SIZE - 1) >> BLOCK_SIZE_POWER;
+    }
+
+    /**
+     * What is kept of a frame for the next one: for each block, flat in row order, the
+     * statistics it was last thresholded with, its black point and threshold, and the bits.
+     */
+    private static final class Blocks {
+        final int mWidth;
+        final int mHeight;
+        final int mBlocksAcross;
+        final int mBlocksDown;
+        final BitMatrix mMatrix;
+
+        final int[] mSums;
+        final int[] mWeightedSums;
+        final int[] mMins;
+        final boolean[] mFlat;
+        final int[] mBlackPoints;
+        final int[] mThresholds;
+
+        /**
+         * Per block, whether its pixels changed beyond the threshold, whether its black point
+         * changed, and whether its bits are computed again, in the current frame.
+         */
+        final boolean[] mChanged;
+        final boolean[] mBlackPointChanged;
+        final boolean[] mDirty;
+
+        /**
+         * Whether nothing was computed yet, and every block has to be.
+         */
+        boolean mFresh = true;
+
+        Blocks(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+            mBlocksAcross = blocksAcross(width);
+            mBlocksDown = blocksAcross(height);
+            mMatrix = new BitMatrix(width, height);
+            int count = mBlocksAcross * mBlocksDown;
+            mSums = new int[count];
+            mWeightedSums = new int[count];
+            mMins = new int[count];
+            mFlat = new boolean[count];
+            mBlackPoints = new int[count];
+            mThresholds = new int[count];
+            mChanged = new boolean[count];
+            mBlackPointChanged = new boolean[count];
+            mDirty = new boolean[count];
+        }
+
+        /**
+         * Binarize a new frame into the matrix.
+         *
+         * @return the number of blocks whose bits were computed.
+         */
+        int update(byte[] luminances, int changeThreshold) {
+            updateBlackPoints(luminances, changeThreshold);
+            updateThresholds();
+            markOverlaps();
+            int updated = updateBits(luminances);
+            mFresh = false;
+            return updated;
+        }
+
+        /**
+         * Compute the black point of every changed block, as
+         * {@code HybridBinarizer.calculateBlackPoints} does.
+         */
+        private void updateBlackPoints(byte[] luminances, int changeThreshold) {
+            int maxXOffset = mWidth - BLOCK_SIZE;
+            int maxYOffset = mHeight - BLOCK_SIZE;
+            for (int y = 0; y < mBlocksDown; y++) {
+                int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+                for (int x = 0; x < mBlocksAcross; x++) {
+                    int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                    int sum = 0;
+                    int weightedSum = 0;
+                    int min = 0xFF;
+                    int max = 0;
+                    int weight = 1;
+                    for (int yy = 0, offset = yoffset * mWidth + xoffset; yy < BLOCK_SIZE;
+                         yy++, offset += mWidth) {
+                        for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                            int pixel = luminances[offset + xx] & 0xFF;
+                            sum += pixel;
+                            weightedSum += pixel * weight++;
+                            if (pixel < min) {
+                                min = pixel;
+                            }
+                            if (pixel > max) {
+                                max = pixel;
+                            }
+                        }
+                    }
+                    boolean flat = max - min <= MIN_DYNAMIC_RANGE;
+
+                    int block = y * mBlocksAcross + x;
+                    boolean changed = mFresh || flat != mFlat[block]
+                            || Math.abs(sum - mSums[block]) > changeThreshold * BLOCK_PIXELS
+                            || Math.abs(weightedSum - mWeightedSums[block])
+                            > changeThreshold * BLOCK_WEIGHTS
+                            || (flat && Math.abs(min - mMins[block]) > changeThreshold);
+                    mChanged[block] = changed;
+                    // The black point of a flat block follows those of its neighbours above and
+                    // to the left, which are final for this frame by now.
+                    boolean neighbourChanged = flat && x > 0 && y > 0
+                            && (mBlackPointChanged[block - mBlocksAcross]
+                            || mBlackPointChanged[block - 1]
+                            || mBlackPointChanged[block - mBlocksAcross - 1]);
+                    if (!changed && !neighbourChanged) {
+                        mBlackPointChanged[block] = false;
+                        continue;
+                    }
+                    if (changed) {
+                        mSums[block] = sum;
+                        mWeightedSums[block] = weightedSum;
+                        mMins[block] = min;
+                        mFlat[block] = flat;
+                    }
+
+                    int blackPoint = mSums[block] >> (BLOCK_SIZE_POWER * 2);
+                    if (mFlat[block]) {
+                        blackPoint = mMins[block] / 2;
+                        if (y > 0 && x > 0) {
+                            int averageNeighborBlackPoint = (mBlackPoints[block - mBlocksAcross]
+                                    + 2 * mBlackPoints[block - 1]
+                                    + mBlackPoints[block - mBlocksAcross - 1]) / 4;
+                            if (mMins[block] < averageNeighborBlackPoint) {
+                                blackPoint = averageNeighborBlackPoint;
+                            }
+                        }
+                    }
+                    mBlackPointChanged[block] = mFresh || blackPoint != mBlackPoints[block];
+                    mBlackPoints[block] = blackPoint;
+                }
+            }
+        }
+
+        /**
+         * Average the black points around each block, as
+         * {@code HybridBinarizer.calculateThresholdForBlock} does, and mark the blocks whose
+         * pixels or threshold changed.
+         */
+        private void updateThresholds() {
+            for (int y = 0; y < mBlocksDown; y++) {
+                int top = cap(y, 2, mBlocksDown - 3);
+                for (int x = 0; x < mBlocksAcross; x++) {
+                    int left = cap(x, 2, mBlocksAcross - 3);
+                    int sum = 0;
+                    for (int z = -2; z <= 2; z++) {
+                        int row = (top + z) * mBlocksAcross + left;
+                        sum += mBlackPoints[row - 2] + mBlackPoints[row - 1] + mBlackPoints[row]
+                                + mBlackPoints[row + 1] + mBlackPoints[row + 2];
+                    }
+                    int threshold = sum / 25;
+                    int block = y * mBlocksAcross + x;
+                    mDirty[block] = mFresh || mChanged[block] || threshold != mThresholds[block];
+                    mThresholds[block] = threshold;
+                }
+            }
+        }
+
+        /**
+         * The last column and row of blocks are moved back to stay within the frame, and share
+         * pixels with the blocks before them, which {@link HybridBinarizer} sets if either block
+         * finds them black.  Those pairs are thresholded together.
+         */
+        private void markOverlaps() {
+            if (mWidth % BLOCK_SIZE != 0) {
+                for (int y = 0; y < mBlocksDown; y++) {
+                    int last = (y + 1) * mBlocksAcross - 1;
+                    if (mDirty[last] || mDirty[last - 1]) {
+                        mDirty[last] = true;
+                        mDirty[last - 1] = true;
+                    }
+                }
+            }
+            if (mHeight % BLOCK_SIZE != 0) {
+                int last = (mBlocksDown - 1) * mBlocksAcross;
+                for (int x = 0; x < mBlocksAcross; x++) {
+                    if (mDirty[last + x] || mDirty[last + x - mBlocksAcross]) {
+                        mDirty[last + x] = true;
+                        mDirty[last + x - mBlocksAcross] = true;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Threshold the pixels of the dirty blocks into the matrix, setting and clearing their
+         * bits.  Pixels that the last column or row of blocks shares with the blocks before them,
+         * which {@link #markOverlaps()} made dirty as well, are only set, as they were cleared
+         * already.
+         */
+        private int updateBits(byte[] luminances) {
+            if (mFresh) {
+                mMatrix.clear();
+            }
+            int maxXOffset = mWidth - BLOCK_SIZE;
+            int maxYOffset = mHeight - BLOCK_SIZE;
+            int updated = 0;
+            for (int y = 0; y < mBlocksDown; y++) {
+                int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+                int sharedRows = (y << BLOCK_SIZE_POWER) - yoffset;
+                for (int x = 0; x < mBlocksAcross; x++) {
+                    int block = y * mBlocksAcross + x;
+                    if (!mDirty[block]) {
+                        continue;
+                    }
+                    updated++;
+                    int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                    int sharedColumns = (x << BLOCK_SIZE_POWER) - xoffset;
+                    int threshold = mThresholds[block];
+                    for (int yy = 0, offset = yoffset * mWidth + xoffset; yy < BLOCK_SIZE;
+                         yy++, offset += mWidth) {
+                        for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                            // <= so that black pixels stay black with a threshold of 0.
+                            if ((luminances[offset + xx] & 0xFF) <= threshold) {
+                                mMatrix.set(xoffset + xx, yoffset + yy);
+                            } else if (yy >= sharedRows && xx >= sharedColumns) {
+                                mMatrix.unset(xoffset + xx, yoffset + yy);
+                            }
+                        }
+                    }
+                }
+            }
+            return updated;
+        }
+
+        private static int cap(int value, int min, int max) {
+            return value < min ? min : value > max ? max : value;
+        }
+    }
+}
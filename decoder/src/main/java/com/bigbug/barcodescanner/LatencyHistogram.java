@@ -0,0 +1,117 @@
+package com.bigbug.barcodescanner;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with a bounded relative error, in the manner of HdrHistogram.
+ * <p/>
+ * Values are kept in microseconds.  Below {@code 2^SUB_BUCKET_BITS} microseconds every value has
+ * its own bucket; above, each power of two is split into {@code 2^SUB_BUCKET_BITS} linear
+ * buckets, so a reported value is within about 3% of the recorded one.  Recording is a couple of
+ * shifts and one atomic increment, cheap enough to stay on in production.
+ * <p/>
+ * This class is thread safe.  Reads are not atomic with respect to concurrent recording, so a
+ * percentile may miss values recorded while it is computed.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Magnitude of the largest power of two tracked, in microseconds: values up to about 38 hours
+     * are kept, longer ones are recorded as that.
+     */
+    private static final int MAX_MAGNITUDE = 36;
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+    private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotalCount = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /**
+     * Record a latency.  Negative values are recorded as 0.
+     *
+     * @param nanos the latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.min(MAX_VALUE, Math.max(0, nanos / 1000));
+        mCounts.incrementAndGet(indexOf(micros));
+        mTotalCount.incrementAndGet();
+        long max = mMaxMicros.get();
+        while (micros > max && !mMaxMicros.compareAndSet(max, micros)) {
+            max = mMaxMicros.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * @return the largest recorded value, in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return mMaxMicros.get() * 1000;
+    }
+
+    /**
+     * Return the value below which the given percentage of the recorded values fall.
+     *
+     * @param percentile between 0 and 100.
+     * @return the highest value equivalent to the percentile's bucket, in nanoseconds, or 0 if
+     * nothing was recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = mTotalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalent(i), mMaxMicros.get()) * 1000;
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Forget all recorded values.  Values recorded concurrently may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mMaxMicros.set(0);
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        // The SUB_BUCKET_BITS bits below the leading one pick the linear bucket.
+        int top = (int) (micros >>> shift);
+        return (shift + 1) * SUB_BUCKET_COUNT + top - SUB_BUCKET_COUNT;
+    }
+
+    static long highestEquivalent(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long top = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+}
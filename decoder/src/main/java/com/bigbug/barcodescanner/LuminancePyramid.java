@@ -0,0 +1,102 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+/**
+ * Downsampled copies of a luminance frame, each level half the width and height of the previous
+ * one.
+ * <p/>
+ * Level 0 is the frame itself and is never copied.  Level 1 is built by averaging 2x2 blocks of
+ * the frame a pair of rows at a time, and every further level from the level before it, so no
+ * full-size buffer is ever allocated.  The buffers are kept and reused for the next frame.
+ * <p/>
+ * This class is not thread safe; keep one instance per decoding thread.
+ */
+final class LuminancePyramid {
+
+    private final LuminanceSource[] mLevels;
+    private final byte[][] mBuffers;
+    private byte[] mUpperRow;
+    private byte[] mLowerRow;
+    private int mLevelCount;
+
+    /**
+     * @param maxLevels the maximum number of levels, including the frame itself.
+     */
+    LuminancePyramid(int maxLevels) {
+        mLevels = new LuminanceSource[maxLevels];
+        mBuffers = new byte[maxLevels][];
+    }
+
+    /**
+     * Build the levels for a new frame.  Levels are only built as long as both dimensions stay at
+     * least {@code minDimension} pixels.
+     *
+     * @return the number of levels built, at least 1.
+     */
+    int build(LuminanceSource source, int minDimension) {
+        mLevels[0] = source;
+        mLevelCount = 1;
+        while (mLevelCount < mLevels.length) {
+            LuminanceSource previous = mLevels[mLevelCount - 1];
+            int width = previous.getWidth() / 2;
+            int height = previous.getHeight() / 2;
+            if (width < minDimension || height < minDimension) {
+                break;
+            }
+            mLevels[mLevelCount] = downsample(previous, mLevelCount, width, height);
+            mLevelCount++;
+        }
+        for (int i = mLevelCount; i < mLevels.length; i++) {
+            mLevels[i] = null;
+        }
+        return mLevelCount;
+    }
+
+    /**
+     * @return the given level of the last frame passed to {@link #build(LuminanceSource, int)}.
+     */
+    LuminanceSource getLevel(int level) {
+        if (level >= mLevelCount) {
+            throw new IllegalArgumentException("Level " + level + " was not built.");
+        }
+        return mLevels[level];
+    }
+
+    /**
+     * Forget the last frame, so that its source can be released.
+     */
+    void clear() {
+        for (int i = 0; i < mLevels.length; i++) {
+            mLevels[i] = null;
+        }
+        mLevelCount = 0;
+    }
+
+    private LuminanceSource downsample(LuminanceSource source, int level, int width, int height) {
+        byte[] buffer = mBuffers[level];
+        if (buffer == null || buffer.length < width * height) {
+            buffer = new byte[width * height];
+            mBuffers[level] = buffer;
+        }
+
+        int sourceWidth = source.getWidth();
+        if (mUpperRow == null || mUpperRow.length < sourceWidth) {
+            mUpperRow = new byte[sourceWidth];
+            mLowerRow = new byte[sourceWidth];
+        }
+
+        for (int y = 0; y < height; y++) {
+            byte[] upper = source.getRow(2 * y, mUpperRow);
+            byte[] lower = source.getRow(2 * y + 1, mLowerRow);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int sum = (upper[2 * x] & 0xff) + (upper[2 * x + 1] & 0xff) +
+                        (lower[2 * x] & 0xff) + (lower[2 * x + 1] & 0xff);
+                buffer[offset + x] = (byte) ((sum + 2) >> 2);
+            }
+        }
+        return new PlanarYUVLuminanceSource(buffer, width, height, 0, 0, width, height, false);
+    }
+}
@@ -0,0 +1,215 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.ResultPoint;
+
+/**
+ * Follows the barcode being scanned from frame to frame, to predict the part of the next frame it
+ * will be in.
+ * <p/>
+ * The position of the barcode is taken from the result points of each decode.  Its center is
+ * tracked with an alpha-beta filter, a constant velocity model corrected by every measurement,
+ * so that a barcode moving across the frame stays inside the predicted region.  The region is a
+ * square around the barcode, since the result points of a 1D barcode lie on a single row, grown
+ * by a margin and by the distance the barcode may have moved since it was seen.
+ * <p/>
+ * Positions are fractions of the frame, and times are frame timestamps, so that frames decoded
+ * out of order on several threads are handled.  A measurement far from the prediction is taken
+ * to be another barcode, and restarts the track.  No region is predicted once the barcode has not
+ * been seen for a while.
+ * <p/>
+ * This class is thread safe.
+ */
+public class RegionTracker {
+
+    /**
+     * Gains of the alpha-beta filter, on the position and on the velocity.
+     */
+    private static final float ALPHA = 0.85f;
+    private static final float BETA = 0.3f;
+
+    /**
+     * Predicted regions are no smaller than this fraction of the frame width and height.
+     */
+    private static final float MIN_REGION_FRACTION = 0.2f;
+
+    /**
+     * No region is predicted when it would cover more than this fraction of the frame, cropping
+     * would not save anything.
+     */
+    private static final float MAX_REGION_AREA = 0.6f;
+
+    private static final float NANOS_PER_SECOND = 1e9f;
+
+    private final long mMaxAgeNanos;
+    private final float mMargin;
+
+    // *********************************************************************************************
+    // State protected by this.
+
+    private boolean mTracking;
+    private long mLastNanos;
+
+    /**
+     * Center and half size of the barcode, as fractions of the frame, and velocity of the center
+     * in fractions of the frame per second.
+     */
+    private float mCenterX;
+    private float mCenterY;
+    private float mHalfWidth;
+    private float mHalfHeight;
+    private float mVelocityX;
+    private float mVelocityY;
+
+    private long mRegionHits;
+    private long mRegionMisses;
+
+    //**********************************************************************************************
+
+    /**
+     * @param maxAgeNanos the time after the last sighting after which no region is predicted.
+     * @param margin      the fraction of the barcode size added around it on every side.
+     */
+    public RegionTracker(long maxAgeNanos, float margin) {
+        if (maxAgeNanos <= 0 || margin < 0f) {
+            throw new IllegalArgumentException("Age must be positive and margin not negative.");
+        }
+        mMaxAgeNanos = maxAgeNanos;
+        mMargin = margin;
+    }
+
+    /**
+     * Predict where the barcode will be in a frame.
+     *
+     * @param frameNanos the timestamp of the frame.
+     * @return the region to decode first, or null if the whole frame should be decoded.
+     */
+    public synchronized ScanWindow predict(long frameNanos) {
+        if (!isTracking(frameNanos)) {
+            return null;
+        }
+        float seconds = Math.max(0L, frameNanos - mLastNanos) / NANOS_PER_SECOND;
+        float centerX = clamp(mCenterX + mVelocityX * seconds);
+        float centerY = clamp(mCenterY + mVelocityY * seconds);
+        float halfWidth = Math.max(MIN_REGION_FRACTION / 2,
+                mHalfWidth * (1f + 2 * mMargin) + Math.abs(mVelocityX * seconds));
+        float halfHeight = Math.max(MIN_REGION_FRACTION / 2,
+                mHalfHeight * (1f + 2 * mMargin) + Math.abs(mVelocityY * seconds));
+
+        float left = Math.max(0f, centerX - halfWidth);
+        float top = Math.max(0f, centerY - halfHeight);
+        float right = Math.min(1f, centerX + halfWidth);
+        float bottom = Math.min(1f, centerY + halfHeight);
+        if ((right - left) * (bottom - top) > MAX_REGION_AREA) {
+            return null;
+        }
+        return new ScanWindow(left, top, right, bottom);
+    }
+
+    /**
+     * Record where a barcode was found in a frame.
+     *
+     * @param points     the result points of the barcode, in frame coordinates.
+     * @param width      the width of the frame, in pixels.
+     * @param height     the height of the frame, in pixels.
+     * @param frameNanos the timestamp of the frame.
+     */
+    public synchronized void update(ResultPoint[] points, int width, int height,
+                                    long frameNanos) {
+        if (points == null) {
+            return;
+        }
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (ResultPoint point : points) {
+            if (point != null) {
+                minX = Math.min(minX, point.getX());
+                minY = Math.min(minY, point.getY());
+                maxX = Math.max(maxX, point.getX());
+                maxY = Math.max(maxY, point.getY());
+            }
+        }
+        if (minX > maxX) {
+            return;
+        }
+        float centerX = (minX + maxX) / 2 / width;
+        float centerY = (minY + maxY) / 2 / height;
+        float halfSize = Math.max(maxX - minX, maxY - minY) / 2;
+        float halfWidth = halfSize / width;
+        float halfHeight = halfSize / height;
+
+        if (isTracking(frameNanos) && frameNanos <= mLastNanos) {
+            // An older frame decoded late, the track has moved on already.
+            return;
+        }
+        if (isTracking(frameNanos)) {
+            float seconds = (frameNanos - mLastNanos) / NANOS_PER_SECOND;
+            float residualX = centerX - (mCenterX + mVelocityX * seconds);
+            float residualY = centerY - (mCenterY + mVelocityY * seconds);
+            if (Math.abs(residualX) <= mHalfWidth + halfWidth
+                    && Math.abs(residualY) <= mHalfHeight + halfHeight) {
+                mCenterX += mVelocityX * seconds + ALPHA * residualX;
+                mCenterY += mVelocityY * seconds + ALPHA * residualY;
+                mVelocityX += BETA * residualX / seconds;
+                mVelocityY += BETA * residualY / seconds;
+                mHalfWidth = halfWidth;
+                mHalfHeight = halfHeight;
+                mLastNanos = frameNanos;
+                return;
+            }
+        }
+        // A new barcode, or one that jumped: start over from where it is.
+        mTracking = true;
+        mCenterX = centerX;
+        mCenterY = centerY;
+        mHalfWidth = halfWidth;
+        mHalfHeight = halfHeight;
+        mVelocityX = 0f;
+        mVelocityY = 0f;
+        mLastNanos = frameNanos;
+    }
+
+    /**
+     * Record that a barcode was found in a predicted region.
+     */
+    public synchronized void regionHit() {
+        mRegionHits++;
+    }
+
+    /**
+     * Record that nothing was found in a predicted region, and the whole frame had to be decoded.
+     */
+    public synchronized void regionMissed() {
+        mRegionMisses++;
+    }
+
+    /**
+     * Forget the barcode, so that the next frames are decoded whole.
+     */
+    public synchronized void reset() {
+        mTracking = false;
+    }
+
+    /**
+     * @return the number of barcodes found in a predicted region.
+     */
+    public synchronized long getRegionHits() {
+        return mRegionHits;
+    }
+
+    /**
+     * @return the number of predicted regions in which nothing was found.
+     */
+    public synchronized long getRegionMisses() {
+        return mRegionMisses;
+    }
+
+    private boolean isTracking(long frameNanos) {
+        return mTracking && frameNanos - mLastNanos <= mMaxAgeNanos;
+    }
+
+    private static float clamp(float fraction) {
+        return Math.max(0f, Math.min(1f, fraction));
+    }
+}
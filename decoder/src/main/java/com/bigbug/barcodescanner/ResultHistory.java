@@ -0,0 +1,82 @@
+package com.bigbug.barcodescanner;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the capture results of the last few frames of a repeating request, by sensor timestamp,
+ * so that a streamed image can be paired with the result of its own frame.
+ * <p/>
+ * Results and images of a repeating request arrive on different paths, and either may come
+ * first.  The latest result is usually that of an earlier frame, so rather than pairing an image
+ * with it, the image looks up the result with its own timestamp, and goes without one if that
+ * result has not arrived or has already been pushed out.
+ * <p/>
+ * This class is not thread safe.
+ *
+ * @param <R> the type of the capture results.
+ */
+public class ResultHistory<R> {
+
+    private final long[] mTimestamps;
+    private final Object[] mResults;
+
+    /**
+     * The slot the next result goes to, and the number of slots holding a result.
+     */
+    private int mNext;
+    private int mSize;
+
+    /**
+     * @param capacity the number of results kept, enough to cover the frames a result may lag
+     *                 behind or run ahead of its image.
+     */
+    public ResultHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        mTimestamps = new long[capacity];
+        mResults = new Object[capacity];
+    }
+
+    /**
+     * Add the result of a frame, pushing out the oldest one once full.
+     *
+     * @param timestamp the sensor timestamp of the frame.
+     */
+    public void put(long timestamp, R result) {
+        if (result == null) throw new NullPointerException();
+        mTimestamps[mNext] = timestamp;
+        mResults[mNext] = result;
+        mNext = (mNext + 1) % mResults.length;
+        mSize = Math.min(mSize + 1, mResults.length);
+    }
+
+    /**
+     * @param timestamp the sensor timestamp of a frame.
+     * @return the result of the frame, or null if it is not kept.
+     */
+    @SuppressWarnings("unchecked")
+    public R get(long timestamp) {
+        // Newest first, images are mostly looked up right after their result arrived.
+        for (int i = 1; i <= mSize; i++) {
+            int slot = (mNext - i + mResults.length) % mResults.length;
+            if (mTimestamps[slot] == timestamp) {
+                return (R) mResults[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forget all results, when the frames they belong to will no longer be looked up.
+     */
+    public void clear() {
+        Arrays.fill(mResults, null);
+        mNext = 0;
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+}
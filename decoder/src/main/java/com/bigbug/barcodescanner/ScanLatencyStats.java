@@ -0,0 +1,95 @@
+package com.bigbug.barcodescanner;
+
+import java.util.Locale;
+
+/**
+ * Latency histograms of every stage of a scan, fed with {@link ScanTimeline}s.
+ * <p/>
+ * The latency of a stage is the time from the latest earlier stage the frame went through to the
+ * stage itself, so that skipped stages are folded into the next one.  Stages reached out of
+ * order, such as an image arriving before its capture result, count as taking no time.  The total
+ * latency is the time from the first to the last stage.
+ * <p/>
+ * This class is thread safe and lock-free.
+ */
+public class ScanLatencyStats {
+
+    private final LatencyHistogram[] mStages = new LatencyHistogram[ScanTimeline.STAGE_COUNT];
+    private final LatencyHistogram mTotal = new LatencyHistogram();
+
+    public ScanLatencyStats() {
+        for (int i = 0; i < mStages.length; i++) {
+            mStages[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Record the latencies of a frame that went as far as it would go.
+     */
+    public void record(ScanTimeline timeline) {
+        int first = -1;
+        int previous = -1;
+        for (int stage = 0; stage < ScanTimeline.STAGE_COUNT; stage++) {
+            if (!timeline.isMarked(stage)) {
+                continue;
+            }
+            if (previous < 0) {
+                first = stage;
+            } else {
+                mStages[stage].record(timeline.getNanos(stage) - timeline.getNanos(previous));
+            }
+            previous = stage;
+        }
+        if (first >= 0 && previous > first) {
+            mTotal.record(timeline.getNanos(previous) - timeline.getNanos(first));
+        }
+    }
+
+    /**
+     * @param stage one of the {@link ScanTimeline} stage constants.
+     * @return the latencies of reaching the stage.  The first stage is never recorded.
+     */
+    public LatencyHistogram getStage(int stage) {
+        return mStages[stage];
+    }
+
+    /**
+     * @return the latencies from the first to the last stage of every frame.
+     */
+    public LatencyHistogram getTotal() {
+        return mTotal;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : mStages) {
+            histogram.reset();
+        }
+        mTotal.reset();
+    }
+
+    /**
+     * @return one line per recorded stage and one for the total, with p50/p95/p99 in
+     * milliseconds.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int stage = 0; stage < ScanTimeline.STAGE_COUNT; stage++) {
+            if (mStages[stage].getCount() > 0) {
+                append(builder, ScanTimeline.getStageName(stage), mStages[stage]);
+            }
+        }
+        append(builder, "total", mTotal);
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, String name, LatencyHistogram histogram) {
+        if (builder.length() > 0) {
+            builder.append('\n');
+        }
+        builder.append(String.format(Locale.US, "%-7s p50 %6.1f  p95 %6.1f  p99 %6.1f ms", name,
+                histogram.getPercentileNanos(50) / 1e6,
+                histogram.getPercentileNanos(95) / 1e6,
+                histogram.getPercentileNanos(99) / 1e6));
+    }
+}
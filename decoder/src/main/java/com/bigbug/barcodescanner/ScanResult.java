@@ -0,0 +1,119 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A barcode found in a frame, with the frame it was found in and the time the frame took through
+ * each {@link ScanTimeline} stage.
+ * <p/>
+ * A scan result wraps the ZXing {@link Result} and the {@link ScanTimeline} of its frame without
+ * copying them.  Instances come from a {@link ScanResultPool} and go back to it once delivered:
+ * a scan result handed to a listener is only valid until the listener returns, and must be
+ * {@link #copy() copied} to be kept longer.  Arrays and maps returned by the getters are shared
+ * and must not be modified.
+ * <p/>
+ * Instances are immutable while they are valid.
+ */
+public final class ScanResult {
+
+    private Result mResult;
+    private long mFrameNanos;
+    private ScanTimeline mTimeline;
+
+    ScanResult() {
+    }
+
+    void set(Result result, long frameNanos, ScanTimeline timeline) {
+        mResult = result;
+        mFrameNanos = frameNanos;
+        mTimeline = timeline;
+    }
+
+    void clear() {
+        mResult = null;
+        mTimeline = null;
+    }
+
+    public String getText() {
+        return mResult.getText();
+    }
+
+    public BarcodeFormat getFormat() {
+        return mResult.getBarcodeFormat();
+    }
+
+    /**
+     * @return the raw bytes of the barcode, or null if the format does not define them.
+     */
+    public byte[] getRawBytes() {
+        return mResult.getRawBytes();
+    }
+
+    /**
+     * @return the points ZXing located the barcode by, such as finder patterns or the ends of a
+     * 1D row, in the coordinates of the decoded frame.
+     */
+    public ResultPoint[] getResultPoints() {
+        return mResult.getResultPoints();
+    }
+
+    /**
+     * @return the metadata ZXing found in the barcode, such as its orientation or error
+     * correction level.
+     */
+    public Map<ResultMetadataType, Object> getMetadata() {
+        Map<ResultMetadataType, Object> metadata = mResult.getResultMetadata();
+        return metadata == null ? Collections.<ResultMetadataType, Object>emptyMap() : metadata;
+    }
+
+    /**
+     * @return the sensor timestamp of the frame, to correlate the scan with it.
+     */
+    public long getFrameTimestampNanos() {
+        return mFrameNanos;
+    }
+
+    /**
+     * @return the time the frame reached the given {@link ScanTimeline} stage, or 0 if it did not.
+     */
+    public long getStageNanos(int stage) {
+        return mTimeline.getNanos(stage);
+    }
+
+    /**
+     * @return the time from the first stage the frame reached to the given one, or 0 if it did
+     * not reach it.
+     */
+    public long getElapsedNanos(int stage) {
+        if (!mTimeline.isMarked(stage)) {
+            return 0;
+        }
+        for (int first = 0; first < stage; first++) {
+            if (mTimeline.isMarked(first)) {
+                return mTimeline.getNanos(stage) - mTimeline.getNanos(first);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return a scan result with the same content that is not pooled, and stays valid.
+     */
+    public ScanResult copy() {
+        ScanResult copy = new ScanResult();
+        copy.set(mResult, mFrameNanos, mTimeline);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanResult{" + (mResult == null ? "recycled" : mResult.getBarcodeFormat() + " "
+                + mResult.getText() + ", frame " + mFrameNanos) + "}";
+    }
+}
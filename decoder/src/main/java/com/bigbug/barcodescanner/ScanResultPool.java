@@ -0,0 +1,95 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.Result;
+
+/**
+ * A bounded pool of {@link ScanResult}s, so that delivering barcodes to the UI does not allocate
+ * one object per barcode once scanning has warmed up.
+ * <p/>
+ * This class is thread safe.
+ */
+public final class ScanResultPool {
+
+    private final ScanResult[] mPooled;
+
+    // *********************************************************************************************
+    // State protected by this.
+
+    private int mSize;
+    private long mHits;
+    private long mMisses;
+
+    //**********************************************************************************************
+
+    /**
+     * @param maxPooled the maximum number of scan results kept for reuse.
+     */
+    public ScanResultPool(int maxPooled) {
+        if (maxPooled < 1) {
+            throw new IllegalArgumentException("Pool capacity must be positive.");
+        }
+        mPooled = new ScanResult[maxPooled];
+    }
+
+    /**
+     * Return a scan result holding the given barcode, reusing a pooled one if possible.
+     *
+     * @param result     the decoded barcode, with result points in frame coordinates.
+     * @param frameNanos the sensor timestamp of the frame.
+     * @param timeline   the stages of the frame.
+     */
+    public ScanResult acquire(Result result, long frameNanos, ScanTimeline timeline) {
+        if (result == null || timeline == null) throw new NullPointerException();
+        ScanResult scanResult = null;
+        synchronized (this) {
+            if (mSize > 0) {
+                scanResult = mPooled[--mSize];
+                mPooled[mSize] = null;
+                mHits++;
+            } else {
+                mMisses++;
+            }
+        }
+        if (scanResult == null) {
+            scanResult = new ScanResult();
+        }
+        scanResult.set(result, frameNanos, timeline);
+        return scanResult;
+    }
+
+    /**
+     * Give a scan result back for reuse.  It must not be used afterwards.
+     */
+    public void release(ScanResult scanResult) {
+        if (scanResult == null) {
+            return;
+        }
+        scanResult.clear();
+        synchronized (this) {
+            if (mSize < mPooled.length) {
+                mPooled[mSize++] = scanResult;
+            }
+        }
+    }
+
+    /**
+     * @return the number of scan results served from the pool.
+     */
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * @return the number of scan results that had to be allocated.
+     */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return the number of scan results waiting for reuse.
+     */
+    public synchronized int getPooledCount() {
+        return mSize;
+    }
+}
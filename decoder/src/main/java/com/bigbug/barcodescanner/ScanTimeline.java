@@ -0,0 +1,67 @@
+package com.bigbug.barcodescanner;
+
+/**
+ * Timestamps of one frame on its way from the capture request to the UI.
+ * <p/>
+ * Stages may be skipped: frames streamed from the preview have no capture request of their own
+ * and start at {@link #IMAGE_AVAILABLE}.
+ * <p/>
+ * This class is not thread safe.  A timeline travels with its frame, and is handed from thread to
+ * thread through executors and handlers, which make earlier marks visible to later stages.
+ */
+public class ScanTimeline {
+
+    public static final int CAPTURE_REQUESTED = 0;
+    public static final int CAPTURE_COMPLETED = 1;
+    public static final int IMAGE_AVAILABLE = 2;
+    public static final int DECODE_STARTED = 3;
+    public static final int DECODE_FINISHED = 4;
+    public static final int UI_DISPATCHED = 5;
+
+    public static final int STAGE_COUNT = 6;
+
+    private static final String[] STAGE_NAMES = {
+            "request", "capture", "image", "queue", "decode", "ui"
+    };
+
+    private final Clock mClock;
+    private final long[] mStamps = new long[STAGE_COUNT];
+    private int mMarked;
+
+    public ScanTimeline(Clock clock) {
+        if (clock == null) throw new NullPointerException();
+        mClock = clock;
+    }
+
+    /**
+     * Record that the frame reached a stage now.
+     *
+     * @param stage one of the stage constants.
+     */
+    public void mark(int stage) {
+        mStamps[stage] = mClock.nanoTime();
+        mMarked |= 1 << stage;
+    }
+
+    /**
+     * @return true if the frame reached the given stage.
+     */
+    public boolean isMarked(int stage) {
+        return (mMarked & (1 << stage)) != 0;
+    }
+
+    /**
+     * @return the time the frame reached the given stage, as returned by the clock, or 0 if it
+     * did not.
+     */
+    public long getNanos(int stage) {
+        return isMarked(stage) ? mStamps[stage] : 0;
+    }
+
+    /**
+     * @return a short name of the time spent reaching the given stage, for logs and overlays.
+     */
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+}
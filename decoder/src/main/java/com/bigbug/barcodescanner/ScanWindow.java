@@ -0,0 +1,187 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * The part of a frame that is searched for barcodes, as fractions of the frame size.
+ * <p/>
+ * A window is first expressed in the coordinates of the preview the operator is looking at, and
+ * then mapped into the coordinates of the captured image with {@link #mapToImage(int, boolean)}.
+ * Only the window is handed to the binarizer, whose cost grows with the number of pixels.
+ * <p/>
+ * Instances are immutable.
+ */
+public final class ScanWindow {
+
+    /**
+     * The whole frame.
+     */
+    public static final ScanWindow FULL = new ScanWindow(0f, 0f, 1f, 1f);
+
+    private final float mLeft;
+    private final float mTop;
+    private final float mRight;
+    private final float mBottom;
+
+    /**
+     * @param left   the left edge, as a fraction of the frame width.
+     * @param top    the top edge, as a fraction of the frame height.
+     * @param right  the right edge, as a fraction of the frame width.
+     * @param bottom the bottom edge, as a fraction of the frame height.
+     */
+    public ScanWindow(float left, float top, float right, float bottom) {
+        if (!(0f <= left && left < right && right <= 1f && 0f <= top && top < bottom &&
+                bottom <= 1f)) {
+            throw new IllegalArgumentException("Scan window must be a non-empty part of the frame.");
+        }
+        mLeft = left;
+        mTop = top;
+        mRight = right;
+        mBottom = bottom;
+    }
+
+    /**
+     * @param widthFraction  the width of the window, as a fraction of the frame width.
+     * @param heightFraction the height of the window, as a fraction of the frame height.
+     * @return a window centered in the frame.
+     */
+    public static ScanWindow centered(float widthFraction, float heightFraction) {
+        return new ScanWindow((1f - widthFraction) / 2, (1f - heightFraction) / 2,
+                (1f + widthFraction) / 2, (1f + heightFraction) / 2);
+    }
+
+    public float getLeft() {
+        return mLeft;
+    }
+
+    public float getTop() {
+        return mTop;
+    }
+
+    public float getRight() {
+        return mRight;
+    }
+
+    public float getBottom() {
+        return mBottom;
+    }
+
+    /**
+     * @return the fraction of the frame covered by this window.
+     */
+    public float getArea() {
+        return (mRight - mLeft) * (mBottom - mTop);
+    }
+
+    public boolean isFull() {
+        return mLeft == 0f && mTop == 0f && mRight == 1f && mBottom == 1f;
+    }
+
+    /**
+     * Map a window in view coordinates into the coordinates of the image shown in the view.
+     *
+     * @param rotation the clockwise rotation, in degrees and a multiple of 90, that turns the
+     *                 image into the view, as computed by
+     *                 {@link CameraOrientation#sensorToDeviceRotation(int, int, boolean)} for
+     *                 images the camera does not rotate itself.
+     * @param mirrored whether the view shows the image mirrored, as it does for front-facing
+     *                 cameras.
+     * @return the same window in image coordinates.
+     */
+    public ScanWindow mapToImage(int rotation, boolean mirrored) {
+        float left = mirrored ? 1f - mRight : mLeft;
+        float right = mirrored ? 1f - mLeft : mRight;
+        float top = mTop;
+        float bottom = mBottom;
+
+        // Undo the rotation: a clockwise quarter turn moves (x, y) to (1 - y, x), so each
+        // counter-clockwise quarter turn moves it back from (x, y) to (y, 1 - x).
+        int quarterTurns = ((rotation / 90) % 4 + 4) % 4;
+        for (int i = 0; i < quarterTurns; i++) {
+            float newLeft = top;
+            float newRight = bottom;
+            float newTop = 1f - right;
+            float newBottom = 1f - left;
+            left = newLeft;
+            right = newRight;
+            top = newTop;
+            bottom = newBottom;
+        }
+        return new ScanWindow(left, top, right, bottom);
+    }
+
+    /**
+     * @return the left edge of this window in a frame of the given width, in pixels.
+     */
+    public int getPixelLeft(int width) {
+        return Math.min(width - 1, (int) Math.floor(mLeft * width));
+    }
+
+    /**
+     * @return the top edge of this window in a frame of the given height, in pixels.
+     */
+    public int getPixelTop(int height) {
+        return Math.min(height - 1, (int) Math.floor(mTop * height));
+    }
+
+    /**
+     * @return the width of this window in a frame of the given width, in pixels.
+     */
+    public int getPixelWidth(int width) {
+        int right = Math.min(width, (int) Math.ceil(mRight * width));
+        return Math.max(1, right - getPixelLeft(width));
+    }
+
+    /**
+     * @return the height of this window in a frame of the given height, in pixels.
+     */
+    public int getPixelHeight(int height) {
+        int bottom = Math.min(height, (int) Math.ceil(mBottom * height));
+        return Math.max(1, bottom - getPixelTop(height));
+    }
+
+    /**
+     * Restrict the given frame to this window.
+     *
+     * @param source the luminance data of the whole frame, in the coordinates of this window.
+     * @return the cropped frame, or {@code source} itself if nothing needs to be cropped or the
+     * source cannot be cropped.
+     */
+    public LuminanceSource crop(LuminanceSource source) {
+        if (isFull() || !source.isCropSupported()) {
+            return source;
+        }
+        int width = source.getWidth();
+        int height = source.getHeight();
+        return source.crop(getPixelLeft(width), getPixelTop(height),
+                getPixelWidth(width), getPixelHeight(height));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ScanWindow)) {
+            return false;
+        }
+        ScanWindow other = (ScanWindow) o;
+        return Float.compare(mLeft, other.mLeft) == 0 && Float.compare(mTop, other.mTop) == 0 &&
+                Float.compare(mRight, other.mRight) == 0 &&
+                Float.compare(mBottom, other.mBottom) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(mLeft);
+        result = 31 * result + Float.floatToIntBits(mTop);
+        result = 31 * result + Float.floatToIntBits(mRight);
+        result = 31 * result + Float.floatToIntBits(mBottom);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanWindow{" + mLeft + ", " + mTop + ", " + mRight + ", " + mBottom + "}";
+    }
+}
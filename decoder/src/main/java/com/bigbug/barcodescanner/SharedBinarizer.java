@@ -0,0 +1,133 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * A {@link Binarizer} that thresholds a frame once, and serves every crop of it from the same
+ * black matrix.
+ * <p/>
+ * ZXing's multi-barcode readers search the crops around each barcode they find again, and with a
+ * plain {@link HybridBinarizer} every crop is thresholded from scratch.  Here the whole frame is
+ * thresholded by a {@link HybridBinarizer} the first time a black matrix is needed, and a crop
+ * copies its bits out of that matrix.  Crops are thresholded with the context of the whole frame,
+ * so a barcode at the edge of a crop binarizes the same as it did in the frame.
+ * <p/>
+ * Rows are binarized like {@link HybridBinarizer} does it, from the luminance of the row.
+ * <p/>
+ * This class is not thread safe, like ZXing's binarizers.
+ */
+final class SharedBinarizer extends Binarizer {
+
+    /**
+     * Thresholds the whole frame, shared by all crops.
+     */
+    private final HybridBinarizer mFrameBinarizer;
+
+    /**
+     * The position of this crop in the frame.
+     */
+    private final int mLeft;
+    private final int mTop;
+
+    private BitMatrix mMatrix;
+    private GlobalHistogramBinarizer mRowBinarizer;
+
+    SharedBinarizer(LuminanceSource source) {
+        this(new HybridBinarizer(source), new CropSource(source, 0, 0));
+    }
+
+    private SharedBinarizer(HybridBinarizer frameBinarizer, CropSource source) {
+        super(source);
+        mFrameBinarizer = frameBinarizer;
+        mLeft = source.mLeft;
+        mTop = source.mTop;
+    }
+
+    @Override
+    public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+        if (mRowBinarizer == null) {
+            mRowBinarizer = new GlobalHistogramBinarizer(getLuminanceSource());
+        }
+        return mRowBinarizer.getBlackRow(y, row);
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        if (mMatrix != null) {
+            return mMatrix;
+        }
+        BitMatrix frame = mFrameBinarizer.getBlackMatrix();
+        int width = getWidth();
+        int height = getHeight();
+        if (mLeft == 0 && mTop == 0
+                && width == frame.getWidth() && height == frame.getHeight()) {
+            mMatrix = frame;
+        } else {
+            BitMatrix matrix = new BitMatrix(width, height);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (frame.get(mLeft + x, mTop + y)) {
+                        matrix.set(x, y);
+                    }
+                }
+            }
+            mMatrix = matrix;
+        }
+        return mMatrix;
+    }
+
+    /**
+     * @param source a crop of the source of this binarizer, as made by
+     *               {@link com.google.zxing.BinaryBitmap#crop(int, int, int, int)}.
+     */
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        if (!(source instanceof CropSource)) {
+            return new HybridBinarizer(source);
+        }
+        return new SharedBinarizer(mFrameBinarizer, (CropSource) source);
+    }
+
+    /**
+     * A crop of the frame that knows where it lies in the frame.
+     */
+    private static final class CropSource extends LuminanceSource {
+        final LuminanceSource mDelegate;
+        final int mLeft;
+        final int mTop;
+
+        CropSource(LuminanceSource delegate, int left, int top) {
+            super(delegate.getWidth(), delegate.getHeight());
+            mDelegate = delegate;
+            mLeft = left;
+            mTop = top;
+        }
+
+        @Override
+        public byte[] getRow(int y, byte[] row) {
+            return mDelegate.getRow(y, row);
+        }
+
+        @Override
+        public byte[] getMatrix() {
+            return mDelegate.getMatrix();
+        }
+
+        @Override
+        public boolean isCropSupported() {
+            return mDelegate.isCropSupported();
+        }
+
+        @Override
+        public LuminanceSource crop(int left, int top, int width, int height) {
+            return new CropSource(mDelegate.crop(left, top, width, height),
+                    mLeft + left, mTop + top);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link FrameDecoder} that splits frames into the overlapping tiles of its
+ * {@link DecoderConfig#getTileColumns() config} and decodes them in parallel on a
+ * {@link ForkJoinPool}, so that a high-resolution frame is not decoded on one core while the
+ * others idle.
+ * <p/>
+ * Tiles are taken from the center of the frame outwards, where the operator aims.
+ * {@link #decode(LuminanceSource)} stops at the first barcode found: tiles not started yet are
+ * skipped, and the ones being decoded are waited for, as they read the caller's frame.
+ * {@link #decodeMultiple(LuminanceSource)} decodes every tile, and merges a barcode found in
+ * several overlapping tiles into one result.
+ * <p/>
+ * Tiles are kept at least {@link #MIN_TILE_DIMENSION} pixels wide and high, fewer tiles are used
+ * for small frames.  A frame too small for two, or that cannot be cropped, is decoded whole on the
+ * calling thread.
+ * <p/>
+ * This class is thread safe.
+ */
+public class TiledFrameDecoder extends FrameDecoder {
+
+    /**
+     * Tiles are not made narrower or lower than this, in pixels.
+     */
+    static final int MIN_TILE_DIMENSION = 320;
+
+    private final ForkJoinPool mPool;
+
+    /**
+     * @param config the decoding options, including the tile grid.
+     * @param pool   the pool to decode the tiles of a frame on.
+     */
+    public TiledFrameDecoder(DecoderConfig config, ForkJoinPool pool) {
+        super(config);
+        if (pool == null) throw new NullPointerException();
+        mPool = pool;
+    }
+
+    /**
+     * Decode a single barcode from the given frame, the first one found in any tile.
+     *
+     * @param source the luminance data of the frame.
+     * @return the decoded barcode, with result points in the coordinates of {@code source}.
+     * @throws NotFoundException if no barcode of an enabled format was found.
+     */
+    @Override
+    public Result decode(LuminanceSource source) throws NotFoundException {
+        int[] tiles = source.isCropSupported() ? tile(source.getWidth(), source.getHeight()) : null;
+        if (tiles == null) {
+            return super.decode(source);
+        }
+        Search search = new Search(source, tiles, false);
+        mPool.invoke(search);
+        Result first = search.mFirst.get();
+        if (first == null) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        return first;
+    }
+
+    /**
+     * Decode every barcode in the given frame, across all tiles.
+     *
+     * @param source the luminance data of the frame.
+     * @return the decoded barcodes, with result points in the coordinates of {@code source}.
+     * @throws NotFoundException if no barcode of an enabled format was found.
+     */
+    @Override
+    public Result[] decodeMultiple(LuminanceSource source) throws NotFoundException {
+        int[] tiles = source.isCropSupported() ? tile(source.getWidth(), source.getHeight()) : null;
+        if (tiles == null) {
+            return super.decodeMultiple(source);
+        }
+        Search search = new Search(source, tiles, true);
+        mPool.invoke(search);
+        List<Result> merged = new ArrayList<>();
+        for (Result[] found : search.mFound) {
+            if (found == null) {
+                continue;
+            }
+            for (Result result : found) {
+                if (!containsSameBarcode(merged, result)) {
+                    merged.add(result);
+                }
+            }
+        }
+        if (merged.isEmpty()) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        return merged.toArray(new Result[merged.size()]);
+    }
+
+    /**
+     * Lay the tile grid of the config over a frame, shrinking it to keep tiles at least
+     * {@link #MIN_TILE_DIMENSION} pixels large.
+     *
+     * @return the left, top, right and bottom of each tile, center tiles first, or null if the
+     * frame is too small for more than one tile.
+     */
+    int[] tile(int width, int height) {
+        DecoderConfig config = getConfig();
+        int columns = Math.max(1, Math.min(config.getTileColumns(), width / MIN_TILE_DIMENSION));
+        int rows = Math.max(1, Math.min(config.getTileRows(), height / MIN_TILE_DIMENSION));
+        if (columns * rows == 1) {
+            return null;
+        }
+        int marginX = (int) (config.getTileOverlap() * width / columns / 2);
+        int marginY = (int) (config.getTileOverlap() * height / rows / 2);
+
+        final int[] bounds = new int[columns * rows * 4];
+        Integer[] order = new Integer[columns * rows];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int tile = row * columns + column;
+                bounds[tile * 4] = Math.max(0, column * width / columns - marginX);
+                bounds[tile * 4 + 1] = Math.max(0, row * height / rows - marginY);
+                bounds[tile * 4 + 2] = Math.min(width, (column + 1) * width / columns + marginX);
+                bounds[tile * 4 + 3] = Math.min(height, (row + 1) * height / rows + marginY);
+                order[tile] = tile;
+            }
+        }
+        final int centerX = width / 2;
+        final int centerY = height / 2;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(distanceSquared(a), distanceSquared(b));
+            }
+
+            private long distanceSquared(int tile) {
+                long dx = (bounds[tile * 4] + bounds[tile * 4 + 2]) / 2 - centerX;
+                long dy = (bounds[tile * 4 + 1] + bounds[tile * 4 + 3]) / 2 - centerY;
+                return dx * dx + dy * dy;
+            }
+        });
+        int[] sorted = new int[bounds.length];
+        for (int i = 0; i < order.length; i++) {
+            System.arraycopy(bounds, order[i] * 4, sorted, i * 4, 4);
+        }
+        return sorted;
+    }
+
+    /**
+     * @return true if {@code results} holds the barcode of {@code result} at the same position,
+     * found in another tile.
+     */
+    private static boolean containsSameBarcode(List<Result> results, Result result) {
+        for (Result other : results) {
+            if (other.getBarcodeFormat() == result.getBarcodeFormat()
+                    && other.getText().equals(result.getText())
+                    && overlaps(other.getResultPoints(), result.getResultPoints())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the centers of two sets of result points are closer than half the extent
+     * of the larger set, or if either has no points to tell.
+     */
+    private static boolean overlaps(ResultPoint[] a, ResultPoint[] b) {
+        float[] boxA = boundingBox(a);
+        float[] boxB = boundingBox(b);
+        if (boxA == null || boxB == null) {
+            return true;
+        }
+        float dx = (boxA[0] + boxA[2] - boxB[0] - boxB[2]) / 2;
+        float dy = (boxA[1] + boxA[3] - boxB[1] - boxB[3]) / 2;
+        float extent = Math.max(Math.max(boxA[2] - boxA[0], boxA[3] - boxA[1]),
+                Math.max(boxB[2] - boxB[0], boxB[3] - boxB[1]));
+        return dx * dx + dy * dy < extent * extent / 4;
+    }
+
+    /**
+     * @return the left, top, right and bottom of the points, or null if there are none.
+     */
+    private static float[] boundingBox(ResultPoint[] points) {
+        if (points == null) {
+            return null;
+        }
+        float[] box = null;
+        for (ResultPoint point : points) {
+            if (point == null) {
+                continue;
+            }
+            if (box == null) {
+                box = new float[]{point.getX(), point.getY(), point.getX(), point.getY()};
+            } else {
+                box[0] = Math.min(box[0], point.getX());
+                box[1] = Math.min(box[1], point.getY());
+                box[2] = Math.max(box[2], point.getX());
+                box[3] = Math.max(box[3], point.getY());
+            }
+        }
+        return box;
+    }
+
+    /**
+     * The decoding of one frame: forks one {@link TileTask} per tile, which take the tiles in
+     * order.
+     */
+    @SuppressWarnings("serial")
+    private final class Search extends RecursiveAction {
+        final LuminanceSource mSource;
+        final int[] mTiles;
+        final boolean mMultiple;
+
+        final AtomicInteger mNextTile = new AtomicInteger();
+        final AtomicReference<Result> mFirst = new AtomicReference<>();
+
+        /**
+         * The barcodes found in each tile by {@link #decodeMultiple(LuminanceSource)}, read once
+         * every task has been joined.
+         */
+        final Result[][] mFound;
+
+        Search(LuminanceSource source, int[] tiles, boolean multiple) {
+            mSource = source;
+            mTiles = tiles;
+            mMultiple = multiple;
+            mFound = new Result[tiles.length / 4][];
+        }
+
+        @Override
+        protected void compute() {
+            TileTask[] tasks = new TileTask[mFound.length];
+            for (int i = 0; i < tasks.length; i++) {
+                tasks[i] = new TileTask(this);
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Decodes the next tile of a {@link Search}, unless a barcode was found already.
+     * <p/>
+     * Tasks are not cancelled through {@link java.util.concurrent.ForkJoinTask#cancel(boolean)},
+     * which does not wait for a running task: the frame must stay untouched until the caller
+     * gets it back.
+     */
+    @SuppressWarnings("serial")
+    private final class TileTask extends RecursiveAction {
+        private final Search mSearch;
+
+        TileTask(Search search) {
+            mSearch = search;
+        }
+
+        @Override
+        protected void compute() {
+            if (mSearch.mFirst.get() != null && !mSearch.mMultiple) {
+                return;
+            }
+            int index = mSearch.mNextTile.getAndIncrement();
+            int[] tiles = mSearch.mTiles;
+            int left = tiles[index * 4];
+            int top = tiles[index * 4 + 1];
+            LuminanceSource tile = mSearch.mSource.crop(left, top,
+                    tiles[index * 4 + 2] - left, tiles[index * 4 + 3] - top);
+            try {
+                if (mSearch.mMultiple) {
+                    Result[] found = TiledFrameDecoder.super.decodeMultiple(tile);
+                    for (int i = 0; i < found.length; i++) {
+                        found[i] = translate(found[i], left, top);
+                    }
+                    mSearch.mFound[index] = found;
+                } else {
+                    Result found = TiledFrameDecoder.super.decode(tile);
+                    mSearch.mFirst.compareAndSet(null, translate(found, left, top));
+                }
+            } catch (NotFoundException e) {
+                // Nothing in this tile.
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.LuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link LuminanceSource} that reads straight from the Y (luminance) plane of a
+ * {@code ImageFormat.YUV_420_888} image.
+ * <p/>
+ * The plane buffer is wrapped, not copied, so crops and rotations are cheap views over the same
+ * memory.  Row and pixel strides are honoured, which means padded rows coming from the camera HAL
+ * never have to be repacked before decoding.
+ * <p/>
+ * The wrapped buffer must stay valid while this source is in use, i.e. the owning
+ * {@code android.media.Image} must not be closed before decoding has finished.
+ */
+public final class YPlaneLuminanceSource extends LuminanceSource {
+
+    private final ByteBuffer mBuffer;
+    private final int mRowStride;
+    private final int mPixelStride;
+
+    /**
+     * The wrapped rectangle in buffer coordinates.
+     */
+    private final int mLeft;
+    private final int mTop;
+    private final int mDataWidth;
+    private final int mDataHeight;
+
+    /**
+     * Number of quarter turns counter-clockwise applied on top of the buffer, in [0, 3].
+     */
+    private final int mQuarterTurns;
+
+    /**
+     * Wrap a whole Y plane.
+     *
+     * @param buffer      the plane buffer, e.g. {@code Image.Plane.getBuffer()}.
+     * @param rowStride   distance in bytes between the starts of two consecutive rows.
+     * @param pixelStride distance in bytes between two horizontally adjacent pixels.
+     * @param width       the image width in pixels.
+     * @param height      the image height in pixels.
+     */
+    public YPlaneLuminanceSource(ByteBuffer buffer, int rowStride, int pixelStride,
+                                 int width, int height) {
+        this(buffer, rowStride, pixelStride, 0, 0, width, height, 0);
+        if (rowStride < (width - 1) * pixelStride + 1) {
+            throw new IllegalArgumentException("Row stride is smaller than the image width.");
+        }
+        if (buffer.limit() < (height - 1) * rowStride + (width - 1) * pixelStride + 1) {
+            throw new IllegalArgumentException("Buffer is too small for the given dimensions.");
+        }
+    }
+
+    private YPlaneLuminanceSource(ByteBuffer buffer, int rowStride, int pixelStride,
+                                  int left, int top, int dataWidth, int dataHeight,
+                                  int quarterTurns) {
+        super(quarterTurns % 2 == 0 ? dataWidth : dataHeight,
+                quarterTurns % 2 == 0 ? dataHeight : dataWidth);
+        if (pixelStride < 1) {
+            throw new IllegalArgumentException("Pixel stride must be positive.");
+        }
+        mBuffer = buffer;
+        mRowStride = rowStride;
+        mPixelStride = pixelStride;
+        mLeft = left;
+        mTop = top;
+        mDataWidth = dataWidth;
+        mDataHeight = dataHeight;
+        mQuarterTurns = quarterTurns;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        if (mQuarterTurns == 0) {
+            int offset = (mTop + y) * mRowStride + mLeft * mPixelStride;
+            copyRun(mBuffer.duplicate(), offset, row, 0, width);
+        } else {
+            for (int x = 0; x < width; x++) {
+                row[x] = mBuffer.get(indexOf(x, y));
+            }
+        }
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] matrix = new byte[width * height];
+        if (mQuarterTurns == 0) {
+            ByteBuffer view = mBuffer.duplicate();
+            int offset = mTop * mRowStride + mLeft * mPixelStride;
+            for (int y = 0; y < height; y++) {
+                copyRun(view, offset, matrix, y * width, width);
+                offset += mRowStride;
+            }
+        } else {
+            int i = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    matrix[i++] = mBuffer.get(indexOf(x, y));
+                }
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || width < 1 || height < 1 ||
+                left + width > getWidth() || top + height > getHeight()) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        // Map the two opposite corners of the crop back into buffer coordinates.
+        int x0 = dataX(left, top);
+        int y0 = dataY(left, top);
+        int x1 = dataX(left + width - 1, top + height - 1);
+        int y1 = dataY(left + width - 1, top + height - 1);
+        return new YPlaneLuminanceSource(mBuffer, mRowStride, mPixelStride,
+                mLeft + Math.min(x0, x1), mTop + Math.min(y0, y1),
+                Math.abs(x1 - x0) + 1, Math.abs(y1 - y0) + 1, mQuarterTurns);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        return new YPlaneLuminanceSource(mBuffer, mRowStride, mPixelStride,
+                mLeft, mTop, mDataWidth, mDataHeight, (mQuarterTurns + 1) % 4);
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise45() {
+        throw new UnsupportedOperationException(
+                "This luminance source does not support rotation by 45 degrees.");
+    }
+
+    /**
+     * Copy {@code length} consecutive pixels of a buffer row into {@code dst}.
+     *
+     * @param view a duplicate of {@link #mBuffer}, so that moving its position for bulk reads
+     *             leaves the shared buffer untouched.
+     */
+    private void copyRun(ByteBuffer view, int offset, byte[] dst, int dstOffset, int length) {
+        if (mPixelStride == 1) {
+            view.position(offset);
+            view.get(dst, dstOffset, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst[dstOffset + i] = view.get(offset + i * mPixelStride);
+            }
+        }
+    }
+
+    /**
+     * @return the buffer index of the pixel at ({@code x}, {@code y}) in rotated coordinates.
+     */
+    private int indexOf(int x, int y) {
+        return (mTop + dataY(x, y)) * mRowStride + (mLeft + dataX(x, y)) * mPixelStride;
+    }
+
+    /**
+     * @return the column, relative to the wrapped rectangle, of the rotated point (x, y).
+     */
+    private int dataX(int x, int y) {
+        switch (mQuarterTurns) {
+            case 1:
+                return mDataWidth - 1 - y;
+            case 2:
+                return mDataWidth - 1 - x;
+            case 3:
+                return y;
+            default:
+                return x;
+        }
+    }
+
+    /**
+     * @return the row, relative to the wrapped rectangle, of the rotated point (x, y).
+     */
+    private int dataY(int x, int y) {
+        switch (mQuarterTurns) {
+            case 1:
+                return x;
+            case 2:
+                return mDataHeight - 1 - y;
+            case 3:
+                return mDataHeight - 1 - x;
+            default:
+                return y;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ArrayPool}.
+ */
+public class ArrayPoolTest {
+
+    private static final int FRAME_PIXELS = 1920 * 1080;
+
+    @Test
+    public void releasedBufferIsReused() throws Exception {
+        ArrayPool pool = new ArrayPool(4, Long.MAX_VALUE);
+        byte[] first = pool.acquireBytes(1000);
+        pool.releaseBytes(first);
+
+        assertSame(first, pool.acquireBytes(900));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+    }
+
+    @Test
+    public void smallRequestDoesNotTakeLargeBuffer() throws Exception {
+        ArrayPool pool = new ArrayPool(4, Long.MAX_VALUE);
+        byte[] large = pool.acquireBytes(FRAME_PIXELS);
+        pool.releaseBytes(large);
+
+        assertNotSame(large, pool.acquireBytes(1024));
+        assertSame(large, pool.acquireBytes(FRAME_PIXELS));
+    }
+
+    @Test
+    public void bestFitIsPreferred() throws Exception {
+        ArrayPool pool = new ArrayPool(4, Long.MAX_VALUE);
+        int[] large = pool.acquireInts(40000);
+        int[] small = pool.acquireInts(20000);
+        pool.releaseInts(large);
+        pool.releaseInts(small);
+
+        assertSame(small, pool.acquireInts(18000));
+        assertSame(large, pool.acquireInts(18000));
+    }
+
+    @Test
+    public void typesAreKeptApart() throws Exception {
+        ArrayPool pool = new ArrayPool(4, Long.MAX_VALUE);
+        pool.releaseBytes(new byte[64]);
+
+        assertTrue(pool.acquireInts(64).length >= 64);
+        assertEquals(0, pool.getHitCount());
+    }
+
+    @Test
+    public void capacityIsBounded() throws Exception {
+        ArrayPool pool = new ArrayPool(2, 3000);
+        pool.releaseBytes(new byte[1000]);
+        pool.releaseBytes(new byte[1000]);
+        pool.releaseBytes(new byte[1000]);
+        assertEquals(2000, pool.getRetainedBytes());
+        assertEquals(1, pool.getEvictionCount());
+
+        pool.clear();
+        pool.releaseInts(new int[500]);
+        pool.releaseInts(new int[500]);
+        assertEquals(2000, pool.getRetainedBytes());
+        assertEquals(2, pool.getEvictionCount());
+    }
+
+    @Test
+    public void doubleReleaseIsIgnored() throws Exception {
+        ArrayPool pool = new ArrayPool(4, Long.MAX_VALUE);
+        byte[] buffer = new byte[100];
+        pool.releaseBytes(buffer);
+        pool.releaseBytes(buffer);
+
+        assertEquals(100, pool.getRetainedBytes());
+    }
+
+    /**
+     * Runs the cycle of the buffers a JPEG detection takes from the pool for every frame, the
+     * compressed data, the ARGB pixels and the luminance, and checks that, once warmed up, it
+     * does not allocate.  The rest of the decode path, such as the luminance source, the
+     * binarizer and its matrix, and the results, still allocates, and is not measured here.
+     */
+    @Test
+    public void steadyState_frameBuffersAreNotAllocated() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        ArrayPool pool = new ArrayPool(8, 64L * 1024 * 1024);
+        final int frames = 10000;
+        long checksum = 0;
+
+        // Warm up the pool and let the JIT settle.
+        for (int i = 0; i < frames; i++) {
+            checksum += runFrame(pool, i);
+        }
+
+        long missesBefore = pool.getMissCount();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < frames; i++) {
+            checksum += runFrame(pool, i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(checksum != 0);
+        // Allow for the measurement itself, but not for a single buffer per frame.
+        assertTrue("Allocated " + allocated + " bytes in " + frames + " frames", allocated < frames);
+        assertEquals(missesBefore, pool.getMissCount());
+    }
+
+    private static long runFrame(ArrayPool pool, int frame) {
+        // JPEG sizes vary slightly from frame to frame, pixel buffers do not.
+        byte[] jpeg = pool.acquireBytes(200000 + (frame % 17) * 64);
+        int[] argb = pool.acquireInts(FRAME_PIXELS);
+        byte[] luminances = pool.acquireBytes(FRAME_PIXELS);
+        long checksum = jpeg.length + argb.length + luminances.length;
+        pool.releaseInts(argb);
+        pool.releaseBytes(luminances);
+        pool.releaseBytes(jpeg);
+        return checksum;
+    }
+}
@@ -0,0 +1,143 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BinarizerSelector}, {@link FrameStatistics} and
+ * {@link BinarizerStrategy#ADAPTIVE} decoding.
+ */
+public class BinarizerSelectorTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private static final DecoderConfig WAREHOUSE = new DecoderConfig.Builder()
+            .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+            .build();
+
+    /**
+     * @return a frame with a QR code on its right half, darkened from left to right down to a
+     * quarter of the light when {@code shadow} is set.
+     */
+    private static LuminanceSource frame(boolean shadow) throws Exception {
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.QR_CODE, "bay 7", 200, 200);
+        byte[] frame = TestBarcodes.frame(WIDTH, HEIGHT, code, 400, 140);
+        if (shadow) {
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    float light = 1f - 0.75f * x / (WIDTH - 1);
+                    frame[y * WIDTH + x] = (byte) ((frame[y * WIDTH + x] & 0xFF) * light);
+                }
+            }
+        }
+        return TestBarcodes.source(frame, WIDTH, HEIGHT);
+    }
+
+    private static DecoderConfig withStrategy(BinarizerStrategy strategy) {
+        return new DecoderConfig.Builder(WAREHOUSE).setBinarizerStrategy(strategy).build();
+    }
+
+    @Test
+    public void statistics_tellEvenFromShadowedFrames() throws Exception {
+        FrameStatistics statistics = new FrameStatistics();
+        statistics.compute(frame(false));
+        assertTrue(statistics.isEvenlyLit());
+        assertTrue(statistics.getContrast() > 200);
+
+        statistics.compute(frame(true));
+        assertFalse(statistics.isEvenlyLit());
+        assertTrue(statistics.getDarkestBlockMax() < statistics.getThreshold());
+
+        statistics.compute(TestBarcodes.source(TestBarcodes.blank(WIDTH, HEIGHT), WIDTH,
+                HEIGHT));
+        assertFalse(statistics.isEvenlyLit());
+    }
+
+    @Test
+    public void globalHistogram_missesShadowedCode() throws Exception {
+        assertEquals("bay 7", new FrameDecoder(withStrategy(BinarizerStrategy.GLOBAL_HISTOGRAM))
+                .decode(frame(false)).getText());
+        try {
+            new FrameDecoder(withStrategy(BinarizerStrategy.GLOBAL_HISTOGRAM)).decode(frame(true));
+            fail();
+        } catch (NotFoundException e) {
+            // The shaded white of the code falls below the global threshold.
+        }
+    }
+
+    @Test
+    public void adaptive_usesGlobalHistogramOnEvenFramesOnly() throws Exception {
+        FrameDecoder decoder = new FrameDecoder(withStrategy(BinarizerStrategy.ADAPTIVE));
+        assertEquals("bay 7", decoder.decode(frame(false)).getText());
+        assertEquals(1, decoder.getBinarizerHits(BinarizerStrategy.GLOBAL_HISTOGRAM));
+        assertEquals(0, decoder.getBinarizerAttempts(BinarizerStrategy.HYBRID));
+
+        assertEquals("bay 7", decoder.decode(frame(true)).getText());
+        assertEquals(1, decoder.getBinarizerHits(BinarizerStrategy.HYBRID));
+        assertEquals(1, decoder.getBinarizerAttempts(BinarizerStrategy.GLOBAL_HISTOGRAM));
+    }
+
+    @Test
+    public void selector_fallsBackUntilTheOtherBinarizerStopsFinding() throws Exception {
+        BinarizerSelector selector = new BinarizerSelector();
+        assertEquals(BinarizerStrategy.GLOBAL_HISTOGRAM, selector.first(true));
+        assertEquals(BinarizerStrategy.HYBRID, selector.first(false));
+        assertTrue(selector.shouldFallBack(true, BinarizerStrategy.GLOBAL_HISTOGRAM));
+
+        // Frames without any barcode.
+        for (int i = 0; i < 100; i++) {
+            selector.record(true, BinarizerStrategy.GLOBAL_HISTOGRAM, false);
+            selector.record(true, BinarizerStrategy.HYBRID, false);
+        }
+        int fallBacks = 0;
+        for (int i = 0; i < 64; i++) {
+            if (selector.shouldFallBack(true, BinarizerStrategy.GLOBAL_HISTOGRAM)) {
+                fallBacks++;
+            }
+        }
+        // Only to explore.
+        assertEquals(16, fallBacks);
+    }
+
+    @Test
+    public void selector_triesGlobalHistogramFirstWhileHybridFindsNothing() throws Exception {
+        BinarizerSelector selector = new BinarizerSelector();
+        // Frames without any barcode have no contrast, and count as unevenly lit.
+        for (int i = 0; i < 100; i++) {
+            selector.record(false, selector.first(false), false);
+        }
+        assertEquals(BinarizerStrategy.GLOBAL_HISTOGRAM, selector.first(false));
+
+        // A barcode only the hybrid binarizer finds, when it is next tried.
+        while (!selector.shouldFallBack(false, BinarizerStrategy.GLOBAL_HISTOGRAM)) {
+            selector.record(false, BinarizerStrategy.GLOBAL_HISTOGRAM, false);
+        }
+        selector.record(false, BinarizerStrategy.HYBRID, true);
+        assertEquals(BinarizerStrategy.HYBRID, selector.first(false));
+    }
+
+    @Test
+    public void selector_learnsWhichBinarizerFinds() throws Exception {
+        BinarizerSelector selector = new BinarizerSelector();
+        // Evenly lit frames in which only the hybrid binarizer finds the barcode, such as low
+        // contrast labels.
+        for (int i = 0; i < 20; i++) {
+            BinarizerStrategy first = selector.first(true);
+            selector.record(true, first, first == BinarizerStrategy.HYBRID);
+            if (first == BinarizerStrategy.GLOBAL_HISTOGRAM) {
+                selector.record(true, BinarizerStrategy.HYBRID, true);
+            }
+        }
+        assertEquals(BinarizerStrategy.HYBRID, selector.first(true));
+        assertEquals(BinarizerStrategy.HYBRID, selector.first(false));
+        assertTrue(selector.getSuccessRate(true, BinarizerStrategy.HYBRID) > 0.8f);
+    }
+}
@@ -0,0 +1,63 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CameraFrames}.
+ */
+public class CameraFramesTest {
+
+    @Test
+    public void fromYPlane_cropsAndTurnsUpright() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[100 * 40]);
+        ScanWindow window = new ScanWindow(0.25f, 0.25f, 0.75f, 0.75f);
+
+        LuminanceSource landscape = CameraFrames.fromYPlane(buffer, 100, 1, 100, 40, window, 0);
+        assertEquals(50, landscape.getWidth());
+        assertEquals(20, landscape.getHeight());
+
+        LuminanceSource sideways = CameraFrames.fromYPlane(buffer, 100, 1, 100, 40, window, 270);
+        assertEquals(20, sideways.getWidth());
+        assertEquals(50, sideways.getHeight());
+    }
+
+    @Test
+    public void fromYPlane_decodesSidewaysFrame() throws Exception {
+        // A CODE_128 barcode seen by a sensor mounted at 90 degrees: its bars run across rows.
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.CODE_128, "PALLET-0042", 300, 80);
+        int width = code.getHeight() + 40;
+        int height = code.getWidth() + 40;
+        byte[] upright = TestBarcodes.frame(height, width, code, 20, 20);
+        byte[] frame = new byte[upright.length];
+        for (int y = 0; y < width; y++) {
+            for (int x = 0; x < height; x++) {
+                frame[(height - 1 - x) * width + y] = upright[y * height + x];
+            }
+        }
+
+        Result result = new FrameDecoder(DecoderConfig.DEFAULT).decode(CameraFrames.fromYPlane(
+                ByteBuffer.wrap(frame), width, 1, width, height, ScanWindow.FULL, 90));
+        assertEquals("PALLET-0042", result.getText());
+    }
+
+    @Test
+    public void argbToLuminance_weightsGreenTwice() throws Exception {
+        int[] argb = {0xFFFFFFFF, 0xFF000000, 0xFFFF0000, 0xFF00FF00, 0xFF0000FF};
+        byte[] luminances = new byte[argb.length];
+        CameraFrames.argbToLuminance(argb, luminances, argb.length);
+        assertEquals(255, luminances[0] & 0xff);
+        assertEquals(0, luminances[1] & 0xff);
+        assertEquals(63, luminances[2] & 0xff);
+        assertEquals(127, luminances[3] & 0xff);
+        assertEquals(63, luminances[4] & 0xff);
+    }
+}
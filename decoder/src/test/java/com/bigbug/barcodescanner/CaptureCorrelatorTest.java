@@ -0,0 +1,352 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CaptureCorrelator}.
+ */
+public class CaptureCorrelatorTest {
+
+    private static final long MS = 1000L * 1000L;
+
+    private static class FakeClock implements Clock {
+        long mNow = 1000 * MS;
+
+        @Override
+        public long nanoTime() {
+            return mNow;
+        }
+
+        void advance(long nanos) {
+            mNow += nanos;
+        }
+    }
+
+    private final List<String> mMatched = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> mDiscarded = Collections.synchronizedList(new ArrayList<String>());
+
+    private final CaptureCorrelator.Callback<String, String, String> mRecorder =
+            new CaptureCorrelator.Callback<String, String, String>() {
+                @Override
+                public void onMatched(String request, String result, String image) {
+                    mMatched.add(request + "/" + result + "/" + image);
+                }
+
+                @Override
+                public void onDiscarded(String request, String result, String image) {
+                    mDiscarded.add(request + "/" + result + "/" + image);
+                }
+            };
+
+    private final FakeClock mClock = new FakeClock();
+
+    private CaptureCorrelator<String, String, String> newCorrelator(int capacity) {
+        return new CaptureCorrelator<>(capacity, mClock, 500 * MS, mRecorder);
+    }
+
+    @Test
+    public void resultAndImage_matchInEitherOrder() throws Exception {
+        CaptureCorrelator<String, String, String> correlator = newCorrelator(4);
+        int a = correlator.register("a");
+        int b = correlator.register("b");
+        correlator.onTimestamp(a, 100);
+        correlator.onResult(a, "ra");
+        correlator.onTimestamp(b, 200);
+        correlator.onImage(200, "ib");
+        correlator.onImage(100, "ia");
+        assertEquals(1, correlator.getPendingCount());
+        correlator.onResult(b, "rb");
+
+        assertEquals(2, mMatched.size());
+        assertEquals("a/ra/ia", mMatched.get(0));
+        assertEquals("b/rb/ib", mMatched.get(1));
+        assertTrue(mDiscarded.isEmpty());
+        assertEquals(0, correlator.getPendingCount());
+    }
+
+    @Test
+    public void imageBeforeTimestamp_isParkedUntilKnown() throws Exception {
+        CaptureCorrelator<String, String, String> correlator = newCorrelator(4);
+        int a = correlator.register("a");
+        correlator.onImage(100, "ia");
+        assertEquals(1, correlator.getParkedCount());
+
+        correlator.onTimestamp(a, 100);
+        assertEquals(0, correlator.getParkedCount());
+        correlator.onResult(a, "ra");
+        assertEquals("a/ra/ia", mMatched.get(0));
+    }
+
+    @Test
+    public void droppedImage_doesNotShiftLaterPairs() throws Exception {
+        CaptureCorrelator<String, String, String> correlator = newCorrelator(4);
+        int a = correlator.register("a");
+        int b = correlator.register("b");
+        correlator.onTimestamp(a, 100);
+        correlator.onTimestamp(b, 200);
+        correlator.onResult(a, "ra");
+        correlator.onResult(b, "rb");
+        // The image of a never arrives.
+        correlator.onImage(200, "ib");
+
+        assertEquals(1, mMatched.size());
+        assertEquals("b/rb/ib", mMatched.get(0));
+        assertEquals(1, correlator.getPendingCount());
+    }
+
+    @Test
+    public void expiredRequest_isEvicted() throws Exception {
+        CaptureCorrelator<String, String, String> correlator = newCorrelator(2);
+        int a = correlator.register("a");
+        correlator.onTimestamp(a, 100);
+        correlator.onResult(a, "ra");
+        correlator.register("b");
+        assertEquals(-1, correlator.register("c"));
+
+        mClock.advance(501 * MS);
+        assertTrue(correlator.register("c") >= 0);
+        assertTrue(mDiscarded.contains("a/ra/null"));
+        assertTrue(mDiscarded.contains("b/null/null"));
+        assertEquals(1, correlator.getPendingCount());
+    }
+
+    @Test
+    public void expiredImage_isDiscarded() throws Exception {
+        CaptureCorrelator<String, String, String> correlator = newCorrelator(4);
+        correlator.onImage(100, "i");
+        assertEquals(1, correlator.getParkedCount());
+
+        mClock.advance(501 * MS);
+        correlator.evictExpired();
+        assertEquals(0, correlator.getParkedCount());
+        assertEquals("null/null/i", mDiscarded.get(0));
+    }
+
+    @Test
+    public void tooManyParkedImages_discardsOldest() throws Exception {
+        CaptureCorrelator<String, String, String> correlator = newCorrelator(2);
+        correlator.onImage(100, "i1");
+        mClock.advance(MS);
+        correlator.onImage(200, "i2");
+        mClock.advance(MS);
+        correlator.onImage(300, "i3");
+
+        assertEquals(2, correlator.getParkedCount());
+        assertEquals("null/null/i1", mDiscarded.get(0));
+    }
+
+    @Test
+    public void full_refusesRequests() throws Exception {
+        CaptureCorrelator<String, String, String> correlator = newCorrelator(2);
+        int a = correlator.register("a");
+        assertTrue(correlator.register("b") >= 0);
+        assertEquals(-1, correlator.register("c"));
+
+        correlator.onTimestamp(a, 100);
+        correlator.onResult(a, "ra");
+        correlator.onImage(100, "ia");
+        assertTrue(correlator.register("c") >= 0);
+    }
+
+    @Test
+    public void staleResult_isDiscarded() throws Exception {
+        CaptureCorrelator<String, String, String> correlator = newCorrelator(2);
+        int a = correlator.register("a");
+        correlator.onTimestamp(a, 100);
+        correlator.onResult(a, "ra");
+        correlator.onImage(100, "ia");
+
+        // A newer request now uses the same slot; a second result for the old one must not land.
+        correlator.register("b");
+        int c = correlator.register("c");
+        assertEquals(a & 1, c & 1);
+        assertNull(correlator.peek(a));
+        correlator.onResult(a, "late");
+        assertEquals("null/late/null", mDiscarded.get(0));
+        assertEquals(2, correlator.getPendingCount());
+    }
+
+    @Test
+    public void cancel_withoutImage_completesRightAway() throws Exception {
+        CaptureCorrelator<String, String, String> correlator = newCorrelator(4);
+        int a = correlator.register("a");
+        correlator.cancel(a, false);
+
+        assertEquals("a/null/null", mDiscarded.get(0));
+        assertEquals(0, correlator.getPendingCount());
+    }
+
+    @Test
+    public void cancel_withImage_discardsItOnArrival() throws Exception {
+        CaptureCorrelator<String, String, String> correlator = newCorrelator(4);
+        int a = correlator.register("a");
+        correlator.onTimestamp(a, 100);
+        correlator.cancel(a, true);
+        assertEquals(1, correlator.getPendingCount());
+        correlator.onImage(100, "ia");
+
+        assertEquals("a/null/ia", mDiscarded.get(0));
+        assertEquals(0, correlator.getPendingCount());
+    }
+
+    @Test
+    public void clear_discardsEverythingPending() throws Exception {
+        CaptureCorrelator<String, String, String> correlator = newCorrelator(4);
+        int a = correlator.register("a");
+        correlator.register("b");
+        correlator.onResult(a, "ra");
+        correlator.onImage(300, "stray");
+        correlator.clear();
+
+        assertEquals(0, correlator.getPendingCount());
+        assertEquals(0, correlator.getParkedCount());
+        assertTrue(mDiscarded.contains("a/ra/null"));
+        assertTrue(mDiscarded.contains("b/null/null"));
+        assertTrue(mDiscarded.contains("null/null/stray"));
+        assertTrue(mMatched.isEmpty());
+    }
+
+    /**
+     * A request tagged with the id its result and its image must carry.
+     */
+    private static class Request {
+        final int mId;
+        volatile int mSequence;
+
+        Request(int id) {
+            mId = id;
+        }
+    }
+
+    @Test
+    public void stress_neverMismatchesOrLeaks() throws Exception {
+        final int requests = 20000;
+        final int resultThreads = 3;
+        final AtomicInteger matched = new AtomicInteger();
+        final AtomicInteger discarded = new AtomicInteger();
+        final AtomicInteger imagesProduced = new AtomicInteger();
+        final AtomicInteger imagesReleased = new AtomicInteger();
+        final AtomicInteger mismatches = new AtomicInteger();
+        final CaptureCorrelator<Request, Integer, Integer> correlator = new CaptureCorrelator<>(8,
+                Clock.SYSTEM, TimeUnit.MILLISECONDS.toNanos(20),
+                new CaptureCorrelator.Callback<Request, Integer, Integer>() {
+                    @Override
+                    public void onMatched(Request request, Integer result, Integer image) {
+                        if (request.mId != result || request.mId != image) {
+                            mismatches.incrementAndGet();
+                        }
+                        matched.incrementAndGet();
+                        imagesReleased.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onDiscarded(Request request, Integer result, Integer image) {
+                        if (request != null) {
+                            discarded.incrementAndGet();
+                            if ((result != null && request.mId != result)
+                                    || (image != null && request.mId != image)) {
+                                mismatches.incrementAndGet();
+                            }
+                        }
+                        if (image != null) {
+                            imagesReleased.incrementAndGet();
+                        }
+                    }
+                });
+
+        final Request poison = new Request(-1);
+        final BlockingQueue<Request> results = new LinkedBlockingQueue<>();
+        final BlockingQueue<Request> images = new LinkedBlockingQueue<>();
+
+        // The camera: registers requests in order and queues their results and images.
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int id = 0; id < requests; id++) {
+                    Request request = new Request(id);
+                    int sequence;
+                    while ((sequence = correlator.register(request)) < 0) {
+                        Thread.yield();
+                    }
+                    request.mSequence = sequence;
+                    results.add(request);
+                    images.add(request);
+                }
+                for (int i = 0; i < resultThreads; i++) {
+                    results.add(poison);
+                }
+                images.add(poison);
+            }
+        });
+        // Images race with the timestamps; one image in a hundred is dropped.
+        Thread imageThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Request request;
+                    while ((request = images.take()) != poison) {
+                        if (request.mId % 100 != 99) {
+                            imagesProduced.incrementAndGet();
+                            correlator.onImage(timestampOf(request), request.mId);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        // Results arrive out of order on several threads; one capture in seven fails.
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < resultThreads; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Request request;
+                        while ((request = results.take()) != poison) {
+                            correlator.onTimestamp(request.mSequence, timestampOf(request));
+                            if (request.mId % 7 == 0) {
+                                correlator.cancel(request.mSequence, true);
+                            } else {
+                                correlator.onResult(request.mSequence, request.mId);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }));
+        }
+        threads.add(producer);
+        threads.add(imageThread);
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+            assertFalse(thread.isAlive());
+        }
+        correlator.clear();
+
+        assertEquals(0, mismatches.get());
+        assertTrue(matched.get() > requests / 2);
+        assertEquals(requests, matched.get() + discarded.get());
+        assertEquals(imagesProduced.get(), imagesReleased.get());
+        assertEquals(0, correlator.getPendingCount());
+        assertEquals(0, correlator.getParkedCount());
+    }
+
+    private static long timestampOf(Request request) {
+        return 1000000L + request.mId;
+    }
+}
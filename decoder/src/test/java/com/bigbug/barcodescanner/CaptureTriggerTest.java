@@ -0,0 +1,144 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.bigbug.barcodescanner.CaptureTrigger.*;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CaptureTrigger}, driven by scripted sequences of preview results
+ * 33 ms apart.
+ */
+public class CaptureTriggerTest {
+
+    private static final long MS = 1000000L;
+    private static final long FRAME_NANOS = 33 * MS;
+    private static final long MAX_WAIT_NANOS = 1000 * MS;
+
+    private static class FakeClock implements Clock {
+        long mNow = 1000 * MS;
+
+        @Override
+        public long nanoTime() {
+            return mNow;
+        }
+
+        void advance(long nanos) {
+            mNow += nanos;
+        }
+    }
+
+    private FakeClock mClock;
+    private CaptureTrigger mTrigger;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mTrigger = new CaptureTrigger(mClock, MAX_WAIT_NANOS);
+        mTrigger.reset(true);
+    }
+
+    /**
+     * Feed one preview result per frame.
+     *
+     * @return for each result, whether a capture was allowed.
+     */
+    private boolean[] play(int[][] results) {
+        boolean[] captures = new boolean[results.length];
+        for (int i = 0; i < results.length; i++) {
+            captures[i] = mTrigger.onResult(results[i][0], results[i][1]);
+            mClock.advance(FRAME_NANOS);
+        }
+        return captures;
+    }
+
+    @Test
+    public void sessionStart_capturesAsSoonAsFocused() throws Exception {
+        boolean[] captures = play(new int[][]{
+                {AF_STATE_INACTIVE, AE_STATE_SEARCHING},
+                {AF_STATE_PASSIVE_SCAN, AE_STATE_SEARCHING},
+                {AF_STATE_PASSIVE_SCAN, AE_STATE_CONVERGED},
+                {AF_STATE_PASSIVE_FOCUSED, AE_STATE_CONVERGED},
+                {AF_STATE_PASSIVE_FOCUSED, AE_STATE_CONVERGED},
+        });
+
+        assertArrayEquals(new boolean[]{false, false, false, true, true}, captures);
+        assertEquals(State.SETTLED, mTrigger.getState());
+        assertEquals(3, mTrigger.getHeldCount());
+    }
+
+    @Test
+    public void convergingExposure_holdsCapturesBack() throws Exception {
+        boolean[] captures = play(new int[][]{
+                {AF_STATE_FOCUSED_LOCKED, AE_STATE_CONVERGED},
+                // The light changed.
+                {AF_STATE_FOCUSED_LOCKED, AE_STATE_SEARCHING},
+                {AF_STATE_FOCUSED_LOCKED, AE_STATE_SEARCHING},
+                {AF_STATE_FOCUSED_LOCKED, AE_STATE_FLASH_REQUIRED},
+                {AF_STATE_FOCUSED_LOCKED, AE_STATE_PRECAPTURE},
+                {AF_STATE_FOCUSED_LOCKED, AE_STATE_LOCKED},
+        });
+
+        assertArrayEquals(new boolean[]{true, false, false, true, false, true}, captures);
+    }
+
+    @Test
+    public void refocusing_holdsCapturesBack() throws Exception {
+        boolean[] captures = play(new int[][]{
+                {AF_STATE_PASSIVE_FOCUSED, AE_STATE_CONVERGED},
+                // The operator moved on to a label closer by.
+                {AF_STATE_PASSIVE_SCAN, AE_STATE_CONVERGED},
+                {AF_STATE_PASSIVE_SCAN, AE_STATE_CONVERGED},
+                {AF_STATE_PASSIVE_UNFOCUSED, AE_STATE_CONVERGED},
+                {AF_STATE_PASSIVE_SCAN, AE_STATE_CONVERGED},
+                {AF_STATE_PASSIVE_FOCUSED, AE_STATE_CONVERGED},
+        });
+
+        assertArrayEquals(new boolean[]{true, false, false, false, false, true}, captures);
+        assertEquals(0, mTrigger.getTimeoutCount());
+    }
+
+    @Test
+    public void huntingFocus_capturesAfterTheMaximumWait() throws Exception {
+        long start = mClock.nanoTime();
+        while (mClock.nanoTime() - start < MAX_WAIT_NANOS) {
+            assertFalse(mTrigger.onResult(AF_STATE_PASSIVE_SCAN, AE_STATE_CONVERGED));
+            mClock.advance(FRAME_NANOS);
+        }
+        // Captures resume, until the focus settles.
+        boolean[] captures = play(new int[][]{
+                {AF_STATE_PASSIVE_SCAN, AE_STATE_CONVERGED},
+                {AF_STATE_PASSIVE_UNFOCUSED, AE_STATE_CONVERGED},
+                {AF_STATE_PASSIVE_FOCUSED, AE_STATE_CONVERGED},
+                {AF_STATE_PASSIVE_SCAN, AE_STATE_CONVERGED},
+        });
+
+        assertArrayEquals(new boolean[]{true, true, true, false}, captures);
+        assertEquals(1, mTrigger.getTimeoutCount());
+        // The next convergence is waited for again.
+        assertEquals(State.CONVERGING, mTrigger.getState());
+    }
+
+    @Test
+    public void withoutContinuousFocus_onlyExposureIsWaitedFor() throws Exception {
+        mTrigger.reset(false);
+        boolean[] captures = play(new int[][]{
+                {AF_STATE_INACTIVE, AE_STATE_SEARCHING},
+                {AF_STATE_INACTIVE, AE_STATE_CONVERGED},
+                {STATE_UNKNOWN, STATE_UNKNOWN},
+        });
+
+        assertArrayEquals(new boolean[]{false, true, true}, captures);
+    }
+
+    @Test
+    public void reset_waitsForTheNewSession() throws Exception {
+        assertTrue(mTrigger.onResult(AF_STATE_PASSIVE_FOCUSED, AE_STATE_CONVERGED));
+        mClock.advance(2 * MAX_WAIT_NANOS);
+        mTrigger.reset(true);
+
+        assertEquals(State.CONVERGING, mTrigger.getState());
+        assertFalse(mTrigger.onResult(AF_STATE_INACTIVE, AE_STATE_INACTIVE));
+    }
+}
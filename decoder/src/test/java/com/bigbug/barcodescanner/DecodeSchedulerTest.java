@@ -0,0 +1,210 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link DecodeScheduler}.
+ */
+public class DecodeSchedulerTest {
+
+    private DecodeScheduler mScheduler;
+
+    private final List<String> mRun = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> mDiscarded = Collections.synchronizedList(new ArrayList<String>());
+
+    @After
+    public void tearDown() {
+        if (mScheduler != null) {
+            mScheduler.shutdown();
+        }
+    }
+
+    private class RecordingTask implements DecodeScheduler.Task {
+        final String mName;
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mRelease;
+        final CountDownLatch mFinished = new CountDownLatch(1);
+
+        RecordingTask(String name, CountDownLatch release) {
+            mName = name;
+            mRelease = release;
+        }
+
+        @Override
+        public void run() {
+            mStarted.countDown();
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            mRun.add(mName);
+            mFinished.countDown();
+        }
+
+        @Override
+        public void discard() {
+            mDiscarded.add(mName);
+        }
+    }
+
+    @Test
+    public void fullQueue_dropsOldestFrame() throws Exception {
+        mScheduler = new DecodeScheduler("test", 1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingTask busy = new RecordingTask("busy", release);
+        mScheduler.submit(busy);
+        assertTrue(busy.mStarted.await(5, TimeUnit.SECONDS));
+
+        RecordingTask last = new RecordingTask("4", release);
+        mScheduler.submit(new RecordingTask("1", release));
+        mScheduler.submit(new RecordingTask("2", release));
+        mScheduler.submit(new RecordingTask("3", release));
+        mScheduler.submit(last);
+
+        // The two oldest waiting frames were closed immediately, while the worker was busy.
+        assertEquals(Arrays.asList("1", "2"), new ArrayList<>(mDiscarded));
+        assertEquals(2, mScheduler.getQueueDepth());
+        assertEquals(1, mScheduler.getActiveCount());
+        assertEquals(2, mScheduler.getDroppedCount());
+
+        release.countDown();
+        assertTrue(last.mFinished.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("busy", "3", "4"), new ArrayList<>(mRun));
+    }
+
+    @Test
+    public void parallelism_runsFramesConcurrently() throws Exception {
+        mScheduler = new DecodeScheduler("test", 3, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingTask[] tasks = new RecordingTask[3];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new RecordingTask(String.valueOf(i), release);
+            mScheduler.submit(tasks[i]);
+            // Let a worker pick it up before submitting the next one.
+            assertTrue(tasks[i].mStarted.await(5, TimeUnit.SECONDS));
+        }
+        assertEquals(3, mScheduler.getActiveCount());
+        assertEquals(0, mScheduler.getQueueDepth());
+
+        release.countDown();
+        for (RecordingTask task : tasks) {
+            assertTrue(task.mFinished.await(5, TimeUnit.SECONDS));
+        }
+        assertTrue(mDiscarded.isEmpty());
+    }
+
+    @Test
+    public void latency_isMeasuredFromSubmission() throws Exception {
+        mScheduler = new DecodeScheduler("test", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingTask task = new RecordingTask("slow", release);
+        mScheduler.submit(task);
+        assertTrue(task.mStarted.await(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        release.countDown();
+        assertTrue(task.mFinished.await(5, TimeUnit.SECONDS));
+
+        // Completion is recorded right after the task returns.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mScheduler.getCompletedCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, mScheduler.getCompletedCount());
+        assertTrue(mScheduler.getMaxLatencyNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(mScheduler.getMaxLatencyNanos(), mScheduler.getAverageLatencyNanos());
+    }
+
+    @Test
+    public void failingTask_doesNotStopTheWorker() throws Exception {
+        mScheduler = new DecodeScheduler("test", 1, 1);
+        final CountDownLatch completed = new CountDownLatch(3);
+        mScheduler.setListener(new DecodeScheduler.Listener() {
+            @Override
+            public void onTaskCompleted(DecodeScheduler.Task task, long runNanos) {
+                completed.countDown();
+            }
+
+            @Override
+            public void onTaskDiscarded(DecodeScheduler.Task task) {
+            }
+        });
+        for (int i = 0; i < 2; i++) {
+            final CountDownLatch started = new CountDownLatch(1);
+            mScheduler.submit(new RecordingTask("broken", new CountDownLatch(0)) {
+                @Override
+                public void run() {
+                    started.countDown();
+                    throw new IllegalStateException("broken reader");
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+        }
+        RecordingTask task = new RecordingTask("fine", new CountDownLatch(0));
+        mScheduler.submit(task);
+
+        assertTrue(task.mFinished.await(5, TimeUnit.SECONDS));
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("fine"), new ArrayList<>(mRun));
+        assertEquals(3, mScheduler.getCompletedCount());
+        assertEquals(2, mScheduler.getFailedCount());
+    }
+
+    @Test
+    public void shutdown_discardsWaitingAndLaterFrames() throws Exception {
+        mScheduler = new DecodeScheduler("test", 1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingTask busy = new RecordingTask("busy", release);
+        mScheduler.submit(busy);
+        assertTrue(busy.mStarted.await(5, TimeUnit.SECONDS));
+        mScheduler.submit(new RecordingTask("waiting", release));
+
+        mScheduler.shutdown();
+        mScheduler.submit(new RecordingTask("late", release));
+        release.countDown();
+        assertTrue(busy.mFinished.await(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("waiting", "late"), new ArrayList<>(mDiscarded));
+        assertEquals(Collections.singletonList("busy"), new ArrayList<>(mRun));
+        assertEquals(2, mScheduler.getDroppedCount());
+    }
+
+    @Test
+    public void listener_hearsAboutEveryTask() throws Exception {
+        mScheduler = new DecodeScheduler("test", 1, 1);
+        final List<String> completed = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(2);
+        mScheduler.setListener(new DecodeScheduler.Listener() {
+            @Override
+            public void onTaskCompleted(DecodeScheduler.Task task, long runNanos) {
+                completed.add(((RecordingTask) task).mName);
+                done.countDown();
+            }
+
+            @Override
+            public void onTaskDiscarded(DecodeScheduler.Task task) {
+                completed.add("discarded " + ((RecordingTask) task).mName);
+            }
+        });
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingTask busy = new RecordingTask("busy", release);
+        mScheduler.submit(busy);
+        assertTrue(busy.mStarted.await(5, TimeUnit.SECONDS));
+        mScheduler.submit(new RecordingTask("1", release));
+        mScheduler.submit(new RecordingTask("2", release));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("discarded 1", "busy", "2"), new ArrayList<>(completed));
+    }
+}
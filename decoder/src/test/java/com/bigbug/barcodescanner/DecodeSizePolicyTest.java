@@ -0,0 +1,111 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link DecodeSizePolicy}.
+ */
+public class DecodeSizePolicyTest {
+
+    /**
+     * Typical YUV output sizes of a 4:3 12 MP sensor, in no particular order.
+     */
+    private static final int[] WIDTHS = {4032, 640, 1920, 3264, 1280, 1600, 2048, 320};
+    private static final int[] HEIGHTS = {3024, 480, 1080, 2448, 720, 1200, 1536, 240};
+
+    /**
+     * Optics of a typical main camera: 5.6 mm wide sensor behind a 4.7 mm lens.
+     */
+    private static final float SENSOR_WIDTH = 5.6f;
+    private static final float FOCAL_LENGTH = 4.7f;
+
+    private static DecodeSizePolicy.Builder builder() {
+        return new DecodeSizePolicy.Builder()
+                .setModuleSizeMm(0.33f)
+                .setScanDistanceMm(200f)
+                .setMinPixelsPerModule(2f);
+    }
+
+    @Test
+    public void requiredWidth_followsFieldOfView() throws Exception {
+        DecodeSizePolicy policy = builder().build();
+        // 200 mm * 5.6 / 4.7 = 238.3 mm wide field, 722 modules, 1445 pixels.
+        assertEquals(1445, policy.getRequiredWidth(SENSOR_WIDTH, FOCAL_LENGTH));
+
+        // Twice the distance needs twice the pixels, twice the module size half.
+        assertEquals(2889, builder().setScanDistanceMm(400f).build()
+                .getRequiredWidth(SENSOR_WIDTH, FOCAL_LENGTH));
+        assertEquals(723, builder().setModuleSizeMm(0.66f).build()
+                .getRequiredWidth(SENSOR_WIDTH, FOCAL_LENGTH));
+
+        assertEquals(0, policy.getRequiredWidth(0f, FOCAL_LENGTH));
+        assertEquals(0, policy.getRequiredWidth(SENSOR_WIDTH, 0f));
+    }
+
+    @Test
+    public void choose_smallestSizeThatResolvesModules() throws Exception {
+        DecodeSizePolicy policy = builder().build();
+        int index = policy.choose(WIDTHS, HEIGHTS, 4, 3, SENSOR_WIDTH, FOCAL_LENGTH);
+        assertEquals(1600, WIDTHS[index]);
+        assertEquals(1200, HEIGHTS[index]);
+
+        index = policy.choose(WIDTHS, HEIGHTS, 16, 9, SENSOR_WIDTH, FOCAL_LENGTH);
+        assertEquals(1920, WIDTHS[index]);
+        assertEquals(1080, HEIGHTS[index]);
+
+        // Without an aspect ratio, 1600x1200 is still the smallest wide enough.
+        index = policy.choose(WIDTHS, HEIGHTS, 0, 0, SENSOR_WIDTH, FOCAL_LENGTH);
+        assertEquals(1600, WIDTHS[index]);
+    }
+
+    @Test
+    public void choose_largestWithinBudgetWhenNothingResolves() throws Exception {
+        DecodeSizePolicy policy = builder().setScanDistanceMm(1000f).setPixelBudget(4000000L)
+                .build();
+        int index = policy.choose(WIDTHS, HEIGHTS, 4, 3, SENSOR_WIDTH, FOCAL_LENGTH);
+        assertEquals(2048, WIDTHS[index]);
+    }
+
+    @Test
+    public void choose_budgetCountsOnlyScanWindow() throws Exception {
+        DecodeSizePolicy.Builder far = builder().setScanDistanceMm(500f).setPixelBudget(2500000L);
+        assertEquals(1600, WIDTHS[far.build().choose(WIDTHS, HEIGHTS, 4, 3, SENSOR_WIDTH,
+                FOCAL_LENGTH)]);
+
+        // Only a quarter of each frame is decoded, so larger frames fit in the same budget.
+        DecodeSizePolicy policy = far.setScanWindow(ScanWindow.centered(0.5f, 0.5f)).build();
+        assertEquals(1632 * 1224, policy.getDecodedPixels(3264, 2448));
+        assertEquals(3264, WIDTHS[policy.choose(WIDTHS, HEIGHTS, 4, 3, SENSOR_WIDTH,
+                FOCAL_LENGTH)]);
+    }
+
+    @Test
+    public void choose_unknownOpticsFallsBackToBudget() throws Exception {
+        DecodeSizePolicy policy = builder().setPixelBudget(2000000L).build();
+        assertEquals(1600, WIDTHS[policy.choose(WIDTHS, HEIGHTS, 4, 3, 0f, 0f)]);
+
+        // Without any budget, that is the largest size, as before.
+        assertEquals(4032, WIDTHS[builder().build().choose(WIDTHS, HEIGHTS, 4, 3, 0f, 0f)]);
+    }
+
+    @Test
+    public void choose_smallestWhenNothingFitsBudget() throws Exception {
+        DecodeSizePolicy policy = builder().setPixelBudget(1000L).build();
+        assertEquals(320, WIDTHS[policy.choose(WIDTHS, HEIGHTS, 4, 3, SENSOR_WIDTH,
+                FOCAL_LENGTH)]);
+    }
+
+    @Test
+    public void choose_ignoresAspectRatioWithoutMatch() throws Exception {
+        DecodeSizePolicy policy = builder().build();
+        assertEquals(1600, WIDTHS[policy.choose(WIDTHS, HEIGHTS, 1, 1, SENSOR_WIDTH,
+                FOCAL_LENGTH)]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void choose_rejectsMismatchedArrays() throws Exception {
+        builder().build().choose(new int[]{640}, new int[0], 0, 0, SENSOR_WIDTH, FOCAL_LENGTH);
+    }
+}
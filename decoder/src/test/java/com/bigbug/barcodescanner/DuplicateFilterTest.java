@@ -0,0 +1,121 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link DuplicateFilter}.
+ */
+public class DuplicateFilterTest {
+
+    private static final long MS = 1000L * 1000L;
+
+    private static class FakeClock implements Clock {
+        long mNow = 1000 * MS;
+
+        @Override
+        public long nanoTime() {
+            return mNow;
+        }
+
+        void advance(long nanos) {
+            mNow += nanos;
+        }
+    }
+
+    private FakeClock mClock;
+    private DuplicateFilter mFilter;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mFilter = new DuplicateFilter(mClock, 1000 * MS, 4);
+    }
+
+    @Test
+    public void repeatedSighting_isSuppressedWithinWindow() throws Exception {
+        assertTrue(mFilter.offer(BarcodeFormat.CODE_128, "PALLET-0042"));
+        mClock.advance(500 * MS);
+        assertFalse(mFilter.offer(BarcodeFormat.CODE_128, new StringBuilder("PALLET-0042")));
+        assertEquals(1, mFilter.getHitCount());
+        assertEquals(1, mFilter.getMissCount());
+    }
+
+    @Test
+    public void everySighting_restartsWindow() throws Exception {
+        assertTrue(mFilter.offer(BarcodeFormat.CODE_128, "A"));
+        for (int i = 0; i < 5; i++) {
+            mClock.advance(900 * MS);
+            assertFalse(mFilter.offer(BarcodeFormat.CODE_128, "A"));
+        }
+        mClock.advance(1000 * MS);
+        assertTrue(mFilter.offer(BarcodeFormat.CODE_128, "A"));
+    }
+
+    @Test
+    public void formatIsPartOfIdentity() throws Exception {
+        assertTrue(mFilter.offer(BarcodeFormat.CODE_128, "12345"));
+        assertTrue(mFilter.offer(BarcodeFormat.QR_CODE, "12345"));
+        assertTrue(mFilter.offer(BarcodeFormat.CODE_128, "12346"));
+    }
+
+    @Test
+    public void full_forgetsLeastRecentlySeen() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(mFilter.offer(BarcodeFormat.CODE_128, "L" + i));
+            mClock.advance(MS);
+        }
+        // L0 is seen again, so L1 is now the least recently seen.
+        assertFalse(mFilter.offer(BarcodeFormat.CODE_128, "L0"));
+        assertTrue(mFilter.offer(BarcodeFormat.CODE_128, "L4"));
+
+        assertTrue(mFilter.offer(BarcodeFormat.CODE_128, "L1"));
+        assertFalse(mFilter.offer(BarcodeFormat.CODE_128, "L0"));
+        assertFalse(mFilter.offer(BarcodeFormat.CODE_128, "L4"));
+    }
+
+    @Test
+    public void manyCodes_stayFindableThroughEvictions() throws Exception {
+        DuplicateFilter filter = new DuplicateFilter(mClock, 1000 * MS, 16);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.offer(BarcodeFormat.CODE_128, "C" + i));
+            // The 16 most recent codes are all still remembered.
+            for (int j = Math.max(0, i - 15); j <= i; j++) {
+                mClock.advance(MS);
+                assertFalse("C" + j + " after C" + i,
+                        filter.offer(BarcodeFormat.CODE_128, "C" + j));
+            }
+        }
+    }
+
+    @Test
+    public void clear_forgetsEverything() throws Exception {
+        mFilter.offer(BarcodeFormat.CODE_128, "A");
+        mFilter.clear();
+        assertTrue(mFilter.offer(BarcodeFormat.CODE_128, "A"));
+    }
+
+    @Test
+    public void forget_reportsNextSightingOnly() throws Exception {
+        mFilter.offer(BarcodeFormat.CODE_128, "A");
+        mFilter.offer(BarcodeFormat.CODE_128, "B");
+        mFilter.forget(BarcodeFormat.CODE_128, "A");
+        mFilter.forget(BarcodeFormat.CODE_128, "unknown");
+
+        assertTrue(mFilter.offer(BarcodeFormat.CODE_128, "A"));
+        assertFalse(mFilter.offer(BarcodeFormat.CODE_128, "A"));
+        assertFalse(mFilter.offer(BarcodeFormat.CODE_128, "B"));
+    }
+
+    @Test
+    public void hash_dependsOnEveryCharacter() throws Exception {
+        assertNotEquals(DuplicateFilter.hash(BarcodeFormat.CODE_128, "ab"),
+                DuplicateFilter.hash(BarcodeFormat.CODE_128, "ba"));
+        assertNotEquals(DuplicateFilter.hash(BarcodeFormat.QR_CODE, "\u4e2d"),
+                DuplicateFilter.hash(BarcodeFormat.QR_CODE, "\u4e2e"));
+    }
+}
@@ -0,0 +1,178 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FrameDecoder} and {@link DecoderConfig}.
+ */
+public class FrameDecoderTest {
+
+    private static final DecoderConfig WAREHOUSE = new DecoderConfig.Builder()
+            .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+            .build();
+
+    private static LuminanceSource frameWith(BarcodeFormat format, String contents)
+            throws Exception {
+        BufferedImage code = TestBarcodes.render(format, contents, 300, 120);
+        int width = code.getWidth() + 80;
+        int height = code.getHeight() + 80;
+        return TestBarcodes.source(TestBarcodes.frame(width, height, code, 40, 40), width, height);
+    }
+
+    @Test
+    public void hints_matchConfig() throws Exception {
+        DecoderConfig config = new DecoderConfig.Builder(WAREHOUSE)
+                .setTryHarder(true)
+                .setPureBarcode(true)
+                .setCharacterSet("UTF-8")
+                .build();
+        Map<DecodeHintType, Object> hints = config.toHints();
+
+        assertEquals(WAREHOUSE.getFormats(),
+                hints.get(DecodeHintType.POSSIBLE_FORMATS));
+        assertEquals(Boolean.TRUE, hints.get(DecodeHintType.TRY_HARDER));
+        assertEquals(Boolean.TRUE, hints.get(DecodeHintType.PURE_BARCODE));
+        assertEquals("UTF-8", hints.get(DecodeHintType.CHARACTER_SET));
+    }
+
+    @Test
+    public void defaultConfig_hasNoHints() throws Exception {
+        assertTrue(DecoderConfig.DEFAULT.toHints().isEmpty());
+        assertTrue(DecoderConfig.DEFAULT.getFormats().isEmpty());
+    }
+
+    @Test
+    public void decodesEnabledFormats() throws Exception {
+        FrameDecoder decoder = new FrameDecoder(WAREHOUSE);
+
+        Result code128 = decoder.decode(frameWith(BarcodeFormat.CODE_128, "PALLET-0042"));
+        assertEquals(BarcodeFormat.CODE_128, code128.getBarcodeFormat());
+        assertEquals("PALLET-0042", code128.getText());
+
+        Result qr = decoder.decode(frameWith(BarcodeFormat.QR_CODE, "https://example.com/p/42"));
+        assertEquals(BarcodeFormat.QR_CODE, qr.getBarcodeFormat());
+        assertEquals("https://example.com/p/42", qr.getText());
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void ignoresDisabledFormats() throws Exception {
+        new FrameDecoder(WAREHOUSE).decode(frameWith(BarcodeFormat.EAN_13, "5901234123457"));
+    }
+
+    @Test
+    public void decodeRegion_reportsFrameCoordinates() throws Exception {
+        FrameDecoder decoder = new FrameDecoder(WAREHOUSE);
+        int width = 1000;
+        int height = 800;
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.QR_CODE, "shelf", 160, 160);
+        LuminanceSource source = TestBarcodes.source(
+                TestBarcodes.frame(width, height, code, 600, 500), width, height);
+
+        Result result = decoder.decode(source, new ScanWindow(0.5f, 0.5f, 1f, 1f));
+        assertEquals("shelf", result.getText());
+        for (ResultPoint point : result.getResultPoints()) {
+            assertTrue(point.toString(), point.getX() >= 600 && point.getX() <= 760);
+            assertTrue(point.toString(), point.getY() >= 500 && point.getY() <= 660);
+        }
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void decodeRegion_ignoresTheRestOfTheFrame() throws Exception {
+        int width = 1000;
+        int height = 800;
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.QR_CODE, "shelf", 160, 160);
+        new FrameDecoder(WAREHOUSE).decode(TestBarcodes.source(
+                TestBarcodes.frame(width, height, code, 100, 100), width, height),
+                new ScanWindow(0.5f, 0.5f, 1f, 1f));
+    }
+
+    @Test
+    public void decodeMultiple_findsEveryLabel() throws Exception {
+        FrameDecoder decoder = new FrameDecoder(new DecoderConfig.Builder(WAREHOUSE)
+                .setMultipleBarcodes(true)
+                .build());
+        int width = 1280;
+        int height = 720;
+        byte[] frame = TestBarcodes.blank(width, height);
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            String text = "PALLET-000" + i;
+            TestBarcodes.paste(frame, width, TestBarcodes.render(BarcodeFormat.CODE_128, text,
+                    300, 120), 40 + (i % 2) * 620, 60 + (i / 2) * 340);
+            expected.add(text);
+        }
+        for (int i = 0; i < 2; i++) {
+            String text = "https://example.com/p/" + i;
+            TestBarcodes.paste(frame, width, TestBarcodes.render(BarcodeFormat.QR_CODE, text,
+                    200, 200), 400, 40 + i * 380);
+            expected.add(text);
+        }
+
+        Result[] results = decoder.decodeMultiple(TestBarcodes.source(frame, width, height));
+        Set<String> found = new HashSet<>();
+        for (Result result : results) {
+            found.add(result.getText());
+        }
+        assertEquals(expected.size(), results.length);
+        assertEquals(expected, found);
+        assertEquals(BarcodeFormat.QR_CODE, results[0].getBarcodeFormat());
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void decodeMultiple_blankFrame() throws Exception {
+        new FrameDecoder(WAREHOUSE).decodeMultiple(TestBarcodes.source(
+                TestBarcodes.blank(200, 200), 200, 200));
+    }
+
+    @Test
+    public void decoderIsReusedAcrossFramesAndThreads() throws Exception {
+        final FrameDecoder decoder = new FrameDecoder(WAREHOUSE);
+        final LuminanceSource qr = frameWith(BarcodeFormat.QR_CODE, "shared");
+        final LuminanceSource blank = TestBarcodes.source(new byte[200 * 200], 200, 200);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Callable<String> task = new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    for (int i = 0; i < 20; i++) {
+                        try {
+                            decoder.decode(blank);
+                            fail("Decoded a blank frame");
+                        } catch (NotFoundException e) {
+                            // A miss must not leave state behind for the next frame.
+                        }
+                        assertEquals("shared", decoder.decode(qr).getText());
+                    }
+                    return "done";
+                }
+            };
+            Collection<Callable<String>> tasks = Collections.nCopies(8, task);
+            for (Future<String> future : executor.invokeAll(tasks)) {
+                assertEquals("done", future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FramePacer}, driven by a fake clock.
+ */
+public class FramePacerTest {
+
+    private static final long MS = 1000000L;
+
+    private static class FakeClock implements Clock {
+        long mNow = 1000 * MS;
+
+        @Override
+        public long nanoTime() {
+            return mNow;
+        }
+
+        void advance(long nanos) {
+            mNow += nanos;
+        }
+    }
+
+    private FakeClock mClock;
+    private FramePacer mPacer;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mPacer = new FramePacer(mClock, 2, 3, 30 * MS, 1000 * MS);
+    }
+
+    @Test
+    public void beforeAnyDecode_capturesAtMinimumInterval() throws Exception {
+        assertTrue(mPacer.tryAcquire());
+        assertFalse(mPacer.tryAcquire());
+        mClock.advance(29 * MS);
+        assertFalse(mPacer.tryAcquire());
+        mClock.advance(1 * MS);
+        assertTrue(mPacer.tryAcquire());
+        assertEquals(2, mPacer.getInFlightCount());
+        assertEquals(-1, mPacer.getAverageDecodeNanos());
+    }
+
+    @Test
+    public void inFlightLimit_blocksCaptures() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(mPacer.tryAcquire());
+            mClock.advance(30 * MS);
+        }
+        mClock.advance(1000 * MS);
+        assertFalse(mPacer.tryAcquire());
+
+        mPacer.onFrameFailed();
+        assertTrue(mPacer.tryAcquire());
+    }
+
+    @Test
+    public void interval_followsDecodeTimeSharedByThreads() throws Exception {
+        mPacer.tryAcquire();
+        mPacer.onFrameDecoded(200 * MS);
+        assertEquals(200 * MS, mPacer.getAverageDecodeNanos());
+        // Two threads each need a frame every 200 ms.
+        assertEquals(100 * MS, mPacer.getIntervalNanos());
+
+        mClock.advance(99 * MS);
+        assertFalse(mPacer.tryAcquire());
+        mClock.advance(1 * MS);
+        assertTrue(mPacer.tryAcquire());
+
+        // A faster decode moves the average by a quarter of the difference.
+        mPacer.onFrameDecoded(40 * MS);
+        assertEquals(160 * MS, mPacer.getAverageDecodeNanos());
+        assertEquals(80 * MS, mPacer.getIntervalNanos());
+    }
+
+    @Test
+    public void fastDecoder_capturesFasterThanTheOldFixedRate() throws Exception {
+        int captures = 0;
+        for (int i = 0; i < 100; i++) {
+            if (mPacer.tryAcquire()) {
+                captures++;
+                mPacer.onFrameDecoded(60 * MS);
+            }
+            mClock.advance(10 * MS);
+        }
+        // 1 s of frames at 30 ms apart, instead of 2 with a fixed 500 ms throttle.
+        assertEquals(30 * MS, mPacer.getIntervalNanos());
+        assertEquals(34, captures);
+    }
+
+    @Test
+    public void interval_isClamped() throws Exception {
+        mPacer.tryAcquire();
+        mPacer.onFrameDecoded(10 * MS);
+        assertEquals(30 * MS, mPacer.getIntervalNanos());
+
+        mPacer.reset();
+        mPacer.tryAcquire();
+        mPacer.onFrameDecoded(5000 * MS);
+        assertEquals(1000 * MS, mPacer.getIntervalNanos());
+    }
+
+    @Test
+    public void droppedFrames_backOffAndRecover() throws Exception {
+        mPacer.tryAcquire();
+        mPacer.onFrameDecoded(200 * MS);
+        assertEquals(100 * MS, mPacer.getIntervalNanos());
+
+        mPacer.tryAcquire();
+        mPacer.onFrameDropped();
+        assertEquals(200 * MS, mPacer.getIntervalNanos());
+        for (int i = 0; i < 5; i++) {
+            mPacer.tryAcquire();
+            mPacer.onFrameDropped();
+        }
+        // The stretch is capped.
+        assertEquals(800 * MS, mPacer.getIntervalNanos());
+        assertEquals(0, mPacer.getInFlightCount());
+
+        // Decoded frames bring the interval back down to the decode time.
+        for (int i = 0; i < 20; i++) {
+            mPacer.onFrameDecoded(200 * MS);
+        }
+        assertEquals(100 * MS, mPacer.getIntervalNanos());
+    }
+
+    @Test
+    public void reset_forgetsFramesInFlight() throws Exception {
+        mPacer.tryAcquire();
+        mPacer.onFrameDecoded(400 * MS);
+        mClock.advance(200 * MS);
+        assertTrue(mPacer.tryAcquire());
+
+        mPacer.reset();
+        assertEquals(0, mPacer.getInFlightCount());
+        assertEquals(30 * MS, mPacer.getIntervalNanos());
+        assertTrue(mPacer.tryAcquire());
+
+        // A frame from before the reset reporting back does not free a new slot twice.
+        mPacer.onFrameDecoded(10 * MS);
+        mPacer.onFrameDecoded(10 * MS);
+        assertEquals(0, mPacer.getInFlightCount());
+    }
+}
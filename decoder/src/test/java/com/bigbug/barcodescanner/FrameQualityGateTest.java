@@ -0,0 +1,131 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FrameQualityGate}.
+ */
+public class FrameQualityGateTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final long SEED = 42;
+
+    private static final float MIN_SHARPNESS = 0.004f;
+    private static final float MAX_BLUR_RADIANS = 0.002f;
+
+    /**
+     * @return a frame with a CODE_128 label, blurred by a box of the given radius in both
+     * directions, its light scaled by {@code gain}, with sensor noise.
+     */
+    private static LuminanceSource frame(int blurRadius, float gain) throws Exception {
+        byte[] frame = TestBarcodes.frame(WIDTH, HEIGHT,
+                TestBarcodes.render(BarcodeFormat.CODE_128, "PALLET-1234", 360, 120), 140, 180);
+        frame = blur(blur(frame, blurRadius, 1, WIDTH), blurRadius, WIDTH, HEIGHT);
+        Random random = new Random(SEED);
+        for (int i = 0; i < frame.length; i++) {
+            int luminance = Math.round((frame[i] & 0xFF) * gain + 20
+                    + (float) random.nextGaussian() * 4);
+            frame[i] = (byte) Math.max(0, Math.min(255, luminance));
+        }
+        return TestBarcodes.source(frame, WIDTH, HEIGHT);
+    }
+
+    /**
+     * Average every pixel with the pixels up to {@code radius} steps of {@code stride} away,
+     * within lines of {@code length} steps.
+     */
+    private static byte[] blur(byte[] frame, int radius, int stride, int length) {
+        byte[] blurred = new byte[frame.length];
+        for (int i = 0; i < frame.length; i++) {
+            int position = i / stride % length;
+            int sum = 0;
+            int count = 0;
+            for (int k = -radius; k <= radius; k++) {
+                if (position + k >= 0 && position + k < length) {
+                    sum += frame[i + k * stride] & 0xFF;
+                    count++;
+                }
+            }
+            blurred[i] = (byte) (sum / count);
+        }
+        return blurred;
+    }
+
+    @Test
+    public void sharpFrames_areAccepted() throws Exception {
+        FrameQualityGate gate = new FrameQualityGate(MIN_SHARPNESS, MAX_BLUR_RADIANS, 0);
+        assertEquals(FrameQualityGate.Verdict.ACCEPTED, gate.check(frame(0, 0.8f), false, 0, -1));
+        // Dim light takes the contrast down, but not the sharpness.
+        assertEquals(FrameQualityGate.Verdict.ACCEPTED, gate.check(frame(0, 0.3f), false, 0, -1));
+        assertEquals(FrameQualityGate.Verdict.ACCEPTED, gate.check(frame(1, 0.8f), false, 0, -1));
+        assertEquals(0f, gate.getSkipRate(), 0f);
+    }
+
+    @Test
+    public void blurredFrames_areRejected() throws Exception {
+        FrameQualityGate gate = new FrameQualityGate(MIN_SHARPNESS, MAX_BLUR_RADIANS, 0);
+        assertTrue(gate.sharpness(frame(0, 0.8f)) > 20 * gate.sharpness(frame(4, 0.8f)));
+        assertTrue(gate.sharpness(frame(0, 0.3f)) > 20 * gate.sharpness(frame(4, 0.3f)));
+
+        assertEquals(FrameQualityGate.Verdict.BLURRY, gate.check(frame(6, 0.8f), false, 0, -1));
+        assertEquals(1, gate.getCount(FrameQualityGate.Verdict.BLURRY));
+        assertEquals(1f, gate.getSkipRate(), 0f);
+    }
+
+    @Test
+    public void focusingAndShaking_areRejectedWhateverTheSharpness() throws Exception {
+        FrameQualityGate gate = new FrameQualityGate(MIN_SHARPNESS, MAX_BLUR_RADIANS, 0);
+        LuminanceSource sharp = frame(0, 0.8f);
+        long exposureNanos = 10000000;
+
+        assertEquals(FrameQualityGate.Verdict.FOCUSING, gate.check(sharp, true, 0, -1));
+        // 1 radian per second for 10 ms.
+        assertEquals(FrameQualityGate.Verdict.SHAKING,
+                gate.check(sharp, false, exposureNanos, 1f));
+        assertEquals(FrameQualityGate.Verdict.ACCEPTED,
+                gate.check(sharp, false, exposureNanos, 0.1f));
+        // Without an exposure time or a gyroscope, the motion is not known.
+        assertEquals(FrameQualityGate.Verdict.ACCEPTED, gate.check(sharp, false, 0, 1f));
+        assertEquals(FrameQualityGate.Verdict.ACCEPTED,
+                gate.check(sharp, false, exposureNanos, -1));
+        assertEquals(5, gate.getCheckedCount());
+    }
+
+    @Test
+    public void audits_estimateTheDecodesMissed() throws Exception {
+        FrameQualityGate gate = new FrameQualityGate(MIN_SHARPNESS, MAX_BLUR_RADIANS, 3);
+        LuminanceSource blurred = frame(6, 0.8f);
+        int audits = 0;
+        for (int i = 0; i < 6; i++) {
+            assertEquals(FrameQualityGate.Verdict.BLURRY, gate.check(blurred, false, 0, -1));
+            if (gate.shouldAudit()) {
+                gate.recordAudit(audits++ == 0);
+            }
+        }
+        gate.check(frame(0, 0.8f), false, 0, -1);
+
+        assertEquals(2, gate.getAuditedCount());
+        assertEquals(1, gate.getAuditHits());
+        assertEquals(4, gate.getSkippedCount());
+        assertEquals(4f / 7, gate.getSkipRate(), 1e-6f);
+        assertEquals(2f, gate.getEstimatedMissedDecodes(), 1e-6f);
+    }
+
+    @Test
+    public void tinyFrames_haveNoSharpness() throws Exception {
+        FrameQualityGate gate = new FrameQualityGate(MIN_SHARPNESS, MAX_BLUR_RADIANS, 0);
+        assertEquals(0f, gate.sharpness(TestBarcodes.source(new byte[3], 3, 1)), 0f);
+        // One block with an edge in a frame of flat blocks.
+        byte[] frame = new byte[8 * 8];
+        frame[0] = (byte) 255;
+        assertTrue(gate.sharpness(TestBarcodes.source(frame, 8, 8)) > 0);
+    }
+}
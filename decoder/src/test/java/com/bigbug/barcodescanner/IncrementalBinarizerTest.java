@@ -0,0 +1,170 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link IncrementalBinarizer}, checking its black matrices against the ones
+ * {@link HybridBinarizer} computes from scratch.
+ */
+public class IncrementalBinarizerTest {
+
+    private static final long SEED = 42;
+
+    private final Random mRandom = new Random(SEED);
+
+    /**
+     * @return a frame with a QR code at the given position, sensor noise in the given band of
+     * rows, and light falling from left to right by the given fraction.
+     */
+    private byte[] frame(int width, int height, int codeLeft, int codeTop, int noisyTop,
+                         int noisyBottom, float shade) throws Exception {
+        int size = Math.min(120, Math.min(width - codeLeft, height - codeTop));
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.QR_CODE, "aisle 12", size, size);
+        byte[] frame = TestBarcodes.blank(width, height);
+        TestBarcodes.paste(frame, width, code, codeLeft, codeTop);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float light = 1f - shade * x / width;
+                int noise = y >= noisyTop && y < noisyBottom ? mRandom.nextInt(9) - 4 : 0;
+                int luminance = Math.round((frame[y * width + x] & 0xFF) * light) + noise;
+                frame[y * width + x] = (byte) Math.max(0, Math.min(255, luminance));
+            }
+        }
+        return frame;
+    }
+
+    private static BitMatrix hybrid(byte[] frame, int width, int height) throws Exception {
+        return new HybridBinarizer(TestBarcodes.source(frame, width, height)).getBlackMatrix();
+    }
+
+    private static int differingBits(BitMatrix a, BitMatrix b) {
+        int count = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                if (a.get(x, y) != b.get(x, y)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void firstFrame_matchesHybrid() throws Exception {
+        int[][] sizes = {{320, 240}, {203, 157}, {40, 40}, {45, 61}};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            byte[] frame = frame(width, height, 0, 0, 0, height, 0.6f);
+            BitMatrix matrix = new IncrementalBinarizer(TestBarcodes.source(frame, width,
+                    height), 0).getBlackMatrix();
+            assertEquals(width + "x" + height, hybrid(frame, width, height), matrix);
+        }
+    }
+
+    @Test
+    public void movingCode_withoutThreshold_matchesHybridOnEveryFrame() throws Exception {
+        // Not a multiple of the block size, so that the last blocks overlap.
+        int width = 333;
+        int height = 250;
+        IncrementalBinarizer binarizer = null;
+        BitMatrix first = null;
+        int updated = 0;
+        int blocks = 0;
+        for (int i = 0; i < 20; i++) {
+            // Noise in a band at the bottom only, the rest of the frame is still but for the code.
+            byte[] frame = frame(width, height, 20 + 5 * i, 30 + i, 200, height,
+                    i < 10 ? 0f : 0.3f);
+            LuminanceSource source = TestBarcodes.source(frame, width, height);
+            binarizer = binarizer == null
+                    ? new IncrementalBinarizer(source, 0) : binarizer.next(source);
+            BitMatrix matrix = binarizer.getBlackMatrix();
+            assertEquals("frame " + i, hybrid(frame, width, height), matrix);
+            if (first == null) {
+                first = matrix;
+            }
+            // The matrix is reused rather than reallocated.
+            assertSame(first, matrix);
+            if (i > 0 && i != 10) {
+                updated += binarizer.getUpdatedBlockCount();
+                blocks += binarizer.getBlockCount();
+            }
+        }
+        assertTrue(updated + " of " + blocks, updated < blocks / 2);
+    }
+
+    @Test
+    public void stillNoisyScene_withThreshold_skipsMostBlocks() throws Exception {
+        int width = 320;
+        int height = 240;
+        MultiFormatReader reader = new MultiFormatReader();
+        IncrementalBinarizer binarizer = null;
+        for (int i = 0; i < 10; i++) {
+            byte[] frame = frame(width, height, 100, 60, 0, height, 0f);
+            LuminanceSource source = TestBarcodes.source(frame, width, height);
+            binarizer = binarizer == null
+                    ? new IncrementalBinarizer(source, 4) : binarizer.next(source);
+            BitMatrix matrix = binarizer.getBlackMatrix();
+            assertEquals("aisle 12", reader.decode(new BinaryBitmap(binarizer)).getText());
+            if (i == 0) {
+                assertEquals(binarizer.getBlockCount(), binarizer.getUpdatedBlockCount());
+            } else {
+                assertTrue(binarizer.getUpdatedBlockCount() < binarizer.getBlockCount() / 10);
+                // Noise flips a few bits only, the shapes stay.
+                assertTrue(differingBits(hybrid(frame, width, height), matrix)
+                        < width * height / 100);
+            }
+        }
+    }
+
+    @Test
+    public void sizeChange_startsOver() throws Exception {
+        byte[] large = frame(320, 240, 10, 10, 0, 240, 0f);
+        byte[] small = frame(160, 120, 10, 0, 0, 120, 0.5f);
+        IncrementalBinarizer binarizer = new IncrementalBinarizer(
+                TestBarcodes.source(large, 320, 240), 4);
+        binarizer.getBlackMatrix();
+        binarizer = binarizer.next(TestBarcodes.source(small, 160, 120));
+
+        assertEquals(hybrid(small, 160, 120), binarizer.getBlackMatrix());
+        assertEquals(binarizer.getBlockCount(), binarizer.getUpdatedBlockCount());
+    }
+
+    @Test
+    public void tinyFrame_isBinarizedGlobally() throws Exception {
+        byte[] frame = frame(39, 60, 0, 0, 0, 60, 0.3f);
+        LuminanceSource source = TestBarcodes.source(frame, 39, 60);
+        IncrementalBinarizer binarizer = new IncrementalBinarizer(source, 0);
+
+        assertEquals(new GlobalHistogramBinarizer(source).getBlackMatrix(),
+                binarizer.getBlackMatrix());
+        assertEquals(-1, binarizer.getUpdatedBlockCount());
+    }
+
+    @Test
+    public void createBinarizer_hasStateOfItsOwn() throws Exception {
+        byte[] frame = frame(320, 240, 10, 10, 0, 240, 0f);
+        LuminanceSource source = TestBarcodes.source(frame, 320, 240);
+        IncrementalBinarizer binarizer = new IncrementalBinarizer(source, 0);
+        BitMatrix matrix = binarizer.getBlackMatrix();
+        LuminanceSource crop = source.crop(0, 0, 200, 200);
+
+        BitMatrix cropMatrix = binarizer.createBinarizer(crop).getBlackMatrix();
+        assertNotSame(matrix, cropMatrix);
+        assertEquals(new HybridBinarizer(crop).getBlackMatrix(), cropMatrix);
+        assertEquals(hybrid(frame, 320, 240), matrix);
+    }
+}
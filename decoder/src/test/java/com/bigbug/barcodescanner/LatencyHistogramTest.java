@@ -0,0 +1,115 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    private static final long US = 1000L;
+    private static final long MS = 1000L * US;
+
+    @Test
+    public void empty_reportsZero() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(99));
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void smallValues_areExact() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i * US);
+        }
+        assertEquals(5 * US, histogram.getPercentileNanos(50));
+        assertEquals(10 * US, histogram.getPercentileNanos(95));
+        assertEquals(10 * US, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void percentiles_withinRelativeError() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1 to 1000 ms: the p-th percentile is p * 10 ms.
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * MS);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertNear(500 * MS, histogram.getPercentileNanos(50));
+        assertNear(950 * MS, histogram.getPercentileNanos(95));
+        assertNear(990 * MS, histogram.getPercentileNanos(99));
+        assertEquals(1000 * MS, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void buckets_coverEveryValueOnce() throws Exception {
+        for (long micros = 0; micros < 1 << 16; micros++) {
+            int index = LatencyHistogram.indexOf(micros);
+            assertTrue(micros <= LatencyHistogram.highestEquivalent(index));
+            assertTrue(index == 0 || micros > LatencyHistogram.highestEquivalent(index - 1));
+        }
+    }
+
+    @Test
+    public void outOfRange_isClamped() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5 * MS);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(50));
+        assertTrue(histogram.getMaxNanos() > 0);
+    }
+
+    @Test
+    public void reset_forgetsValues() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3 * MS);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void concurrentRecording_losesNothing() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = 4;
+        final int perThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long value = (t + 1) * MS;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        histogram.record(value);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(threads * perThread, histogram.getCount());
+        assertEquals(threads * MS, histogram.getMaxNanos());
+        assertNear(2 * MS, histogram.getPercentileNanos(50));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 32);
+    }
+}
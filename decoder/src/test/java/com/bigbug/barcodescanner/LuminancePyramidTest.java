@@ -0,0 +1,118 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LuminancePyramid} and the pyramid decoding of {@link FrameDecoder}.
+ */
+public class LuminancePyramidTest {
+
+    private static final DecoderConfig PYRAMID = new DecoderConfig.Builder()
+            .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+            .setPyramidLevels(2)
+            .build();
+
+    @Test
+    public void levelsAverageBlocks() throws Exception {
+        byte[] frame = new byte[8 * 4];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) (i * 8);
+        }
+        LuminancePyramid pyramid = new LuminancePyramid(3);
+
+        assertEquals(3, pyramid.build(TestBarcodes.source(frame, 8, 4), 1));
+        LuminanceSource half = pyramid.getLevel(1);
+        assertEquals(4, half.getWidth());
+        assertEquals(2, half.getHeight());
+        // The top-left block holds 0, 8, 64 and 72.
+        assertEquals(36, half.getMatrix()[0] & 0xff);
+        LuminanceSource quarter = pyramid.getLevel(2);
+        assertEquals(2, quarter.getWidth());
+        assertEquals(1, quarter.getHeight());
+    }
+
+    @Test
+    public void levelsStopAtMinimumDimension() throws Exception {
+        LuminancePyramid pyramid = new LuminancePyramid(4);
+        assertEquals(2, pyramid.build(TestBarcodes.source(new byte[640 * 400], 640, 400), 160));
+    }
+
+    @Test
+    public void buffersAreReusedAcrossFrames() throws Exception {
+        LuminancePyramid pyramid = new LuminancePyramid(2);
+        pyramid.build(TestBarcodes.source(new byte[320 * 240], 320, 240), 16);
+        byte[] first = pyramid.getLevel(1).getMatrix();
+        pyramid.build(TestBarcodes.source(new byte[320 * 240], 320, 240), 16);
+        assertSame(first, pyramid.getLevel(1).getMatrix());
+    }
+
+    @Test
+    public void largeCode_isFoundAtLowResolution() throws Exception {
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.QR_CODE, "close-up", 400, 400);
+        LuminanceSource frame = TestBarcodes.source(
+                TestBarcodes.frame(1280, 720, code, 440, 160), 1280, 720);
+        FrameDecoder decoder = new FrameDecoder(PYRAMID);
+
+        Result result = decoder.decode(frame);
+        assertEquals("close-up", result.getText());
+        assertEquals(1, decoder.getLevelAttempts(1));
+        assertEquals(1, decoder.getLevelHits(1));
+        assertEquals(0, decoder.getLevelAttempts(0));
+
+        // Result points are reported in full-resolution coordinates.
+        for (ResultPoint point : result.getResultPoints()) {
+            assertTrue(point.toString(), point.getX() > 440 && point.getX() < 840);
+            assertTrue(point.toString(), point.getY() > 160 && point.getY() < 560);
+        }
+    }
+
+    @Test
+    public void fineCode_escalatesToFullResolution() throws Exception {
+        // One pixel per module does not survive downsampling.
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.CODE_128, "SKU-123456-789", 0, 60);
+        LuminanceSource frame = TestBarcodes.source(
+                TestBarcodes.frame(1280, 720, code, 500, 330), 1280, 720);
+        FrameDecoder decoder = new FrameDecoder(PYRAMID);
+
+        assertEquals("SKU-123456-789", decoder.decode(frame).getText());
+        assertEquals(1, decoder.getLevelAttempts(1));
+        assertEquals(0, decoder.getLevelHits(1));
+        assertEquals(1, decoder.getLevelHits(0));
+        assertEquals(0f, decoder.getLevelHitRate(1), 0f);
+        assertEquals(1f, decoder.getLevelHitRate(0), 0f);
+    }
+
+    @Test
+    public void emptyFrame_triesEveryLevel() throws Exception {
+        FrameDecoder decoder = new FrameDecoder(PYRAMID);
+        try {
+            decoder.decode(TestBarcodes.source(TestBarcodes.blank(640, 480), 640, 480));
+            fail("Decoded an empty frame");
+        } catch (NotFoundException e) {
+            // Expected.
+        }
+        assertEquals(1, decoder.getLevelAttempts(1));
+        assertEquals(1, decoder.getLevelAttempts(0));
+    }
+
+    @Test
+    public void smallFrame_skipsPyramid() throws Exception {
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.QR_CODE, "tiny", 200, 200);
+        FrameDecoder decoder = new FrameDecoder(PYRAMID);
+
+        decoder.decode(TestBarcodes.source(TestBarcodes.luminance(code), code.getWidth(),
+                code.getHeight()));
+        assertEquals(0, decoder.getLevelAttempts(1));
+        assertEquals(1, decoder.getLevelHits(0));
+    }
+}
@@ -0,0 +1,142 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RegionTracker}.
+ */
+public class RegionTrackerTest {
+
+    private static final long MS = 1000L * 1000L;
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 800;
+
+    private final RegionTracker mTracker = new RegionTracker(500 * MS, 0.5f);
+
+    /**
+     * @return the result points of a QR code whose finder patterns span the given square.
+     */
+    private static ResultPoint[] square(float left, float top, float size) {
+        return new ResultPoint[]{
+                new ResultPoint(left, top + size),
+                new ResultPoint(left, top),
+                new ResultPoint(left + size, top)
+        };
+    }
+
+    private static void assertContains(ScanWindow region, float x, float y) {
+        assertTrue(region + " " + x + "," + y, region.getLeft() * WIDTH <= x
+                && x <= region.getRight() * WIDTH && region.getTop() * HEIGHT <= y
+                && y <= region.getBottom() * HEIGHT);
+    }
+
+    @Test
+    public void nothingSeen_decodesWholeFrame() throws Exception {
+        assertNull(mTracker.predict(0));
+    }
+
+    @Test
+    public void stillBarcode_predictsSmallRegionAroundIt() throws Exception {
+        mTracker.update(square(400, 300, 100), WIDTH, HEIGHT, 0);
+        ScanWindow region = mTracker.predict(33 * MS);
+
+        assertNotNull(region);
+        assertContains(region, 400, 300);
+        assertContains(region, 500, 400);
+        // The barcode and a margin of half its size on each side.
+        assertEquals(0.2f, region.getRight() - region.getLeft(), 1e-3f);
+        assertEquals(0.25f, region.getBottom() - region.getTop(), 1e-3f);
+    }
+
+    @Test
+    public void barcode1D_getsSquareRegion() throws Exception {
+        ResultPoint[] row = {new ResultPoint(300, 400), new ResultPoint(600, 400)};
+        mTracker.update(row, WIDTH, HEIGHT, 0);
+        ScanWindow region = mTracker.predict(33 * MS);
+
+        assertContains(region, 450, 250);
+        assertContains(region, 450, 550);
+    }
+
+    @Test
+    public void movingBarcode_regionLeadsTheMotion() throws Exception {
+        // 10 pixels to the right every 33 ms frame.
+        for (int i = 0; i < 10; i++) {
+            mTracker.update(square(200 + 10 * i, 300, 60), WIDTH, HEIGHT, 33 * MS * i);
+        }
+        ScanWindow region = mTracker.predict(33 * MS * 15);
+        float centerX = (region.getLeft() + region.getRight()) / 2 * WIDTH;
+        assertEquals(200 + 10 * 15 + 30, centerX, 10f);
+        assertContains(region, 350, 300);
+        assertContains(region, 410, 360);
+    }
+
+    @Test
+    public void jump_restartsTrack() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            mTracker.update(square(100 + 20 * i, 100, 50), WIDTH, HEIGHT, 33 * MS * i);
+        }
+        mTracker.update(square(800, 600, 50), WIDTH, HEIGHT, 33 * MS * 5);
+        ScanWindow region = mTracker.predict(33 * MS * 10);
+
+        // Without the velocity of the old barcode, the region stays on the new one.
+        assertContains(region, 825, 625);
+    }
+
+    @Test
+    public void lateFrame_isIgnored() throws Exception {
+        mTracker.update(square(400, 300, 100), WIDTH, HEIGHT, 100 * MS);
+        mTracker.update(square(100, 100, 100), WIDTH, HEIGHT, 50 * MS);
+
+        assertContains(mTracker.predict(133 * MS), 450, 350);
+    }
+
+    @Test
+    public void lostBarcode_expires() throws Exception {
+        mTracker.update(square(400, 300, 100), WIDTH, HEIGHT, 0);
+        assertNotNull(mTracker.predict(500 * MS));
+        assertNull(mTracker.predict(501 * MS));
+
+        mTracker.update(square(400, 300, 100), WIDTH, HEIGHT, 600 * MS);
+        mTracker.reset();
+        assertNull(mTracker.predict(600 * MS));
+    }
+
+    @Test
+    public void largeBarcode_decodesWholeFrame() throws Exception {
+        mTracker.update(square(100, 100, 600), WIDTH, HEIGHT, 0);
+        assertNull(mTracker.predict(0));
+    }
+
+    @Test
+    public void predictedRegion_decodesTheBarcode() throws Exception {
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.QR_CODE, "tracked", 160, 160);
+        FrameDecoder decoder = new FrameDecoder(DecoderConfig.DEFAULT);
+        long frameNanos = 0;
+        ScanWindow region = null;
+        for (int x = 100; x < 700; x += 40) {
+            byte[] frame = TestBarcodes.frame(WIDTH, HEIGHT, code, x, 300);
+            LuminanceSource source = TestBarcodes.source(frame, WIDTH, HEIGHT);
+            region = mTracker.predict(frameNanos);
+            Result result = decoder.decode(source, region == null ? ScanWindow.FULL : region);
+            assertEquals("tracked", result.getText());
+            if (region != null) {
+                mTracker.regionHit();
+            }
+            mTracker.update(result.getResultPoints(), WIDTH, HEIGHT, frameNanos);
+            frameNanos += 33 * MS;
+        }
+        assertNotNull(region);
+        assertTrue(region.getArea() < 0.15f);
+        assertEquals(14, mTracker.getRegionHits());
+    }
+}
@@ -0,0 +1,57 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ResultHistory}.
+ */
+public class ResultHistoryTest {
+
+    private static final long FRAME_NANOS = 33000000L;
+
+    @Test
+    public void get_findsTheResultOfTheSameFrame() throws Exception {
+        ResultHistory<String> history = new ResultHistory<>(4);
+        for (int i = 1; i <= 3; i++) {
+            history.put(i * FRAME_NANOS, "frame " + i);
+        }
+
+        // An image lagging behind the latest result.
+        assertEquals("frame 2", history.get(2 * FRAME_NANOS));
+        assertEquals("frame 3", history.get(3 * FRAME_NANOS));
+        // An image ahead of its result.
+        assertNull(history.get(4 * FRAME_NANOS));
+        assertEquals(3, history.size());
+    }
+
+    @Test
+    public void put_pushesOutTheOldestResult() throws Exception {
+        ResultHistory<String> history = new ResultHistory<>(3);
+        for (int i = 1; i <= 5; i++) {
+            history.put(i * FRAME_NANOS, "frame " + i);
+        }
+
+        assertNull(history.get(FRAME_NANOS));
+        assertNull(history.get(2 * FRAME_NANOS));
+        for (int i = 3; i <= 5; i++) {
+            assertEquals("frame " + i, history.get(i * FRAME_NANOS));
+        }
+        assertEquals(3, history.size());
+    }
+
+    @Test
+    public void clear_forgetsEveryResult() throws Exception {
+        ResultHistory<String> history = new ResultHistory<>(2);
+        history.put(0, "frame 0");
+        history.put(FRAME_NANOS, "frame 1");
+        history.clear();
+
+        assertNull(history.get(0));
+        assertNull(history.get(FRAME_NANOS));
+        assertEquals(0, history.size());
+        history.put(2 * FRAME_NANOS, "frame 2");
+        assertEquals("frame 2", history.get(2 * FRAME_NANOS));
+    }
+}
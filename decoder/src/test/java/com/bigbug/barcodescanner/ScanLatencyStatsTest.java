@@ -0,0 +1,117 @@
+package com.bigbug.barcodescanner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ScanLatencyStats} and {@link ScanTimeline}.
+ */
+public class ScanLatencyStatsTest {
+
+    private static final long MS = 1000L * 1000L;
+
+    private static class FakeClock implements Clock {
+        long mNow = 1000 * MS;
+
+        @Override
+        public long nanoTime() {
+            return mNow;
+        }
+
+        void advance(long nanos) {
+            mNow += nanos;
+        }
+    }
+
+    private FakeClock mClock;
+    private ScanLatencyStats mStats;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mStats = new ScanLatencyStats();
+    }
+
+    @Test
+    public void timeline_tracksMarkedStages() throws Exception {
+        ScanTimeline timeline = new ScanTimeline(mClock);
+        assertFalse(timeline.isMarked(ScanTimeline.IMAGE_AVAILABLE));
+        assertEquals(0, timeline.getNanos(ScanTimeline.IMAGE_AVAILABLE));
+
+        timeline.mark(ScanTimeline.IMAGE_AVAILABLE);
+        assertTrue(timeline.isMarked(ScanTimeline.IMAGE_AVAILABLE));
+        assertEquals(1000 * MS, timeline.getNanos(ScanTimeline.IMAGE_AVAILABLE));
+    }
+
+    @Test
+    public void stillCapture_recordsEveryStage() throws Exception {
+        ScanTimeline timeline = new ScanTimeline(mClock);
+        timeline.mark(ScanTimeline.CAPTURE_REQUESTED);
+        mClock.advance(40 * MS);
+        timeline.mark(ScanTimeline.CAPTURE_COMPLETED);
+        mClock.advance(5 * MS);
+        timeline.mark(ScanTimeline.IMAGE_AVAILABLE);
+        mClock.advance(2 * MS);
+        timeline.mark(ScanTimeline.DECODE_STARTED);
+        mClock.advance(30 * MS);
+        timeline.mark(ScanTimeline.DECODE_FINISHED);
+        mClock.advance(8 * MS);
+        timeline.mark(ScanTimeline.UI_DISPATCHED);
+        mStats.record(timeline);
+
+        assertEquals(0, mStats.getStage(ScanTimeline.CAPTURE_REQUESTED).getCount());
+        assertEquals(40 * MS, p50(ScanTimeline.CAPTURE_COMPLETED));
+        assertEquals(5 * MS, p50(ScanTimeline.IMAGE_AVAILABLE));
+        assertEquals(2 * MS, p50(ScanTimeline.DECODE_STARTED));
+        assertEquals(30 * MS, p50(ScanTimeline.DECODE_FINISHED));
+        assertEquals(8 * MS, p50(ScanTimeline.UI_DISPATCHED));
+        assertEquals(85 * MS, mStats.getTotal().getPercentileNanos(50));
+    }
+
+    @Test
+    public void skippedStages_foldIntoNextStage() throws Exception {
+        // A streamed frame without a barcode: no capture request, no UI dispatch.
+        ScanTimeline timeline = new ScanTimeline(mClock);
+        timeline.mark(ScanTimeline.IMAGE_AVAILABLE);
+        mClock.advance(4 * MS);
+        timeline.mark(ScanTimeline.DECODE_FINISHED);
+        mStats.record(timeline);
+
+        assertEquals(0, mStats.getStage(ScanTimeline.DECODE_STARTED).getCount());
+        assertEquals(4 * MS, p50(ScanTimeline.DECODE_FINISHED));
+        assertEquals(0, mStats.getStage(ScanTimeline.UI_DISPATCHED).getCount());
+        assertEquals(4 * MS, mStats.getTotal().getPercentileNanos(50));
+    }
+
+    @Test
+    public void singleStage_recordsNothing() throws Exception {
+        ScanTimeline timeline = new ScanTimeline(mClock);
+        timeline.mark(ScanTimeline.CAPTURE_REQUESTED);
+        mStats.record(timeline);
+        mStats.record(new ScanTimeline(mClock));
+        assertEquals(0, mStats.getTotal().getCount());
+    }
+
+    @Test
+    public void toString_listsRecordedStages() throws Exception {
+        ScanTimeline timeline = new ScanTimeline(mClock);
+        timeline.mark(ScanTimeline.DECODE_STARTED);
+        mClock.advance(12 * MS);
+        timeline.mark(ScanTimeline.DECODE_FINISHED);
+        mStats.record(timeline);
+
+        String[] lines = mStats.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("decode  p50   12.0"));
+        assertTrue(lines[1], lines[1].startsWith("total   p50   12.0"));
+
+        mStats.reset();
+        assertEquals(0, mStats.getStage(ScanTimeline.DECODE_FINISHED).getCount());
+    }
+
+    private long p50(int stage) {
+        return mStats.getStage(stage).getPercentileNanos(50);
+    }
+}
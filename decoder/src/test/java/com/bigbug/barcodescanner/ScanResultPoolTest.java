@@ -0,0 +1,101 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ScanResultPool} and {@link ScanResult}.
+ */
+public class ScanResultPoolTest {
+
+    private static final long MS = 1000L * 1000L;
+
+    private static class FakeClock implements Clock {
+        long mNow = 1000 * MS;
+
+        @Override
+        public long nanoTime() {
+            return mNow;
+        }
+    }
+
+    private final FakeClock mClock = new FakeClock();
+
+    private static Result result(String text) {
+        return new Result(text, text.getBytes(), new ResultPoint[]{new ResultPoint(1, 2)},
+                BarcodeFormat.QR_CODE);
+    }
+
+    private ScanTimeline timeline() {
+        ScanTimeline timeline = new ScanTimeline(mClock);
+        timeline.mark(ScanTimeline.IMAGE_AVAILABLE);
+        mClock.mNow += 5 * MS;
+        timeline.mark(ScanTimeline.DECODE_STARTED);
+        mClock.mNow += 20 * MS;
+        timeline.mark(ScanTimeline.DECODE_FINISHED);
+        return timeline;
+    }
+
+    @Test
+    public void scanResult_wrapsResultAndTimeline() throws Exception {
+        ScanResultPool pool = new ScanResultPool(4);
+        Result result = result("hello");
+        ScanResult scanResult = pool.acquire(result, 42L, timeline());
+
+        assertEquals("hello", scanResult.getText());
+        assertEquals(BarcodeFormat.QR_CODE, scanResult.getFormat());
+        assertSame(result.getRawBytes(), scanResult.getRawBytes());
+        assertSame(result.getResultPoints(), scanResult.getResultPoints());
+        assertTrue(scanResult.getMetadata().isEmpty());
+        assertEquals(42L, scanResult.getFrameTimestampNanos());
+        assertEquals(1025 * MS, scanResult.getStageNanos(ScanTimeline.DECODE_FINISHED));
+        assertEquals(25 * MS, scanResult.getElapsedNanos(ScanTimeline.DECODE_FINISHED));
+        assertEquals(0, scanResult.getElapsedNanos(ScanTimeline.UI_DISPATCHED));
+    }
+
+    @Test
+    public void releasedResultIsReused() throws Exception {
+        ScanResultPool pool = new ScanResultPool(4);
+        ScanResult first = pool.acquire(result("one"), 1L, timeline());
+        pool.release(first);
+        ScanResult second = pool.acquire(result("two"), 2L, timeline());
+
+        assertSame(first, second);
+        assertEquals("two", second.getText());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+    }
+
+    @Test
+    public void copy_survivesRelease() throws Exception {
+        ScanResultPool pool = new ScanResultPool(4);
+        ScanResult scanResult = pool.acquire(result("kept"), 7L, timeline());
+        ScanResult copy = scanResult.copy();
+        pool.release(scanResult);
+
+        assertEquals("ScanResult{recycled}", scanResult.toString());
+        assertEquals("kept", copy.getText());
+        assertEquals(7L, copy.getFrameTimestampNanos());
+        assertSame(scanResult, pool.acquire(result("next"), 8L, timeline()));
+        assertEquals("kept", copy.getText());
+    }
+
+    @Test
+    public void pool_isBounded() throws Exception {
+        ScanResultPool pool = new ScanResultPool(2);
+        ScanResult[] results = new ScanResult[3];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = pool.acquire(result("r" + i), i, timeline());
+        }
+        for (ScanResult scanResult : results) {
+            pool.release(scanResult);
+        }
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(3, pool.getMissCount());
+    }
+}
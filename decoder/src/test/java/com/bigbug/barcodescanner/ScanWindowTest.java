@@ -0,0 +1,181 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ScanWindow} and {@link CameraOrientation}.
+ */
+public class ScanWindowTest {
+
+    private static final float EPSILON = 1e-5f;
+
+    /**
+     * Typical sensor orientations of back- and front-facing phone cameras.
+     */
+    private static final int BACK_SENSOR_ORIENTATION = 90;
+    private static final int FRONT_SENSOR_ORIENTATION = 270;
+
+    private static final int[] DEVICE_ORIENTATIONS = {0, 90, 180, 270};
+
+    /**
+     * An asymmetric window in the upper left part of the view, so every rotation and mirroring
+     * shows up in the mapped result.
+     */
+    private static final ScanWindow VIEW_WINDOW = new ScanWindow(0.1f, 0.2f, 0.5f, 0.4f);
+
+    @Test
+    public void sensorToDeviceRotation_backFacing() throws Exception {
+        assertEquals(90, CameraOrientation.sensorToDeviceRotation(90, 0, false));
+        assertEquals(180, CameraOrientation.sensorToDeviceRotation(90, 90, false));
+        assertEquals(270, CameraOrientation.sensorToDeviceRotation(90, 180, false));
+        assertEquals(0, CameraOrientation.sensorToDeviceRotation(90, 270, false));
+    }
+
+    @Test
+    public void sensorToDeviceRotation_frontFacing() throws Exception {
+        assertEquals(270, CameraOrientation.sensorToDeviceRotation(270, 0, true));
+        assertEquals(180, CameraOrientation.sensorToDeviceRotation(270, 90, true));
+        assertEquals(90, CameraOrientation.sensorToDeviceRotation(270, 180, true));
+        assertEquals(0, CameraOrientation.sensorToDeviceRotation(270, 270, true));
+    }
+
+    @Test
+    public void mapToImage_backFacingPortrait() throws Exception {
+        // The sensor image is turned a quarter clockwise into the view, so the upper left of the
+        // view is the lower left of the sensor.
+        assertWindow(0.2f, 0.5f, 0.4f, 0.9f, VIEW_WINDOW.mapToImage(90, false));
+    }
+
+    @Test
+    public void mapToImage_frontFacingPortrait() throws Exception {
+        assertWindow(0.6f, 0.5f, 0.8f, 0.9f, VIEW_WINDOW.mapToImage(270, true));
+    }
+
+    @Test
+    public void mapToImage_withoutRotation() throws Exception {
+        assertEquals(VIEW_WINDOW, VIEW_WINDOW.mapToImage(0, false));
+        assertWindow(0.5f, 0.2f, 0.9f, 0.4f, VIEW_WINDOW.mapToImage(0, true));
+        assertWindow(0.5f, 0.6f, 0.9f, 0.8f, VIEW_WINDOW.mapToImage(180, false));
+    }
+
+    @Test
+    public void mapToImage_allRotationsAndFacings() throws Exception {
+        for (boolean front : new boolean[]{false, true}) {
+            int sensorOrientation = front ? FRONT_SENSOR_ORIENTATION : BACK_SENSOR_ORIENTATION;
+            for (int deviceOrientation : DEVICE_ORIENTATIONS) {
+                int rotation = CameraOrientation.sensorToDeviceRotation(sensorOrientation,
+                        deviceOrientation, front);
+                ScanWindow image = VIEW_WINDOW.mapToImage(rotation, front);
+
+                // Push the image window forward through the rotation and mirroring and check
+                // that it lands on the view window again.
+                float[] a = toView(image.getLeft(), image.getTop(), rotation, front);
+                float[] b = toView(image.getRight(), image.getBottom(), rotation, front);
+                String message = (front ? "front" : "back") + " @" + deviceOrientation;
+                assertEquals(message, VIEW_WINDOW.getLeft(), Math.min(a[0], b[0]), EPSILON);
+                assertEquals(message, VIEW_WINDOW.getTop(), Math.min(a[1], b[1]), EPSILON);
+                assertEquals(message, VIEW_WINDOW.getRight(), Math.max(a[0], b[0]), EPSILON);
+                assertEquals(message, VIEW_WINDOW.getBottom(), Math.max(a[1], b[1]), EPSILON);
+                assertEquals(message, VIEW_WINDOW.getArea(), image.getArea(), EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void centeredWindow_isSymmetric() throws Exception {
+        ScanWindow window = ScanWindow.centered(0.8f, 0.5f);
+        assertWindow(0.1f, 0.25f, 0.9f, 0.75f, window);
+        assertEquals(0.4f, window.getArea(), EPSILON);
+        assertWindow(0.25f, 0.1f, 0.75f, 0.9f, window.mapToImage(90, false));
+    }
+
+    @Test
+    public void pixelRect_staysInsideFrame() throws Exception {
+        ScanWindow window = new ScanWindow(0.25f, 0.5f, 1f, 1f);
+        assertEquals(160, window.getPixelLeft(640));
+        assertEquals(480, window.getPixelWidth(640));
+        assertEquals(240, window.getPixelTop(480));
+        assertEquals(240, window.getPixelHeight(480));
+
+        ScanWindow sliver = new ScanWindow(0.999f, 0.999f, 1f, 1f);
+        assertEquals(9, sliver.getPixelLeft(10));
+        assertEquals(1, sliver.getPixelWidth(10));
+    }
+
+    @Test
+    public void crop_onlyDecodesInsideWindow() throws Exception {
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.QR_CODE, "inside", 160, 160);
+        byte[] frame = TestBarcodes.frame(640, 480, code, 20, 20);
+        LuminanceSource source = TestBarcodes.source(frame, 640, 480);
+        FrameDecoder decoder = new FrameDecoder(DecoderConfig.DEFAULT);
+
+        assertEquals("inside", decoder.decode(new ScanWindow(0f, 0f, 0.5f, 0.5f).crop(source))
+                .getText());
+        try {
+            decoder.decode(ScanWindow.centered(0.4f, 0.4f).crop(source));
+            fail("Decoded a barcode outside of the scan window");
+        } catch (NotFoundException e) {
+            // Expected.
+        }
+        assertSame(source, ScanWindow.FULL.crop(source));
+    }
+
+    @Test
+    public void crop_ofYPlane_followsViewWindow() throws Exception {
+        // A back camera held in portrait: the view shows the sensor image turned a quarter
+        // clockwise.  Put a code in the sensor image where the upper left of the view is.
+        int sensorWidth = 640;
+        int sensorHeight = 480;
+        int rotation = CameraOrientation.sensorToDeviceRotation(BACK_SENSOR_ORIENTATION, 0, false);
+        ScanWindow viewWindow = new ScanWindow(0f, 0f, 0.5f, 0.5f);
+        ScanWindow imageWindow = viewWindow.mapToImage(rotation, false);
+
+        BufferedImage code = TestBarcodes.render(BarcodeFormat.QR_CODE, "upper-left", 150, 150);
+        int left = imageWindow.getPixelLeft(sensorWidth) + 40;
+        int top = imageWindow.getPixelTop(sensorHeight) + 40;
+        byte[] frame = TestBarcodes.frame(sensorWidth, sensorHeight, code, left, top);
+        LuminanceSource source = new YPlaneLuminanceSource(ByteBuffer.wrap(frame), sensorWidth, 1,
+                sensorWidth, sensorHeight);
+
+        LuminanceSource cropped = imageWindow.crop(source).rotateCounterClockwise();
+        assertEquals(sensorHeight / 2, cropped.getWidth());
+        assertEquals(sensorWidth / 2, cropped.getHeight());
+        assertEquals("upper-left",
+                new FrameDecoder(DecoderConfig.DEFAULT).decode(cropped).getText());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyWindow() throws Exception {
+        new ScanWindow(0.5f, 0.2f, 0.5f, 0.4f);
+    }
+
+    /**
+     * Forward mapping of an image point into the view: turn it clockwise by {@code rotation},
+     * then mirror it if needed.
+     */
+    private static float[] toView(float x, float y, int rotation, boolean mirrored) {
+        for (int i = 0; i < rotation / 90; i++) {
+            float newX = 1f - y;
+            y = x;
+            x = newX;
+        }
+        return new float[]{mirrored ? 1f - x : x, y};
+    }
+
+    private static void assertWindow(float left, float top, float right, float bottom,
+                                     ScanWindow window) {
+        assertEquals(left, window.getLeft(), EPSILON);
+        assertEquals(top, window.getTop(), EPSILON);
+        assertEquals(right, window.getRight(), EPSILON);
+        assertEquals(bottom, window.getBottom(), EPSILON);
+    }
+}
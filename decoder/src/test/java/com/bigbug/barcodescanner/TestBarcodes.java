@@ -0,0 +1,76 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.WriterException;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Generates synthetic barcode frames for local unit tests.
+ */
+final class TestBarcodes {
+
+    private TestBarcodes() {
+    }
+
+    /**
+     * Render a barcode with {@link MatrixToImageWriter}, sized to roughly fill the given box.
+     */
+    static BufferedImage render(BarcodeFormat format, String contents, int width, int height)
+            throws WriterException {
+        BitMatrix matrix = new MultiFormatWriter().encode(contents, format, width, height);
+        return MatrixToImageWriter.toBufferedImage(matrix);
+    }
+
+    /**
+     * @return the luminance of the given image, one byte per pixel, row by row.
+     */
+    static byte[] luminance(BufferedImage image) {
+        return new BufferedImageLuminanceSource(image).getMatrix();
+    }
+
+    /**
+     * @return the luminance of a white frame of the given size.
+     */
+    static byte[] blank(int frameWidth, int frameHeight) {
+        byte[] frame = new byte[frameWidth * frameHeight];
+        Arrays.fill(frame, (byte) 0xFF);
+        return frame;
+    }
+
+    /**
+     * Paste a barcode image into a white frame of the given size.
+     *
+     * @return the luminance of the frame, one byte per pixel, row by row.
+     */
+    static byte[] frame(int frameWidth, int frameHeight, BufferedImage code, int left, int top) {
+        byte[] frame = blank(frameWidth, frameHeight);
+        paste(frame, frameWidth, code, left, top);
+        return frame;
+    }
+
+    /**
+     * Paste a barcode image into a frame at the given position.
+     */
+    static void paste(byte[] frame, int frameWidth, BufferedImage code, int left, int top) {
+        byte[] pixels = luminance(code);
+        int width = code.getWidth();
+        for (int y = 0; y < code.getHeight(); y++) {
+            System.arraycopy(pixels, y * width, frame, (top + y) * frameWidth + left, width);
+        }
+    }
+
+    /**
+     * Wrap a luminance frame without copying it.
+     */
+    static LuminanceSource source(byte[] frame, int width, int height) {
+        return new PlanarYUVLuminanceSource(frame, width, height, 0, 0, width, height, false);
+    }
+}
@@ -0,0 +1,172 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TiledFrameDecoder}.
+ */
+public class TiledFrameDecoderTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 960;
+
+    private static final DecoderConfig TILED = new DecoderConfig.Builder()
+            .setFormats(BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE)
+            .setTiles(2, 2, 0.5f)
+            .build();
+
+    private final ForkJoinPool mPool = new ForkJoinPool(4);
+
+    @After
+    public void tearDown() {
+        mPool.shutdownNow();
+    }
+
+    /**
+     * Paste a barcode into the frame, centered on the given point.
+     */
+    private static void paste(byte[] frame, BufferedImage code, int centerX, int centerY) {
+        TestBarcodes.paste(frame, WIDTH, code, centerX - code.getWidth() / 2,
+                centerY - code.getHeight() / 2);
+    }
+
+    private static void assertWithin(Result result, int left, int top, int right, int bottom) {
+        for (ResultPoint point : result.getResultPoints()) {
+            assertTrue(point.toString(), point.getX() >= left && point.getX() <= right);
+            assertTrue(point.toString(), point.getY() >= top && point.getY() <= bottom);
+        }
+    }
+
+    @Test
+    public void tiles_overlapAndCoverTheFrame() throws Exception {
+        int[] tiles = new TiledFrameDecoder(TILED, mPool).tile(WIDTH, HEIGHT);
+        assertEquals(4 * 4, tiles.length);
+        boolean[] covered = new boolean[WIDTH];
+        for (int i = 0; i < tiles.length; i += 4) {
+            // Half of a 640 pixel tile is shared, 160 pixels on each inner side.
+            assertEquals(640 + 160, tiles[i + 2] - tiles[i]);
+            assertEquals(480 + 120, tiles[i + 3] - tiles[i + 1]);
+            for (int x = tiles[i]; x < tiles[i + 2]; x++) {
+                covered[x] = true;
+            }
+        }
+        for (boolean c : covered) {
+            assertTrue(c);
+        }
+    }
+
+    @Test
+    public void tiles_centerFirstAndShrunkForSmallFrames() throws Exception {
+        DecoderConfig config = new DecoderConfig.Builder(TILED).setTiles(3, 3, 0.25f).build();
+        TiledFrameDecoder decoder = new TiledFrameDecoder(config, mPool);
+        int[] tiles = decoder.tile(WIDTH, HEIGHT);
+        assertEquals(9 * 4, tiles.length);
+        assertTrue(tiles[0] < WIDTH / 2 && tiles[2] > WIDTH / 2);
+        assertTrue(tiles[1] < HEIGHT / 2 && tiles[3] > HEIGHT / 2);
+
+        assertEquals(2 * 4, decoder.tile(700, 400).length);
+        assertNull(decoder.tile(600, 600));
+    }
+
+    @Test
+    public void decode_findsCodeAcrossTileBoundary() throws Exception {
+        TiledFrameDecoder decoder = new TiledFrameDecoder(TILED, mPool);
+        byte[] frame = TestBarcodes.blank(WIDTH, HEIGHT);
+        // Straddles the boundary between the left and right columns.
+        paste(frame, TestBarcodes.render(BarcodeFormat.CODE_128, "PALLET-0042", 260, 100),
+                WIDTH / 2, HEIGHT / 4);
+
+        Result result = decoder.decode(TestBarcodes.source(frame, WIDTH, HEIGHT));
+        assertEquals("PALLET-0042", result.getText());
+        assertWithin(result, WIDTH / 2 - 130, HEIGHT / 4 - 50, WIDTH / 2 + 130, HEIGHT / 4 + 50);
+    }
+
+    @Test
+    public void decode_stopsAtFirstHit() throws Exception {
+        DecoderConfig config = new DecoderConfig.Builder(TILED).setTiles(3, 3, 0.5f).build();
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            TiledFrameDecoder decoder = new TiledFrameDecoder(config, pool);
+            byte[] frame = TestBarcodes.blank(WIDTH, HEIGHT);
+            paste(frame, TestBarcodes.render(BarcodeFormat.QR_CODE, "center", 200, 200),
+                    WIDTH / 2, HEIGHT / 2);
+
+            assertEquals("center", decoder.decode(TestBarcodes.source(frame, WIDTH, HEIGHT))
+                    .getText());
+            // With one thread, the center tile is decoded first and no other after it.
+            assertEquals(1, decoder.getLevelAttempts(0));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void decode_blankFrame() throws Exception {
+        new TiledFrameDecoder(TILED, mPool).decode(TestBarcodes.source(
+                TestBarcodes.blank(WIDTH, HEIGHT), WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void decodeMultiple_mergesCodesFoundInSeveralTiles() throws Exception {
+        TiledFrameDecoder decoder = new TiledFrameDecoder(new DecoderConfig.Builder(TILED)
+                .setMultipleBarcodes(true)
+                .build(), mPool);
+        byte[] frame = TestBarcodes.blank(WIDTH, HEIGHT);
+        // In all four tiles.
+        paste(frame, TestBarcodes.render(BarcodeFormat.QR_CODE, "middle", 200, 200),
+                WIDTH / 2, HEIGHT / 2);
+        // Across the boundary of the two left tiles.  Without TRY_HARDER, ZXing only scans the
+        // rows around the middle of an image for 1D codes, so the 1D codes sit near the middle
+        // of their tiles.
+        paste(frame, TestBarcodes.render(BarcodeFormat.CODE_128, "LEFT-1", 240, 80),
+                WIDTH / 4, 400);
+        // In the top right tile only.
+        paste(frame, TestBarcodes.render(BarcodeFormat.CODE_128, "CORNER-2", 240, 80),
+                WIDTH - 200, 300);
+        // The same text again, in the bottom right tile only, is another label.
+        paste(frame, TestBarcodes.render(BarcodeFormat.CODE_128, "CORNER-2", 240, 80),
+                WIDTH - 200, HEIGHT - 300);
+
+        LuminanceSource source = TestBarcodes.source(frame, WIDTH, HEIGHT);
+        Result[] results = decoder.decodeMultiple(source);
+        Set<String> texts = new HashSet<>();
+        int corners = 0;
+        for (Result result : results) {
+            texts.add(result.getText());
+            if (result.getText().equals("CORNER-2")) {
+                corners++;
+            } else if (result.getText().equals("middle")) {
+                assertWithin(result, WIDTH / 2 - 100, HEIGHT / 2 - 100, WIDTH / 2 + 100,
+                        HEIGHT / 2 + 100);
+            }
+        }
+        assertEquals(4, results.length);
+        assertEquals(2, corners);
+        assertEquals(3, texts.size());
+    }
+
+    @Test
+    public void smallFrame_isDecodedWhole() throws Exception {
+        TiledFrameDecoder decoder = new TiledFrameDecoder(TILED, mPool);
+        byte[] frame = TestBarcodes.blank(400, 300);
+        TestBarcodes.paste(frame, 400, TestBarcodes.render(BarcodeFormat.QR_CODE, "small",
+                200, 200), 100, 50);
+
+        assertEquals("small", decoder.decode(TestBarcodes.source(frame, 400, 300)).getText());
+        assertEquals(1, decoder.getLevelAttempts(0));
+    }
+}
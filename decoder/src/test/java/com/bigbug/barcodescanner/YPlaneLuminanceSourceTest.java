@@ -0,0 +1,170 @@
+package com.bigbug.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link YPlaneLuminanceSource}, fed with synthetic Y planes.
+ */
+public class YPlaneLuminanceSourceTest {
+
+    private static final byte PADDING = (byte) 0xAB;
+
+    /**
+     * Build a Y plane whose pixel (x, y) has value {@code (x + 16 * y) & 0xFF}, with every row
+     * padded up to {@code rowStride} bytes and the last row left unpadded, like the camera does.
+     */
+    private static ByteBuffer syntheticPlane(int width, int height, int rowStride, int pixelStride) {
+        byte[] data = new byte[(height - 1) * rowStride + (width - 1) * pixelStride + 1];
+        Arrays.fill(data, PADDING);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                data[y * rowStride + x * pixelStride] = (byte) expected(x, y);
+            }
+        }
+        return ByteBuffer.allocateDirect(data.length).put(data);
+    }
+
+    private static int expected(int x, int y) {
+        return (x + 16 * y) & 0xFF;
+    }
+
+    @Test
+    public void getRow_skipsRowPadding() throws Exception {
+        ByteBuffer plane = syntheticPlane(10, 6, 16, 1);
+        LuminanceSource source = new YPlaneLuminanceSource(plane, 16, 1, 10, 6);
+
+        for (int y = 0; y < 6; y++) {
+            byte[] row = source.getRow(y, null);
+            for (int x = 0; x < 10; x++) {
+                assertEquals(expected(x, y), row[x] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void getMatrix_isTightlyPacked() throws Exception {
+        ByteBuffer plane = syntheticPlane(7, 5, 12, 1);
+        LuminanceSource source = new YPlaneLuminanceSource(plane, 12, 1, 7, 5);
+
+        byte[] matrix = source.getMatrix();
+        assertEquals(7 * 5, matrix.length);
+        for (int y = 0; y < 5; y++) {
+            for (int x = 0; x < 7; x++) {
+                assertEquals(expected(x, y), matrix[y * 7 + x] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void pixelStride_isHonoured() throws Exception {
+        ByteBuffer plane = syntheticPlane(8, 4, 20, 2);
+        LuminanceSource source = new YPlaneLuminanceSource(plane, 20, 2, 8, 4);
+
+        byte[] matrix = source.getMatrix();
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 8; x++) {
+                assertEquals(expected(x, y), matrix[y * 8 + x] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void bufferPosition_isLeftUntouched() throws Exception {
+        ByteBuffer plane = syntheticPlane(10, 6, 16, 1);
+        plane.position(3);
+        LuminanceSource source = new YPlaneLuminanceSource(plane, 16, 1, 10, 6);
+
+        source.getMatrix();
+        source.getRow(2, null);
+        assertEquals(3, plane.position());
+    }
+
+    @Test
+    public void crop_readsFromThePlane() throws Exception {
+        ByteBuffer plane = syntheticPlane(12, 9, 16, 1);
+        LuminanceSource source = new YPlaneLuminanceSource(plane, 16, 1, 12, 9).crop(3, 2, 5, 4);
+
+        assertEquals(5, source.getWidth());
+        assertEquals(4, source.getHeight());
+        byte[] matrix = source.getMatrix();
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 5; x++) {
+                assertEquals(expected(x + 3, y + 2), matrix[y * 5 + x] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void rotateCounterClockwise_matchesManualRotation() throws Exception {
+        ByteBuffer plane = syntheticPlane(6, 4, 8, 1);
+        LuminanceSource source = new YPlaneLuminanceSource(plane, 8, 1, 6, 4);
+        LuminanceSource rotated = source.rotateCounterClockwise();
+
+        assertEquals(4, rotated.getWidth());
+        assertEquals(6, rotated.getHeight());
+        byte[] matrix = rotated.getMatrix();
+        for (int y = 0; y < 6; y++) {
+            for (int x = 0; x < 4; x++) {
+                // Counter-clockwise: the top-right corner of the original ends up top-left.
+                assertEquals(expected(6 - 1 - y, x), matrix[y * 4 + x] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void cropOfRotated_matchesRotatedCrop() throws Exception {
+        ByteBuffer plane = syntheticPlane(11, 7, 16, 1);
+        LuminanceSource source = new YPlaneLuminanceSource(plane, 16, 1, 11, 7);
+        for (int turns = 1; turns < 4; turns++) {
+            source = source.rotateCounterClockwise();
+            byte[] full = source.getMatrix();
+            LuminanceSource cropped = source.crop(1, 2, 3, 4);
+            byte[] matrix = cropped.getMatrix();
+            for (int y = 0; y < 4; y++) {
+                for (int x = 0; x < 3; x++) {
+                    assertEquals(full[(y + 2) * source.getWidth() + x + 1], matrix[y * 3 + x]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void decodesQrCodeFromPaddedPlane() throws Exception {
+        BitMatrix code = new MultiFormatWriter().encode("yuv-fast-path", BarcodeFormat.QR_CODE,
+                200, 200);
+        int width = code.getWidth();
+        int height = code.getHeight();
+        int rowStride = width + 56;
+        byte[] data = new byte[rowStride * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < rowStride; x++) {
+                data[y * rowStride + x] = x < width && code.get(x, y) ? 0 : (byte) 0xFF;
+            }
+        }
+
+        LuminanceSource source = new YPlaneLuminanceSource(ByteBuffer.wrap(data), rowStride, 1,
+                width, height);
+        Result result = new MultiFormatReader().decode(
+                new BinaryBitmap(new HybridBinarizer(source)));
+        assertEquals("yuv-fast-path", result.getText());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsStrideSmallerThanWidth() throws Exception {
+        new YPlaneLuminanceSource(ByteBuffer.allocate(100), 8, 1, 10, 10);
+    }
+}